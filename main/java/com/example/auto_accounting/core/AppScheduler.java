@@ -0,0 +1,183 @@
+package com.example.auto_accounting.core;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application-wide background scheduler with one priority lane per kind of work.
+ * <p>Each lane owns a single worker thread with its own queue and OS thread priority, so a
+ * long export on {@link Lane#BACKGROUND} can never delay a payment insert on
+ * {@link Lane#INGEST}. The ingest queue is unbounded: a write is never refused nor run on the
+ * caller's thread, the listener's main thread, where Room refuses queries. The other lanes are
+ * bounded and reject tasks when full. Tasks run in submission order within a lane. Every lane
+ * keeps counters of submitted, completed, cancelled and rejected tasks plus queue wait and run
+ * times.
+ */
+public final class AppScheduler {
+
+    private static final String TAG = "AppScheduler";
+
+    /** Work lanes, highest priority first. */
+    public enum Lane {
+        /** Database writes from the notification listener. Unbounded: never dropped. */
+        INGEST(Integer.MAX_VALUE, Process.THREAD_PRIORITY_DEFAULT),
+        /** Reads that a visible screen is waiting for. */
+        INTERACTIVE(256, Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE),
+        /** Exports and maintenance jobs. */
+        BACKGROUND(64, Process.THREAD_PRIORITY_LOWEST);
+
+        final int capacity;
+        final int threadPriority;
+
+        Lane(int capacity, int threadPriority) {
+            this.capacity = capacity;
+            this.threadPriority = threadPriority;
+        }
+    }
+
+    /** Point-in-time counters of one lane. */
+    public static final class LaneStats {
+        public final Lane lane;
+        public final long submitted;
+        public final long completed;
+        public final long failed;
+        public final long cancelled;
+        public final long rejected;
+        public final int queued;
+        public final long totalWaitMs;
+        public final long maxWaitMs;
+        public final long totalRunMs;
+
+        LaneStats(Lane lane, Metrics m, int queued) {
+            this.lane = lane;
+            this.submitted = m.submitted.get();
+            this.completed = m.completed.get();
+            this.failed = m.failed.get();
+            this.cancelled = m.cancelled.get();
+            this.rejected = m.rejected.get();
+            this.queued = queued;
+            this.totalWaitMs = m.waitMs.get();
+            this.maxWaitMs = m.maxWaitMs.get();
+            this.totalRunMs = m.runMs.get();
+        }
+
+        @Override
+        public String toString() {
+            long done = Math.max(1, completed + failed);
+            return lane + ": submitted=" + submitted + " completed=" + completed
+                    + " failed=" + failed + " cancelled=" + cancelled + " rejected=" + rejected
+                    + " queued=" + queued + " avgWaitMs=" + (totalWaitMs / done)
+                    + " maxWaitMs=" + maxWaitMs + " avgRunMs=" + (totalRunMs / done);
+        }
+    }
+
+    private static final class Metrics {
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong waitMs = new AtomicLong();
+        final AtomicLong maxWaitMs = new AtomicLong();
+        final AtomicLong runMs = new AtomicLong();
+    }
+
+    private static final ThreadPoolExecutor[] EXECUTORS = new ThreadPoolExecutor[Lane.values().length];
+    private static final Metrics[] METRICS = new Metrics[Lane.values().length];
+
+    static {
+        for (Lane lane : Lane.values()) {
+            METRICS[lane.ordinal()] = new Metrics();
+            EXECUTORS[lane.ordinal()] = new ThreadPoolExecutor(
+                    1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(lane.capacity),
+                    r -> {
+                        Thread t = new Thread(() -> {
+                            Process.setThreadPriority(lane.threadPriority);
+                            r.run();
+                        }, "sched-" + lane.name().toLowerCase(Locale.ROOT));
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    private AppScheduler() {
+        // No instances.
+    }
+
+    /**
+     * Runs a task on a lane.
+     *
+     * @param lane  target lane
+     * @param token optional token; the task is skipped if it is cancelled before it starts
+     * @param task  the work
+     * @return false if the lane's queue was full and the task was rejected
+     */
+    public static boolean execute(Lane lane, @Nullable CancellationToken token, Runnable task) {
+        Metrics m = METRICS[lane.ordinal()];
+        m.submitted.incrementAndGet();
+        final long enqueuedAt = SystemClock.elapsedRealtime();
+        try {
+            EXECUTORS[lane.ordinal()].execute(() -> {
+                long wait = SystemClock.elapsedRealtime() - enqueuedAt;
+                m.waitMs.addAndGet(wait);
+                m.maxWaitMs.accumulateAndGet(wait, Math::max);
+                if (token != null && token.isCancelled()) {
+                    m.cancelled.incrementAndGet();
+                    return;
+                }
+                long start = SystemClock.elapsedRealtime();
+                try {
+                    task.run();
+                    m.completed.incrementAndGet();
+                } catch (RuntimeException e) {
+                    m.failed.incrementAndGet();
+                    Log.e(TAG, lane + " task failed", e);
+                } finally {
+                    m.runMs.addAndGet(SystemClock.elapsedRealtime() - start);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            m.rejected.incrementAndGet();
+            Log.w(TAG, lane + " queue full, task rejected");
+            return false;
+        }
+    }
+
+    /** Runs a task on a lane without a cancellation token. */
+    public static boolean execute(Lane lane, Runnable task) {
+        return execute(lane, null, task);
+    }
+
+    /**
+     * @return an {@link Executor} view of a lane bound to a token, for APIs that take one
+     */
+    public static Executor executor(Lane lane, @Nullable CancellationToken token) {
+        return task -> execute(lane, token, task);
+    }
+
+    /** @return the current counters of a lane. */
+    public static LaneStats stats(Lane lane) {
+        return new LaneStats(lane, METRICS[lane.ordinal()],
+                EXECUTORS[lane.ordinal()].getQueue().size());
+    }
+
+    /** Logs the counters of every lane. */
+    public static void logStats() {
+        for (Lane lane : Lane.values()) Log.i(TAG, stats(lane).toString());
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.auto_accounting.core;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation flag for tasks submitted to {@link AppScheduler}.
+ * <p>A queued task whose token is cancelled is skipped; a running task may poll
+ * {@link #isCancelled()} or {@link #throwIfCancelled()} between steps.
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /** @return a new token that is never cancelled by a lifecycle. */
+    public static CancellationToken create() {
+        return new CancellationToken();
+    }
+
+    /**
+     * @param owner e.g. an Activity; must be called on the main thread
+     * @return a token cancelled when the owner is destroyed
+     */
+    public static CancellationToken forLifecycle(LifecycleOwner owner) {
+        CancellationToken token = new CancellationToken();
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner o) {
+                token.cancel();
+                o.getLifecycle().removeObserver(this);
+            }
+        });
+        return token;
+    }
+
+    private CancellationToken() {
+        // Use the factories.
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** @throws CancellationException if the token has been cancelled */
+    public void throwIfCancelled() {
+        if (cancelled) throw new CancellationException();
+    }
+}
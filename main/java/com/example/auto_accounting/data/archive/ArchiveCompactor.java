@@ -0,0 +1,173 @@
+package com.example.auto_accounting.data.archive;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.db.TableDao;
+import com.example.auto_accounting.data.repo.ChangeLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves the rows of closed months from {@code table_entries} into {@link MonthArchive} files.
+ * <p>A month is closed once {@link #GRACE_DAYS} have passed since it ended, which leaves time
+ * for late notifications. Rows that still arrive for an archived month are folded into a new
+ * version of its archive on the next run. Each month is written to a temp file first; the
+ * rename and the delete of the archived rows then happen under {@link ArchiveStore#writeLock()}.
+ * If the process dies between the two, the next run deletes the rows the archive already holds.
+ * The delete is a move, not a change of the ledger, so it is kept out of the {@link ChangeLog}.
+ */
+public final class ArchiveCompactor {
+
+    private static final String TAG = "ArchiveCompactor";
+
+    /** Days after a month ends before it is archived. */
+    public static final int GRACE_DAYS = 7;
+
+    private static final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private ArchiveCompactor() {
+        // No instances.
+    }
+
+    /** Runs {@link #compactClosedMonths(Context)} once per process on the background lane. */
+    public static void scheduleOnce(Context context) {
+        if (!scheduled.compareAndSet(false, true)) return;
+        final Context app = context.getApplicationContext();
+        AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                int n = compactClosedMonths(app);
+                if (n > 0) Log.i(TAG, "Archived " + n + " month(s)");
+            } catch (IOException e) {
+                Log.e(TAG, "Compaction failed", e);
+            }
+        });
+    }
+
+    /**
+     * Archives every closed month that still has live rows. Blocking.
+     *
+     * @param context any context
+     * @return number of months written
+     * @throws IOException if an archive cannot be written; months done so far stay archived
+     */
+    public static int compactClosedMonths(Context context) throws IOException {
+        AppDb db = DbProvider.get(context);
+        TableDao dao = db.tableDao();
+        ArchiveStore store = ArchiveStore.get(context);
+        ZoneId zone = ZoneId.systemDefault();
+
+        Long min = dao.minTimeMillis();
+        if (min == null) return 0;
+        YearMonth firstOpen = YearMonth.from(LocalDate.now(zone).minusDays(GRACE_DAYS));
+        YearMonth ym = YearMonth.from(Instant.ofEpochMilli(min).atZone(zone));
+
+        int written = 0;
+        for (; ym.isBefore(firstOpen); ym = ym.plusMonths(1)) {
+            long start = ym.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            long end = ym.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            if (dao.countInRange(start, end) == 0) continue;
+            if (compactMonth(db, ChangeLog.get(context), store, ym, start, end)) written++;
+        }
+        return written;
+    }
+
+    /** @return true if a new archive was written */
+    private static boolean compactMonth(AppDb db, ChangeLog changes, ArchiveStore store,
+                                        YearMonth ym, long start, long end) throws IOException {
+        TableDao dao = db.tableDao();
+        MonthArchive existing = store.month(ym);
+        List<Entry> live = dao.listInRange(start, end);
+
+        // Rows the archive already holds are leftovers of an interrupted run.
+        Set<Long> archivedIds = new HashSet<>();
+        if (existing != null) {
+            for (long id : existing.decode().ids) archivedIds.add(id);
+        }
+        List<Entry> fresh = new ArrayList<>(live.size());
+        long liveMaxId = 0;
+        for (Entry e : live) {
+            liveMaxId = Math.max(liveMaxId, e.id);
+            if (!archivedIds.contains(e.id)) fresh.add(e);
+        }
+
+        boolean rewrite = !fresh.isEmpty();
+        File target = store.fileFor(ym);
+        File staged = new File(target.getPath() + ".new");
+        if (rewrite) {
+            MonthArchive.write(staged, ym, start, merge(existing, fresh));
+        }
+
+        store.writeLock().lock();
+        try {
+            if (rewrite) {
+                if (!staged.renameTo(target)) {
+                    throw new IOException("Cannot rename " + staged + " to " + target);
+                }
+                store.install(MonthArchive.open(target));
+            }
+            final long maxId = liveMaxId;
+            int deleted = changes.runMuted(() -> dao.deleteArchived(start, end, maxId));
+            Log.i(TAG, ym + ": archived " + fresh.size() + " row(s), deleted " + deleted);
+        } finally {
+            store.writeLock().unlock();
+        }
+        return rewrite;
+    }
+
+    /** Existing archive rows plus new live rows, sorted by (timeMillis, id). */
+    private static MonthArchive.Columns merge(MonthArchive existing, List<Entry> fresh) {
+        MonthArchive.Columns old = existing == null ? null : existing.decode();
+        int n = (old == null ? 0 : old.size()) + fresh.size();
+        Integer[] order = new Integer[n];
+        long[] ids = new long[n], times = new long[n], amounts = new long[n], merchants = new long[n];
+        int[] currencies = new int[n];
+        int i = 0;
+        if (old != null) {
+            for (int j = 0; j < old.size(); j++, i++) {
+                ids[i] = old.ids[j];
+                times[i] = old.times[j];
+                amounts[i] = old.amounts[j];
+                merchants[i] = old.merchantIds[j];
+                currencies[i] = old.currencies[j];
+            }
+        }
+        for (Entry e : fresh) {
+            ids[i] = e.id;
+            times[i] = e.timeMillis;
+            amounts[i] = e.amountMinor;
+            merchants[i] = e.merchantId;
+            currencies[i] = e.currency;
+            i++;
+        }
+        for (int k = 0; k < n; k++) order[k] = k;
+        Arrays.sort(order, (a, b) -> times[a] != times[b]
+                ? Long.compare(times[a], times[b]) : Long.compare(ids[a], ids[b]));
+
+        MonthArchive.Columns c = new MonthArchive.Columns(n);
+        for (int k = 0; k < n; k++) {
+            int src = order[k];
+            c.ids[k] = ids[src];
+            c.times[k] = times[src];
+            c.amounts[k] = amounts[src];
+            c.merchantIds[k] = merchants[src];
+            c.currencies[k] = currencies[src];
+        }
+        return c;
+    }
+}
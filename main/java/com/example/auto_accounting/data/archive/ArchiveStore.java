@@ -0,0 +1,280 @@
+package com.example.auto_accounting.data.archive;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.data.repo.ChangeLog;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The set of {@link MonthArchive} files under {@code files/archive}, one per closed month.
+ * <p>Readers that combine archives with live rows hold {@link #readLock()} across both reads;
+ * {@link ArchiveCompactor} holds {@link #writeLock()} while it publishes an archive and
+ * deletes the archived rows, so a reader never sees a month twice or not at all. Take the
+ * archive lock before opening a database transaction, never inside one.
+ */
+public final class ArchiveStore {
+
+    private static final String TAG = "ArchiveStore";
+    private static final String DIR = "archive";
+    /**
+     * Written to {@link #asideDir()} before any archive is moved there: the change log's last
+     * sequence at that time. A {@link ChangeLog#logReset reset} after it means the
+     * replacement committed.
+     */
+    private static final String INTENT_MARKER = "replacing";
+
+    private static volatile ArchiveStore instance;
+
+    private final File dir;
+    private final ChangeLog changes;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Opened archives by month; guarded by {@link #lock}. */
+    private final TreeMap<YearMonth, MonthArchive> months = new TreeMap<>();
+
+    private ArchiveStore(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR);
+        this.changes = ChangeLog.get(context);
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+        finishReplace();
+        File[] files = dir.listFiles((d, name) -> name.startsWith("ledger-") && name.endsWith(".lar"));
+        if (files == null) return;
+        for (File f : files) {
+            try {
+                MonthArchive a = MonthArchive.open(f);
+                months.put(a.month(), a);
+            } catch (IOException e) {
+                Log.e(TAG, "Skipping unreadable archive " + f, e);
+            }
+        }
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide store
+     */
+    public static ArchiveStore get(Context context) {
+        if (instance == null) {
+            synchronized (ArchiveStore.class) {
+                if (instance == null) {
+                    instance = new ArchiveStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    public Lock readLock() {
+        return lock.readLock();
+    }
+
+    Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    /** @return the archive of a month, or null if the month is not archived */
+    @Nullable
+    public MonthArchive month(YearMonth ym) {
+        lock.readLock().lock();
+        try {
+            return months.get(ym);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param from first month, inclusive
+     * @param to   last month, inclusive
+     * @return the archives in the range, oldest first
+     */
+    public List<MonthArchive> between(YearMonth from, YearMonth to) {
+        lock.readLock().lock();
+        try {
+            if (from.isAfter(to)) return new ArrayList<>();
+            return new ArrayList<>(months.subMap(from, true, to, true).values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @return every archive, newest first */
+    public List<MonthArchive> newestFirst() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(months.descendingMap().values());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** @return the oldest archive, or null if none */
+    @Nullable
+    public MonthArchive oldest() {
+        lock.readLock().lock();
+        try {
+            Map.Entry<YearMonth, MonthArchive> e = months.firstEntry();
+            return e == null ? null : e.getValue();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private File asideDir() {
+        return new File(dir.getParentFile(), DIR + "-replaced");
+    }
+
+    /**
+     * Completes a {@link #replaceAll} cut short by process death: deletes the old archives if
+     * the database holds a reset logged after the intent marker, else moves them back. An
+     * unreadable marker was cut short itself, before anything was moved.
+     */
+    private void finishReplace() {
+        File aside = asideDir();
+        File[] files = aside.listFiles();
+        if (files == null) return;
+        File intent = new File(aside, INTENT_MARKER);
+        boolean replaced = false;
+        if (intent.exists()) {
+            try {
+                long before = Long.parseLong(new String(Files.readAllBytes(intent.toPath()),
+                        StandardCharsets.US_ASCII).trim());
+                replaced = changes.lastResetSeq() > before;
+            } catch (IOException | NumberFormatException e) {
+                Log.w(TAG, "Unreadable " + intent, e);
+            }
+        }
+        if (replaced) {
+            deleteAside(aside);
+            return;
+        }
+        boolean movedBack = true;
+        for (File f : files) {
+            if (f.equals(intent)) continue;
+            if (!f.renameTo(new File(dir, f.getName()))) {
+                Log.e(TAG, "Cannot move back " + f);
+                movedBack = false;
+            }
+        }
+        if (movedBack) deleteAside(aside);
+    }
+
+    /** Deletes the aside directory, the intent marker last so a crash midway is resumed. */
+    private static void deleteAside(File aside) {
+        File intent = new File(aside, INTENT_MARKER);
+        File[] files = aside.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                //noinspection ResultOfMethodCallIgnored
+                if (!f.equals(intent)) f.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        intent.delete();
+        //noinspection ResultOfMethodCallIgnored
+        aside.delete();
+    }
+
+    /** Writes and syncs the intent marker. */
+    private static void writeIntent(File aside, long seq) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(aside, INTENT_MARKER))) {
+            out.write(Long.toString(seq).getBytes(StandardCharsets.US_ASCII));
+            out.getFD().sync();
+        }
+    }
+
+    File fileFor(YearMonth ym) {
+        return new File(dir, String.format(Locale.ROOT, "ledger-%04d%02d.lar",
+                ym.getYear(), ym.getMonthValue()));
+    }
+
+    /** Makes a freshly written archive visible. Caller holds {@link #writeLock()}. */
+    void install(MonthArchive archive) {
+        months.put(archive.month(), archive);
+    }
+
+    /**
+     * Replaces the whole ledger, e.g. for a restore: under {@link #writeLock()}, an intent
+     * marker is written, every archive is moved aside, {@code replaceLive} rewrites the live
+     * table, and the old archives are then deleted. If {@code replaceLive} throws, the archives
+     * are moved back, so readers see either the old ledger or the new one. After process death
+     * the next start decides from the database which of the two committed.
+     *
+     * @param replaceLive rewrites {@code table_entries} in one transaction that also logs a
+     *                    {@link ChangeLog#logReset reset}
+     * @throws IOException if the marker cannot be written or the archives cannot be moved aside
+     */
+    public void replaceAll(Runnable replaceLive) throws IOException {
+        lock.writeLock().lock();
+        try {
+            File aside = asideDir();
+            //noinspection ResultOfMethodCallIgnored
+            aside.mkdirs();
+            try {
+                writeIntent(aside, changes.lastSeq());
+            } catch (IOException e) {
+                deleteAside(aside);
+                throw e;
+            }
+            List<YearMonth> moved = new ArrayList<>();
+            try {
+                for (YearMonth ym : months.keySet()) {
+                    File f = fileFor(ym);
+                    if (!f.renameTo(new File(aside, f.getName()))) {
+                        throw new IOException("Cannot move aside " + f);
+                    }
+                    moved.add(ym);
+                }
+                replaceLive.run();
+            } catch (IOException | RuntimeException e) {
+                boolean movedBack = true;
+                for (YearMonth ym : moved) {
+                    File f = fileFor(ym);
+                    if (!new File(aside, f.getName()).renameTo(f)) {
+                        Log.e(TAG, "Cannot move back " + f);
+                        movedBack = false;
+                    }
+                }
+                // Else the marker stays and the next start moves the rest back.
+                if (movedBack) deleteAside(aside);
+                throw e;
+            }
+            // The reset is committed: the old archives are garbage, even if we die now.
+            months.clear();
+            deleteAside(aside);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** @return total size of the archive files in bytes */
+    public long sizeBytes() {
+        lock.readLock().lock();
+        try {
+            long total = 0;
+            for (YearMonth ym : months.keySet()) {
+                total += fileFor(ym).length();
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.auto_accounting.data.archive;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Immutable columnar file holding the rows of one closed month.
+ * <p>Layout (big-endian header, then six varint-encoded sections):
+ * <pre>
+ *   int magic "LAR2" | int yyyyMM | int rowCount | long baseTime | long maxId
+ *   int length of each section: dictionary, ids, times, amounts, merchants, currencies
+ *   dictionary: distinct merchant ids, ascending, delta varints
+ *   ids:        zigzag varint deltas from the previous row's id
+ *   times:      varint deltas from baseTime, then from the previous row (rows sorted by time)
+ *   amounts:    zigzag varints, minor units of the row's currency
+ *   merchants:  varint index into the dictionary
+ *   currencies: varint {@link CurrencyCode#code}
+ * </pre>
+ * Rows are sorted by (timeMillis, id). The file is memory-mapped for reading, and each reader
+ * decodes only the sections it needs: day totals skip ids and merchants, merchant filters look
+ * at the dictionary before decoding any row. Files written before currencies were stored
+ * ("LAR1") lack the last section; their rows read as {@link CurrencyCode#DEFAULT}.
+ */
+public final class MonthArchive {
+
+    private static final int MAGIC_V1 = 0x4C415231; // "LAR1"
+    private static final int MAGIC = 0x4C415232; // "LAR2"
+    private static final int SECTIONS_V1 = 5;
+    private static final int SECTIONS = 6;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8 + SECTIONS * 4;
+
+    /** Decoded columns, parallel arrays sorted by (timeMillis, id). */
+    public static final class Columns {
+        public final long[] ids;
+        public final long[] times;
+        public final long[] amounts;
+        public final long[] merchantIds;
+        public final int[] currencies;
+
+        Columns(int n) {
+            ids = new long[n];
+            times = new long[n];
+            amounts = new long[n];
+            merchantIds = new long[n];
+            currencies = new int[n];
+        }
+
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    private final YearMonth month;
+    private final int rowCount;
+    private final long baseTime;
+    private final long maxId;
+    private final ByteBuffer dict, ids, times, amounts, merchants;
+    /** Null in "LAR1" files. */
+    private final ByteBuffer currencies;
+    private long[] dictionary;
+
+    private MonthArchive(ByteBuffer buf) throws IOException {
+        buf.order(ByteOrder.BIG_ENDIAN);
+        int magic = buf.getInt(0);
+        if (magic != MAGIC && magic != MAGIC_V1) throw new IOException("Not a month archive");
+        int count = magic == MAGIC ? SECTIONS : SECTIONS_V1;
+        int ym = buf.getInt(4);
+        this.month = YearMonth.of(ym / 100, ym % 100);
+        this.rowCount = buf.getInt(8);
+        this.baseTime = buf.getLong(12);
+        this.maxId = buf.getLong(20);
+        int pos = 28 + 4 * count;
+        ByteBuffer[] sections = new ByteBuffer[count];
+        for (int i = 0; i < sections.length; i++) {
+            int len = buf.getInt(28 + 4 * i);
+            ByteBuffer s = buf.duplicate();
+            s.position(pos).limit(pos + len);
+            sections[i] = s.slice();
+            pos += len;
+        }
+        dict = sections[0];
+        ids = sections[1];
+        times = sections[2];
+        amounts = sections[3];
+        merchants = sections[4];
+        currencies = count > SECTIONS_V1 ? sections[5] : null;
+    }
+
+    /**
+     * Maps an archive file read-only.
+     *
+     * @param file archive file
+     * @return the archive
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public static MonthArchive open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel ch = raf.getChannel()) {
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            return new MonthArchive(buf);
+        }
+    }
+
+    public YearMonth month() {
+        return month;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /** @return the largest row id in the archive, 0 if empty */
+    public long maxId() {
+        return maxId;
+    }
+
+    /**
+     * @return the time of the month's first row in epoch milliseconds, read from the first
+     *         varint of the times section without decoding the rest; null if empty
+     */
+    public Long minTimeMillis() {
+        return rowCount == 0 ? null : baseTime + readVarint(times.duplicate());
+    }
+
+    /** @return distinct merchant ids of the month, ascending (do not modify) */
+    public synchronized long[] dictionary() {
+        if (dictionary == null) {
+            ByteBuffer b = dict.duplicate();
+            long[] d = new long[(int) readVarint(b)];
+            long prev = 0;
+            for (int i = 0; i < d.length; i++) d[i] = prev += readVarint(b);
+            dictionary = d;
+        }
+        return dictionary;
+    }
+
+    /** @return true if any row of the month belongs to one of the merchants */
+    public boolean containsAnyMerchant(Set<Long> merchantIds) {
+        for (long id : dictionary()) if (merchantIds.contains(id)) return true;
+        return false;
+    }
+
+    /**
+     * Decodes every row into fresh arrays. Nothing is kept, so memory does not grow with the
+     * number of months read; callers that need the rows again decode again.
+     *
+     * @return the columns, owned by the caller
+     */
+    public Columns decode() {
+        long[] d = dictionary();
+        Columns c = new Columns(rowCount);
+        ByteBuffer bi = ids.duplicate(), bt = times.duplicate();
+        ByteBuffer ba = amounts.duplicate(), bm = merchants.duplicate();
+        ByteBuffer bc = currencies == null ? null : currencies.duplicate();
+        long id = 0, t = baseTime;
+        for (int i = 0; i < rowCount; i++) {
+            c.ids[i] = id += unzigzag(readVarint(bi));
+            c.times[i] = t += readVarint(bt);
+            c.amounts[i] = unzigzag(readVarint(ba));
+            c.merchantIds[i] = d[(int) readVarint(bm)];
+            c.currencies[i] = bc == null ? CurrencyCode.DEFAULT.code : (int) readVarint(bc);
+        }
+        return c;
+    }
+
+    /**
+     * Adds the month's amounts to per-day buckets of their currency, decoding only times,
+     * amounts and currencies.
+     *
+     * @param out           buckets per {@link CurrencyCode#code}, index 0 =
+     *                      {@code firstEpochDay}; a null currency is allocated when needed
+     * @param days          length of the buckets
+     * @param firstEpochDay local epoch day of index 0
+     * @param zone          zone of the local days
+     */
+    public void addDayTotals(long[][] out, int days, long firstEpochDay, ZoneId zone) {
+        ByteBuffer bt = times.duplicate(), ba = amounts.duplicate();
+        ByteBuffer bc = currencies == null ? null : currencies.duplicate();
+        long t = baseTime;
+        // Rows are time-sorted: recompute the local day only when a day boundary is crossed.
+        long dayStart = Long.MAX_VALUE, dayEnd = Long.MIN_VALUE, day = 0;
+        for (int i = 0; i < rowCount; i++) {
+            t += readVarint(bt);
+            long amount = unzigzag(readVarint(ba));
+            int currency = bc == null ? CurrencyCode.DEFAULT.code : (int) readVarint(bc);
+            if (t < dayStart || t >= dayEnd) {
+                LocalDate d = Instant.ofEpochMilli(t).atZone(zone).toLocalDate();
+                day = d.toEpochDay();
+                dayStart = d.atStartOfDay(zone).toInstant().toEpochMilli();
+                dayEnd = d.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            long idx = day - firstEpochDay;
+            if (idx < 0 || idx >= days || currency >= out.length) continue;
+            if (out[currency] == null) out[currency] = new long[days];
+            out[currency][(int) idx] += amount;
+        }
+    }
+
+    // ------------------ writing ------------------
+
+    /**
+     * Writes an archive atomically: a temp file is synced and then renamed over {@code file}.
+     *
+     * @param file     target file
+     * @param month    the month
+     * @param baseTime epoch millis all times are at or after, normally the month start
+     * @param c        rows sorted by (timeMillis, id)
+     * @throws IOException on write failure
+     */
+    public static void write(File file, YearMonth month, long baseTime, Columns c) throws IOException {
+        int n = c.size();
+        long[] dictionary = Arrays.stream(c.merchantIds).distinct().sorted().toArray();
+
+        VarintBuffer dictBuf = new VarintBuffer(dictionary.length + 4);
+        dictBuf.put(dictionary.length);
+        long prev = 0;
+        for (long m : dictionary) {
+            dictBuf.put(m - prev);
+            prev = m;
+        }
+        long maxId = 0;
+        for (long rowId : c.ids) maxId = Math.max(maxId, rowId);
+        VarintBuffer idBuf = new VarintBuffer(n * 2);
+        VarintBuffer timeBuf = new VarintBuffer(n * 3);
+        VarintBuffer amountBuf = new VarintBuffer(n * 3);
+        VarintBuffer merchantBuf = new VarintBuffer(n * 2);
+        VarintBuffer currencyBuf = new VarintBuffer(n);
+        long id = 0, t = baseTime;
+        for (int i = 0; i < n; i++) {
+            if (c.times[i] < t) throw new IllegalArgumentException("Rows not sorted by time");
+            idBuf.put(zigzag(c.ids[i] - id));
+            id = c.ids[i];
+            timeBuf.put(c.times[i] - t);
+            t = c.times[i];
+            amountBuf.put(zigzag(c.amounts[i]));
+            merchantBuf.put(Arrays.binarySearch(dictionary, c.merchantIds[i]));
+            currencyBuf.put(c.currencies[i]);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC)
+                .putInt(month.getYear() * 100 + month.getMonthValue())
+                .putInt(n)
+                .putLong(baseTime)
+                .putLong(maxId);
+        VarintBuffer[] sections = {dictBuf, idBuf, timeBuf, amountBuf, merchantBuf, currencyBuf};
+        for (VarintBuffer s : sections) header.putInt(s.size);
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(header.array());
+            for (VarintBuffer s : sections) out.write(s.bytes, 0, s.size);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("Cannot rename " + tmp + " to " + file);
+        }
+    }
+
+    /** Growable byte array of unsigned LEB128 varints. */
+    private static final class VarintBuffer {
+        byte[] bytes;
+        int size;
+
+        VarintBuffer(int capacity) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void put(long v) {
+            if (size + 10 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            while ((v & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[size++] = (byte) v;
+        }
+    }
+
+    private static long readVarint(ByteBuffer b) {
+        long v = 0;
+        int shift = 0;
+        byte x;
+        do {
+            x = b.get();
+            v |= (long) (x & 0x7F) << shift;
+            shift += 7;
+        } while (x < 0);
+        return v;
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,569 @@
+package com.example.auto_accounting.data.backup;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.archive.ArchiveStore;
+import com.example.auto_accounting.data.archive.MonthArchive;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Merchant;
+import com.example.auto_accounting.data.db.MerchantDao;
+import com.example.auto_accounting.data.repo.BudgetTracker;
+import com.example.auto_accounting.data.repo.ChangeLog;
+import com.example.auto_accounting.data.repo.LedgerReader;
+import com.example.auto_accounting.data.repo.LedgerRepository;
+import com.example.auto_accounting.data.repo.LedgerVersion;
+import com.example.auto_accounting.data.repo.MerchantCategories;
+import com.example.auto_accounting.data.repo.MerchantDictionary;
+import com.example.auto_accounting.data.repo.SpendingAnomalies;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Explicit backup and restore of the ledger, merchants and archived months included.
+ * <p><b>Snapshot.</b> A backup reads from a point-in-time copy of the database, so writes
+ * from the notification listener continue while it runs: {@code VACUUM INTO} a cache file on
+ * Android 11+ (SQLite 3.28), which only holds a WAL read transaction; on older releases the
+ * database and its WAL are copied while a write transaction keeps commits out for the few
+ * milliseconds of the copy. The archive read lock is held throughout, so the archive files
+ * and the snapshot agree on which rows were archived.
+ * <p><b>Format.</b> A gzip stream of a fixed header (magic, format and schema version, kind,
+ * ledger chain id, base and new watermark), every merchant, then the rows in blocks of
+ * {@link #BLOCK_ROWS} as varints, deltas against the previous row. Rows carry their currency
+ * from format 2 on; rows of format 1 backups restore as {@link CurrencyCode#DEFAULT}.
+ * Archived rows are written as ordinary rows; a restore puts them back into
+ * {@code table_entries} and the next compaction archives them again.
+ * <p><b>Incremental.</b> The ledger is append-only, so the largest row id of a backup is its
+ * watermark: the next backup holds only rows above it, plus the merchant dictionary. Each
+ * ledger has a random chain id; an incremental backup restores only onto a ledger of the same
+ * chain whose largest id is exactly the backup's base, i.e. right after the backup it builds
+ * on was restored.
+ * <p><b>Restore.</b> The schema version of the backup must not be newer than the app's. A
+ * full backup replaces the ledger in one transaction under the archive write lock and logs a
+ * single {@link com.example.auto_accounting.data.db.Change#RESET}; an incremental one
+ * appends its rows. Caches keyed by {@link LedgerVersion} are invalidated.
+ * <p>Blocking; run on {@link com.example.auto_accounting.core.AppScheduler.Lane#BACKGROUND}.
+ */
+public final class LedgerBackup {
+
+    /** MIME type of a backup file. */
+    public static final String MIME_TYPE = "application/gzip";
+
+    /** Kind of a backup. */
+    public enum Kind { FULL, INCREMENTAL }
+
+    /** What a backup or restore wrote. */
+    public static final class Summary {
+        public final Kind kind;
+        public final long rows;
+        public final int merchants;
+        /** Largest row id covered; the next incremental backup starts above it. */
+        public final long watermark;
+        /** Database schema version of the backup. */
+        public final int schemaVersion;
+
+        Summary(Kind kind, long rows, int merchants, long watermark, int schemaVersion) {
+            this.kind = kind;
+            this.rows = rows;
+            this.merchants = merchants;
+            this.watermark = watermark;
+            this.schemaVersion = schemaVersion;
+        }
+    }
+
+    private static final int MAGIC = 0x414C4231; // "ALB1"
+    private static final int FORMAT_VERSION = 2;
+    /** First format whose rows carry their currency. */
+    private static final int FORMAT_CURRENCY = 2;
+    /** Oldest schema whose rows the format carries: merchants as a dictionary table. */
+    private static final int MIN_SCHEMA_VERSION = 3;
+    private static final int BLOCK_ROWS = 4096;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private static final String PREFS = "backup_prefs";
+    private static final String KEY_CHAIN = "chain_id";
+    private static final String KEY_WATERMARK = "watermark";
+
+    private static final String SNAPSHOT_NAME = "backup-snapshot.db";
+
+    private static final String INSERT_ROW_SQL =
+            "INSERT INTO table_entries (id, timeMillis, merchantId, amountMinor, currency) "
+                    + "VALUES (?, ?, ?, ?, ?)";
+
+    private LedgerBackup() {
+        // No instances.
+    }
+
+    /** @return true if a backup was taken or restored before, so the next one can be incremental */
+    public static boolean canBackUpIncrementally(Context context) {
+        return prefs(context).getLong(KEY_CHAIN, 0) != 0;
+    }
+
+    /**
+     * @return a file name such as {@code ledger-backup-full-20240131-2215.gz}
+     */
+    public static String fileName(Kind kind, long nowMillis) {
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmm", Locale.ROOT).format(new Date(nowMillis));
+        return "ledger-backup-" + (kind == Kind.FULL ? "full" : "incremental") + "-" + stamp + ".gz";
+    }
+
+    /**
+     * Backs the ledger up to a SAF document.
+     *
+     * @param full  false for only the rows since the last backup, if there was one
+     * @param uri   document from {@code CreateDocument}
+     * @param token cancels between blocks, may be null
+     * @return what was written
+     * @throws IOException on read or write failure
+     */
+    public static Summary backup(Context context, ContentResolver resolver, Uri uri, boolean full,
+                                 @Nullable CancellationToken token) throws IOException {
+        SharedPreferences prefs = prefs(context);
+        long chain = prefs.getLong(KEY_CHAIN, 0);
+        if (chain == 0) {
+            chain = newChainId();
+            prefs.edit().putLong(KEY_CHAIN, chain).apply();
+        }
+        long base = full ? 0 : prefs.getLong(KEY_WATERMARK, 0);
+        Kind kind = base == 0 ? Kind.FULL : Kind.INCREMENTAL;
+
+        AppDb db = DbProvider.get(context);
+        ArchiveStore archives = ArchiveStore.get(context);
+        File snapshot = new File(context.getCacheDir(), SNAPSHOT_NAME);
+        Summary summary;
+        archives.readLock().lock();
+        try {
+            takeSnapshot(db, snapshot);
+            try (SQLiteDatabase snap = SQLiteDatabase.openDatabase(snapshot.getPath(), null,
+                    SQLiteDatabase.OPEN_READWRITE);
+                 OutputStream os = resolver.openOutputStream(uri)) {
+                if (os == null) throw new IOException("openOutputStream returned null: " + uri);
+                summary = write(snap, archives, os, kind, chain, base, token);
+            }
+        } finally {
+            archives.readLock().unlock();
+            SQLiteDatabase.deleteDatabase(snapshot);
+        }
+        prefs.edit().putLong(KEY_WATERMARK, summary.watermark).apply();
+        return summary;
+    }
+
+    /**
+     * Restores a backup from a SAF document.
+     *
+     * @param uri document from {@code OpenDocument}
+     * @return what was restored
+     * @throws IOException if the file is not a backup, is from a newer app or another ledger,
+     *                     or cannot be read; the ledger is then left unchanged
+     */
+    public static Summary restore(Context context, ContentResolver resolver, Uri uri)
+            throws IOException {
+        AppDb db = DbProvider.get(context);
+        int currentSchema = db.getOpenHelper().getReadableDatabase().getVersion();
+        SharedPreferences prefs = prefs(context);
+        Summary summary;
+        try (InputStream is = resolver.openInputStream(uri)) {
+            if (is == null) throw new IOException("openInputStream returned null: " + uri);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(is, BUFFER_BYTES), BUFFER_BYTES));
+            Header h = Header.read(in);
+            if (h.schemaVersion > currentSchema) {
+                throw new IOException("Backup is from a newer app version (schema "
+                        + h.schemaVersion + ", this app " + currentSchema + ")");
+            }
+            if (h.kind == Kind.INCREMENTAL) {
+                if (h.chain != prefs.getLong(KEY_CHAIN, 0)) {
+                    throw new IOException("Incremental backup of another ledger; restore its full backup first");
+                }
+                long maxId = LedgerReader.get(context).maxId();
+                if (maxId != h.base) {
+                    throw new IOException("Incremental backup starts at row " + h.base
+                            + " but the ledger ends at row " + maxId
+                            + "; restore the backups before it first");
+                }
+            }
+            long[] merchantIds = new long[readCount(in)];
+            String[] names = new String[merchantIds.length];
+            for (int i = 0; i < names.length; i++) {
+                merchantIds[i] = readVarint(in);
+                names[i] = readString(in);
+            }
+            Runnable apply = () -> {
+                try {
+                    insertRows(db, h, merchantIds, names, in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            ArchiveStore archives = ArchiveStore.get(context);
+            try {
+                if (h.kind == Kind.FULL) {
+                    // Not logged row by row: consumers of the change log see one reset.
+                    ChangeLog changes = ChangeLog.get(context);
+                    archives.replaceAll(() -> db.runInTransaction(() -> {
+                        changes.runMuted(() -> {
+                            apply.run();
+                            return null;
+                        });
+                        changes.logReset();
+                    }));
+                } else {
+                    archives.readLock().lock();
+                    try {
+                        db.runInTransaction(apply);
+                    } finally {
+                        archives.readLock().unlock();
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            summary = new Summary(h.kind, h.rowsRead, merchantIds.length, h.watermark, h.schemaVersion);
+            prefs.edit().putLong(KEY_CHAIN, h.chain).putLong(KEY_WATERMARK, h.watermark).apply();
+        }
+        LedgerVersion.bumpAll();
+        LedgerRepository.get(context).clear();
+        MerchantDictionary.get(context).clear();
+        // Backups carry merchant names only: restored merchants are classified afresh.
+        MerchantCategories.get(context).clear();
+        MerchantCategories.scheduleBackfill(context, false);
+        BudgetTracker.get(context).invalidate();
+        SpendingAnomalies.get(context).clear();
+        return summary;
+    }
+
+    // ------------------ backup ------------------
+
+    private static void takeSnapshot(AppDb db, File target) throws IOException {
+        SQLiteDatabase.deleteDatabase(target);
+        SupportSQLiteDatabase live = db.getOpenHelper().getWritableDatabase();
+        if (Build.VERSION.SDK_INT >= 30) {
+            live.execSQL("VACUUM INTO ?", new Object[]{target.getPath()});
+            return;
+        }
+        // No VACUUM INTO before SQLite 3.27: copy the file and its WAL while no commit can land.
+        File source = new File(live.getPath());
+        File wal = new File(source.getPath() + "-wal");
+        try {
+            db.runInTransaction(() -> {
+                try {
+                    copy(source, target);
+                    if (wal.exists()) copy(wal, new File(target.getPath() + "-wal"));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Summary write(SQLiteDatabase snap, ArchiveStore archives, OutputStream os,
+                                 Kind kind, long chain, long base, @Nullable CancellationToken token)
+            throws IOException {
+        GZIPOutputStream gz = new FastGzip(os);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gz, BUFFER_BYTES));
+        int schema = snap.getVersion();
+
+        // The watermark is known only after the rows; the header takes the snapshot's maximum.
+        long watermark = base;
+        try (Cursor c = snap.rawQuery("SELECT IFNULL(MAX(id), 0) FROM table_entries", null)) {
+            if (c.moveToFirst()) watermark = Math.max(watermark, c.getLong(0));
+        }
+        for (MonthArchive a : archives.newestFirst()) watermark = Math.max(watermark, a.maxId());
+        new Header(FORMAT_VERSION, kind, schema, chain, base, watermark).write(out);
+
+        int merchants = 0;
+        try (Cursor c = snap.rawQuery("SELECT COUNT(*) FROM merchants", null)) {
+            if (c.moveToFirst()) merchants = c.getInt(0);
+        }
+        writeVarint(out, merchants);
+        try (Cursor c = snap.rawQuery("SELECT id, name FROM merchants ORDER BY id", null)) {
+            while (c.moveToNext()) {
+                writeVarint(out, c.getLong(0));
+                writeString(out, c.getString(1));
+            }
+        }
+
+        BlockWriter rows = new BlockWriter(out, token);
+        for (MonthArchive a : archives.newestFirst()) {
+            if (a.maxId() <= base) continue;
+            MonthArchive.Columns col = a.decode();
+            for (int i = 0; i < col.size(); i++) {
+                if (col.ids[i] > base) {
+                    rows.add(col.ids[i], col.times[i], col.merchantIds[i], col.amounts[i], col.currencies[i]);
+                }
+            }
+        }
+        try (Cursor c = snap.rawQuery("SELECT id, timeMillis, merchantId, amountMinor, currency "
+                + "FROM table_entries WHERE id > ? ORDER BY id", new String[]{Long.toString(base)})) {
+            while (c.moveToNext()) {
+                rows.add(c.getLong(0), c.getLong(1), c.getLong(2), c.getLong(3), c.getInt(4));
+            }
+        }
+        rows.finish();
+        out.flush();
+        gz.finish();
+        return new Summary(kind, rows.total, merchants, watermark, schema);
+    }
+
+    /**
+     * Rows in blocks: count, then per row the id and time as deltas, merchant, amount and
+     * currency.
+     */
+    private static final class BlockWriter {
+        final DataOutputStream out;
+        @Nullable final CancellationToken token;
+        final long[] ids = new long[BLOCK_ROWS], times = new long[BLOCK_ROWS];
+        final long[] merchants = new long[BLOCK_ROWS], amounts = new long[BLOCK_ROWS];
+        final int[] currencies = new int[BLOCK_ROWS];
+        int size;
+        long total;
+
+        BlockWriter(DataOutputStream out, @Nullable CancellationToken token) {
+            this.out = out;
+            this.token = token;
+        }
+
+        void add(long id, long time, long merchant, long amount, int currency) throws IOException {
+            ids[size] = id;
+            times[size] = time;
+            merchants[size] = merchant;
+            amounts[size] = amount;
+            currencies[size] = currency;
+            if (++size == BLOCK_ROWS) flush();
+        }
+
+        void flush() throws IOException {
+            if (size == 0) return;
+            if (token != null) token.throwIfCancelled();
+            writeVarint(out, size);
+            long id = 0, time = 0;
+            for (int i = 0; i < size; i++) {
+                writeVarint(out, zigzag(ids[i] - id));
+                writeVarint(out, zigzag(times[i] - time));
+                writeVarint(out, merchants[i]);
+                writeVarint(out, zigzag(amounts[i]));
+                writeVarint(out, currencies[i]);
+                id = ids[i];
+                time = times[i];
+            }
+            total += size;
+            size = 0;
+        }
+
+        void finish() throws IOException {
+            flush();
+            writeVarint(out, 0);
+            out.writeLong(total);
+        }
+    }
+
+    // ------------------ restore ------------------
+
+    /** Runs inside the restore transaction. */
+    private static void insertRows(AppDb db, Header h, long[] merchantIds, String[] names,
+                                   DataInputStream in) throws IOException {
+        SupportSQLiteDatabase sql = db.getOpenHelper().getWritableDatabase();
+        MerchantDao dao = db.merchantDao();
+        Map<Long, Long> remap = new HashMap<>();
+        if (h.kind == Kind.FULL) {
+            sql.execSQL("DELETE FROM table_entries");
+            sql.execSQL("DELETE FROM merchants");
+        } else if (db.tableDao().maxId() > h.base) {
+            // A row was recorded between the check in restore() and this transaction.
+            throw new IOException("The ledger changed since row " + h.base + "; try again");
+        }
+        for (int i = 0; i < names.length; i++) {
+            Long local = h.kind == Kind.FULL ? null : dao.idByName(names[i]);
+            if (local == null) {
+                Merchant m = new Merchant();
+                m.id = merchantIds[i];
+                m.name = names[i];
+                long id = dao.insert(m);
+                if (id == -1) { // the id is taken by another name: let it get a new one
+                    m.id = 0;
+                    id = dao.insert(m);
+                }
+                local = id;
+            }
+            if (local != merchantIds[i]) remap.put(merchantIds[i], local);
+        }
+
+        try (SupportSQLiteStatement insert = sql.compileStatement(INSERT_ROW_SQL)) {
+            long rows = 0;
+            int n;
+            while ((n = readCount(in)) > 0) {
+                long id = 0, time = 0;
+                for (int i = 0; i < n; i++) {
+                    id += unzigzag(readVarint(in));
+                    time += unzigzag(readVarint(in));
+                    long merchant = readVarint(in);
+                    long amount = unzigzag(readVarint(in));
+                    long currency = h.format >= FORMAT_CURRENCY ? readVarint(in) : CurrencyCode.DEFAULT.code;
+                    Long mapped = remap.get(merchant);
+                    insert.bindLong(1, id);
+                    insert.bindLong(2, time);
+                    insert.bindLong(3, mapped != null ? mapped : merchant);
+                    insert.bindLong(4, amount);
+                    insert.bindLong(5, currency);
+                    insert.executeInsert();
+                }
+                rows += n;
+            }
+            if (in.readLong() != rows) throw new IOException("Backup is truncated");
+            h.rowsRead = rows;
+        }
+    }
+
+    // ------------------ format ------------------
+
+    private static final class Header {
+        final int format;
+        final Kind kind;
+        final int schemaVersion;
+        final long chain, base, watermark;
+        long rowsRead;
+
+        Header(int format, Kind kind, int schemaVersion, long chain, long base, long watermark) {
+            this.format = format;
+            this.kind = kind;
+            this.schemaVersion = schemaVersion;
+            this.chain = chain;
+            this.base = base;
+            this.watermark = watermark;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(format);
+            out.writeInt(schemaVersion);
+            out.writeByte(kind.ordinal());
+            out.writeLong(chain);
+            out.writeLong(base);
+            out.writeLong(watermark);
+        }
+
+        static Header read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC) throw new IOException("Not a ledger backup");
+            int format = in.readInt();
+            if (format > FORMAT_VERSION) {
+                throw new IOException("Backup format " + format + " is newer than this app");
+            }
+            int schema = in.readInt();
+            if (schema < MIN_SCHEMA_VERSION) throw new IOException("Unsupported backup schema " + schema);
+            int kind = in.readByte();
+            if (kind < 0 || kind >= Kind.values().length) throw new IOException("Unknown backup kind " + kind);
+            return new Header(format, Kind.values()[kind], schema, in.readLong(), in.readLong(), in.readLong());
+        }
+    }
+
+    private static void writeVarint(OutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+    private static long readVarint(InputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) throw new EOFException("Backup is truncated");
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readCount(InputStream in) throws IOException {
+        long n = readVarint(in);
+        if (n > Integer.MAX_VALUE) throw new IOException("Malformed count " + n);
+        return (int) n;
+    }
+
+    private static void writeString(OutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[readCount(in)];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    // ------------------ misc ------------------
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static long newChainId() {
+        long id;
+        do {
+            id = new SecureRandom().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        try (InputStream in = new FileInputStream(from); OutputStream out = new FileOutputStream(to)) {
+            byte[] buf = new byte[BUFFER_BYTES];
+            int n;
+            while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+            out.getFD().sync();
+        }
+    }
+
+    /** Deflate level 1: backups are taken while the user waits. */
+    private static final class FastGzip extends GZIPOutputStream {
+        FastGzip(OutputStream out) throws IOException {
+            super(out, BUFFER_BYTES);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -4,13 +4,32 @@ import androidx.room.Database;
 import androidx.room.RoomDatabase;
 
 /**
- * Room database holding the {@link Table} entity.
+ * Room database holding the {@link Table} and {@link Merchant} entities, the
+ * {@link MerchantFts} search index, the {@link Change} log and the learned
+ * {@link CategoryKeyword}s.
+ * <p>Migrations are listed in {@link Migrations}.
  */
-@Database(entities = {Table.class}, version = 1, exportSchema = false)
+@Database(entities = {Table.class, Merchant.class, MerchantFts.class, Change.class,
+        ChangeCursor.class, CategoryKeyword.class}, version = 6, exportSchema = false)
 public abstract class AppDb extends RoomDatabase {
 
     /**
      * @return the DAO for {@link Table}.
      */
     public abstract TableDao tableDao();
+
+    /**
+     * @return the DAO for {@link Merchant}.
+     */
+    public abstract MerchantDao merchantDao();
+
+    /**
+     * @return the DAO for {@link Change} and {@link ChangeCursor}.
+     */
+    public abstract ChangeDao changeDao();
+
+    /**
+     * @return the DAO for merchant categories and {@link CategoryKeyword}.
+     */
+    public abstract CategoryDao categoryDao();
 }
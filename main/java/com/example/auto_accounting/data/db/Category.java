@@ -0,0 +1,38 @@
+package com.example.auto_accounting.data.db;
+
+/**
+ * Spending categories of merchants, stored as {@link #code} in {@link Merchant#category}.
+ * <p>Codes are persisted: never renumber, only append.
+ */
+public enum Category {
+    UNCATEGORIZED(0, "Uncategorized"),
+    GROCERIES(1, "Groceries"),
+    DINING(2, "Dining"),
+    TRANSPORT(3, "Transport"),
+    SHOPPING(4, "Shopping"),
+    BILLS(5, "Bills"),
+    ENTERTAINMENT(6, "Entertainment"),
+    HEALTH(7, "Health"),
+    TRAVEL(8, "Travel");
+
+    private static final Category[] BY_CODE = new Category[values().length];
+
+    static {
+        for (Category c : values()) BY_CODE[c.code] = c;
+    }
+
+    /** Persisted value. */
+    public final int code;
+    /** Display name. */
+    public final String label;
+
+    Category(int code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    /** @return the category stored as {@code code}, {@link #UNCATEGORIZED} if unknown */
+    public static Category fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : UNCATEGORIZED;
+    }
+}
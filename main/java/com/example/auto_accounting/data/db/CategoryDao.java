@@ -0,0 +1,68 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import java.util.List;
+
+/**
+ * Data access object for merchant categories and {@link CategoryKeyword}.
+ */
+@Dao
+public interface CategoryDao {
+
+    /**
+     * @param id merchant id
+     * @return the merchant, or null if unknown
+     */
+    @Query("SELECT * FROM merchants WHERE id = :id")
+    Merchant merchant(long id);
+
+    /**
+     * One batch of merchants to classify, in id order.
+     *
+     * @param afterId     exclusive lower bound of {@link Merchant#id}
+     * @param belowSource only merchants whose {@link Merchant#categorySource} is smaller
+     * @param limit       maximum number of merchants
+     */
+    @Query("SELECT * FROM merchants WHERE id > :afterId AND categorySource < :belowSource "
+            + "ORDER BY id ASC LIMIT :limit")
+    List<Merchant> toClassify(long afterId, int belowSource, int limit);
+
+    /**
+     * @return number of merchants updated, 0 or 1
+     */
+    @Query("UPDATE merchants SET category = :category, categorySource = :source WHERE id = :id")
+    int setCategory(long id, int category, int source);
+
+    /**
+     * Sums rows within [startMillis, endMillis) per category of their merchant and currency.
+     * Rows in other currencies than the reporting one are summed per local day too, so they
+     * can be converted at the day's rate.
+     *
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @param reporting   {@link CurrencyCode#code} of the reporting currency
+     * @return totals per category, currency and (foreign currencies only) day, unordered
+     */
+    @Query("SELECT m.category AS category, e.currency AS currency, "
+            + "CASE WHEN e.currency = :reporting THEN 0 ELSE " + TableDao.LOCAL_EPOCH_DAY + " END AS epochDay, "
+            + "SUM(e.amountMinor) AS totalMinor "
+            + "FROM table_entries e JOIN merchants m ON m.id = e.merchantId "
+            + "WHERE e.timeMillis >= :startMillis AND e.timeMillis < :endMillis "
+            + "GROUP BY m.category, e.currency, epochDay")
+    List<CategoryTotal> totalsInRange(long startMillis, long endMillis, int reporting);
+
+    /**
+     * @return every learned keyword
+     */
+    @Query("SELECT * FROM category_keywords")
+    List<CategoryKeyword> keywords();
+
+    /**
+     * Stores a learned keyword, replacing an earlier category for it.
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void learn(CategoryKeyword keyword);
+}
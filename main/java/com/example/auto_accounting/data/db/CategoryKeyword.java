@@ -0,0 +1,22 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * A keyword learned from the user's corrections: merchants whose name contains it get its
+ * category ahead of the bundled keywords.
+ * <p>Real name is {@code category_keywords}.
+ */
+@Entity(tableName = "category_keywords")
+public class CategoryKeyword {
+
+    /** Whole words, lower case, separated by single spaces. */
+    @PrimaryKey
+    @NonNull
+    public String keyword = "";
+
+    /** {@link Category#code}. */
+    public int category;
+}
@@ -0,0 +1,20 @@
+package com.example.auto_accounting.data.db;
+
+/**
+ * One row of a per-category rollup: the {@link Category#code} and the sum of its amounts in
+ * one currency, on one day unless the currency is the reporting one.
+ */
+public class CategoryTotal {
+
+    /** {@link Category#code} of the rows' merchants. */
+    public int category;
+
+    /** {@link CurrencyCode#code} of the amounts. */
+    public int currency;
+
+    /** Local epoch day of the rows; 0 for rows in the reporting currency, which span the range. */
+    public long epochDay;
+
+    /** Sum of amounts in minor units(cents). */
+    public long totalMinor;
+}
@@ -0,0 +1,67 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * One entry of the change log of {@code table_entries}.
+ * <p>Real name is {@code table_changes}. Rows are written by triggers on {@code table_entries}
+ * (see {@link Migrations}) in the same transaction as the change, so the log never misses a
+ * commit and never holds a rolled-back one. {@link #seq} grows by one per change.
+ */
+@Entity(tableName = "table_changes")
+public class Change {
+
+    /** A row was inserted; the columns hold the new row. */
+    public static final int INSERT = 1;
+    /** A row was updated; the columns hold the new row, the {@code old*} columns the old one. */
+    public static final int UPDATE = 2;
+    /** A row was deleted; the columns hold the deleted row. */
+    public static final int DELETE = 3;
+    /**
+     * The whole ledger was replaced, e.g. by a restore, or its amounts are reported
+     * differently (new exchange rates); consumers must reread everything.
+     */
+    public static final int RESET = 4;
+
+    /** Sequence number, auto-increment primary key. */
+    @PrimaryKey(autoGenerate = true)
+    public long seq;
+
+    /** {@link #INSERT}, {@link #UPDATE}, {@link #DELETE} or {@link #RESET}. */
+    public int op;
+
+    /** {@link Table#id} of the changed row, 0 for {@link #RESET}. */
+    public long entryId;
+
+    /** Event time in epoch milliseconds. */
+    public long timeMillis;
+
+    /** {@link Merchant#id}. */
+    public long merchantId;
+
+    /** Amount stored in minor units(cents) */
+    public long amountMinor;
+
+    /** {@link CurrencyCode#code} of {@link #amountMinor}. */
+    @ColumnInfo(defaultValue = "0")
+    public int currency;
+
+    /** Time before an {@link #UPDATE}, null otherwise. */
+    @Nullable
+    public Long oldTimeMillis;
+
+    /** Merchant before an {@link #UPDATE}, null otherwise. */
+    @Nullable
+    public Long oldMerchantId;
+
+    /** Amount before an {@link #UPDATE}, null otherwise. */
+    @Nullable
+    public Long oldAmountMinor;
+
+    /** Currency before an {@link #UPDATE}, null otherwise. */
+    @Nullable
+    public Integer oldCurrency;
+}
@@ -0,0 +1,22 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * How far a named, persistent consumer of the change log has processed it.
+ * <p>Real name is {@code change_cursors}. The log is only trimmed up to the smallest
+ * acknowledged {@link #seq}.
+ */
+@Entity(tableName = "change_cursors")
+public class ChangeCursor {
+
+    /** Consumer name, e.g. {@code "sync"}. */
+    @PrimaryKey
+    @NonNull
+    public String consumer = "";
+
+    /** Last {@link Change#seq} the consumer has processed. */
+    public long seq;
+}
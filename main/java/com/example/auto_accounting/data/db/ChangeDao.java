@@ -0,0 +1,94 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import java.util.List;
+
+/**
+ * Data access object for {@link Change} and {@link ChangeCursor}.
+ */
+@Dao
+public interface ChangeDao {
+
+    /**
+     * @param afterSeq exclusive lower bound of {@link Change#seq}
+     * @param limit    maximum number of changes
+     * @return changes ordered by sequence ascending
+     */
+    @Query("SELECT * FROM table_changes WHERE seq > :afterSeq ORDER BY seq ASC LIMIT :limit")
+    List<Change> since(long afterSeq, int limit);
+
+    /**
+     * Rows inserted by the changes in (afterSeq, throughSeq], as logged, with their merchant
+     * names. Rows deleted since are still returned.
+     *
+     * @param afterSeq   exclusive lower bound of {@link Change#seq}
+     * @param throughSeq inclusive upper bound of {@link Change#seq}
+     * @return rows ordered by sequence ascending
+     */
+    @Query("SELECT c.entryId AS id, c.timeMillis AS timeMillis, c.merchantId AS merchantId, "
+            + "c.amountMinor AS amountMinor, c.currency AS currency, m.name AS description "
+            + "FROM table_changes c LEFT JOIN merchants m ON m.id = c.merchantId "
+            + "WHERE c.seq > :afterSeq AND c.seq <= :throughSeq AND c.op = " + Change.INSERT + " "
+            + "ORDER BY c.seq ASC")
+    List<Entry> insertedBetween(long afterSeq, long throughSeq);
+
+    /**
+     * @return the largest sequence number, 0 if nothing was logged
+     */
+    @Query("SELECT IFNULL(MAX(seq), 0) FROM table_changes")
+    long lastSeq();
+
+    /**
+     * @return the sequence number of the last {@link Change#RESET}, 0 if none is logged
+     */
+    @Query("SELECT IFNULL(MAX(seq), 0) FROM table_changes WHERE op = " + Change.RESET)
+    long lastResetSeq();
+
+    /**
+     * Logs a change that no trigger sees, i.e. {@link Change#RESET}.
+     *
+     * @param change the change; {@link Change#seq} is assigned
+     * @return the sequence number
+     */
+    @Insert
+    long insert(Change change);
+
+    /**
+     * Deletes the changes up to a sequence number.
+     *
+     * @param throughSeq inclusive upper bound of {@link Change#seq}
+     * @return number of changes deleted
+     */
+    @Query("DELETE FROM table_changes WHERE seq <= :throughSeq")
+    int deleteThrough(long throughSeq);
+
+    /**
+     * @param consumer consumer name
+     * @return its last acknowledged sequence number, or null if it is not registered
+     */
+    @Query("SELECT seq FROM change_cursors WHERE consumer = :consumer")
+    Long cursor(String consumer);
+
+    /**
+     * Registers a consumer or moves its cursor.
+     *
+     * @param cursor consumer and sequence number
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void setCursor(ChangeCursor cursor);
+
+    /**
+     * @param consumer consumer name
+     */
+    @Query("DELETE FROM change_cursors WHERE consumer = :consumer")
+    void removeCursor(String consumer);
+
+    /**
+     * @return the smallest acknowledged sequence number, or null if no consumer is registered
+     */
+    @Query("SELECT MIN(seq) FROM change_cursors")
+    Long minCursor();
+}
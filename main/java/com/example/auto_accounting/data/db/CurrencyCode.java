@@ -0,0 +1,89 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Currencies of the ledger, stored as {@link #code} in {@link Table#currency}.
+ * <p>Amounts are stored in hundredths of the currency's unit whatever its usual minor unit,
+ * as the parsers always read two decimals. Rows from before currencies were stored, and rows
+ * whose currency was not recognised, are {@link #AUD}: the notification parser has always read
+ * a bare {@code $} as Australian dollars.
+ * <p>Codes are persisted: never renumber, only append.
+ */
+public enum CurrencyCode {
+    AUD(0, "AUD"),
+    USD(1, "USD"),
+    CNY(2, "CNY"),
+    INR(3, "INR"),
+    EUR(4, "EUR"),
+    GBP(5, "GBP"),
+    JPY(6, "JPY");
+
+    /** Currency of rows that do not say. */
+    public static final CurrencyCode DEFAULT = AUD;
+
+    private static final CurrencyCode[] BY_CODE = new CurrencyCode[values().length];
+
+    static {
+        for (CurrencyCode c : values()) BY_CODE[c.code] = c;
+    }
+
+    /** Persisted value. */
+    public final int code;
+    /** ISO 4217 code. */
+    public final String iso;
+
+    CurrencyCode(int code, String iso) {
+        this.code = code;
+        this.iso = iso;
+    }
+
+    /** @return number of codes; every code is below it */
+    public static int count() {
+        return BY_CODE.length;
+    }
+
+    /** @return the currency stored as {@code code}, {@link #DEFAULT} if unknown */
+    public static CurrencyCode fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : DEFAULT;
+    }
+
+    /**
+     * @param iso an ISO 4217 code in any case, or {@code RMB}
+     * @return the currency, or null if it is not one of the ledger's
+     */
+    @Nullable
+    public static CurrencyCode fromIso(@Nullable CharSequence iso) {
+        if (iso == null) return null;
+        String s = iso.toString().trim().toUpperCase(Locale.ROOT);
+        if (s.equals("RMB")) return CNY;
+        for (CurrencyCode c : BY_CODE) {
+            if (c.iso.equals(s)) return c;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the currency of a symbol written in front of an amount. A bare {@code $} is
+     * {@link #AUD} and {@code ¥} is {@link #CNY}, as in the notifications the app reads.
+     *
+     * @param symbol e.g. {@code "AU$"}, {@code "€"}, {@code "AUD"}
+     * @return the currency, or null if the symbol is not one of the ledger's
+     */
+    @Nullable
+    public static CurrencyCode fromSymbol(@Nullable CharSequence symbol) {
+        if (symbol == null) return null;
+        String s = symbol.toString().trim().toUpperCase(Locale.ROOT);
+        switch (s) {
+            case "$": case "A$": case "AU$": return AUD;
+            case "US$": return USD;
+            case "¥": case "￥": return CNY;
+            case "₹": return INR;
+            case "€": return EUR;
+            case "£": return GBP;
+            default: return fromIso(s);
+        }
+    }
+}
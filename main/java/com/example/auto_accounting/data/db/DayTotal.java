@@ -0,0 +1,17 @@
+package com.example.auto_accounting.data.db;
+
+/**
+ * One row of a per-day rollup: the local calendar day, a currency and the sum of its amounts
+ * in that currency.
+ */
+public class DayTotal {
+
+    /** Local calendar day as {@link java.time.LocalDate#toEpochDay()}. */
+    public long epochDay;
+
+    /** {@link CurrencyCode#code} of the amounts. */
+    public int currency;
+
+    /** Sum of amounts of that day in minor units(cents). */
+    public long totalMinor;
+}
@@ -32,7 +32,7 @@ public final class DbProvider {
                             context.getApplicationContext(),
                             AppDb.class,
                             DB_NAME
-                    ).build();
+                    ).addMigrations(Migrations.ALL).addCallback(Migrations.CALLBACK).build();
                 }
             }
         }
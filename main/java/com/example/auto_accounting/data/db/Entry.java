@@ -0,0 +1,25 @@
+package com.example.auto_accounting.data.db;
+
+/**
+ * Read model of a {@link Table} row with its merchant name resolved from {@code merchants}.
+ */
+public class Entry {
+
+    /** {@link Table#id}. */
+    public long id;
+
+    /** Event time in epoch milliseconds. */
+    public long timeMillis;
+
+    /** {@link Merchant#id}. */
+    public long merchantId;
+
+    /** The merchant name, i.e. the description of the record. */
+    public String description;
+
+    /** Amount stored in minor units(cents) */
+    public long amountMinor;
+
+    /** {@link CurrencyCode#code} of {@link #amountMinor}. */
+    public int currency;
+}
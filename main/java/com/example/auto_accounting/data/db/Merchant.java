@@ -0,0 +1,40 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Dictionary of merchants referenced by {@link Table#merchantId}.
+ * <p>Real name is {@code merchants}; {@link #name} is unique.
+ */
+@Entity(tableName = "merchants", indices = {@Index(value = "name", unique = true)})
+public class Merchant {
+
+    /** {@link #categorySource}: not classified yet. */
+    public static final int SOURCE_NONE = 0;
+    /** {@link #categorySource}: classified by the bundled keywords (or found no match). */
+    public static final int SOURCE_KEYWORD = 1;
+    /** {@link #categorySource}: classified by a keyword learned from a user correction. */
+    public static final int SOURCE_LEARNED = 2;
+    /** {@link #categorySource}: set by the user; never reclassified. */
+    public static final int SOURCE_USER = 3;
+
+    /** Auto-increment primary key. */
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+
+    /** Canonical merchant name. */
+    @NonNull
+    public String name = "";
+
+    /** {@link Category#code}; {@link Category#UNCATEGORIZED} until classified. */
+    @ColumnInfo(defaultValue = "0")
+    public int category;
+
+    /** Where {@link #category} came from, one of the {@code SOURCE_*} constants. */
+    @ColumnInfo(defaultValue = "0")
+    public int categorySource;
+}
@@ -0,0 +1,83 @@
+package com.example.auto_accounting.data.db;
+
+import android.database.Cursor;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import java.util.List;
+
+/**
+ * Data access object for {@link Merchant}.
+ */
+@Dao
+public interface MerchantDao {
+
+    /**
+     * Inserts a merchant unless one with the same name exists. Call from a background thread.
+     *
+     * @param merchant the merchant to insert
+     * @return row id, or -1 if the name already exists
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insert(Merchant merchant);
+
+    /**
+     * @param name canonical name
+     * @return the merchant id, or null if unknown
+     */
+    @Query("SELECT id FROM merchants WHERE name = :name")
+    Long idByName(String name);
+
+    /**
+     * @param ids merchant ids, at most 999 per call (SQLite variable limit)
+     * @return the merchants with those ids, in no particular order
+     */
+    @Query("SELECT * FROM merchants WHERE id IN (:ids)")
+    List<Merchant> byIds(List<Long> ids);
+
+    /**
+     * @return every merchant name, oldest first
+     */
+    @Query("SELECT name FROM merchants ORDER BY id ASC")
+    List<String> allNames();
+
+    /**
+     * Sums rows within [startMillis, endMillis) per merchant, as a cursor so callers can
+     * rank merchants without holding the rollup. Grouping runs on the integer
+     * {@code merchantId} off the (merchantId, timeMillis) index; no names are joined. Only
+     * rows in the reporting currency are summed; the others are counted in {@code foreign}
+     * and read with {@link #foreignTotals}. The caller closes the cursor.
+     *
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @param reporting   {@link CurrencyCode#code} of the reporting currency
+     * @return columns {@code merchantId, totalMinor, count, foreign}, one row per merchant,
+     *         unordered
+     */
+    @Query("SELECT merchantId, "
+            + "SUM(CASE WHEN currency = :reporting THEN amountMinor ELSE 0 END) AS totalMinor, "
+            + "COUNT(*) AS count, SUM(currency != :reporting) AS `foreign` "
+            + "FROM table_entries "
+            + "WHERE timeMillis >= :startMillis AND timeMillis < :endMillis "
+            + "GROUP BY merchantId")
+    Cursor rollupInRange(long startMillis, long endMillis, int reporting);
+
+    /**
+     * Sums one merchant's rows in other currencies than the reporting one per local day and
+     * currency, for converting what {@link #rollupInRange} left out.
+     *
+     * @param merchantId  {@link Merchant#id}
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @param reporting   {@link CurrencyCode#code} of the reporting currency
+     * @return per-day totals, one per currency of the day, unordered
+     */
+    @Query("SELECT " + TableDao.LOCAL_EPOCH_DAY + " AS epochDay, currency, SUM(amountMinor) AS totalMinor "
+            + "FROM table_entries "
+            + "WHERE merchantId = :merchantId AND timeMillis >= :startMillis AND timeMillis < :endMillis "
+            + "AND currency != :reporting "
+            + "GROUP BY epochDay, currency")
+    List<DayTotal> foreignTotals(long merchantId, long startMillis, long endMillis, int reporting);
+}
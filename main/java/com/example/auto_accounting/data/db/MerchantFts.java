@@ -0,0 +1,25 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+import androidx.room.PrimaryKey;
+
+/**
+ * Full-text index over {@link Merchant#name}, i.e. over every record's description.
+ * <p>Real name is {@code merchants_fts}. It is an external-content FTS4 table: Room's
+ * triggers on {@code merchants} keep it in sync, and its {@code rowid} is {@link Merchant#id}.
+ */
+@Fts4(contentEntity = Merchant.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "merchants_fts")
+public class MerchantFts {
+
+    /** Same as {@link Merchant#id}. */
+    @PrimaryKey
+    @ColumnInfo(name = "rowid")
+    public long rowid;
+
+    /** Indexed merchant name. */
+    public String name;
+}
@@ -0,0 +1,16 @@
+package com.example.auto_accounting.data.db;
+
+/**
+ * One merchant matched by a full-text query, with the statistics to rank it.
+ */
+public class MerchantMatch {
+
+    /** {@link Merchant#id}, the {@code rowid} of {@link MerchantFts}. */
+    public long merchantId;
+
+    /**
+     * FTS4 {@code matchinfo(merchants_fts, 'pcnalx')}: 32-bit integers in native byte order,
+     * see the SQLite FTS3/4 documentation.
+     */
+    public byte[] info;
+}
@@ -0,0 +1,19 @@
+package com.example.auto_accounting.data.db;
+
+/**
+ * One row of a per-merchant rollup: the merchant and the sum of its amounts.
+ */
+public class MerchantTotal {
+
+    /** {@link Merchant#id}. */
+    public long merchantId;
+
+    /** {@link Merchant#name}. */
+    public String name;
+
+    /** Sum of amounts in minor units(cents). */
+    public long totalMinor;
+
+    /** Number of rows. */
+    public int count;
+}
@@ -0,0 +1,181 @@
+package com.example.auto_accounting.data.db;
+
+import androidx.annotation.NonNull;
+import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Schema migrations of {@link AppDb}, registered in {@link DbProvider}, and the SQL objects
+ * Room does not create itself.
+ */
+public final class Migrations {
+
+    private Migrations() {
+        // No instances.
+    }
+
+    /**
+     * 1 → 2: moves descriptions into the {@code merchants} dictionary and replaces
+     * {@code table_entries.description} with an integer {@code merchantId}. Row ids are kept.
+     */
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `merchants` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT NOT NULL)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_merchants_name` "
+                    + "ON `merchants` (`name`)");
+            // Trimmed description as the merchant name, null as empty.
+            db.execSQL("INSERT OR IGNORE INTO merchants (name) "
+                    + "SELECT TRIM(IFNULL(description, '')) AS n FROM table_entries "
+                    + "GROUP BY n ORDER BY MIN(id)");
+
+            db.execSQL("CREATE TABLE IF NOT EXISTS `table_entries_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`timeMillis` INTEGER NOT NULL, `merchantId` INTEGER NOT NULL, "
+                    + "`amountMinor` INTEGER NOT NULL)");
+            db.execSQL("INSERT INTO table_entries_new (id, timeMillis, merchantId, amountMinor) "
+                    + "SELECT e.id, e.timeMillis, m.id, e.amountMinor FROM table_entries e "
+                    + "JOIN merchants m ON m.name = TRIM(IFNULL(e.description, ''))");
+            db.execSQL("DROP TABLE table_entries");
+            db.execSQL("ALTER TABLE table_entries_new RENAME TO table_entries");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_table_entries_merchantId` "
+                    + "ON `table_entries` (`merchantId`)");
+        }
+    };
+
+    /**
+     * 2 → 3: adds the {@code merchants_fts} full-text index with Room's content sync
+     * triggers and fills it from {@code merchants}. {@code table_entries} gets a time index for
+     * the time-ordered reads, and its merchant index is extended with the time so one
+     * merchant's rows come out newest first without a sort.
+     */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `merchants_fts` USING FTS4("
+                    + "`name` TEXT, tokenize=unicode61, content=`merchants`)");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_merchants_fts_BEFORE_UPDATE "
+                    + "BEFORE UPDATE ON `merchants` BEGIN "
+                    + "DELETE FROM `merchants_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_merchants_fts_BEFORE_DELETE "
+                    + "BEFORE DELETE ON `merchants` BEGIN "
+                    + "DELETE FROM `merchants_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_merchants_fts_AFTER_UPDATE "
+                    + "AFTER UPDATE ON `merchants` BEGIN "
+                    + "INSERT INTO `merchants_fts`(`docid`, `name`) VALUES (NEW.`rowid`, NEW.`name`); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_merchants_fts_AFTER_INSERT "
+                    + "AFTER INSERT ON `merchants` BEGIN "
+                    + "INSERT INTO `merchants_fts`(`docid`, `name`) VALUES (NEW.`rowid`, NEW.`name`); END");
+            db.execSQL("INSERT INTO `merchants_fts`(`merchants_fts`) VALUES ('rebuild')");
+
+            db.execSQL("DROP INDEX IF EXISTS `index_table_entries_merchantId`");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_table_entries_merchantId_timeMillis` "
+                    + "ON `table_entries` (`merchantId`, `timeMillis`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_table_entries_timeMillis` "
+                    + "ON `table_entries` (`timeMillis`)");
+        }
+    };
+
+    /**
+     * Change-log objects outside Room's entities: the table that mutes logging while rows are
+     * only moved (archiving, restore), and one trigger per kind of change on
+     * {@code table_entries}.
+     */
+    private static final String[] CHANGE_LOG_SQL = {
+            "CREATE TABLE IF NOT EXISTS `change_log_muted` (`reason` TEXT NOT NULL)",
+            "CREATE TRIGGER IF NOT EXISTS `table_changes_after_insert` "
+                    + "AFTER INSERT ON `table_entries` "
+                    + "WHEN NOT EXISTS (SELECT 1 FROM `change_log_muted`) BEGIN "
+                    + "INSERT INTO `table_changes` (op, entryId, timeMillis, merchantId, amountMinor, "
+                    + "currency) "
+                    + "VALUES (" + Change.INSERT + ", NEW.id, NEW.timeMillis, NEW.merchantId, "
+                    + "NEW.amountMinor, NEW.currency); END",
+            "CREATE TRIGGER IF NOT EXISTS `table_changes_after_update` "
+                    + "AFTER UPDATE ON `table_entries` "
+                    + "WHEN NOT EXISTS (SELECT 1 FROM `change_log_muted`) BEGIN "
+                    + "INSERT INTO `table_changes` (op, entryId, timeMillis, merchantId, amountMinor, "
+                    + "currency, oldTimeMillis, oldMerchantId, oldAmountMinor, oldCurrency) "
+                    + "VALUES (" + Change.UPDATE + ", NEW.id, NEW.timeMillis, NEW.merchantId, "
+                    + "NEW.amountMinor, NEW.currency, OLD.timeMillis, OLD.merchantId, "
+                    + "OLD.amountMinor, OLD.currency); END",
+            "CREATE TRIGGER IF NOT EXISTS `table_changes_after_delete` "
+                    + "AFTER DELETE ON `table_entries` "
+                    + "WHEN NOT EXISTS (SELECT 1 FROM `change_log_muted`) BEGIN "
+                    + "INSERT INTO `table_changes` (op, entryId, timeMillis, merchantId, amountMinor, "
+                    + "currency) "
+                    + "VALUES (" + Change.DELETE + ", OLD.id, OLD.timeMillis, OLD.merchantId, "
+                    + "OLD.amountMinor, OLD.currency); END",
+    };
+
+    /** Triggers of {@link #CHANGE_LOG_SQL}, dropped before they are recreated with new columns. */
+    private static final String[] CHANGE_LOG_TRIGGERS = {
+            "table_changes_after_insert", "table_changes_after_update", "table_changes_after_delete",
+    };
+
+    /**
+     * 3 → 4: adds the {@code table_changes} log and the {@code change_cursors} of its
+     * consumers. The log starts empty: consumers read the ledger once, then follow the log.
+     * Its triggers log the currency, which only exists from version 6: they are created by
+     * {@link #MIGRATION_5_6}, in the same upgrade, since nothing writes between migrations.
+     */
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `table_changes` ("
+                    + "`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `op` INTEGER NOT NULL, "
+                    + "`entryId` INTEGER NOT NULL, `timeMillis` INTEGER NOT NULL, "
+                    + "`merchantId` INTEGER NOT NULL, `amountMinor` INTEGER NOT NULL, "
+                    + "`oldTimeMillis` INTEGER, `oldMerchantId` INTEGER, `oldAmountMinor` INTEGER)");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `change_cursors` ("
+                    + "`consumer` TEXT NOT NULL, `seq` INTEGER NOT NULL, PRIMARY KEY(`consumer`))");
+        }
+    };
+
+    /**
+     * 4 → 5: adds the category of each merchant and the {@code category_keywords} learned
+     * from corrections. Existing merchants start unclassified and are filled in by the
+     * background backfill.
+     */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `merchants` ADD COLUMN `category` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `merchants` ADD COLUMN `categorySource` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `category_keywords` ("
+                    + "`keyword` TEXT NOT NULL, `category` INTEGER NOT NULL, PRIMARY KEY(`keyword`))");
+        }
+    };
+
+    /**
+     * 5 → 6: adds the currency of each row, and of each logged change, whose triggers are
+     * recreated to fill it in. Existing rows are {@link CurrencyCode#DEFAULT}.
+     */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `table_entries` ADD COLUMN `currency` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `table_changes` ADD COLUMN `currency` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE `table_changes` ADD COLUMN `oldCurrency` INTEGER");
+            for (String t : CHANGE_LOG_TRIGGERS) db.execSQL("DROP TRIGGER IF EXISTS `" + t + "`");
+            createChangeLog(db);
+        }
+    };
+
+    /** Every migration, oldest first. */
+    public static final Migration[] ALL = {
+            MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6};
+
+    /** Creates the change-log triggers on a fresh install, where no migration runs. */
+    public static final RoomDatabase.Callback CALLBACK = new RoomDatabase.Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            createChangeLog(db);
+        }
+    };
+
+    private static void createChangeLog(SupportSQLiteDatabase db) {
+        for (String sql : CHANGE_LOG_SQL) db.execSQL(sql);
+    }
+}
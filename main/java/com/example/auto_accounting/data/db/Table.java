@@ -1,13 +1,17 @@
 package com.example.auto_accounting.data.db;
 
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
- * Record with three colums: time, description and amount(in cent).
- * <p>Real name is {@code table_entries}
+ * Record with four colums: time, merchant, amount(in cent) and currency.
+ * <p>Real name is {@code table_entries}. The description text lives once per merchant in
+ * {@link Merchant}; read rows with their names through {@link Entry}.
  */
-@Entity(tableName = "table_entries")
+@Entity(tableName = "table_entries",
+        indices = {@Index({"merchantId", "timeMillis"}), @Index("timeMillis")})
 public class Table {
 
     /** Auto-increment primary key. */
@@ -17,9 +21,13 @@ public class Table {
     /** Event time in epoch milliseconds. */
     public long timeMillis;
 
-    /** The description for the record. */
-    public String description;
+    /** {@link Merchant#id} of the record's description. */
+    public long merchantId;
 
     /** Amount stored in minor units(cents) */
     public long amountMinor;
+
+    /** {@link CurrencyCode#code} of {@link #amountMinor}. */
+    @ColumnInfo(defaultValue = "0")
+    public int currency;
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.example.auto_accounting.data.db;
 
+import android.database.Cursor;
+
 import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.Query;
@@ -11,6 +13,16 @@ import java.util.List;
 @Dao
 public interface TableDao {
 
+    /** Select list and joins that read {@link Entry} rows; alias {@code e} is table_entries. */
+    String ENTRY_SELECT = "SELECT e.id AS id, e.timeMillis AS timeMillis, "
+            + "e.merchantId AS merchantId, e.amountMinor AS amountMinor, e.currency AS currency, "
+            + "m.name AS description "
+            + "FROM table_entries e LEFT JOIN merchants m ON m.id = e.merchantId ";
+
+    /** Local epoch day of a row's {@code timeMillis}. */
+    String LOCAL_EPOCH_DAY =
+            "CAST(strftime('%s', timeMillis / 1000, 'unixepoch', 'localtime') AS INTEGER) / 86400";
+
     /**
      * Inserts one record. Call from a background thread.
      *
@@ -27,8 +39,103 @@ public interface TableDao {
      * @param endMillis   exclusive end in epoch milliseconds
      * @return list of rows
      */
-    @Query("SELECT * FROM table_entries "
+    @Query(ENTRY_SELECT
+            + "WHERE e.timeMillis >= :startMillis AND e.timeMillis < :endMillis "
+            + "ORDER BY e.timeMillis ASC")
+    List<Entry> listInRange(long startMillis, long endMillis);
+
+    /**
+     * Same rows as {@link #listInRange} but as a cursor, for readers that stream rows instead
+     * of holding them in memory. Columns are named after the {@link Entry} fields. The caller
+     * closes the cursor.
+     *
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @return cursor ordered by time, then id, ascending
+     */
+    @Query(ENTRY_SELECT
+            + "WHERE e.timeMillis >= :startMillis AND e.timeMillis < :endMillis "
+            + "ORDER BY e.timeMillis ASC, e.id ASC")
+    Cursor cursorInRange(long startMillis, long endMillis);
+
+    /**
+     * Sums rows within [startMillis, endMillis) per local calendar day and currency.
+     * Days without rows are omitted.
+     *
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @return per-day totals ordered by day ascending, one per currency of the day
+     */
+    @Query("SELECT " + LOCAL_EPOCH_DAY + " AS epochDay, currency, SUM(amountMinor) AS totalMinor "
+            + "FROM table_entries "
             + "WHERE timeMillis >= :startMillis AND timeMillis < :endMillis "
-            + "ORDER BY timeMillis ASC")
-    List<Table> listInRange(long startMillis, long endMillis);
+            + "GROUP BY epochDay, currency ORDER BY epochDay ASC")
+    List<DayTotal> dailyTotals(long startMillis, long endMillis);
+
+    /**
+     * Lists the most recent rows, newest first.
+     *
+     * @param limit maximum number of rows
+     * @return list of rows ordered by time descending
+     */
+    @Query(ENTRY_SELECT + "ORDER BY e.timeMillis DESC LIMIT :limit")
+    List<Entry> recent(int limit);
+
+    /**
+     * @param match FTS4 MATCH expression over descriptions, e.g. {@code "star* buck*"}
+     * @return the merchants whose name matches, with their match statistics
+     */
+    @Query("SELECT rowid AS merchantId, matchinfo(merchants_fts, 'pcnalx') AS info "
+            + "FROM merchants_fts WHERE merchants_fts MATCH :match")
+    List<MerchantMatch> matchMerchants(String match);
+
+    /**
+     * One page of a merchant's rows, newest first, read straight off the
+     * (merchantId, timeMillis) index.
+     *
+     * @param merchantId {@link Merchant#id}
+     * @param beforeTime keyset cursor: only rows strictly before ({@code beforeTime},
+     *                   {@code beforeId}); {@link Long#MAX_VALUE} for the first page
+     * @param beforeId   keyset cursor id
+     * @param limit      page size
+     * @return rows ordered by time then id, descending
+     */
+    @Query(ENTRY_SELECT
+            + "WHERE e.merchantId = :merchantId "
+            + "AND (e.timeMillis < :beforeTime OR (e.timeMillis = :beforeTime AND e.id < :beforeId)) "
+            + "ORDER BY e.timeMillis DESC, e.id DESC LIMIT :limit")
+    List<Entry> pageForMerchant(long merchantId, long beforeTime, long beforeId, int limit);
+
+    /**
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @return number of rows in the range
+     */
+    @Query("SELECT COUNT(*) FROM table_entries "
+            + "WHERE timeMillis >= :startMillis AND timeMillis < :endMillis")
+    int countInRange(long startMillis, long endMillis);
+
+    /**
+     * Deletes the rows of a range that have been copied into a month archive.
+     *
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @param maxId       largest archived id; later rows stay
+     * @return number of rows deleted
+     */
+    @Query("DELETE FROM table_entries "
+            + "WHERE timeMillis >= :startMillis AND timeMillis < :endMillis AND id <= :maxId")
+    int deleteArchived(long startMillis, long endMillis, long maxId);
+
+    /**
+     * @return the largest row id, 0 if the table is empty
+     */
+    @Query("SELECT IFNULL(MAX(id), 0) FROM table_entries")
+    long maxId();
+
+    /**
+     * @return the earliest row time in epoch milliseconds, or null if the table is empty
+     */
+    @Query("SELECT MIN(timeMillis) FROM table_entries")
+    Long minTimeMillis();
 }
\ No newline at end of file
@@ -0,0 +1,413 @@
+package com.example.auto_accounting.data.export;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.net.Uri;
+import android.os.Process;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.archive.ArchiveStore;
+import com.example.auto_accounting.data.archive.MonthArchive;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.data.db.CategoryTotal;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.MerchantTotal;
+import com.example.auto_accounting.data.fx.FxRates;
+import com.example.auto_accounting.data.repo.LedgerReader;
+import com.example.auto_accounting.data.repo.MerchantBreakdown;
+import com.example.auto_accounting.data.repo.MerchantCategories;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports the report of one year as a ZIP of PNG pages: the monthly totals with the year's
+ * total, the top merchants, the totals per category, and the daily chart of each month, all
+ * drawn by {@link MonthlyBarChartExporter} in the reporting currency.
+ * <p>The data is read once up front ({@link #load}), a few hundred numbers. Pages are then
+ * drawn and PNG-encoded in parallel by a small pool of workers, each with its own bitmap,
+ * canvas and output buffer reused for every page it draws. The calling thread writes finished
+ * pages to the ZIP in page order, stored as is since PNG is already compressed. A worker
+ * claims its next page only after the writer has taken its previous one, so at most one page
+ * per worker is held in memory, however many pages the report has.
+ * <p>A ZIP rather than a PDF: {@code PdfDocument} keeps every page until the whole document is
+ * written, so memory would grow with the page count.
+ */
+public final class AnnualReportExporter {
+
+    /** MIME type of the report. */
+    public static final String MIME_TYPE = "application/zip";
+
+    /** Merchants on the ranking page. */
+    public static final int TOP_MERCHANTS = 10;
+
+    /** Upper bound of {@link #defaultWorkers()}; each worker holds one page bitmap. */
+    private static final int MAX_WORKERS = 4;
+    /** How often the writer checks the token while it waits for a page. */
+    private static final long POLL_MS = 100;
+    private static final int INITIAL_PAGE_BYTES = 1 << 17;
+
+    /** What the report shows; amounts in minor units of the reporting currency. */
+    public static final class Data {
+        public final int year;
+        /** ISO code of the currency of every amount. */
+        public final String unit;
+        /** One total per local day of the year, index 0 = 1 January. */
+        final long[] dayTotalsMinor;
+        /** Largest total first. */
+        final List<MerchantTotal> topMerchants;
+        /** Sum over every merchant of the year, what merchant shares are relative to. */
+        final long merchantsTotalMinor;
+        /** Totals per {@link Category#code}. */
+        final long[] categoryTotalsMinor;
+
+        public Data(int year, String unit, long[] dayTotalsMinor, List<MerchantTotal> topMerchants,
+                    long merchantsTotalMinor, long[] categoryTotalsMinor) {
+            this.year = year;
+            this.unit = unit;
+            this.dayTotalsMinor = dayTotalsMinor;
+            this.topMerchants = Collections.unmodifiableList(new ArrayList<>(topMerchants));
+            this.merchantsTotalMinor = merchantsTotalMinor;
+            this.categoryTotalsMinor = categoryTotalsMinor;
+        }
+    }
+
+    /** Outcome of {@link #write}. */
+    public static final class Summary {
+        public final int pages;
+        /** Bytes of PNG data written. */
+        public final long bytes;
+        public final int workers;
+
+        Summary(int pages, long bytes, int workers) {
+            this.pages = pages;
+            this.bytes = bytes;
+            this.workers = workers;
+        }
+    }
+
+    /** Draws one page over a worker's canvas. */
+    private interface Painter {
+        void draw(Canvas canvas);
+    }
+
+    private static final class Page {
+        final String name;
+        final Painter painter;
+
+        Page(String name, Painter painter) {
+            this.name = name;
+            this.painter = painter;
+        }
+    }
+
+    /** One worker's bitmap and buffer, reused for every page the worker draws. */
+    private static final class RenderContext {
+        final Bitmap bitmap = Bitmap.createBitmap(
+                MonthlyBarChartExporter.WIDTH, MonthlyBarChartExporter.HEIGHT, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(bitmap);
+        final ByteArrayOutputStream png = new ByteArrayOutputStream(INITIAL_PAGE_BYTES);
+        final CRC32 crc = new CRC32();
+        /** Taken while {@link #png} holds a page the writer has not written yet. */
+        final Semaphore idle = new Semaphore(1);
+    }
+
+    private AnnualReportExporter() {
+        // Utility class.
+    }
+
+    /** @return a file name such as {@code report-2024.zip} */
+    public static String fileName(int year) {
+        return "report-" + year + ".zip";
+    }
+
+    /** @return workers for this device: one core is left to the writer and the UI */
+    public static int defaultWorkers() {
+        return Math.max(1, Math.min(MAX_WORKERS, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Exports the report of a year to a SAF document. Blocking.
+     *
+     * @param uri   document from {@code CreateDocument}
+     * @param token cancels the export between pages, may be null
+     * @throws IOException on write failure
+     */
+    public static Summary export(Context context, ContentResolver resolver, Uri uri, int year,
+                                 @Nullable CancellationToken token) throws IOException {
+        Data data = load(context, year, token);
+        try (OutputStream os = resolver.openOutputStream(uri)) {
+            if (os == null) throw new IOException("openOutputStream returned null: " + uri);
+            return write(data, os, defaultWorkers(), token);
+        }
+    }
+
+    /**
+     * Reads what the report of a year shows: the day totals ({@link LedgerReader#dayTotals}),
+     * the merchant ranking ({@link MerchantBreakdown}) and the category totals. Blocking.
+     *
+     * @param token checked between the reads and between archived months, may be null
+     */
+    public static Data load(Context context, int year, @Nullable CancellationToken token) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate first = LocalDate.of(year, 1, 1);
+        long start = first.atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = first.plusYears(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        String unit = CurrencyCode.fromCode(FxRates.get(context).reportingCurrency()).iso;
+        long[] days = LedgerReader.get(context).dayTotals(first.toEpochDay(), first.lengthOfYear());
+        if (token != null) token.throwIfCancelled();
+        MerchantBreakdown.Result merchants =
+                MerchantBreakdown.get(context).load(start, end, TOP_MERCHANTS, token);
+        long[] categories = categoryTotals(context, start, end, zone, token);
+        return new Data(year, unit, days, merchants.top, merchants.totalMinor, categories);
+    }
+
+    /**
+     * Sums [start, end) per category in the reporting currency: live rows are rolled up by
+     * SQL, archived rows are looked up through their merchant's category.
+     */
+    private static long[] categoryTotals(Context context, long start, long end, ZoneId zone,
+                                         @Nullable CancellationToken token) {
+        AppDb db = DbProvider.get(context);
+        ArchiveStore archives = ArchiveStore.get(context);
+        MerchantCategories categories = MerchantCategories.get(context);
+        FxRates fx = FxRates.get(context);
+        int reporting = fx.reportingCurrency();
+        long[] out = new long[Category.values().length];
+        // Under the archive read lock, so archived and live rows do not overlap.
+        LedgerReader.get(context).locked(() -> {
+            YearMonth from = YearMonth.from(Instant.ofEpochMilli(start).atZone(zone));
+            YearMonth to = YearMonth.from(Instant.ofEpochMilli(end - 1).atZone(zone));
+            for (MonthArchive a : archives.between(from, to)) {
+                if (token != null) token.throwIfCancelled();
+                MonthArchive.Columns c = a.decode();
+                for (int i = 0; i < c.size(); i++) {
+                    if (c.times[i] < start || c.times[i] >= end) continue;
+                    out[categories.categoryOf(c.merchantIds[i]).code] += c.currencies[i] == reporting
+                            ? c.amounts[i]
+                            : fx.toReporting(c.amounts[i], c.currencies[i], c.times[i], zone);
+                }
+            }
+            for (CategoryTotal t : db.categoryDao().totalsInRange(start, end, reporting)) {
+                out[Category.fromCode(t.category).code] += t.currency == reporting
+                        ? t.totalMinor : fx.toReporting(t.totalMinor, t.currency, t.epochDay);
+            }
+            return null;
+        });
+        return out;
+    }
+
+    /**
+     * Draws the report and writes it to a stream as a ZIP. The stream is finished but not
+     * closed.
+     *
+     * @param workers threads drawing pages; 1 draws them one after another
+     * @param token   cancels between pages, may be null
+     * @throws IOException on write or encoding failure
+     */
+    public static Summary write(Data data, OutputStream out, int workers,
+                                @Nullable CancellationToken token) throws IOException {
+        List<Page> pages = pages(data);
+        int n = pages.size();
+        workers = Math.max(1, Math.min(workers, n));
+        List<CompletableFuture<RenderContext>> drawn = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) drawn.add(new CompletableFuture<>());
+        AtomicInteger next = new AtomicInteger();
+        List<RenderContext> contexts = new ArrayList<>(workers);
+        ExecutorService pool = newPool(workers);
+        long bytes = 0;
+        try {
+            for (int w = 0; w < workers; w++) {
+                RenderContext ctx = new RenderContext();
+                contexts.add(ctx);
+                pool.execute(() -> drawPages(ctx, pages, drawn, next, token));
+            }
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (int i = 0; i < n; i++) {
+                RenderContext ctx = await(drawn.get(i), token);
+                int size = ctx.png.size();
+                ZipEntry entry = new ZipEntry(pages.get(i).name);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(size);
+                entry.setCompressedSize(size);
+                entry.setCrc(ctx.crc.getValue());
+                zip.putNextEntry(entry);
+                ctx.png.writeTo(zip);
+                zip.closeEntry();
+                bytes += size;
+                ctx.idle.release();
+            }
+            zip.finish();
+        } finally {
+            pool.shutdownNow();
+            try {
+                // A worker may still be drawing; its bitmap is recycled only once it is done.
+                if (pool.awaitTermination(10, TimeUnit.SECONDS)) {
+                    for (RenderContext ctx : contexts) ctx.bitmap.recycle();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new Summary(n, bytes, workers);
+    }
+
+    /**
+     * A worker's loop: wait until the writer has taken the previous page, claim the next one,
+     * draw and encode it. Claiming only with a free context means the lowest unwritten page
+     * always has one, so the writer never waits on a page that cannot be drawn.
+     */
+    private static void drawPages(RenderContext ctx, List<Page> pages,
+                                  List<CompletableFuture<RenderContext>> drawn, AtomicInteger next,
+                                  @Nullable CancellationToken token) {
+        try {
+            while (true) {
+                ctx.idle.acquire();
+                int i = next.getAndIncrement();
+                if (i >= pages.size()) return;
+                try {
+                    if (token != null) token.throwIfCancelled();
+                    Page page = pages.get(i);
+                    page.painter.draw(ctx.canvas);
+                    ctx.png.reset();
+                    ctx.crc.reset();
+                    if (!ctx.bitmap.compress(Bitmap.CompressFormat.PNG, 100,
+                            new CheckedOutputStream(ctx.png, ctx.crc))) {
+                        throw new IOException("Cannot encode " + page.name);
+                    }
+                    drawn.get(i).complete(ctx);
+                } catch (Exception e) {
+                    drawn.get(i).completeExceptionally(e);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            // The writer is done or gave up.
+        }
+    }
+
+    private static RenderContext await(CompletableFuture<RenderContext> page,
+                                       @Nullable CancellationToken token) throws IOException {
+        while (true) {
+            if (token != null) token.throwIfCancelled();
+            try {
+                return page.get(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Check the token again.
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IOException(cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Report interrupted");
+            }
+        }
+    }
+
+    private static ExecutorService newPool(int workers) {
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "report-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Overview, merchants, categories, then one page per month. */
+    private static List<Page> pages(Data d) {
+        int w = MonthlyBarChartExporter.WIDTH;
+        int h = MonthlyBarChartExporter.HEIGHT;
+        List<Page> pages = new ArrayList<>(3 + 12);
+
+        double[] months = new double[12];
+        long total = 0;
+        for (int m = 1; m <= 12; m++) {
+            YearMonth ym = YearMonth.of(d.year, m);
+            int from = ym.atDay(1).getDayOfYear() - 1;
+            long sum = 0;
+            for (int i = from; i < from + ym.lengthOfMonth(); i++) sum += d.dayTotalsMinor[i];
+            months[m - 1] = sum / 100.0;
+            total += sum;
+        }
+        String overview = d.year + " Spending (Monthly Sum), total "
+                + MonthlyBarChartExporter.formatMinor(total);
+        pages.add(new Page("overview.png", canvas -> MonthlyBarChartExporter.drawChart(
+                canvas, months, null, overview, d.unit, w, h, 1f)));
+
+        int n = d.topMerchants.size();
+        String[] merchantNames = new String[n];
+        long[] merchantTotals = new long[n];
+        for (int i = 0; i < n; i++) {
+            MerchantTotal t = d.topMerchants.get(i);
+            merchantNames[i] = t.name == null ? "#" + t.merchantId : t.name;
+            merchantTotals[i] = t.totalMinor;
+        }
+        pages.add(new Page("merchants.png", canvas -> MonthlyBarChartExporter.drawRanking(
+                canvas, d.year + " Top Merchants", merchantNames, merchantTotals,
+                d.merchantsTotalMinor, d.unit, w, h, 1f)));
+
+        List<Category> spent = new ArrayList<>();
+        for (Category c : Category.values()) {
+            if (d.categoryTotalsMinor[c.code] != 0) spent.add(c);
+        }
+        spent.sort((a, b) -> Long.compare(d.categoryTotalsMinor[b.code], d.categoryTotalsMinor[a.code]));
+        String[] categoryNames = new String[spent.size()];
+        long[] categoryTotals = new long[spent.size()];
+        for (int i = 0; i < categoryNames.length; i++) {
+            categoryNames[i] = spent.get(i).label;
+            categoryTotals[i] = d.categoryTotalsMinor[spent.get(i).code];
+        }
+        long categoriesTotal = Arrays.stream(categoryTotals).sum();
+        pages.add(new Page("categories.png", canvas -> MonthlyBarChartExporter.drawRanking(
+                canvas, d.year + " Spending by Category", categoryNames, categoryTotals,
+                categoriesTotal, d.unit, w, h, 1f)));
+
+        for (int m = 1; m <= 12; m++) {
+            YearMonth ym = YearMonth.of(d.year, m);
+            int from = ym.atDay(1).getDayOfYear() - 1;
+            int days = ym.lengthOfMonth();
+            String title = MonthlyBarChartExporter.monthTitle(d.year, m);
+            String name = String.format(Locale.ROOT, "%d-%02d.png", d.year, m);
+            pages.add(new Page(name, canvas -> {
+                double[] daySums = new double[days];
+                for (int i = 0; i < days; i++) daySums[i] = d.dayTotalsMinor[from + i] / 100.0;
+                MonthlyBarChartExporter.drawChart(canvas, daySums, null, title, d.unit, w, h, 1f);
+            }));
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.auto_accounting.data.export;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Memory-bounded LRU of rendered month charts.
+ * <p>An entry is keyed by (year-month, size) and stamped with the ledger version of that
+ * month it was rendered from; a lookup with a newer version misses, so a chart is only
+ * invalidated when new data lands in its month. A chart that also depends on the date (the
+ * current month with its forecast) is stamped with the day too. Cached bitmaps are shared:
+ * callers must not recycle them.
+ */
+public final class ChartCache {
+
+    /** Use 1/8 of the heap limit for rendered charts. */
+    private static final int MAX_KB = (int) (Runtime.getRuntime().maxMemory() / 1024 / 8);
+
+    private static final LruCache<String, Entry> CACHE = new LruCache<String, Entry>(MAX_KB) {
+        @Override
+        protected int sizeOf(String key, Entry e) {
+            return Math.max(1, e.bitmap.getAllocationByteCount() / 1024);
+        }
+    };
+
+    /** A rendered chart, the month version it reflects and the day it was drawn for. */
+    private static final class Entry {
+        final long version;
+        final long day;
+        final Bitmap bitmap;
+
+        Entry(long version, long day, Bitmap bitmap) {
+            this.version = version;
+            this.day = day;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private ChartCache() {
+        // No instances.
+    }
+
+    /**
+     * @return the cached chart rendered at {@code version}, or null on a miss
+     */
+    @Nullable
+    public static Bitmap get(int year, int month, int width, int height, long version) {
+        return get(year, month, width, height, version, 0);
+    }
+
+    /**
+     * @param day epoch day the chart must have been drawn for
+     * @return the cached chart rendered at {@code version} for {@code day}, or null on a miss
+     */
+    @Nullable
+    public static Bitmap get(int year, int month, int width, int height, long version, long day) {
+        Entry e = CACHE.get(key(year, month, width, height));
+        if (e == null || e.version != version || e.day != day || e.bitmap.isRecycled()) return null;
+        return e.bitmap;
+    }
+
+    /** Stores a chart rendered from the given month version, replacing older versions. */
+    public static void put(int year, int month, int width, int height, long version, Bitmap bmp) {
+        put(year, month, width, height, version, 0, bmp);
+    }
+
+    /** Stores a chart rendered from the given month version for a day, replacing older versions. */
+    public static void put(int year, int month, int width, int height, long version, long day, Bitmap bmp) {
+        String key = key(year, month, width, height);
+        Entry old = CACHE.get(key);
+        if (old != null && old.version > version) return; // a newer render already landed
+        CACHE.put(key, new Entry(version, day, bmp));
+    }
+
+    /** @return true if {@code bmp} is owned by the cache and must not be recycled. */
+    public static boolean contains(@Nullable Bitmap bmp) {
+        if (bmp == null) return false;
+        for (Entry e : CACHE.snapshot().values()) {
+            if (e.bitmap == bmp) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Shrinks the cache in response to {@link ComponentCallbacks2#onTrimMemory(int)}.
+     *
+     * @param level trim level passed to onTrimMemory
+     */
+    public static void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            CACHE.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            CACHE.trimToSize(CACHE.maxSize() / 2);
+        }
+    }
+
+    private static String key(int year, int month, int width, int height) {
+        return year + "-" + month + "@" + width + "x" + height;
+    }
+}
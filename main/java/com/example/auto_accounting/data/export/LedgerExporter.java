@@ -0,0 +1,238 @@
+package com.example.auto_accounting.data.export;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.repo.LedgerReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports ledger rows as CSV or JSON lines, optionally gzip-compressed.
+ * <p>Rows are streamed from {@link LedgerReader#forEachInRange} straight into a buffered
+ * writer, so memory does not grow with the number of rows. Each row carries the id, the local
+ * time as ISO-8601 with offset, the merchant, the amount in major units and the ISO code of its
+ * currency. Amounts are exported as stored, not converted.
+ */
+public final class LedgerExporter {
+
+    /** Output format. */
+    public enum Format {
+        CSV("text/csv", "csv"),
+        JSON_LINES("application/x-ndjson", "jsonl");
+
+        /** MIME type of the uncompressed file. */
+        public final String mimeType;
+        /** File name extension without the dot. */
+        public final String extension;
+
+        Format(String mimeType, String extension) {
+            this.mimeType = mimeType;
+            this.extension = extension;
+        }
+    }
+
+    /** MIME type of a gzip-compressed export. */
+    public static final String GZIP_MIME_TYPE = "application/gzip";
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /** Source of rows; lets the benchmark export from a database other than the app's. */
+    public interface Rows {
+        long forEach(LedgerReader.RowSink sink) throws IOException;
+    }
+
+    private LedgerExporter() {
+        // Utility class.
+    }
+
+    /**
+     * @return a file name such as {@code ledger-2024-01-01_2024-03-31.csv.gz}
+     */
+    public static String fileName(LocalDate from, LocalDate to, Format format, boolean gzip) {
+        return "ledger-" + from + "_" + to + "." + format.extension + (gzip ? ".gz" : "");
+    }
+
+    /**
+     * Exports rows within [startMillis, endMillis) to a SAF document. Blocking.
+     *
+     * @param uri   document from {@code CreateDocument}
+     * @param token cancels the export between rows, may be null
+     * @return number of rows written
+     * @throws IOException on write failure
+     */
+    public static long export(Context context, ContentResolver resolver, Uri uri, Format format,
+                              boolean gzip, long startMillis, long endMillis,
+                              @Nullable CancellationToken token) throws IOException {
+        LedgerReader reader = LedgerReader.get(context);
+        try (OutputStream os = resolver.openOutputStream(uri)) {
+            if (os == null) throw new IOException("openOutputStream returned null: " + uri);
+            return write(sink -> reader.forEachInRange(startMillis, endMillis, sink, token),
+                    os, format, gzip, ZoneId.systemDefault());
+        }
+    }
+
+    /**
+     * Writes rows to a stream. The stream is finished but not closed.
+     *
+     * @return number of rows written
+     * @throws IOException on write failure
+     */
+    public static long write(Rows rows, OutputStream out, Format format, boolean gzip, ZoneId zone)
+            throws IOException {
+        GZIPOutputStream gz = gzip ? new FastGzip(out) : null;
+        Writer w = new BufferedWriter(new OutputStreamWriter(gz != null ? gz : out,
+                StandardCharsets.UTF_8), BUFFER_BYTES);
+        RowFormatter f = new RowFormatter(format, zone);
+        if (format == Format.CSV) w.write("id,time,merchant,amount,currency\n");
+        long n = rows.forEach((id, time, merchant, amount, currency) -> {
+            f.format(id, time, merchant, amount, currency);
+            w.append(f.line);
+        });
+        w.flush();
+        if (gz != null) gz.finish();
+        return n;
+    }
+
+    /** Deflate level 1: about twice as fast as the default for a few percent larger files. */
+    private static final class FastGzip extends GZIPOutputStream {
+        FastGzip(OutputStream out) throws IOException {
+            super(out, BUFFER_BYTES);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    /** Formats one row into a reused buffer; caches the date part of the current local day. */
+    private static final class RowFormatter {
+        private static final DateTimeFormatter ISO = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+        private static final long DAY_MS = 86_400_000L;
+
+        final StringBuilder line = new StringBuilder(128);
+        private final Format format;
+        private final ZoneId zone;
+        private long dayStart = Long.MAX_VALUE, dayEnd = Long.MIN_VALUE;
+        private String datePrefix, offset;
+
+        RowFormatter(Format format, ZoneId zone) {
+            this.format = format;
+            this.zone = zone;
+        }
+
+        void format(long id, long time, @Nullable String merchant, long amountMinor, int currency) {
+            line.setLength(0);
+            if (format == Format.CSV) {
+                line.append(id).append(',');
+                appendTime(time);
+                line.append(',');
+                appendCsv(merchant);
+                line.append(',');
+                appendAmount(amountMinor);
+                line.append(',').append(CurrencyCode.fromCode(currency).iso);
+            } else {
+                line.append("{\"id\":").append(id).append(",\"time\":\"");
+                appendTime(time);
+                line.append("\",\"merchant\":");
+                appendJson(merchant);
+                line.append(",\"amount\":");
+                appendAmount(amountMinor);
+                line.append(",\"currency\":\"").append(CurrencyCode.fromCode(currency).iso).append("\"}");
+            }
+            line.append('\n');
+        }
+
+        /** Like ISO_OFFSET_DATE_TIME at second precision, without a formatter call per row. */
+        private void appendTime(long time) {
+            if (time < dayStart || time >= dayEnd) {
+                ZonedDateTime z = Instant.ofEpochMilli(time).atZone(zone);
+                LocalDate d = z.toLocalDate();
+                dayStart = d.atStartOfDay(zone).toInstant().toEpochMilli();
+                dayEnd = d.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+                datePrefix = d + "T";
+                offset = z.getOffset().getId();
+                if (dayEnd - dayStart != DAY_MS) {
+                    // The offset changes within this day (DST): format its rows fully.
+                    dayEnd = dayStart;
+                    line.append(ISO.format(z.withNano(0)));
+                    return;
+                }
+            }
+            long s = (time - dayStart) / 1000;
+            line.append(datePrefix);
+            appendTwo(s / 3600);
+            line.append(':');
+            appendTwo(s / 60 % 60);
+            line.append(':');
+            appendTwo(s % 60);
+            line.append(offset);
+        }
+
+        private void appendTwo(long v) {
+            line.append((char) ('0' + v / 10)).append((char) ('0' + v % 10));
+        }
+
+        private void appendAmount(long minor) {
+            if (minor < 0) line.append('-');
+            long abs = Math.abs(minor);
+            line.append(abs / 100).append('.');
+            appendTwo(abs % 100);
+        }
+
+        /** RFC 4180: quote fields holding a comma, quote or line break; double the quotes. */
+        private void appendCsv(@Nullable String s) {
+            if (s == null) return;
+            boolean quote = false;
+            for (int i = 0; i < s.length() && !quote; i++) {
+                char c = s.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                line.append(s);
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"') line.append('"');
+                line.append(c);
+            }
+            line.append('"');
+        }
+
+        private void appendJson(@Nullable String s) {
+            if (s == null) {
+                line.append("null");
+                return;
+            }
+            line.append('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c == '"' || c == '\\') {
+                    line.append('\\').append(c);
+                } else if (c < 0x20) {
+                    line.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                } else {
+                    line.append(c);
+                }
+            }
+            line.append('"');
+        }
+    }
+}
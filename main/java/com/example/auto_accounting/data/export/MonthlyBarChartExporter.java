@@ -1,197 +1,517 @@
-package com.example.auto_accounting.data.export;
-
-import android.content.ContentResolver;
-import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.RectF;
-import android.net.Uri;
-
-import com.example.auto_accounting.data.db.DbProvider;
-import com.example.auto_accounting.data.db.Table;
-
-import java.io.IOException;
-import java.io.OutputStream;
-import java.text.DecimalFormat;
-import java.time.Instant;
-import java.time.LocalDate;
-import java.time.YearMonth;
-import java.time.ZoneId;
-import java.util.List;
-
-/**
- * Builds and exports a per-day summed bar chart for a month.
- * Drawing is done on a {@link Bitmap} via {@link Canvas}.
- */
-public final class MonthlyBarChartExporter {
-
-    // Layout constants (no magic numbers).
-    private static final int WIDTH = 1400;
-    private static final int HEIGHT = 900;
-    private static final int MARGIN_LEFT = 100;
-    private static final int MARGIN_RIGHT = 40;
-    private static final int MARGIN_TOP = 60;
-    private static final int MARGIN_BOTTOM = 140;
-    private static final float BAR_GAP = 8f;
-    private static final int Y_TICKS = 5;
-
-    private MonthlyBarChartExporter() {
-        // Utility class.
-    }
-
-    /** Exports the current month (system timezone) as a PNG to the given Uri. */
-    public static void exportCurrentMonth(
-            Context context,
-            ContentResolver resolver,
-            Uri uri
-    ) throws IOException {
-        YearMonth ym = YearMonth.now(ZoneId.systemDefault());
-        exportMonth(context, resolver, uri, ym.getYear(), ym.getMonthValue());
-    }
-
-    /** Exports a specific year-month as a PNG to the given Uri. */
-    public static void exportMonth(
-            Context context,
-            ContentResolver resolver,
-            Uri uri,
-            int year,
-            int month
-    ) throws IOException {
-        YearMonth ym = YearMonth.of(year, month);
-        ZoneId zone = ZoneId.systemDefault();
-
-        // [1] Compute time range [start, end).
-        long start = ym.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
-        long end = ym.plusMonths(1).atDay(1).atStartOfDay(zone)
-                .toInstant().toEpochMilli();
-
-        // [2] Load rows within the month.
-        List<Table> rows = DbProvider.get(context).tableDao().listInRange(start, end);
-
-        // [3] Aggregate to daily sums (cents → currency units).
-        double[] daySums = buildDaySums(rows, ym, zone);
-
-        // [4] Draw and write to Uri.
-        Bitmap bmp = drawChartBitmap(daySums, year, month);
-        writeToUri(resolver, uri, bmp);
-        bmp.recycle();
-    }
-
-    /** Builds a chart bitmap for the current month (for in-app preview). */
-    public static Bitmap buildCurrentMonthBitmap(Context context) throws IOException {
-        YearMonth ym = YearMonth.now(ZoneId.systemDefault());
-        return buildMonthBitmap(context, ym.getYear(), ym.getMonthValue());
-    }
-
-    /** Builds a chart bitmap for a specific year-month (for in-app preview). */
-    public static Bitmap buildMonthBitmap(Context context, int year, int month) throws IOException {
-        YearMonth ym = YearMonth.of(year, month);
-        ZoneId zone = ZoneId.systemDefault();
-
-        long start = ym.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
-        long end = ym.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
-
-        List<Table> rows = DbProvider.get(context).tableDao().listInRange(start, end);
-        double[] daySums = buildDaySums(rows, ym, zone);
-        return drawChartBitmap(daySums, year, month);
-    }
-
-    /** Aggregates DB rows into per-day sums for the given month. */
-    private static double[] buildDaySums(List<Table> rows, YearMonth ym, ZoneId zone) {
-        int days = ym.lengthOfMonth();
-        double[] daySum = new double[days];
-
-        for (Table row : rows) {
-            LocalDate d = Instant.ofEpochMilli(row.timeMillis).atZone(zone).toLocalDate();
-            if (d.getYear() == ym.getYear() && d.getMonthValue() == ym.getMonthValue()) {
-                int idx = d.getDayOfMonth() - 1;
-                daySum[idx] += row.amountMinor / 100.0; // cents → currency units
-            }
-        }
-        return daySum;
-    }
-
-    /** Draws the bar chart into a bitmap and returns it. */
-    private static Bitmap drawChartBitmap(double[] daySum, int year, int month) {
-        int plotW = WIDTH - MARGIN_LEFT - MARGIN_RIGHT;
-        int plotH = HEIGHT - MARGIN_TOP - MARGIN_BOTTOM;
-
-        double maxY = 0;
-        for (double v : daySum) if (v > maxY) maxY = v;
-        if (maxY <= 0) maxY = 1;
-
-        Bitmap bmp = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bmp);
-
-        Paint text = new Paint(Paint.ANTI_ALIAS_FLAG);
-        text.setColor(0xFF333333);
-        text.setTextSize(32);
-
-        Paint axis = new Paint(Paint.ANTI_ALIAS_FLAG);
-        axis.setColor(0xFF333333);
-        axis.setStrokeWidth(2);
-
-        Paint grid = new Paint(axis);
-        grid.setColor(0xFFEEEEEE);
-        grid.setStrokeWidth(1);
-
-        Paint bar = new Paint(Paint.ANTI_ALIAS_FLAG);
-        bar.setColor(0xFF4CAF50);
-
-        // Background and title
-        canvas.drawColor(0xFFFFFFFF);
-        text.setTextSize(42);
-        canvas.drawText(year + " / " + month + " Spending (Daily Sum)", MARGIN_LEFT, 48, text);
-        text.setTextSize(28);
-
-        // Axes
-        int x0 = MARGIN_LEFT;
-        int y0 = HEIGHT - MARGIN_BOTTOM;
-        canvas.drawLine(x0, y0, WIDTH - MARGIN_RIGHT, y0, axis);
-        canvas.drawLine(x0, y0, x0, MARGIN_TOP, axis);
-
-        // Y ticks & grid
-        DecimalFormat df = new DecimalFormat("0.##");
-        for (int i = 1; i <= Y_TICKS; i++) {
-            float y = (float) (y0 - (i * 1.0 / Y_TICKS) * plotH);
-            canvas.drawLine(x0, y, WIDTH - MARGIN_RIGHT, y, grid);
-            String label = df.format(maxY * i / Y_TICKS);
-            float labelX = x0 - 12 - text.measureText(label);
-            canvas.drawText(label, labelX, y + 10, text);
-        }
-        canvas.drawText("Unit: currency", WIDTH - MARGIN_RIGHT - 160, MARGIN_TOP + 8, text);
-
-        // Bars & X labels
-        int days = daySum.length;
-        float barW = Math.max(8f, (plotW - BAR_GAP * (days + 1)) / days);
-        int step = Math.max(1, (int) Math.ceil(days / 15.0)); // up to ~15 labels
-
-        for (int i = 0; i < days; i++) {
-            float left = MARGIN_LEFT + BAR_GAP + i * (barW + BAR_GAP);
-            float top = (float) (y0 - (daySum[i] / maxY) * plotH);
-            RectF r = new RectF(left, top, left + barW, y0);
-            canvas.drawRect(r, bar);
-
-            int day = i + 1;
-            if (i % step == 0 || i == days - 1) {
-                String label = String.valueOf(day);
-                float tw = text.measureText(label);
-                canvas.drawText(label, left + (barW - tw) / 2f, y0 + 36, text);
-            }
-        }
-
-        return bmp;
-    }
-
-    /** Writes the bitmap as PNG to the given Uri. */
-    private static void writeToUri(ContentResolver resolver, Uri uri, Bitmap bmp) throws IOException {
-        try (OutputStream os = resolver.openOutputStream(uri)) {
-            if (os == null) throw new IOException("openOutputStream returned null: " + uri);
-            bmp.compress(Bitmap.CompressFormat.PNG, 100, os);
-            os.flush();
-        }
-    }
-}
-
-
+package com.example.auto_accounting.data.export;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.DashPathEffect;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.MerchantTotal;
+import com.example.auto_accounting.data.fx.FxRates;
+import com.example.auto_accounting.data.repo.LedgerRepository;
+import com.example.auto_accounting.data.repo.LedgerVersion;
+import com.example.auto_accounting.data.repo.MerchantBreakdown;
+import com.example.auto_accounting.data.repo.MonthData;
+import com.example.auto_accounting.data.repo.SpendForecast;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Locale;
+
+/**
+ * Builds and exports a per-day summed bar chart for a month, and a pie chart of the top
+ * merchants of a range ({@link MerchantBreakdown}). The drawing itself works on any
+ * {@link Canvas}, so {@link AnnualReportExporter} reuses it on bitmaps of its own.
+ * The in-app preview of the current month also draws the {@link SpendForecast}: the spending
+ * still expected per day as dashed bars, and the projected month-end total with its band.
+ * Drawing is done on a {@link Bitmap} via {@link Canvas}.
+ */
+public final class MonthlyBarChartExporter {
+
+    // Layout constants (no magic numbers).
+    /** Export size in pixels, also the page size of {@link AnnualReportExporter}. */
+    static final int WIDTH = 1400;
+    static final int HEIGHT = 900;
+    private static final int MARGIN_LEFT = 100;
+    private static final int MARGIN_RIGHT = 40;
+    private static final int MARGIN_TOP = 60;
+    private static final int MARGIN_BOTTOM = 140;
+    private static final float BAR_GAP = 8f;
+    private static final int Y_TICKS = 5;
+
+    /** Screen density the layout constants above are tuned for (export = 1:1). */
+    private static final float EXPORT_DENSITY = 2f;
+    /** Margins may take at most 1/MIN_PLOT_RATIO of a preview's width. */
+    private static final int MIN_PLOT_RATIO = 4;
+
+    /** Slice colours of the breakdown pie, by rank; wraps after the last. */
+    private static final int[] SLICE_COLORS = {
+            0xFF4CAF50, 0xFF2196F3, 0xFFFF9800, 0xFFE91E63, 0xFF9C27B0,
+            0xFF00BCD4, 0xFFFFC107, 0xFF795548, 0xFF3F51B5, 0xFF8BC34A,
+    };
+    /** Slice colour of the merchants outside the top N. */
+    private static final int OTHER_COLOR = 0xFFBDBDBD;
+
+    private MonthlyBarChartExporter() {
+        // Utility class.
+    }
+
+    /** Exports the current month (system timezone) as a PNG to the given Uri. */
+    public static void exportCurrentMonth(
+            Context context,
+            ContentResolver resolver,
+            Uri uri
+    ) throws IOException {
+        YearMonth ym = YearMonth.now(ZoneId.systemDefault());
+        exportMonth(context, resolver, uri, ym.getYear(), ym.getMonthValue());
+    }
+
+    /** Exports a specific year-month as a PNG to the given Uri. */
+    public static void exportMonth(
+            Context context,
+            ContentResolver resolver,
+            Uri uri,
+            int year,
+            int month
+    ) throws IOException {
+        // [1] Load the month (rows + per-day totals), cached by the repository.
+        MonthData data = LedgerRepository.get(context).loadMonth(year, month);
+
+        // [2] Daily sums (cents → currency units).
+        double[] daySums = buildDaySums(data);
+
+        // [3] Draw at full export resolution and write to Uri.
+        Bitmap bmp = drawChartBitmap(daySums, null, unitOf(context), year, month, WIDTH, HEIGHT, 1f);
+        writeToUri(resolver, uri, bmp);
+        bmp.recycle();
+    }
+
+    /** Builds a chart bitmap for the current month at export resolution. */
+    public static Bitmap buildCurrentMonthBitmap(Context context) throws IOException {
+        YearMonth ym = YearMonth.now(ZoneId.systemDefault());
+        return buildMonthBitmap(context, ym.getYear(), ym.getMonthValue());
+    }
+
+    /**
+     * Builds a chart bitmap for the current month sized for an in-app preview.
+     *
+     * @param widthPx  target view width in pixels
+     * @param heightPx target view height in pixels
+     * @param density  display density of the target view
+     */
+    public static Bitmap buildCurrentMonthBitmap(
+            Context context, int widthPx, int heightPx, float density) throws IOException {
+        YearMonth ym = YearMonth.now(ZoneId.systemDefault());
+        return buildMonthBitmap(context, ym.getYear(), ym.getMonthValue(), widthPx, heightPx, density);
+    }
+
+    /** Builds a chart bitmap for a specific year-month at export resolution. */
+    public static Bitmap buildMonthBitmap(Context context, int year, int month) throws IOException {
+        return buildMonthBitmap(context, year, month, WIDTH, HEIGHT, EXPORT_DENSITY);
+    }
+
+    /**
+     * Builds a chart bitmap for a specific year-month (for in-app preview).
+     * <p>The chart is drawn at the view's own pixel size with text and margins scaled by its
+     * density, so draw time and memory follow the screen rather than the export size.
+     * Served from {@link ChartCache} when no row landed in the month since the last render.
+     * The current month carries the {@link SpendForecast}, whose model is kept up to date per
+     * change, and is cached for the day only. The returned bitmap is owned by the cache and
+     * must not be recycled.
+     *
+     * @param widthPx  target width in pixels
+     * @param heightPx target height in pixels
+     * @param density  display density of the target
+     */
+    public static Bitmap buildMonthBitmap(
+            Context context, int year, int month, int widthPx, int heightPx, float density)
+            throws IOException {
+        // Read the version before querying, so a write racing the render leaves a stale stamp.
+        long version = LedgerVersion.forMonth(year, month);
+        LocalDate today = LocalDate.now(ZoneId.systemDefault());
+        boolean current = YearMonth.from(today).equals(YearMonth.of(year, month));
+        long day = current ? today.toEpochDay() : 0;
+        Bitmap cached = ChartCache.get(year, month, widthPx, heightPx, version, day);
+        if (cached != null) return cached;
+
+        MonthData data = LedgerRepository.get(context).loadMonth(year, month);
+        double[] daySums = buildDaySums(data);
+        SpendForecast.Forecast forecast = current ? SpendForecast.get(context).forecast() : null;
+        Bitmap bmp = drawChartBitmap(daySums, forecast, unitOf(context), year, month,
+                widthPx, heightPx, scaleFor(widthPx, density));
+        ChartCache.put(year, month, widthPx, heightPx, data.version, day, bmp);
+        return bmp;
+    }
+
+    /**
+     * Returns the cached current-month chart of the given size without touching the database.
+     * Safe to call on the main thread.
+     *
+     * @return the cached chart, or null if it has to be rendered
+     */
+    @Nullable
+    public static Bitmap peekCurrentMonthBitmap(int widthPx, int heightPx) {
+        LocalDate today = LocalDate.now(ZoneId.systemDefault());
+        int year = today.getYear();
+        int month = today.getMonthValue();
+        return ChartCache.get(year, month, widthPx, heightPx, LedgerVersion.forMonth(year, month),
+                today.toEpochDay());
+    }
+
+    /**
+     * Exports the top-merchant pie chart of [startMillis, endMillis) as a PNG to the given Uri.
+     *
+     * @param topN number of merchants with their own slice; the rest share one
+     */
+    public static void exportBreakdown(
+            Context context,
+            ContentResolver resolver,
+            Uri uri,
+            long startMillis,
+            long endMillis,
+            int topN
+    ) throws IOException {
+        MerchantBreakdown.Result result =
+                MerchantBreakdown.get(context).load(startMillis, endMillis, topN, null);
+        Bitmap bmp = drawBreakdownBitmap(result, WIDTH, HEIGHT, 1f);
+        writeToUri(resolver, uri, bmp);
+        bmp.recycle();
+    }
+
+    /**
+     * Builds the top-merchant pie chart of [startMillis, endMillis) for an in-app preview.
+     * The ranking comes from the {@link MerchantBreakdown} cache; the bitmap is the caller's.
+     *
+     * @param widthPx  target width in pixels
+     * @param heightPx target height in pixels
+     * @param density  display density of the target
+     */
+    public static Bitmap buildBreakdownBitmap(
+            Context context, long startMillis, long endMillis, int topN,
+            int widthPx, int heightPx, float density) {
+        MerchantBreakdown.Result result =
+                MerchantBreakdown.get(context).load(startMillis, endMillis, topN, null);
+        return drawBreakdownBitmap(result, widthPx, heightPx, scaleFor(widthPx, density));
+    }
+
+    /**
+     * Draws a ranked breakdown: the pie on the left (on top in portrait), the legend beside it
+     * with rank, name, amount, share and count per merchant, and "Other" last.
+     */
+    private static Bitmap drawBreakdownBitmap(
+            MerchantBreakdown.Result result, int width, int height, float scale) {
+        Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bmp);
+        canvas.drawColor(0xFFFFFFFF);
+
+        TextPaint text = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        text.setColor(0xFF333333);
+        text.setTextSize(42 * scale);
+
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate first = Instant.ofEpochMilli(result.startMillis).atZone(zone).toLocalDate();
+        LocalDate last = Instant.ofEpochMilli(Math.max(result.startMillis, result.endMillis - 1))
+                .atZone(zone).toLocalDate();
+        float marginLeft = MARGIN_RIGHT * scale;
+        canvas.drawText(first + " – " + last + " Spending by Merchant", marginLeft, 48 * scale, text);
+
+        float top = MARGIN_TOP * scale + 20 * scale;
+        float bottom = height - MARGIN_RIGHT * scale;
+        float right = width - MARGIN_RIGHT * scale;
+        boolean portrait = height > width;
+        float diameter = portrait
+                ? Math.min(right - marginLeft, (bottom - top) / 2f)
+                : Math.min((right - marginLeft) / 2f, bottom - top);
+        RectF pie = new RectF(marginLeft, top, marginLeft + diameter, top + diameter);
+
+        Paint slice = new Paint(Paint.ANTI_ALIAS_FLAG);
+        text.setTextSize(28 * scale);
+        if (result.totalMinor <= 0) {
+            slice.setColor(OTHER_COLOR);
+            slice.setStyle(Paint.Style.STROKE);
+            slice.setStrokeWidth(2 * scale);
+            canvas.drawOval(pie, slice);
+            canvas.drawText("No spending", pie.centerX() - text.measureText("No spending") / 2f,
+                    pie.centerY(), text);
+            return bmp;
+        }
+
+        // Slices clockwise from 12 o'clock, largest first; a positive share keeps a sliver.
+        float start = -90f;
+        int n = result.top.size();
+        for (int i = 0; i <= n; i++) {
+            double share = i < n ? result.share(result.top.get(i)) : result.otherShare();
+            if (share <= 0) continue;
+            float sweep = (float) (share * 360.0);
+            slice.setColor(i < n ? SLICE_COLORS[i % SLICE_COLORS.length] : OTHER_COLOR);
+            canvas.drawArc(pie, start, sweep, true, slice);
+            start += sweep;
+        }
+
+        // Legend.
+        float legendLeft = portrait ? marginLeft : pie.right + 40 * scale;
+        float legendTop = portrait ? pie.bottom + 40 * scale : top;
+        int lines = n + (result.otherCount > 0 ? 1 : 0);
+        float lineH = Math.min(64 * scale, (bottom - legendTop) / Math.max(1, lines));
+        text.setTextSize(Math.min(28 * scale, lineH * 0.45f));
+        float swatch = text.getTextSize();
+        Paint key = new Paint(Paint.ANTI_ALIAS_FLAG);
+        RectF box = new RectF();
+        float nameLeft = legendLeft + swatch * 1.6f;
+        float textWidth = right - nameLeft;
+        for (int i = 0; i < lines; i++) {
+            boolean other = i == n;
+            MerchantTotal t = other ? null : result.top.get(i);
+            float y = legendTop + i * lineH;
+            key.setColor(other ? OTHER_COLOR : SLICE_COLORS[i % SLICE_COLORS.length]);
+            box.set(legendLeft, y, legendLeft + swatch, y + swatch);
+            canvas.drawRect(box, key);
+
+            String name = other ? "Other (" + (result.merchants - n) + ")"
+                    : (i + 1) + ". " + (t.name == null ? "#" + t.merchantId : t.name);
+            long amount = other ? result.otherMinor : t.totalMinor;
+            double share = other ? result.otherShare() : result.share(t);
+            long count = other ? result.otherCount : t.count;
+            String detail = String.format(Locale.US, "%s · %.1f%% · %d",
+                    formatMinor(amount), share * 100, count);
+            float detailW = text.measureText(detail);
+            CharSequence fitted = TextUtils.ellipsize(name, text,
+                    Math.max(0f, textWidth - detailW - 24 * scale), TextUtils.TruncateAt.END);
+            canvas.drawText(fitted, 0, fitted.length(), nameLeft, y + swatch * 0.85f, text);
+            canvas.drawText(detail, right - detailW, y + swatch * 0.85f, text);
+        }
+        return bmp;
+    }
+
+    /** Minor units → "1234.56". */
+    static String formatMinor(long minor) {
+        return String.format(Locale.US, "%.2f", minor / 100.0);
+    }
+
+    /** Layout scale for a target: density-relative, capped so margins leave room to plot. */
+    private static float scaleFor(int widthPx, float density) {
+        float byDensity = density / EXPORT_DENSITY;
+        float byWidth = widthPx / (float) ((MARGIN_LEFT + MARGIN_RIGHT) * MIN_PLOT_RATIO);
+        return Math.min(byDensity, byWidth);
+    }
+
+    /** ISO code of the reporting currency, which month totals are converted into. */
+    private static String unitOf(Context context) {
+        return CurrencyCode.fromCode(FxRates.get(context).reportingCurrency()).iso;
+    }
+
+    /** Converts the month's per-day totals into currency units for drawing. */
+    private static double[] buildDaySums(MonthData data) {
+        long[] totals = data.dayTotalsMinor;
+        double[] daySum = new double[totals.length];
+        for (int i = 0; i < totals.length; i++) {
+            daySum[i] = totals[i] / 100.0; // cents → currency units
+        }
+        return daySum;
+    }
+
+    /** Title of a month's daily chart. */
+    static String monthTitle(int year, int month) {
+        return year + " / " + month + " Spending (Daily Sum)";
+    }
+
+    /** Draws the month's bar chart into a new bitmap, see {@link #drawChart}. */
+    private static Bitmap drawChartBitmap(
+            double[] daySum, @Nullable SpendForecast.Forecast forecast, String unit,
+            int year, int month, int width, int height, float scale) {
+        Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        drawChart(new Canvas(bmp), daySum, forecast, monthTitle(year, month), unit, width, height, scale);
+        return bmp;
+    }
+
+    /**
+     * Draws a bar chart over the whole canvas, one bar per value labelled 1..n. With a
+     * forecast, the spending still expected each day is drawn as a dashed outline on top of the
+     * day's bar, and the projected total goes under the title.
+     *
+     * @param daySum   values in currency units
+     * @param forecast forecast of the month, or null for actual sums only
+     * @param unit     ISO code of the currency the sums are in
+     * @param width    canvas width in pixels
+     * @param height   canvas height in pixels
+     * @param scale    multiplier applied to the layout constants (1 = export layout)
+     */
+    static void drawChart(
+            Canvas canvas, double[] daySum, @Nullable SpendForecast.Forecast forecast,
+            String title, String unit, int width, int height, float scale) {
+        float marginLeft = MARGIN_LEFT * scale;
+        float marginRight = MARGIN_RIGHT * scale;
+        float marginTop = MARGIN_TOP * scale;
+        float marginBottom = MARGIN_BOTTOM * scale;
+        float barGap = BAR_GAP * scale;
+
+        float plotW = width - marginLeft - marginRight;
+        float plotH = height - marginTop - marginBottom;
+
+        double[] expected = new double[daySum.length];
+        if (forecast != null) {
+            for (int i = 0; i < expected.length && i < forecast.expectedDayMinor.length; i++) {
+                expected[i] = forecast.expectedDayMinor[i] / 100.0;
+            }
+        }
+        double maxY = 0;
+        for (int i = 0; i < daySum.length; i++) maxY = Math.max(maxY, daySum[i] + expected[i]);
+        if (maxY <= 0) maxY = 1;
+
+        Paint text = new Paint(Paint.ANTI_ALIAS_FLAG);
+        text.setColor(0xFF333333);
+        text.setTextSize(32 * scale);
+
+        Paint axis = new Paint(Paint.ANTI_ALIAS_FLAG);
+        axis.setColor(0xFF333333);
+        axis.setStrokeWidth(2 * scale);
+
+        Paint grid = new Paint(axis);
+        grid.setColor(0xFFEEEEEE);
+        grid.setStrokeWidth(Math.max(1f, scale));
+
+        Paint bar = new Paint(Paint.ANTI_ALIAS_FLAG);
+        bar.setColor(0xFF4CAF50);
+
+        Paint projected = new Paint(Paint.ANTI_ALIAS_FLAG);
+        projected.setColor(0xFF4CAF50);
+        projected.setStyle(Paint.Style.STROKE);
+        projected.setStrokeWidth(2 * scale);
+        projected.setPathEffect(new DashPathEffect(new float[]{8 * scale, 6 * scale}, 0));
+
+        // Background and title
+        canvas.drawColor(0xFFFFFFFF);
+        text.setTextSize(42 * scale);
+        canvas.drawText(title, marginLeft, 48 * scale, text);
+        text.setTextSize(28 * scale);
+        if (forecast != null) {
+            // Between the x labels and the bottom edge.
+            String line = "Forecast month-end: " + formatMinor(forecast.totalMinor)
+                    + " (90%: " + formatMinor(forecast.lowMinor)
+                    + " – " + formatMinor(forecast.highMinor) + ")";
+            canvas.drawText(line, marginLeft, height - 40 * scale, text);
+        }
+
+        // Axes
+        float x0 = marginLeft;
+        float y0 = height - marginBottom;
+        canvas.drawLine(x0, y0, width - marginRight, y0, axis);
+        canvas.drawLine(x0, y0, x0, marginTop, axis);
+
+        // Y ticks & grid
+        DecimalFormat df = new DecimalFormat("0.##");
+        for (int i = 1; i <= Y_TICKS; i++) {
+            float y = (float) (y0 - (i * 1.0 / Y_TICKS) * plotH);
+            canvas.drawLine(x0, y, width - marginRight, y, grid);
+            String label = df.format(maxY * i / Y_TICKS);
+            float labelX = x0 - 12 * scale - text.measureText(label);
+            canvas.drawText(label, labelX, y + 10 * scale, text);
+        }
+        canvas.drawText("Unit: " + unit, width - marginRight - 160 * scale, marginTop + 8 * scale, text);
+
+        // Bars & X labels
+        int days = daySum.length;
+        float barW = Math.max(8f * scale, (plotW - barGap * (days + 1)) / days);
+        int step = Math.max(1, (int) Math.ceil(days / 15.0)); // up to ~15 labels
+        RectF r = new RectF();
+
+        for (int i = 0; i < days; i++) {
+            float left = marginLeft + barGap + i * (barW + barGap);
+            float top = (float) (y0 - (daySum[i] / maxY) * plotH);
+            r.set(left, top, left + barW, y0);
+            canvas.drawRect(r, bar);
+            if (expected[i] > 0) {
+                float half = projected.getStrokeWidth() / 2f;
+                float high = (float) (y0 - ((daySum[i] + expected[i]) / maxY) * plotH);
+                r.set(left + half, high, left + barW - half, top);
+                canvas.drawRect(r, projected);
+            }
+
+            int day = i + 1;
+            if (i % step == 0 || i == days - 1) {
+                String label = String.valueOf(day);
+                float tw = text.measureText(label);
+                canvas.drawText(label, left + (barW - tw) / 2f, y0 + 36 * scale, text);
+            }
+        }
+    }
+
+    /**
+     * Draws a ranking over the whole canvas: one line per item, largest first as given, with
+     * its name, a bar proportional to the largest amount, the amount and its share of
+     * {@code totalMinor}.
+     *
+     * @param names   item names
+     * @param amounts amounts in minor units, parallel to {@code names}
+     * @param totalMinor total the shares are relative to
+     * @param unit    ISO code of the currency the amounts are in
+     * @param scale   multiplier applied to the layout constants (1 = export layout)
+     */
+    static void drawRanking(Canvas canvas, String title, String[] names, long[] amounts,
+                            long totalMinor, String unit, int width, int height, float scale) {
+        canvas.drawColor(0xFFFFFFFF);
+        TextPaint text = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        text.setColor(0xFF333333);
+        text.setTextSize(42 * scale);
+        float left = MARGIN_RIGHT * scale;
+        float right = width - MARGIN_RIGHT * scale;
+        canvas.drawText(title, left, 48 * scale, text);
+        text.setTextSize(28 * scale);
+        String header = "Total " + formatMinor(totalMinor) + " " + unit;
+        canvas.drawText(header, right - text.measureText(header), 48 * scale, text);
+        if (names.length == 0) {
+            canvas.drawText("No spending", left, MARGIN_TOP * scale + 40 * scale, text);
+            return;
+        }
+
+        float top = MARGIN_TOP * scale + 20 * scale;
+        float lineH = Math.min(64 * scale, (height - MARGIN_RIGHT * scale - top) / names.length);
+        text.setTextSize(Math.min(28 * scale, lineH * 0.45f));
+        float nameW = (right - left) * 0.3f;
+        float detailW = (right - left) * 0.25f;
+        float barLeft = left + nameW;
+        float barMaxW = right - detailW - barLeft;
+        long max = 1;
+        for (long a : amounts) max = Math.max(max, a);
+        Paint bar = new Paint(Paint.ANTI_ALIAS_FLAG);
+        RectF r = new RectF();
+        for (int i = 0; i < names.length; i++) {
+            float y = top + i * lineH;
+            float baseline = y + lineH * 0.6f;
+            CharSequence fitted = TextUtils.ellipsize((i + 1) + ". " + names[i], text,
+                    nameW - 16 * scale, TextUtils.TruncateAt.END);
+            canvas.drawText(fitted, 0, fitted.length(), left, baseline, text);
+            bar.setColor(SLICE_COLORS[i % SLICE_COLORS.length]);
+            r.set(barLeft, y + lineH * 0.2f,
+                    barLeft + Math.max(0f, barMaxW * amounts[i] / (float) max), y + lineH * 0.8f);
+            canvas.drawRect(r, bar);
+            String detail = String.format(Locale.US, "%s · %.1f%%", formatMinor(amounts[i]),
+                    totalMinor == 0 ? 0.0 : amounts[i] * 100.0 / totalMinor);
+            canvas.drawText(detail, right - text.measureText(detail), baseline, text);
+        }
+    }
+
+    /** Writes the bitmap as PNG to the given Uri. */
+    private static void writeToUri(ContentResolver resolver, Uri uri, Bitmap bmp) throws IOException {
+        try (OutputStream os = resolver.openOutputStream(uri)) {
+            if (os == null) throw new IOException("openOutputStream returned null: " + uri);
+            bmp.compress(Bitmap.CompressFormat.PNG, 100, os);
+            os.flush();
+        }
+    }
+}
+
+
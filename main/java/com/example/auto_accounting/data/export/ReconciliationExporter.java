@@ -0,0 +1,145 @@
+package com.example.auto_accounting.data.export;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.repo.StatementReconciler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes a {@link StatementReconciler.Result} as one CSV, missing lines first, then extra rows,
+ * then matches. Columns: {@code status,line,statement_time,description,amount,currency,
+ * ledger_id,ledger_time,merchant}; the statement columns are empty for extra rows and the
+ * ledger columns for missing lines. Status is {@code missing}, {@code extra}, {@code matched} or
+ * {@code matched_other_merchant}. Date-only statement lines have a plain date as their time.
+ */
+public final class ReconciliationExporter {
+
+    public static final String MIME_TYPE = "text/csv";
+
+    private static final DateTimeFormatter ISO = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private ReconciliationExporter() {
+        // Utility class.
+    }
+
+    /**
+     * @return a file name such as {@code reconciliation-2024-01-01_2024-03-31.csv}
+     */
+    public static String fileName(StatementReconciler.Result result) {
+        ZoneId zone = ZoneId.systemDefault();
+        if (result.endMillis < result.startMillis) return "reconciliation.csv";
+        return "reconciliation-"
+                + DATE.format(Instant.ofEpochMilli(result.startMillis).atZone(zone)) + "_"
+                + DATE.format(Instant.ofEpochMilli(result.endMillis).atZone(zone)) + ".csv";
+    }
+
+    /**
+     * Exports to a SAF document. Blocking.
+     *
+     * @param uri document from {@code CreateDocument}
+     * @return number of rows written
+     * @throws IOException on write failure
+     */
+    public static int export(ContentResolver resolver, Uri uri, StatementReconciler.Result result)
+            throws IOException {
+        try (OutputStream os = resolver.openOutputStream(uri)) {
+            if (os == null) throw new IOException("openOutputStream returned null: " + uri);
+            return write(result, os, ZoneId.systemDefault());
+        }
+    }
+
+    /**
+     * Writes the report to a stream, flushed but not closed.
+     *
+     * @return number of rows written
+     * @throws IOException on write failure
+     */
+    public static int write(StatementReconciler.Result result, OutputStream out, ZoneId zone)
+            throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        StringBuilder line = new StringBuilder(160);
+        w.write("status,line,statement_time,description,amount,currency,ledger_id,ledger_time,merchant\n");
+        for (StatementReconciler.Line l : result.missing) {
+            row(w, line, "missing", l, null, zone);
+        }
+        for (Entry e : result.extra) {
+            row(w, line, "extra", null, e, zone);
+        }
+        for (StatementReconciler.Match m : result.matched) {
+            row(w, line, m.sameMerchant ? "matched" : "matched_other_merchant", m.line, m.entry, zone);
+        }
+        w.flush();
+        return result.missing.size() + result.extra.size() + result.matched.size();
+    }
+
+    private static void row(Writer w, StringBuilder sb, String status,
+                            @Nullable StatementReconciler.Line l, @Nullable Entry e, ZoneId zone)
+            throws IOException {
+        sb.setLength(0);
+        sb.append(status).append(',');
+        if (l != null) {
+            sb.append(l.number).append(',');
+            DateTimeFormatter f = l.dateOnly() ? DATE : ISO;
+            sb.append(f.format(Instant.ofEpochMilli(l.startMillis).atZone(zone))).append(',');
+            appendCsv(sb, l.description);
+        } else {
+            sb.append(",,");
+        }
+        sb.append(',');
+        appendAmount(sb, l != null ? l.amountMinor : e.amountMinor);
+        sb.append(',').append(CurrencyCode.fromCode(l != null ? l.currency : e.currency).iso).append(',');
+        if (e != null) {
+            sb.append(e.id).append(',');
+            sb.append(ISO.format(Instant.ofEpochMilli(e.timeMillis).atZone(zone))).append(',');
+            appendCsv(sb, e.description);
+        } else {
+            sb.append(",,");
+        }
+        sb.append('\n');
+        w.append(sb);
+    }
+
+    private static void appendAmount(StringBuilder sb, long minor) {
+        if (minor < 0) sb.append('-');
+        long abs = Math.abs(minor);
+        sb.append(abs / 100).append('.');
+        if (abs % 100 < 10) sb.append('0');
+        sb.append(abs % 100);
+    }
+
+    /** RFC 4180: quote fields holding a comma, quote or line break; double the quotes. */
+    private static void appendCsv(StringBuilder sb, @Nullable String s) {
+        if (s == null) return;
+        boolean quote = false;
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(s);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') sb.append('"');
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,315 @@
+package com.example.auto_accounting.data.fx;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.example.auto_accounting.data.archive.ArchiveStore;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.repo.BudgetTracker;
+import com.example.auto_accounting.data.repo.ChangeLog;
+import com.example.auto_accounting.data.repo.LedgerRepository;
+import com.example.auto_accounting.data.repo.LedgerVersion;
+import com.example.auto_accounting.data.repo.MerchantBreakdown;
+import com.example.auto_accounting.data.repo.SpendingAnomalies;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Converts amounts into the reporting currency with the imported {@link FxTable}.
+ * <p>Conversion factors are cached per (currency, day): one primitive array per currency over
+ * the table's span, built once per table and reporting currency, so converting is an array
+ * read and a multiply. Days outside the span use the rate of the nearest end.
+ * <p>No rate is ever assumed. An amount in a currency the table has no rate for (every foreign
+ * currency before a table is imported) converts to 0, so it is left out of every total, and
+ * its currency is recorded in {@link #missingRates()} for the UI to report. Only a currency
+ * the table has rates for can be chosen for reporting, see {@link #canReportIn}.
+ * <p>Importing a table or choosing another reporting currency changes every total: the ledger
+ * is marked changed ({@link LedgerVersion#bumpAll}), consumers of the {@link ChangeLog} see a
+ * reset, and the caches of totals are dropped. The table is a small file; the reporting
+ * currency is a preference.
+ */
+public final class FxRates {
+
+    private static final String TAG = "FxRates";
+    private static final String FILE = "fx_rates.bin";
+    private static final String PREFS = "fx";
+    private static final String KEY_REPORTING = "reporting_currency";
+
+    /** Table, reporting currency and the factors derived from both; replaced as a whole. */
+    private static final class State {
+        final FxTable table;
+        final int reporting;
+        /** Per currency: factor to the reporting currency per day of the span; null = no rate. */
+        final double[][] factors;
+        /** Bit per {@link CurrencyCode#code} left out of a total for want of a rate. */
+        final AtomicInteger missing = new AtomicInteger();
+
+        State(FxTable table, int reporting) {
+            this.table = table;
+            this.reporting = reporting;
+            this.factors = new double[CurrencyCode.count()][];
+            if (!table.has(reporting)) return;
+            double[] r = table.units(reporting);
+            for (int c = 0; c < factors.length; c++) {
+                if (c == reporting || !table.has(c)) continue;
+                double[] u = table.units(c);
+                double[] f = new double[table.days];
+                for (int d = 0; d < f.length; d++) f[d] = r[d] / u[d];
+                factors[c] = f;
+            }
+        }
+
+        boolean canConvert(int currency) {
+            return currency == reporting
+                    || currency >= 0 && currency < factors.length && factors[currency] != null;
+        }
+
+        /** Call only if {@link #canConvert}, for a currency other than the reporting one. */
+        double factor(int currency, long epochDay) {
+            double[] f = factors[currency];
+            long i = epochDay - table.firstEpochDay;
+            return f[(int) Math.max(0, Math.min(f.length - 1, i))];
+        }
+
+        void noteMissing(int currency) {
+            if (currency < 0 || currency >= CurrencyCode.count()) return;
+            int bit = 1 << currency;
+            if ((missing.get() & bit) == 0) missing.getAndUpdate(m -> m | bit);
+        }
+    }
+
+    private static volatile FxRates instance;
+
+    private final Context app;
+    private final File file;
+    private final SharedPreferences prefs;
+    private volatile State state;
+
+    private FxRates(Context app) {
+        this.app = app;
+        this.file = new File(app.getFilesDir(), FILE);
+        this.prefs = app.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        FxTable table = FxTable.EMPTY;
+        if (file.exists()) {
+            try {
+                table = FxTable.fromBytes(Files.readAllBytes(file.toPath()));
+            } catch (IOException e) {
+                Log.w(TAG, "Dropping unreadable " + file, e);
+            }
+        }
+        int reporting = CurrencyCode.fromCode(prefs.getInt(KEY_REPORTING, CurrencyCode.DEFAULT.code)).code;
+        this.state = new State(table, reporting);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide rates
+     */
+    public static FxRates get(Context context) {
+        if (instance == null) {
+            synchronized (FxRates.class) {
+                if (instance == null) {
+                    instance = new FxRates(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** @return the code of the currency totals are reported in */
+    public int reportingCurrency() {
+        return state.reporting;
+    }
+
+    /**
+     * @param currency a {@link CurrencyCode#code}
+     * @return true if totals can be reported in it: it is the current reporting currency, or the
+     *         table has rates for it
+     */
+    public boolean canReportIn(int currency) {
+        State s = state;
+        return currency == s.reporting || s.table.has(currency);
+    }
+
+    /** @return true if amounts in the currency convert into the reporting currency */
+    public boolean canConvert(int currency) {
+        return state.canConvert(currency);
+    }
+
+    /**
+     * @return the currencies that amounts were left out of totals for, because the table has no
+     *         rate for them, since the table or reporting currency last changed
+     */
+    public List<CurrencyCode> missingRates() {
+        int m = state.missing.get();
+        List<CurrencyCode> out = new ArrayList<>();
+        for (CurrencyCode c : CurrencyCode.values()) {
+            if ((m & (1 << c.code)) != 0) out.add(c);
+        }
+        return out;
+    }
+
+    /** @return the version of the imported table, 0 if none */
+    public long tableVersion() {
+        return state.table.version;
+    }
+
+    /**
+     * @param amountMinor amount in hundredths of its currency
+     * @param currency    its {@link CurrencyCode#code}
+     * @param epochDay    local epoch day of the row
+     * @return the amount in hundredths of the reporting currency, 0 if the table has no rate
+     *         for the currency (recorded in {@link #missingRates()})
+     */
+    public long toReporting(long amountMinor, int currency, long epochDay) {
+        State s = state;
+        if (currency == s.reporting) return amountMinor;
+        if (!s.canConvert(currency)) {
+            s.noteMissing(currency);
+            return 0;
+        }
+        return Math.round(amountMinor * s.factor(currency, epochDay));
+    }
+
+    /** Same as {@link #toReporting(long, int, long)} for a row time and the zone of its day. */
+    public long toReporting(long amountMinor, int currency, long timeMillis, ZoneId zone) {
+        if (currency == state.reporting) return amountMinor;
+        long day = Instant.ofEpochMilli(timeMillis).atZone(zone).toLocalDate().toEpochDay();
+        return toReporting(amountMinor, currency, day);
+    }
+
+    /**
+     * Converts daily totals kept per currency and adds them up.
+     *
+     * @param byCurrency    per {@link CurrencyCode#code}: daily totals in hundredths of that
+     *                      currency, index 0 = {@code firstEpochDay}, or null if the currency
+     *                      has none; the arrays may be reused for the result
+     * @param firstEpochDay local epoch day of index 0
+     * @param days          length of the arrays
+     * @return the daily totals in hundredths of the reporting currency, without the currencies
+     *         the table has no rate for (recorded in {@link #missingRates()})
+     */
+    public long[] convert(long[][] byCurrency, long firstEpochDay, int days) {
+        State s = state;
+        double[] acc = null;
+        long[] exact = s.reporting < byCurrency.length && byCurrency[s.reporting] != null
+                ? byCurrency[s.reporting] : new long[days];
+        for (int c = 0; c < byCurrency.length; c++) {
+            long[] a = byCurrency[c];
+            if (a == null || c == s.reporting) continue;
+            if (!s.canConvert(c)) {
+                s.noteMissing(c);
+                continue;
+            }
+            double[] f = s.factors[c];
+            if (acc == null) acc = new double[days];
+            addConverted(acc, a, f, firstEpochDay - s.table.firstEpochDay);
+        }
+        if (acc != null) {
+            for (int i = 0; i < days; i++) exact[i] += Math.round(acc[i]);
+        }
+        return exact;
+    }
+
+    /**
+     * {@code acc[i] += amounts[i] * f[off + i]}, with the end factors outside the span. The
+     * middle is one branch-free loop over primitive arrays, which the compiler can vectorize.
+     */
+    private static void addConverted(double[] acc, long[] amounts, double[] f, long off) {
+        int n = acc.length;
+        // [from, to) of the output lies inside the factors' span.
+        int from = (int) Math.max(0, Math.min(n, -off));
+        int to = (int) Math.max(from, Math.min(n, f.length - off));
+        double head = f[0], tail = f[f.length - 1];
+        for (int i = 0; i < from; i++) acc[i] += amounts[i] * head;
+        int o = (int) (off + from);
+        for (int i = from; i < to; i++) acc[i] += amounts[i] * f[o + i - from];
+        for (int i = to; i < n; i++) acc[i] += amounts[i] * tail;
+    }
+
+    // ------------------ changes ------------------
+
+    /**
+     * Replaces the table with one read from a CSV, see {@link FxTable#parseCsv}. Blocking.
+     *
+     * @param in the CSV; not closed
+     * @return the new table
+     * @throws IOException if the CSV is not a rate table or cannot be saved
+     */
+    public FxTable importCsv(InputStream in) throws IOException {
+        FxTable table;
+        synchronized (this) {
+            table = FxTable.parseCsv(new InputStreamReader(in, StandardCharsets.UTF_8),
+                    state.table.version + 1);
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    out.write(table.toBytes());
+                    out.getFD().sync();
+                }
+                if (!tmp.renameTo(file)) throw new IOException("Cannot rename " + tmp + " to " + file);
+            } catch (IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+                throw e;
+            }
+            state = new State(table, state.reporting);
+        }
+        totalsChanged(false);
+        return table;
+    }
+
+    /**
+     * Reports totals in another currency from now on. Blocking.
+     *
+     * @param currency a {@link CurrencyCode#code}
+     * @throws IllegalArgumentException if the table has no rates for the currency
+     */
+    public void setReportingCurrency(int currency) {
+        synchronized (this) {
+            int code = CurrencyCode.fromCode(currency).code;
+            if (code == state.reporting) return;
+            if (!state.table.has(code)) {
+                throw new IllegalArgumentException("No exchange rates for " + CurrencyCode.fromCode(code).iso);
+            }
+            prefs.edit().putInt(KEY_REPORTING, code).apply();
+            state = new State(state.table, code);
+        }
+        totalsChanged(true);
+    }
+
+    /** @param currencyChanged true if amounts are now in another currency */
+    private void totalsChanged(boolean currencyChanged) {
+        AppDb db = DbProvider.get(app);
+        ChangeLog changes = ChangeLog.get(app);
+        // Not during a restore: ArchiveStore.replaceAll takes the next reset as its own commit.
+        Lock archiveLock = ArchiveStore.get(app).readLock();
+        archiveLock.lock();
+        try {
+            db.runInTransaction(changes::logReset);
+        } finally {
+            archiveLock.unlock();
+        }
+        LedgerVersion.bumpAll();
+        LedgerRepository.get(app).clear();
+        MerchantBreakdown.get(app).clear();
+        BudgetTracker.get(app).invalidate();
+        // Means and variances in the old currency would flag every payment in the new one.
+        if (currencyChanged) SpendingAnomalies.get(app).clear();
+    }
+}
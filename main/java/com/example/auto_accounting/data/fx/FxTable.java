@@ -0,0 +1,202 @@
+package com.example.auto_accounting.data.fx;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable table of daily exchange rates, one primitive array per {@link CurrencyCode} indexed
+ * by day: {@code units[currency][epochDay - firstEpochDay]} is how many units of the currency
+ * one unit of the table's base buys. Any base works, as conversions only use ratios.
+ * <p>Every day of the span has a rate: days without one (weekends, holidays) carry the previous
+ * day's rate forward, and days before a currency's first rate take that first rate. A currency
+ * the table has no rate for at all has a null array.
+ * <p>Tables are read from the CSV of the ECB reference rates ({@link #parseCsv}), and stored as
+ * bytes ({@link #toBytes}, {@link #fromBytes}) with a version that grows with each import.
+ */
+public final class FxTable {
+
+    private static final int MAGIC = 0x46585431; // "FXT1"
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 4 + 4;
+
+    /** Table without rates: every conversion is the identity. */
+    public static final FxTable EMPTY = new FxTable(0, 0, 0, new double[CurrencyCode.count()][]);
+
+    /** Grows by one with each import; 0 for {@link #EMPTY}. */
+    public final long version;
+    /** Epoch day of index 0. */
+    public final long firstEpochDay;
+    /** Days covered. */
+    public final int days;
+    private final double[][] units;
+
+    private FxTable(long version, long firstEpochDay, int days, double[][] units) {
+        this.version = version;
+        this.firstEpochDay = firstEpochDay;
+        this.days = days;
+        this.units = units;
+    }
+
+    /** @return true if the table has a rate for the currency */
+    public boolean has(int currency) {
+        return currency >= 0 && currency < units.length && units[currency] != null;
+    }
+
+    /**
+     * @param currency a currency the table {@link #has}
+     * @return units per base unit for each day of the span (do not modify)
+     */
+    double[] units(int currency) {
+        return units[currency];
+    }
+
+    /**
+     * Reads the wide CSV of the ECB reference rates: a header {@code Date,USD,JPY,...} and one
+     * row per day, in any order, of units per euro. Columns of other currencies are ignored,
+     * {@code N/A} or empty cells are missing rates, and the euro is 1 unless it has a column.
+     *
+     * @param in      the CSV
+     * @param version version of the new table
+     * @return the table
+     * @throws IOException if the CSV cannot be read or has no rates
+     */
+    public static FxTable parseCsv(Reader in, long version) throws IOException {
+        BufferedReader r = new BufferedReader(in);
+        String header = r.readLine();
+        if (header == null) throw new IOException("Empty rate table");
+        String[] names = header.split(",");
+        int[] column = new int[names.length];
+        boolean hasEuro = false;
+        for (int i = 0; i < names.length; i++) {
+            CurrencyCode c = i == 0 ? null : CurrencyCode.fromIso(names[i]);
+            column[i] = c == null ? -1 : c.code;
+            hasEuro |= c == CurrencyCode.EUR;
+        }
+
+        // Rows by day; a row holds the rate of each currency, NaN where missing.
+        TreeMap<Long, double[]> rows = new TreeMap<>();
+        String line;
+        while ((line = r.readLine()) != null) {
+            String[] cells = line.split(",");
+            if (cells.length == 0 || cells[0].trim().isEmpty()) continue;
+            long day;
+            try {
+                day = LocalDate.parse(cells[0].trim()).toEpochDay();
+            } catch (DateTimeParseException e) {
+                throw new IOException("Bad date in rate table: " + cells[0], e);
+            }
+            double[] row = new double[CurrencyCode.count()];
+            Arrays.fill(row, Double.NaN);
+            if (!hasEuro) row[CurrencyCode.EUR.code] = 1;
+            for (int i = 1; i < cells.length && i < column.length; i++) {
+                if (column[i] < 0) continue;
+                String cell = cells[i].trim();
+                if (cell.isEmpty() || cell.toUpperCase(Locale.ROOT).equals("N/A")) continue;
+                try {
+                    double v = Double.parseDouble(cell);
+                    if (v > 0 && !Double.isInfinite(v)) row[column[i]] = v;
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad rate in rate table: " + cell, e);
+                }
+            }
+            rows.put(day, row);
+        }
+        if (rows.isEmpty()) throw new IOException("Rate table has no rows");
+
+        long first = rows.firstKey();
+        int days = (int) (rows.lastKey() - first + 1);
+        double[][] units = new double[CurrencyCode.count()][];
+        int rated = 0;
+        for (int c = 0; c < units.length; c++) {
+            double[] u = new double[days];
+            Arrays.fill(u, Double.NaN);
+            for (Map.Entry<Long, double[]> e : rows.entrySet()) {
+                u[(int) (e.getKey() - first)] = e.getValue()[c];
+            }
+            if (fill(u)) {
+                units[c] = u;
+                rated++;
+            }
+        }
+        // A single currency has no other to convert to.
+        if (rated < 2) throw new IOException("Rate table has no rates for the ledger's currencies");
+        return new FxTable(version, first, days, units);
+    }
+
+    /**
+     * Carries each rate forward over the missing days after it, and the first rate back over
+     * the days before it.
+     *
+     * @return false if there is no rate at all
+     */
+    private static boolean fill(double[] u) {
+        int first = -1;
+        for (int i = 0; i < u.length; i++) {
+            if (!Double.isNaN(u[i])) {
+                if (first < 0) first = i;
+            } else if (first >= 0) {
+                u[i] = u[i - 1];
+            }
+        }
+        if (first < 0) return false;
+        Arrays.fill(u, 0, first, u[first]);
+        return true;
+    }
+
+    // ------------------ bytes ------------------
+
+    /** @return the table as bytes for {@link #fromBytes} */
+    public byte[] toBytes() {
+        int mask = 0, rated = 0;
+        for (int c = 0; c < units.length; c++) {
+            if (units[c] != null) {
+                mask |= 1 << c;
+                rated++;
+            }
+        }
+        ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES + rated * days * 8).order(ByteOrder.BIG_ENDIAN);
+        b.putInt(MAGIC).putLong(version).putLong(firstEpochDay).putInt(days).putInt(mask);
+        for (double[] u : units) {
+            if (u == null) continue;
+            for (double v : u) b.putDouble(v);
+        }
+        return b.array();
+    }
+
+    /**
+     * @param bytes output of {@link #toBytes}
+     * @return the table
+     * @throws IOException if the bytes are not a rate table
+     */
+    public static FxTable fromBytes(byte[] bytes) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN);
+        if (bytes.length < HEADER_BYTES || b.getInt() != MAGIC) throw new IOException("Not a rate table");
+        long version = b.getLong();
+        long first = b.getLong();
+        int days = b.getInt();
+        int mask = b.getInt();
+        int rated = Integer.bitCount(mask & ((1 << CurrencyCode.count()) - 1));
+        if (days < 0 || Integer.bitCount(mask) != rated || b.remaining() != (long) rated * days * 8) {
+            throw new IOException("Truncated rate table");
+        }
+        double[][] units = new double[CurrencyCode.count()][];
+        for (int c = 0; c < units.length; c++) {
+            if ((mask & (1 << c)) == 0) continue;
+            double[] u = new double[days];
+            b.asDoubleBuffer().get(u);
+            b.position(b.position() + days * 8);
+            units[c] = u;
+        }
+        return new FxTable(version, first, days, units);
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.data.db.CategoryTotal;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.fx.FxRates;
+import com.example.auto_accounting.notify.BudgetNotifier;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Monthly budgets per {@link Category} and overall, checked as each payment is saved.
+ * <p>The spending of the current month is held in memory, one running total per category plus
+ * the overall one, seeded from a per-category rollup of the month together with the largest row
+ * id in one {@link LedgerReader#snapshot snapshot}. {@link TableWriter} then reports every
+ * insert with its row id: a row the seed has not seen is added in O(1) and its budgets are
+ * checked, with no query on the insert path.
+ * <p>The totals are reseeded on the background lane when the month or the time zone changes,
+ * after a process restart (on first use), and when another writer changed the month or the
+ * categories ({@link #invalidate}). Inserts that arrive while a seed runs are buffered and
+ * applied after it if the seed missed them. The current month is never archived (see
+ * {@link com.example.auto_accounting.data.archive.ArchiveCompactor}), so the rollup reads the
+ * live table only.
+ * <p>Limits and totals are in the reporting currency of {@link FxRates}; rows in other
+ * currencies count at their day's rate, and new rates or another reporting currency reseed.
+ * <p>Crossing {@link #WARN_PERCENT} and 100% of a budget posts one notification per month and
+ * level; the levels already posted are kept in preferences so a restart does not repeat them.
+ */
+public final class BudgetTracker {
+
+    /** Warning level in percent of a budget. */
+    public static final int WARN_PERCENT = 80;
+    /** Exceeded level in percent of a budget. */
+    public static final int FULL_PERCENT = 100;
+
+    /** Inserts buffered while seeding; beyond this the seed is run again. */
+    private static final int MAX_PENDING = 4096;
+
+    private static final String PREFS = "budgets";
+    private static final String KEY_LIMIT = "limit_";
+    private static final String KEY_ALERT = "alert_";
+
+    /** Index of the overall budget in the per-key arrays; categories use their code. */
+    private static final int OVERALL = Category.values().length;
+    private static final int KEYS = OVERALL + 1;
+
+    /** One budget line for display. */
+    public static final class Line {
+        /** The category, or null for the overall budget. */
+        @Nullable public final Category category;
+        /** Spent this month in minor units. */
+        public final long spentMinor;
+        /** Monthly limit in minor units, 0 if none is set. */
+        public final long limitMinor;
+
+        Line(@Nullable Category category, long spentMinor, long limitMinor) {
+            this.category = category;
+            this.spentMinor = spentMinor;
+            this.limitMinor = limitMinor;
+        }
+
+        /** @return spent as a percentage of the limit, 0 without a limit */
+        public int percent() {
+            return limitMinor <= 0 ? 0 : (int) Math.min(Integer.MAX_VALUE, spentMinor * 100 / limitMinor);
+        }
+    }
+
+    /** Running totals of one month in one time zone. */
+    private static final class Month {
+        final YearMonth month;
+        final ZoneId zone;
+        final long startMillis;
+        final long endMillis;
+        /** Largest row id the seed read; later rows are applied as deltas. */
+        final long maxId;
+        final long[] spent = new long[KEYS];
+        /** Highest level already notified per key, in percent. */
+        final int[] alerted = new int[KEYS];
+
+        Month(YearMonth month, ZoneId zone, long maxId) {
+            this.month = month;
+            this.zone = zone;
+            this.startMillis = month.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            this.endMillis = month.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+            this.maxId = maxId;
+        }
+
+        boolean isCurrent(long nowMillis, ZoneId zone) {
+            return nowMillis >= startMillis && nowMillis < endMillis && this.zone.equals(zone);
+        }
+    }
+
+    private static volatile BudgetTracker instance;
+
+    private final Context app;
+    private final AppDb db;
+    private final FxRates fx;
+    private final SharedPreferences prefs;
+    /** Serializes seeds, so a slower one cannot install totals that miss a buffered insert. */
+    private final Object seedLock = new Object();
+
+    // Guarded by this.
+    private final long[] limits = new long[KEYS];
+    @Nullable private Month current;
+    private boolean seeding;
+    private boolean reseed;
+    private final List<long[]> pending = new ArrayList<>();
+
+    private BudgetTracker(Context app) {
+        this.app = app;
+        this.db = DbProvider.get(app);
+        this.fx = FxRates.get(app);
+        this.prefs = app.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        for (int k = 0; k < KEYS; k++) limits[k] = prefs.getLong(KEY_LIMIT + key(k), 0);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide budget tracker
+     */
+    public static BudgetTracker get(Context context) {
+        if (instance == null) {
+            synchronized (BudgetTracker.class) {
+                if (instance == null) {
+                    instance = new BudgetTracker(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Counts a saved row towards the budgets of its month and posts alerts for the thresholds
+     * it crosses. O(1), no query; call after the row is committed.
+     *
+     * @param rowId       id of the inserted row
+     * @param timeMillis  its time
+     * @param category    category of its merchant
+     * @param amountMinor its amount in minor units of the reporting currency
+     */
+    public void onInsert(long rowId, long timeMillis, Category category, long amountMinor) {
+        List<Alert> alerts;
+        synchronized (this) {
+            Month m = current;
+            if (seeding || m == null || !m.isCurrent(System.currentTimeMillis(), ZoneId.systemDefault())) {
+                if (pending.size() < MAX_PENDING) {
+                    pending.add(new long[]{rowId, timeMillis, category.code, amountMinor});
+                } else {
+                    reseed = true;
+                }
+                scheduleSeed();
+                return;
+            }
+            if (rowId <= m.maxId || timeMillis < m.startMillis || timeMillis >= m.endMillis) return;
+            m.spent[category.code] += amountMinor;
+            m.spent[OVERALL] += amountMinor;
+            alerts = new ArrayList<>(2);
+            check(m, category.code, alerts);
+            check(m, OVERALL, alerts);
+        }
+        post(alerts);
+    }
+
+    /**
+     * Marks the totals stale after a write that bypassed {@link #onInsert}: an import, a
+     * restore, a change of merchant categories or of exchange rates. They are reseeded in
+     * the background.
+     */
+    public synchronized void invalidate() {
+        if (seeding) {
+            reseed = true;
+            return;
+        }
+        current = null;
+        scheduleSeed();
+    }
+
+    /**
+     * Sets a monthly budget; 0 removes it. The levels notified this month are forgotten and
+     * re-evaluated against the new limit.
+     *
+     * @param category the category, or null for the overall budget
+     * @param limitMinor limit in minor units
+     */
+    public void setLimit(@Nullable Category category, long limitMinor) {
+        int k = index(category);
+        List<Alert> alerts = new ArrayList<>(1);
+        synchronized (this) {
+            limits[k] = Math.max(0, limitMinor);
+            prefs.edit().putLong(KEY_LIMIT + key(k), limits[k])
+                    .remove(alertPrefix(YearMonth.now(ZoneId.systemDefault())) + key(k)).apply();
+            Month m = current;
+            if (m != null) {
+                m.alerted[k] = 0;
+                if (!seeding) check(m, k, alerts);
+            }
+        }
+        post(alerts);
+    }
+
+    /**
+     * Returns this month's budget lines, overall first, seeding the totals if needed.
+     * Blocking; call off the main thread.
+     */
+    public List<Line> lines() {
+        Month m;
+        synchronized (this) {
+            m = current;
+        }
+        if (m == null || !m.isCurrent(System.currentTimeMillis(), ZoneId.systemDefault())) seed();
+        List<Line> out = new ArrayList<>(KEYS);
+        synchronized (this) {
+            long[] spent = current != null ? current.spent.clone() : new long[KEYS];
+            out.add(new Line(null, spent[OVERALL], limits[OVERALL]));
+            for (Category c : Category.values()) out.add(new Line(c, spent[c.code], limits[c.code]));
+        }
+        return out;
+    }
+
+    // ------------------ seeding ------------------
+
+    /** Call with {@code this} held. */
+    private void scheduleSeed() {
+        if (seeding) return;
+        seeding = true;
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, this::seed);
+        if (!queued) seeding = false; // the next insert tries again
+    }
+
+    /**
+     * Rolls up the current month by category and installs the totals, then applies the
+     * inserts buffered meanwhile and posts the alerts that are due. Blocking.
+     */
+    private void seed() {
+        synchronized (seedLock) {
+            try {
+                seedLocked();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    seeding = false; // the next insert or invalidate tries again
+                    current = null;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void seedLocked() {
+        while (true) {
+            synchronized (this) {
+                seeding = true;
+                reseed = false;
+                // Buffered rows are committed, so the query below sees them.
+                pending.clear();
+            }
+            ZoneId zone = ZoneId.systemDefault();
+            YearMonth ym = YearMonth.now(zone);
+            int reporting = fx.reportingCurrency();
+            // A snapshot, not a transaction: the rollup must not hold up the inserts it counts.
+            Month m = LedgerReader.get(app).snapshot(seq -> {
+                Month fresh = new Month(ym, zone, db.tableDao().maxId());
+                for (CategoryTotal t : db.categoryDao().totalsInRange(
+                        fresh.startMillis, fresh.endMillis, reporting)) {
+                    int k = Category.fromCode(t.category).code;
+                    long amount = fx.toReporting(t.totalMinor, t.currency, t.epochDay);
+                    fresh.spent[k] += amount;
+                    fresh.spent[OVERALL] += amount;
+                }
+                return fresh;
+            });
+            String prefix = alertPrefix(ym);
+            for (int k = 0; k < KEYS; k++) m.alerted[k] = prefs.getInt(prefix + key(k), 0);
+
+            List<Alert> alerts = new ArrayList<>();
+            synchronized (this) {
+                if (reseed) continue;
+                for (long[] p : pending) {
+                    if (p[0] <= m.maxId || p[1] < m.startMillis || p[1] >= m.endMillis) continue;
+                    m.spent[(int) p[2]] += p[3];
+                    m.spent[OVERALL] += p[3];
+                }
+                pending.clear();
+                current = m;
+                seeding = false;
+                for (int k = 0; k < KEYS; k++) check(m, k, alerts);
+            }
+            pruneAlerts(prefix);
+            post(alerts);
+            return;
+        }
+    }
+
+    /** Drops the alert levels of other months. */
+    private void pruneAlerts(String keep) {
+        SharedPreferences.Editor e = null;
+        for (String k : prefs.getAll().keySet()) {
+            if (k.startsWith(KEY_ALERT) && !k.startsWith(keep)) {
+                if (e == null) e = prefs.edit();
+                e.remove(k);
+            }
+        }
+        if (e != null) e.apply();
+    }
+
+    // ------------------ alerts ------------------
+
+    /** A threshold a budget has just crossed. */
+    private static final class Alert {
+        final int key;
+        final int percent;
+        final long spentMinor;
+        final long limitMinor;
+
+        Alert(int key, int percent, long spentMinor, long limitMinor) {
+            this.key = key;
+            this.percent = percent;
+            this.spentMinor = spentMinor;
+            this.limitMinor = limitMinor;
+        }
+    }
+
+    /** Queues an alert if budget {@code k} reached a level not notified yet. Call with {@code this} held. */
+    private void check(Month m, int k, List<Alert> out) {
+        long limit = limits[k];
+        if (limit <= 0) return;
+        long spent = m.spent[k];
+        int level = spent >= limit ? FULL_PERCENT : spent * 100 >= limit * WARN_PERCENT ? WARN_PERCENT : 0;
+        if (level <= m.alerted[k]) return;
+        m.alerted[k] = level;
+        prefs.edit().putInt(alertPrefix(m.month) + key(k), level).apply();
+        out.add(new Alert(k, level, spent, limit));
+    }
+
+    private void post(List<Alert> alerts) {
+        for (Alert a : alerts) {
+            Category c = a.key == OVERALL ? null : Category.fromCode(a.key);
+            BudgetNotifier.notify(app, a.key, c, a.percent, a.spentMinor, a.limitMinor);
+        }
+    }
+
+    private static int index(@Nullable Category category) {
+        return category == null ? OVERALL : category.code;
+    }
+
+    private static String key(int k) {
+        return k == OVERALL ? "all" : String.valueOf(k);
+    }
+
+    private static String alertPrefix(YearMonth ym) {
+        return KEY_ALERT + (ym.getYear() * 100 + ym.getMonthValue()) + "_";
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.auto_accounting.data.repo;
+
+import com.example.auto_accounting.data.db.Category;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Maps merchant names onto {@link Category categories} by keywords held in one character trie.
+ * <p>A name is lower-cased and split into words; every keyword that occurs in it as a run of
+ * whole words is a candidate ({@code "uber eats sydney"} holds {@code uber} and
+ * {@code uber eats}). Keywords learned from the user's corrections beat the bundled ones;
+ * within each kind the longest keyword wins, so {@code uber eats} is dining, not transport.
+ * Matching walks the trie once per word start, so it costs O(name length × keyword length)
+ * whatever the number of keywords. Not thread-safe.
+ */
+public final class CategoryClassifier {
+
+    /** Outcome of {@link #classify}. */
+    public static final class Match {
+        /** The category; {@link Category#UNCATEGORIZED} if no keyword matched. */
+        public final Category category;
+        /** True if a learned keyword decided it. */
+        public final boolean learned;
+
+        Match(Category category, boolean learned) {
+            this.category = category;
+            this.learned = learned;
+        }
+    }
+
+    private static final Match NO_MATCH = new Match(Category.UNCATEGORIZED, false);
+
+    private static final Pattern APOSTROPHE = Pattern.compile("['’]");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}&]+");
+
+    /** Trie node; children kept in small parallel arrays since most nodes have one child. */
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] kids = new Node[0];
+        /** Category of the bundled keyword ending here, if any. */
+        Category bundled;
+        /** Category of the learned keyword ending here, if any. */
+        Category learned;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) if (keys[i] == c) return kids[i];
+            return null;
+        }
+
+        Node childOrAdd(char c) {
+            Node n = child(c);
+            if (n != null) return n;
+            int len = keys.length;
+            keys = Arrays.copyOf(keys, len + 1);
+            kids = Arrays.copyOf(kids, len + 1);
+            keys[len] = c;
+            kids[len] = n = new Node();
+            return n;
+        }
+    }
+
+    private final Node root = new Node();
+
+    /** Creates a classifier with the bundled keywords. */
+    public CategoryClassifier() {
+        bundle(Category.GROCERIES, "woolworths", "coles", "aldi", "iga", "costco", "kroger",
+                "safeway", "tesco", "sainsburys", "lidl", "whole foods", "trader joes",
+                "supermarket", "supermarkets", "grocery", "groceries", "foodworks", "harris farm");
+        bundle(Category.DINING, "mcdonalds", "kfc", "subway", "starbucks", "dominos", "pizza",
+                "burger", "burgers", "hungry jacks", "sushi", "cafe", "coffee", "restaurant",
+                "bistro", "kitchen", "grill", "bakery", "noodle", "noodles", "ramen", "bar",
+                "uber eats", "doordash", "deliveroo", "menulog", "grubhub", "guzman y gomez");
+        bundle(Category.TRANSPORT, "uber", "lyft", "didi", "taxi", "cabs", "transit", "metro",
+                "opal", "myki", "parking", "toll", "linkt", "railway", "trains", "shell", "bp",
+                "caltex", "ampol", "chevron", "exxon", "7 eleven", "petrol", "fuel");
+        bundle(Category.SHOPPING, "amazon", "ebay", "kmart", "target", "big w", "ikea",
+                "bunnings", "jb hi fi", "officeworks", "apple", "walmart", "uniqlo", "h&m",
+                "zara", "myer", "david jones", "etsy", "aliexpress");
+        bundle(Category.BILLS, "telstra", "optus", "vodafone", "verizon", "at&t", "comcast",
+                "agl", "origin energy", "energy", "electricity", "water", "gas", "insurance",
+                "council", "internet", "broadband", "rent", "strata");
+        bundle(Category.ENTERTAINMENT, "netflix", "spotify", "disney", "hulu", "stan",
+                "steam", "playstation", "xbox", "nintendo", "cinema", "cinemas", "hoyts",
+                "ticketek", "ticketmaster", "youtube", "twitch");
+        bundle(Category.HEALTH, "pharmacy", "chemist", "chemist warehouse", "priceline",
+                "walgreens", "cvs", "medical", "medicare", "dental", "dentist", "clinic",
+                "hospital", "physio", "optometrist", "gym", "fitness");
+        bundle(Category.TRAVEL, "airbnb", "booking com", "expedia", "qantas", "jetstar",
+                "virgin australia", "airline", "airlines", "airways", "hotel", "hotels", "motel",
+                "hostel", "resort");
+    }
+
+    /**
+     * Lower-cases a name and reduces it to words separated by single spaces, the form both
+     * names and keywords are matched in.
+     *
+     * @param raw name or keyword, may be null
+     * @return the words, empty if none
+     */
+    public static String words(String raw) {
+        if (raw == null) return "";
+        String s = APOSTROPHE.matcher(raw.toLowerCase(Locale.ROOT)).replaceAll("");
+        return NON_WORD.matcher(s).replaceAll(" ").trim();
+    }
+
+    /**
+     * Adds a keyword learned from a correction; it beats every bundled keyword and replaces
+     * an earlier learned category for the same keyword.
+     *
+     * @param keyword  one or more words, see {@link #words}
+     * @param category its category
+     */
+    public void learn(String keyword, Category category) {
+        Node n = node(words(keyword));
+        if (n != null) n.learned = category;
+    }
+
+    /**
+     * @param name merchant name, may be null
+     * @return the category of the best keyword in the name
+     */
+    public Match classify(String name) {
+        String text = words(name);
+        Category best = null;
+        boolean bestLearned = false;
+        int bestLength = 0;
+        for (int start = 0; start < text.length(); start++) {
+            if (start > 0 && text.charAt(start - 1) != ' ') continue;
+            Node n = root;
+            for (int i = start; i < text.length(); i++) {
+                n = n.child(text.charAt(i));
+                if (n == null) break;
+                if (i + 1 < text.length() && text.charAt(i + 1) != ' ') continue;
+                int length = i + 1 - start;
+                if (n.learned != null && (!bestLearned || length > bestLength)) {
+                    best = n.learned;
+                    bestLearned = true;
+                    bestLength = length;
+                } else if (n.bundled != null && !bestLearned && length > bestLength) {
+                    best = n.bundled;
+                    bestLength = length;
+                }
+            }
+        }
+        return best == null ? NO_MATCH : new Match(best, bestLearned);
+    }
+
+    private void bundle(Category category, String... keywords) {
+        for (String k : keywords) {
+            Node n = node(words(k));
+            if (n != null) n.bundled = category;
+        }
+    }
+
+    /** @return the node of a normalized keyword, created if needed; null for an empty one */
+    private Node node(String keyword) {
+        if (keyword.isEmpty()) return null;
+        Node n = root;
+        for (int i = 0; i < keyword.length(); i++) n = n.childOrAdd(keyword.charAt(i));
+        return n;
+    }
+}
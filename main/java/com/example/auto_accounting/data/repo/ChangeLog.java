@@ -0,0 +1,228 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.data.archive.ArchiveStore;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.Change;
+import com.example.auto_accounting.data.db.ChangeCursor;
+import com.example.auto_accounting.data.db.ChangeDao;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Entry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Reads the change log of {@code table_entries}, so consumers follow deltas instead of
+ * rescanning the table.
+ * <p>Every insert, update and delete is logged by a trigger in the writing transaction with the
+ * next {@link Change#seq}. Writers are serialized by SQLite, so a consumer that has read up to
+ * sequence N never later finds a smaller number committed. A consumer takes its initial state
+ * together with {@link #lastSeq()} in one {@link LedgerReader#snapshot snapshot}, then reads
+ * {@link #read(long, int) batches} after it.
+ * <p>Moving rows without changing the ledger (archiving a month) runs {@link #runMuted muted};
+ * replacing the whole ledger logs a single {@link Change#RESET}.
+ * <p>The log is trimmed by {@link #compact()}: down to the smallest cursor of the named,
+ * persistent consumers, and always keeping the last {@link #KEEP_RECENT} changes so in-memory
+ * consumers catch up without a full reread. A consumer that fell behind the trimmed part is
+ * told to {@link Batch#resync resync}.
+ * <p>Blocking methods must be called off the main thread.
+ */
+public final class ChangeLog {
+
+    private static final String TAG = "ChangeLog";
+
+    /** Changes always kept by {@link #compact()}. */
+    public static final int KEEP_RECENT = 1000;
+
+    /** One batch of changes. */
+    public static final class Batch {
+        /** Changes in sequence order (read-only). */
+        public final List<Change> changes;
+        /** Sequence to read after next; the input sequence if the batch is empty. */
+        public final long lastSeq;
+        /**
+         * True if the consumer cannot apply the batch as a delta: changes it has not seen were
+         * trimmed, or the batch holds a {@link Change#RESET}. It must rebuild its state.
+         */
+        public final boolean resync;
+
+        Batch(List<Change> changes, long lastSeq, boolean resync) {
+            this.changes = Collections.unmodifiableList(changes);
+            this.lastSeq = lastSeq;
+            this.resync = resync;
+        }
+
+        /** @return true if every change of the batch is an {@link Change#INSERT} */
+        public boolean insertsOnly() {
+            for (Change c : changes) {
+                if (c.op != Change.INSERT) return false;
+            }
+            return true;
+        }
+    }
+
+    private static volatile ChangeLog instance;
+    private static final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    private final AppDb db;
+    private final ChangeDao dao;
+
+    private ChangeLog(AppDb db) {
+        this.db = db;
+        this.dao = db.changeDao();
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide change log
+     */
+    public static ChangeLog get(Context context) {
+        if (instance == null) {
+            synchronized (ChangeLog.class) {
+                if (instance == null) {
+                    instance = new ChangeLog(DbProvider.get(context));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** @return the sequence of the last committed change, 0 if none */
+    public long lastSeq() {
+        return dao.lastSeq();
+    }
+
+    /** @return the sequence of the last {@link Change#RESET} still in the log, 0 if none */
+    public long lastResetSeq() {
+        return dao.lastResetSeq();
+    }
+
+    /**
+     * Reads the changes after a sequence number.
+     *
+     * @param afterSeq last sequence the consumer has applied
+     * @param limit    maximum number of changes
+     * @return the next batch, empty when the consumer is up to date
+     */
+    public Batch read(long afterSeq, int limit) {
+        List<Change> changes = dao.since(afterSeq, limit);
+        if (changes.isEmpty()) return new Batch(changes, afterSeq, false);
+        // Sequence numbers have no holes, so a jump means the log was trimmed past the cursor.
+        boolean resync = changes.get(0).seq != afterSeq + 1;
+        for (Change c : changes) {
+            if (c.op == Change.RESET) resync = true;
+        }
+        return new Batch(changes, changes.get(changes.size() - 1).seq, resync);
+    }
+
+    /**
+     * @return the rows inserted by the changes in (afterSeq, throughSeq], with their merchant
+     *         names, in sequence order
+     */
+    public List<Entry> insertedRows(long afterSeq, long throughSeq) {
+        return dao.insertedBetween(afterSeq, throughSeq);
+    }
+
+    // ------------------ persistent consumers ------------------
+
+    /**
+     * @param consumer consumer name
+     * @return its last acknowledged sequence, or -1 if it is not registered
+     */
+    public long position(String consumer) {
+        Long seq = dao.cursor(consumer);
+        return seq == null ? -1 : seq;
+    }
+
+    /**
+     * Registers a consumer or records that it has processed the changes up to {@code seq};
+     * the log keeps everything after the smallest acknowledged sequence.
+     */
+    public void acknowledge(String consumer, long seq) {
+        ChangeCursor c = new ChangeCursor();
+        c.consumer = consumer;
+        c.seq = seq;
+        dao.setCursor(c);
+    }
+
+    /** Forgets a consumer, so it no longer holds back {@link #compact()}. */
+    public void unregister(String consumer) {
+        dao.removeCursor(consumer);
+    }
+
+    // ------------------ writers ------------------
+
+    /**
+     * Runs a write in a transaction without logging it, for moves that leave the ledger as it
+     * was, such as deleting rows that were just archived.
+     *
+     * @return the write's result
+     */
+    public <T> T runMuted(Supplier<T> write) {
+        return db.runInTransaction(() -> {
+            db.getOpenHelper().getWritableDatabase()
+                    .execSQL("INSERT INTO change_log_muted (reason) VALUES ('muted')");
+            try {
+                return write.get();
+            } finally {
+                db.getOpenHelper().getWritableDatabase().execSQL("DELETE FROM change_log_muted");
+            }
+        });
+    }
+
+    /**
+     * Logs that the whole ledger was replaced; call in the replacing transaction, after a
+     * {@link #runMuted muted} write.
+     *
+     * @return the sequence of the reset
+     */
+    public long logReset() {
+        Change c = new Change();
+        c.op = Change.RESET;
+        return dao.insert(c);
+    }
+
+    // ------------------ compaction ------------------
+
+    /**
+     * Runs {@link #compact()} once per process on the background lane. If the lane refuses the
+     * task or the compaction fails, the next call tries again.
+     */
+    public static void scheduleCompactOnce(Context context) {
+        if (!compactionScheduled.compareAndSet(false, true)) return;
+        final Context app = context.getApplicationContext();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                // Opening the store finishes an interrupted restore before its reset can be trimmed.
+                ArchiveStore.get(app);
+                int n = get(app).compact();
+                if (n > 0) Log.i(TAG, "Trimmed " + n + " change(s)");
+            } catch (RuntimeException e) {
+                compactionScheduled.set(false);
+                throw e;
+            }
+        });
+        if (!queued) compactionScheduled.set(false);
+    }
+
+    /**
+     * Deletes the changes every persistent consumer has acknowledged, keeping the last
+     * {@link #KEEP_RECENT}. Blocking.
+     *
+     * @return number of changes deleted
+     */
+    public int compact() {
+        return db.runInTransaction(() -> {
+            long through = dao.lastSeq() - KEEP_RECENT;
+            Long acknowledged = dao.minCursor();
+            if (acknowledged != null) through = Math.min(through, acknowledged);
+            return through > 0 ? dao.deleteThrough(through) : 0;
+        });
+    }
+}
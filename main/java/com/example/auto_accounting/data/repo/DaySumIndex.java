@@ -0,0 +1,167 @@
+package com.example.auto_accounting.data.repo;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoField;
+
+/**
+ * Daily totals in a Fenwick (binary indexed) tree, so any range of days sums in O(log n).
+ * <p>Week, month and year totals and running balances are ranges of days, so they cost the
+ * same. Adding an amount to a day is O(log n); a day outside the covered span grows the
+ * span, which rebuilds the tree in O(n) but at least doubles it, so growth is amortized.
+ * Days outside the span count as zero. Epoch days are local calendar days.
+ * <p>Not thread-safe; {@link LedgerAnalytics} guards the application-wide instance.
+ */
+public final class DaySumIndex {
+
+    /** Calendar periods; weeks start on Monday (ISO). */
+    public enum Period {
+        DAY, WEEK, MONTH, YEAR;
+
+        /** @return the first day of the period containing {@code date} */
+        public LocalDate start(LocalDate date) {
+            switch (this) {
+                case WEEK: return date.with(ChronoField.DAY_OF_WEEK, DayOfWeek.MONDAY.getValue());
+                case MONTH: return date.withDayOfMonth(1);
+                case YEAR: return date.withDayOfYear(1);
+                default: return date;
+            }
+        }
+
+        /** @return the first day of the next period, given the first day of one */
+        public LocalDate next(LocalDate start) {
+            switch (this) {
+                case WEEK: return start.plusWeeks(1);
+                case MONTH: return start.plusMonths(1);
+                case YEAR: return start.plusYears(1);
+                default: return start.plusDays(1);
+            }
+        }
+    }
+
+    /** Epoch day of index 0. */
+    private long firstDay;
+    /** Raw daily totals, kept to rebuild the tree when the span grows. */
+    private long[] days;
+    /** Fenwick tree over {@link #days}, 1-based: {@code tree.length == days.length + 1}. */
+    private long[] tree;
+
+    /**
+     * Builds the index in O(n).
+     *
+     * @param firstEpochDay epoch day of {@code dayTotals[0]}
+     * @param dayTotals     daily totals in minor units; copied
+     */
+    public DaySumIndex(long firstEpochDay, long[] dayTotals) {
+        this.firstDay = firstEpochDay;
+        this.days = dayTotals.clone();
+        this.tree = build(days);
+    }
+
+    /** @return the first epoch day covered */
+    public long firstEpochDay() {
+        return firstDay;
+    }
+
+    /** @return the epoch day after the last one covered */
+    public long endEpochDay() {
+        return firstDay + days.length;
+    }
+
+    /**
+     * Adds an amount to a day, growing the span if needed.
+     *
+     * @param epochDay    local epoch day
+     * @param amountMinor amount in minor units, negative to subtract
+     */
+    public void add(long epochDay, long amountMinor) {
+        if (amountMinor == 0) return;
+        if (epochDay < firstDay || epochDay >= endEpochDay()) grow(epochDay);
+        int i = (int) (epochDay - firstDay);
+        days[i] += amountMinor;
+        for (int k = i + 1; k < tree.length; k += k & -k) tree[k] += amountMinor;
+    }
+
+    /** @return the total of one day */
+    public long day(long epochDay) {
+        if (epochDay < firstDay || epochDay >= endEpochDay()) return 0;
+        return days[(int) (epochDay - firstDay)];
+    }
+
+    /**
+     * @param fromEpochDay inclusive first day
+     * @param toEpochDay   exclusive last day
+     * @return the total of the days in [from, to)
+     */
+    public long sum(long fromEpochDay, long toEpochDay) {
+        if (toEpochDay <= fromEpochDay) return 0;
+        return prefix(toEpochDay) - prefix(fromEpochDay);
+    }
+
+    /** @return the running total of every day up to and including {@code epochDay} */
+    public long balance(long epochDay) {
+        return prefix(epochDay + 1);
+    }
+
+    /** @return the total of the period containing {@code date} */
+    public long total(Period period, LocalDate date) {
+        LocalDate start = period.start(date);
+        return sum(start.toEpochDay(), period.next(start).toEpochDay());
+    }
+
+    /**
+     * Totals of consecutive periods: from the one containing {@code from} through the one
+     * containing {@code to}, each a whole period.
+     *
+     * @return one total per period, oldest first
+     */
+    public long[] totals(Period period, LocalDate from, LocalDate to) {
+        LocalDate start = period.start(from);
+        int n = 0;
+        for (LocalDate d = start; !d.isAfter(to); d = period.next(d)) n++;
+        long[] out = new long[n];
+        long prev = prefix(start.toEpochDay());
+        LocalDate d = start;
+        for (int i = 0; i < n; i++) {
+            d = period.next(d);
+            long next = prefix(d.toEpochDay());
+            out[i] = next - prev;
+            prev = next;
+        }
+        return out;
+    }
+
+    /** Sum of the days before {@code epochDay}, clamped to the span. */
+    private long prefix(long epochDay) {
+        long n = Math.min(Math.max(epochDay - firstDay, 0), days.length);
+        long s = 0;
+        for (int k = (int) n; k > 0; k -= k & -k) s += tree[k];
+        return s;
+    }
+
+    /** Widens the span to include {@code epochDay}, at least doubling it. */
+    private void grow(long epochDay) {
+        long first = firstDay;
+        long end = endEpochDay();
+        long len = Math.max(days.length, 1);
+        if (epochDay < first) first = Math.min(epochDay, first - len);
+        if (epochDay >= end) end = Math.max(epochDay + 1, end + len);
+        if (end - first > Integer.MAX_VALUE - 1) throw new IllegalArgumentException("Day out of range: " + epochDay);
+        long[] wider = new long[(int) (end - first)];
+        System.arraycopy(days, 0, wider, (int) (firstDay - first), days.length);
+        firstDay = first;
+        days = wider;
+        tree = build(days);
+    }
+
+    /** O(n) Fenwick construction: each node passes its sum on to its parent. */
+    private static long[] build(long[] values) {
+        long[] t = new long[values.length + 1];
+        for (int i = 1; i < t.length; i++) {
+            t[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent < t.length) t[parent] += t[i];
+        }
+        return t;
+    }
+}
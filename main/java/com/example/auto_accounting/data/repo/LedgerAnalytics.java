@@ -0,0 +1,140 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+
+import com.example.auto_accounting.data.db.Change;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Application-wide {@link DaySumIndex} over the whole ledger, live and archived.
+ * <p>The index is built once from the daily rollups of {@link LedgerReader#dayTotals}, stamped
+ * with the {@link ChangeLog} sequence of the same {@link LedgerReader#snapshot snapshot}.
+ * Afterwards, a query first applies the changes logged since, but only when
+ * {@link LedgerVersion} moved, so queries between writes never touch the database. A reset or a
+ * gap in the log, or a change of the time zone, rebuilds the index. Amounts are in the
+ * reporting currency of {@link FxRates}.
+ * <p>Blocking methods must be called off the main thread.
+ */
+public final class LedgerAnalytics {
+
+    /** Changes read per query while catching up. */
+    private static final int CATCH_UP_BATCH = 4096;
+
+    private static volatile LedgerAnalytics instance;
+
+    private final LedgerReader reader;
+    private final ChangeLog changes;
+    private final FxRates fx;
+
+    // Guarded by this.
+    private DaySumIndex index;
+    private ZoneId zone;
+    private long seq;
+    private long seenVersion;
+
+    private LedgerAnalytics(Context context) {
+        this.reader = LedgerReader.get(context);
+        this.changes = ChangeLog.get(context);
+        this.fx = FxRates.get(context);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide analytics index
+     */
+    public static LedgerAnalytics get(Context context) {
+        if (instance == null) {
+            synchronized (LedgerAnalytics.class) {
+                if (instance == null) {
+                    instance = new LedgerAnalytics(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param from first day
+     * @param to   last day, inclusive
+     * @return the total of the days in between, in minor units
+     */
+    public synchronized long sum(LocalDate from, LocalDate to) {
+        return fresh().sum(from.toEpochDay(), to.toEpochDay() + 1);
+    }
+
+    /** @return the total of the period containing {@code date}, in minor units */
+    public synchronized long total(DaySumIndex.Period period, LocalDate date) {
+        return fresh().total(period, date);
+    }
+
+    /**
+     * @return per-period totals from the period containing {@code from} through the one
+     *         containing {@code to}, oldest first, see {@link DaySumIndex#totals}
+     */
+    public synchronized long[] totals(DaySumIndex.Period period, LocalDate from, LocalDate to) {
+        return fresh().totals(period, from, to);
+    }
+
+    /** @return the running total of the ledger up to and including {@code day}, in minor units */
+    public synchronized long balance(LocalDate day) {
+        return fresh().balance(day.toEpochDay());
+    }
+
+    // ------------------ maintenance ------------------
+
+    private DaySumIndex fresh() {
+        ZoneId z = ZoneId.systemDefault();
+        // Read the version first: a write racing the catch-up leaves it stale, not lost.
+        long version = LedgerVersion.current();
+        if (index == null || !z.equals(zone)) {
+            rebuild(z);
+        } else if (version != seenVersion) {
+            catchUp();
+        }
+        seenVersion = version;
+        return index;
+    }
+
+    private void rebuild(ZoneId z) {
+        // Whole history: read as a snapshot, not in a transaction that would stall inserts.
+        long today = LocalDate.now(z).toEpochDay();
+        index = reader.snapshot(s -> {
+            Long min = reader.minTimeMillis();
+            long first = min == null ? today : epochDay(min, z);
+            seq = s;
+            return new DaySumIndex(first, reader.dayTotals(first, (int) (today - first + 1)));
+        });
+        zone = z;
+    }
+
+    private void catchUp() {
+        while (true) {
+            ChangeLog.Batch batch = changes.read(seq, CATCH_UP_BATCH);
+            if (batch.changes.isEmpty()) return;
+            if (batch.resync) {
+                rebuild(zone);
+                return;
+            }
+            for (Change c : batch.changes) {
+                if (c.op == Change.UPDATE && c.oldTimeMillis != null && c.oldAmountMinor != null) {
+                    long day = epochDay(c.oldTimeMillis, zone);
+                    int currency = c.oldCurrency == null ? CurrencyCode.DEFAULT.code : c.oldCurrency;
+                    index.add(day, -fx.toReporting(c.oldAmountMinor, currency, day));
+                }
+                long day = epochDay(c.timeMillis, zone);
+                long amount = fx.toReporting(c.amountMinor, c.currency, day);
+                index.add(day, c.op == Change.DELETE ? -amount : amount);
+            }
+            seq = batch.lastSeq;
+        }
+    }
+
+    private static long epochDay(long timeMillis, ZoneId zone) {
+        return Instant.ofEpochMilli(timeMillis).atZone(zone).toLocalDate().toEpochDay();
+    }
+}
@@ -0,0 +1,408 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.archive.ArchiveStore;
+import com.example.auto_accounting.data.archive.MonthArchive;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.ChangeDao;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.DayTotal;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.db.Merchant;
+import com.example.auto_accounting.data.db.MerchantDao;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Reads the ledger as one table although closed months live in
+ * {@link com.example.auto_accounting.data.archive.MonthArchive} files and only recent rows stay
+ * in {@code table_entries}. Every method holds the archive read lock across the archive and
+ * database reads, so a concurrent compaction is seen either fully or not at all.
+ * Blocking; call from a background thread.
+ */
+public final class LedgerReader {
+
+    /** Newest first, ties by id descending. */
+    static final Comparator<Entry> NEWEST_FIRST = (a, b) -> a.timeMillis != b.timeMillis
+            ? Long.compare(b.timeMillis, a.timeMillis) : Long.compare(b.id, a.id);
+
+    private static final int MAX_SQL_VARS = 999;
+
+    /** Tries of {@link #snapshot} before it falls back to a transaction. */
+    private static final int SNAPSHOT_ATTEMPTS = 3;
+
+    /** Rows between cancellation checks while streaming. */
+    private static final int CANCEL_CHECK_ROWS = 4096;
+
+    /** Receives rows one at a time, see {@link #forEachInRange}. */
+    public interface RowSink {
+        /** @param currency {@link CurrencyCode#code} of the amount */
+        void accept(long id, long timeMillis, @Nullable String merchant, long amountMinor,
+                    int currency) throws IOException;
+    }
+
+    private static volatile LedgerReader instance;
+
+    private final AppDb db;
+    private final ArchiveStore archives;
+    private final FxRates fx;
+
+    private LedgerReader(Context context) {
+        this.db = DbProvider.get(context);
+        this.archives = ArchiveStore.get(context);
+        this.fx = FxRates.get(context);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide reader
+     */
+    public static LedgerReader get(Context context) {
+        if (instance == null) {
+            synchronized (LedgerReader.class) {
+                if (instance == null) {
+                    instance = new LedgerReader(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Runs a read with the archive read lock held, so that several calls see one state.
+     * Opens no transaction; wrap database transactions inside, not around, this call.
+     */
+    public <T> T locked(Supplier<T> read) {
+        Lock lock = archives.readLock();
+        lock.lock();
+        try {
+            return read.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs a read that must see one state of the ledger, without taking SQLite's write lock.
+     * A Room transaction is {@code BEGIN IMMEDIATE} on the single write connection, so a long
+     * read inside one would hold up every insert. Instead the read runs {@link #locked} between
+     * two reads of the {@link ChangeLog} sequence and is repeated if a change committed in
+     * between; only after {@link #SNAPSHOT_ATTEMPTS} such tries does it run in a transaction.
+     * Writes the change log does not see (merchant names, categories) are not detected.
+     *
+     * @param read gets the sequence its result will be current up to; may run more than once
+     * @return the result of the read that saw no change
+     */
+    public <T> T snapshot(LongFunction<T> read) {
+        return locked(() -> {
+            ChangeDao changes = db.changeDao();
+            for (int i = 0; i < SNAPSHOT_ATTEMPTS; i++) {
+                long seq = changes.lastSeq();
+                T result = read.apply(seq);
+                if (changes.lastSeq() == seq) return result;
+            }
+            return db.runInTransaction(() -> read.apply(changes.lastSeq()));
+        });
+    }
+
+    /**
+     * Lists rows within [startMillis, endMillis) ordered by time ascending.
+     *
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @return list of rows
+     */
+    public List<Entry> listInRange(long startMillis, long endMillis) {
+        return locked(() -> {
+            ZoneId zone = ZoneId.systemDefault();
+            List<Entry> out = new ArrayList<>();
+            for (MonthArchive a : archivesIn(startMillis, endMillis, zone)) {
+                MonthArchive.Columns c = a.decode();
+                for (int i = 0; i < c.size(); i++) {
+                    if (c.times[i] >= startMillis && c.times[i] < endMillis) out.add(entry(c, i));
+                }
+            }
+            if (out.isEmpty()) return db.tableDao().listInRange(startMillis, endMillis);
+            out.addAll(db.tableDao().listInRange(startMillis, endMillis));
+            out.sort(NEWEST_FIRST.reversed());
+            resolveNames(out);
+            return out;
+        });
+    }
+
+    /**
+     * Streams rows within [startMillis, endMillis) ordered by (time, id) without collecting them:
+     * one month at a time, the month's archive (if any) is merged with a cursor over its live
+     * rows. Memory is bounded by one archived month, whatever the range.
+     *
+     * @param startMillis inclusive start in epoch milliseconds
+     * @param endMillis   exclusive end in epoch milliseconds
+     * @param sink        receives the rows on the calling thread
+     * @param token       checked every few thousand rows, may be null
+     * @return number of rows streamed
+     * @throws IOException if the sink throws
+     */
+    public long forEachInRange(long startMillis, long endMillis, RowSink sink,
+                               @Nullable CancellationToken token) throws IOException {
+        if (startMillis >= endMillis) return 0;
+        ZoneId zone = ZoneId.systemDefault();
+        YearMonth last = YearMonth.from(Instant.ofEpochMilli(endMillis - 1).atZone(zone));
+        long count = 0;
+        Lock lock = archives.readLock();
+        lock.lock();
+        try {
+            for (YearMonth ym = YearMonth.from(Instant.ofEpochMilli(startMillis).atZone(zone));
+                 !ym.isAfter(last); ym = ym.plusMonths(1)) {
+                long from = Math.max(startMillis, ym.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli());
+                long to = Math.min(endMillis,
+                        ym.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli());
+                MonthArchive archive = archives.month(ym);
+                try (Cursor live = db.tableDao().cursorInRange(from, to)) {
+                    count += archive == null
+                            ? streamCursor(live, sink, token)
+                            : streamMerged(archive, from, to, live, sink, token);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return count;
+    }
+
+    /**
+     * Streams every row of a cursor from {@link com.example.auto_accounting.data.db.TableDao#cursorInRange}.
+     *
+     * @return number of rows streamed
+     */
+    public static long streamCursor(Cursor c, RowSink sink, @Nullable CancellationToken token)
+            throws IOException {
+        CursorColumns col = new CursorColumns(c);
+        long n = 0;
+        while (c.moveToNext()) {
+            if (token != null && n % CANCEL_CHECK_ROWS == 0) token.throwIfCancelled();
+            col.emit(c, sink);
+            n++;
+        }
+        return n;
+    }
+
+    private long streamMerged(MonthArchive archive, long from, long to, Cursor live,
+                              RowSink sink, @Nullable CancellationToken token) throws IOException {
+        MonthArchive.Columns a = archive.decode();
+        Map<Long, String> names = namesOf(archive.dictionary());
+        CursorColumns col = new CursorColumns(live);
+        int i = 0;
+        while (i < a.size() && a.times[i] < from) i++;
+        boolean hasLive = live.moveToNext();
+        long n = 0;
+        while (true) {
+            boolean hasArchived = i < a.size() && a.times[i] < to;
+            if (!hasArchived && !hasLive) break;
+            if (token != null && n % CANCEL_CHECK_ROWS == 0) token.throwIfCancelled();
+            boolean archivedFirst = hasArchived && (!hasLive
+                    || a.times[i] < live.getLong(col.time)
+                    || (a.times[i] == live.getLong(col.time) && a.ids[i] < live.getLong(col.id)));
+            if (archivedFirst) {
+                sink.accept(a.ids[i], a.times[i], names.get(a.merchantIds[i]), a.amounts[i],
+                        a.currencies[i]);
+                i++;
+            } else {
+                col.emit(live, sink);
+                hasLive = live.moveToNext();
+            }
+            n++;
+        }
+        return n;
+    }
+
+    /** Column indexes of an {@link Entry} cursor. */
+    private static final class CursorColumns {
+        final int id, time, name, amount, currency;
+
+        CursorColumns(Cursor c) {
+            id = c.getColumnIndexOrThrow("id");
+            time = c.getColumnIndexOrThrow("timeMillis");
+            name = c.getColumnIndexOrThrow("description");
+            amount = c.getColumnIndexOrThrow("amountMinor");
+            currency = c.getColumnIndexOrThrow("currency");
+        }
+
+        void emit(Cursor c, RowSink sink) throws IOException {
+            sink.accept(c.getLong(id), c.getLong(time),
+                    c.isNull(name) ? null : c.getString(name), c.getLong(amount), c.getInt(currency));
+        }
+    }
+
+    /**
+     * Sums amounts per local calendar day in the reporting currency: each currency is summed
+     * on its own, then converted per day by {@link FxRates#convert}.
+     *
+     * @param firstEpochDay first local epoch day
+     * @param days          number of days
+     * @return {@code days} totals in minor units, index 0 = {@code firstEpochDay}
+     */
+    public long[] dayTotals(long firstEpochDay, int days) {
+        long[][] byCurrency = locked(() -> {
+            ZoneId zone = ZoneId.systemDefault();
+            long start = LocalDate.ofEpochDay(firstEpochDay).atStartOfDay(zone).toInstant().toEpochMilli();
+            long end = LocalDate.ofEpochDay(firstEpochDay + days).atStartOfDay(zone).toInstant().toEpochMilli();
+            long[][] out = new long[CurrencyCode.count()][];
+            for (MonthArchive a : archivesIn(start, end, zone)) {
+                a.addDayTotals(out, days, firstEpochDay, zone);
+            }
+            for (DayTotal t : db.tableDao().dailyTotals(start, end)) {
+                long idx = t.epochDay - firstEpochDay;
+                if (idx < 0 || idx >= days || t.currency < 0 || t.currency >= out.length) continue;
+                if (out[t.currency] == null) out[t.currency] = new long[days];
+                out[t.currency][(int) idx] += t.totalMinor;
+            }
+            return out;
+        });
+        return fx.convert(byCurrency, firstEpochDay, days);
+    }
+
+    /** @return the largest row id, live or archived, 0 if the ledger is empty */
+    public long maxId() {
+        return locked(() -> {
+            long max = db.tableDao().maxId();
+            for (MonthArchive a : archives.newestFirst()) max = Math.max(max, a.maxId());
+            return max;
+        });
+    }
+
+    /** @return the earliest row time in epoch milliseconds, or null if the ledger is empty */
+    public Long minTimeMillis() {
+        return locked(() -> {
+            Long live = db.tableDao().minTimeMillis();
+            MonthArchive oldest = archives.oldest();
+            Long archived = oldest == null ? null : oldest.minTimeMillis();
+            if (archived == null) return live;
+            return live == null ? archived : Math.min(live, archived);
+        });
+    }
+
+    /**
+     * Lists the most recent rows, newest first.
+     *
+     * @param limit maximum number of rows
+     * @return list of rows ordered by time descending
+     */
+    public List<Entry> recent(int limit) {
+        return locked(() -> {
+            List<Entry> live = db.tableDao().recent(limit);
+            List<Entry> archived = new ArrayList<>();
+            for (MonthArchive a : archives.newestFirst()) {
+                if (archived.size() >= limit) break;
+                MonthArchive.Columns c = a.decode();
+                for (int i = c.size() - 1; i >= 0 && archived.size() < limit; i--) {
+                    archived.add(entry(c, i));
+                }
+            }
+            if (archived.isEmpty()) return live;
+            resolveNames(archived);
+            return mergeNewestFirst(live, archived, limit);
+        });
+    }
+
+    /**
+     * Archived rows of the given merchants strictly before a keyset cursor, newest first.
+     * Months whose dictionary holds none of the merchants are skipped without decoding.
+     */
+    List<Entry> archivedForMerchants(Set<Long> merchantIds, long beforeTime, long beforeId, int limit) {
+        List<Entry> out = new ArrayList<>();
+        for (MonthArchive a : archives.newestFirst()) {
+            if (out.size() >= limit) break;
+            if (!a.containsAnyMerchant(merchantIds)) continue;
+            MonthArchive.Columns c = a.decode();
+            for (int i = c.size() - 1; i >= 0 && out.size() < limit; i--) {
+                boolean before = c.times[i] < beforeTime
+                        || (c.times[i] == beforeTime && c.ids[i] < beforeId);
+                if (before && merchantIds.contains(c.merchantIds[i])) out.add(entry(c, i));
+            }
+        }
+        resolveNames(out);
+        return out;
+    }
+
+    /** Merges two newest-first lists and keeps the first {@code limit}. */
+    static List<Entry> mergeNewestFirst(List<Entry> a, List<Entry> b, int limit) {
+        List<Entry> out = new ArrayList<>(Math.min(limit, a.size() + b.size()));
+        int i = 0, j = 0;
+        while (out.size() < limit && (i < a.size() || j < b.size())) {
+            if (j >= b.size() || (i < a.size() && NEWEST_FIRST.compare(a.get(i), b.get(j)) <= 0)) {
+                out.add(a.get(i++));
+            } else {
+                out.add(b.get(j++));
+            }
+        }
+        return out;
+    }
+
+    private List<MonthArchive> archivesIn(long startMillis, long endMillis, ZoneId zone) {
+        YearMonth from = YearMonth.from(Instant.ofEpochMilli(startMillis).atZone(zone));
+        YearMonth to = YearMonth.from(Instant.ofEpochMilli(endMillis - 1).atZone(zone));
+        return archives.between(from, to);
+    }
+
+    private static Entry entry(MonthArchive.Columns c, int i) {
+        Entry e = new Entry();
+        e.id = c.ids[i];
+        e.timeMillis = c.times[i];
+        e.merchantId = c.merchantIds[i];
+        e.amountMinor = c.amounts[i];
+        e.currency = c.currencies[i];
+        return e;
+    }
+
+    /** Fills in {@link Entry#description} where it is missing (archived rows). */
+    private void resolveNames(List<Entry> rows) {
+        Set<Long> missing = new HashSet<>();
+        for (Entry e : rows) {
+            if (e.description == null) missing.add(e.merchantId);
+        }
+        if (missing.isEmpty()) return;
+        Map<Long, String> names = namesOf(missing);
+        for (Entry e : rows) {
+            if (e.description == null) e.description = names.get(e.merchantId);
+        }
+    }
+
+    private Map<Long, String> namesOf(Collection<Long> merchantIds) {
+        List<Long> ids = new ArrayList<>(merchantIds);
+        Map<Long, String> names = new HashMap<>();
+        MerchantDao md = db.merchantDao();
+        for (int from = 0; from < ids.size(); from += MAX_SQL_VARS) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_SQL_VARS));
+            for (Merchant m : md.byIds(chunk)) names.put(m.id, m.name);
+        }
+        return names;
+    }
+
+    private Map<Long, String> namesOf(long[] merchantIds) {
+        List<Long> ids = new ArrayList<>(merchantIds.length);
+        for (long id : merchantIds) ids.add(id);
+        return namesOf(ids);
+    }
+}
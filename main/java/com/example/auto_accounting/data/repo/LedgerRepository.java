@@ -0,0 +1,155 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Read-through cache of month snapshots in front of {@link AppDb}.
+ * <p>Entries are stamped with {@link LedgerVersion#forMonth(int, int)}; a write committed by
+ * {@link TableWriter} into a month bumps that version, so the next read of the month goes
+ * back to the database while other months stay cached. Concurrent requests for the same
+ * month and version share one query. Blocking methods must be called off the main thread.
+ */
+public final class LedgerRepository {
+
+    /** Number of months kept in memory. */
+    private static final int MAX_MONTHS = 12;
+
+    private static volatile LedgerRepository instance;
+
+    private final LedgerReader reader;
+    private final FxRates fx;
+
+    /** LRU of loaded months; guarded by {@code this}. */
+    private final LinkedHashMap<YearMonth, MonthData> cache =
+            new LinkedHashMap<YearMonth, MonthData>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<YearMonth, MonthData> eldest) {
+                    return size() > MAX_MONTHS;
+                }
+            };
+
+    /** Loads in flight keyed by month and version; guarded by {@code this}. */
+    private final Map<String, CompletableFuture<MonthData>> inflight = new HashMap<>();
+
+    private LedgerRepository(Context context) {
+        this.reader = LedgerReader.get(context);
+        this.fx = FxRates.get(context);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide repository
+     */
+    public static LedgerRepository get(Context context) {
+        if (instance == null) {
+            synchronized (LedgerRepository.class) {
+                if (instance == null) {
+                    instance = new LedgerRepository(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the month's rows and daily totals, from memory when no row landed in the month
+     * since it was read. Blocks while another thread is loading the same month.
+     *
+     * @param year  year, e.g. 2025
+     * @param month month 1..12
+     * @return an immutable snapshot
+     */
+    public MonthData loadMonth(int year, int month) {
+        YearMonth ym = YearMonth.of(year, month);
+        // Read the version before querying, so a write racing the load leaves a stale stamp.
+        long version = LedgerVersion.forMonth(year, month);
+        String key = ym + "#" + version;
+        CompletableFuture<MonthData> future;
+        boolean owner = false;
+        synchronized (this) {
+            MonthData hit = cache.get(ym);
+            if (hit != null && hit.version == version) return hit;
+            future = inflight.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                inflight.put(key, future);
+                owner = true;
+            }
+        }
+        if (!owner) return joinUnchecked(future);
+
+        try {
+            MonthData data = query(ym, version);
+            synchronized (this) {
+                MonthData current = cache.get(ym);
+                if (current == null || current.version <= version) cache.put(ym, data);
+                inflight.remove(key);
+            }
+            future.complete(data);
+            return data;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                inflight.remove(key);
+            }
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the month from the database even if it is cached, e.g. when a consumer of the
+     * {@link ChangeLog} needs a snapshot newer than the cached one. Replaces the cached month.
+     *
+     * @param year  year, e.g. 2025
+     * @param month month 1..12
+     * @return an immutable snapshot
+     */
+    public MonthData reloadMonth(int year, int month) {
+        YearMonth ym = YearMonth.of(year, month);
+        MonthData data = query(ym, LedgerVersion.forMonth(year, month));
+        synchronized (this) {
+            MonthData current = cache.get(ym);
+            if (current == null || current.seq <= data.seq) cache.put(ym, data);
+        }
+        return data;
+    }
+
+    /** Drops every cached month. */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    private MonthData query(YearMonth ym, long version) {
+        ZoneId zone = ZoneId.systemDefault();
+        long start = ym.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = ym.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        // A snapshot, not a transaction: a cache miss must not hold up inserts.
+        return reader.snapshot(seq -> {
+            long maxId = reader.maxId();
+            List<Entry> rows = reader.listInRange(start, end);
+            return new MonthData(ym, version, maxId, seq, rows, zone, fx);
+        });
+    }
+
+    private static MonthData joinUnchecked(CompletableFuture<MonthData> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.db.MerchantMatch;
+import com.example.auto_accounting.data.db.TableDao;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text search over descriptions, best match first, one page at a time.
+ * <p>The text is matched against the {@code merchants_fts} index, which holds one row per
+ * merchant rather than per payment. The matching merchants are ranked once per search by
+ * Okapi BM25 over their names (FTS4 has no ranking function, so it is computed from
+ * {@code matchinfo}): a term counts more when few names contain it and when the name is short,
+ * so "star" puts Starbucks before Star City Casino. Ties go to the newer merchant. Results list
+ * the best merchant's payments newest first, then the next merchant's, each read straight off
+ * the (merchantId, timeMillis) index, so a page costs a few index seeks whatever the ledger size
+ * or the number of matching merchants. The ranking travels in the {@link Cursor}, so later pages
+ * keep its order. Archived months are filtered by their merchant dictionary and merged in per
+ * merchant. Blocking; call from a background thread.
+ */
+public final class LedgerSearch {
+
+    /** BM25 term-frequency saturation. */
+    private static final double K1 = 1.2;
+    /** BM25 length normalization: 0 ignores the name length, 1 fully divides by it. */
+    private static final double B = 0.75;
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /** Position after the last row of a page; pass it to get the next page. */
+    public static final class Cursor {
+        /** Matching merchant ids, best first, fixed by the first page. */
+        final long[] merchants;
+        /** Index into {@link #merchants} of the merchant the page stopped in. */
+        final int index;
+        final long beforeTime;
+        final long beforeId;
+
+        Cursor(long[] merchants, int index, long beforeTime, long beforeId) {
+            this.merchants = merchants;
+            this.index = index;
+            this.beforeTime = beforeTime;
+            this.beforeId = beforeId;
+        }
+    }
+
+    /** One page of results. */
+    public static final class Page {
+        /** Rows of the best matching merchants first, each merchant's newest first. */
+        public final List<Entry> rows;
+        /** Cursor of the next page, null if this is the last one. */
+        @Nullable public final Cursor next;
+
+        Page(List<Entry> rows, @Nullable Cursor next) {
+            this.rows = rows;
+            this.next = next;
+        }
+    }
+
+    /** Reads one merchant's rows strictly before a keyset cursor, newest first. */
+    private interface MerchantRows {
+        List<Entry> page(long merchantId, long beforeTime, long beforeId, int limit);
+    }
+
+    private LedgerSearch() {
+        // No instances.
+    }
+
+    /**
+     * Turns user input into an FTS4 MATCH expression: every word becomes a prefix term, so
+     * {@code "star buc"} finds "Starbucks". Operators and quotes in the input are dropped.
+     *
+     * @param text user input
+     * @return the expression, or null if the input has no words
+     */
+    @Nullable
+    public static String toMatchQuery(String text) {
+        if (text == null) return null;
+        StringBuilder sb = new StringBuilder();
+        for (String w : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (w.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(w).append('*');
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * Reads one page of matches.
+     *
+     * @param context any context
+     * @param match   expression from {@link #toMatchQuery(String)}
+     * @param after   cursor of the previous page, null for the first
+     * @param limit   page size
+     * @return the page
+     */
+    public static Page page(Context context, String match, @Nullable Cursor after, int limit) {
+        LedgerReader reader = LedgerReader.get(context);
+        TableDao dao = DbProvider.get(context).tableDao();
+        MerchantRows rows = (id, beforeTime, beforeId, n) -> LedgerReader.mergeNewestFirst(
+                dao.pageForMerchant(id, beforeTime, beforeId, n),
+                reader.archivedForMerchants(Collections.singleton(id), beforeTime, beforeId, n), n);
+        return reader.locked(() -> page(dao, match, after, limit, rows));
+    }
+
+    /**
+     * Same as {@link #page(Context, String, Cursor, int)} against a given database, live rows
+     * only; archived months are not searched.
+     */
+    public static Page page(TableDao dao, String match, @Nullable Cursor after, int limit) {
+        return page(dao, match, after, limit, dao::pageForMerchant);
+    }
+
+    private static Page page(TableDao dao, String match, @Nullable Cursor after, int limit,
+                             MerchantRows source) {
+        long[] merchants = after == null ? rank(dao.matchMerchants(match)) : after.merchants;
+        int i = after == null ? 0 : after.index;
+        long beforeTime = after == null ? Long.MAX_VALUE : after.beforeTime;
+        long beforeId = after == null ? Long.MAX_VALUE : after.beforeId;
+        List<Entry> rows = new ArrayList<>(limit);
+        for (; i < merchants.length; i++) {
+            int want = limit - rows.size();
+            List<Entry> got = source.page(merchants[i], beforeTime, beforeId, want);
+            rows.addAll(got);
+            if (got.size() == want) {
+                // The merchant may have more: the next page resumes inside it.
+                Entry last = got.get(got.size() - 1);
+                return new Page(rows, new Cursor(merchants, i, last.timeMillis, last.id));
+            }
+            beforeTime = Long.MAX_VALUE;
+            beforeId = Long.MAX_VALUE;
+        }
+        return new Page(rows, null);
+    }
+
+    /** @return the merchant ids by descending {@link #bm25} score, ties newest merchant first */
+    static long[] rank(List<MerchantMatch> matches) {
+        int n = matches.size();
+        long[] ids = new long[n];
+        double[] scores = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = matches.get(i).merchantId;
+            scores[i] = bm25(matches.get(i).info);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> scores[a] != scores[b]
+                ? Double.compare(scores[b], scores[a])
+                : Long.compare(ids[b], ids[a]));
+        long[] out = new long[n];
+        for (int i = 0; i < n; i++) out[i] = ids[order[i]];
+        return out;
+    }
+
+    /**
+     * Okapi BM25 of one merchant name from its {@code matchinfo(…, 'pcnalx')}: p phrases,
+     * c columns, n rows, then per column the average and this row's length in tokens, then per
+     * phrase and column the hits in this row, in all rows, and the rows with a hit. A prefix
+     * term counts every token it matches.
+     */
+    static double bm25(byte[] info) {
+        IntBuffer m = ByteBuffer.wrap(info).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = m.get(0), columns = m.get(1);
+        double rows = m.get(2);
+        int avgAt = 3, lengthAt = 3 + columns, hitsAt = 3 + 2 * columns;
+        double score = 0;
+        for (int p = 0; p < phrases; p++) {
+            for (int c = 0; c < columns; c++) {
+                int x = hitsAt + 3 * (p * columns + c);
+                double tf = m.get(x);
+                if (tf == 0) continue;
+                double df = m.get(x + 2);
+                double idf = Math.log(1 + (rows - df + 0.5) / (df + 0.5));
+                double norm = 1 - B + B * m.get(lengthAt + c) / Math.max(1, m.get(avgAt + c));
+                score += idf * tf * (K1 + 1) / (tf + K1 * norm);
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.auto_accounting.data.repo;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version counter of the ledger, bumped by {@link TableWriter} after every commit.
+ * <p>Besides the global version, the last version that touched each month is remembered,
+ * so caches of one month are only invalidated when new data lands in that month.
+ */
+public final class LedgerVersion {
+
+    /** Global version, incremented once per committed write. */
+    private static final AtomicLong GLOBAL = new AtomicLong();
+
+    /** yyyyMM → last global version that wrote into that month. */
+    private static final ConcurrentHashMap<Integer, Long> MONTHS = new ConcurrentHashMap<>();
+
+    /** Version every month is at least at, raised when the whole ledger was replaced. */
+    private static final AtomicLong FLOOR = new AtomicLong();
+
+    private LedgerVersion() {
+        // No instances.
+    }
+
+    /** @return the current global ledger version. */
+    public static long current() {
+        return GLOBAL.get();
+    }
+
+    /**
+     * @param year  year, e.g. 2025
+     * @param month month 1..12
+     * @return the last version that wrote into the month, 0 if none since process start
+     */
+    public static long forMonth(int year, int month) {
+        Long v = MONTHS.get(monthKey(year, month));
+        return Math.max(v == null ? 0L : v, FLOOR.get());
+    }
+
+    /**
+     * Records a committed write of a row at {@code timeMillis}.
+     *
+     * @param timeMillis event time of the written row
+     * @return the new global version
+     */
+    static long bump(long timeMillis) {
+        long v = GLOBAL.incrementAndGet();
+        YearMonth ym = YearMonth.from(Instant.ofEpochMilli(timeMillis).atZone(ZoneId.systemDefault()));
+        MONTHS.merge(monthKey(ym.getYear(), ym.getMonthValue()), v, Math::max);
+        return v;
+    }
+
+    /**
+     * Records that every month may have changed, e.g. after a restore.
+     *
+     * @return the new global version
+     */
+    public static long bumpAll() {
+        long v = GLOBAL.incrementAndGet();
+        FLOOR.accumulateAndGet(v, Math::max);
+        return v;
+    }
+
+    private static int monthKey(int year, int month) {
+        return year * 100 + month;
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Observable queries for the chart screen: the current month's daily totals and the most
+ * recent rows, kept live through Room's {@link InvalidationTracker}.
+ * <p>The first load takes the month from {@link LedgerRepository} (shared with the chart
+ * exporter and usually already cached) plus the recent rows. After that, each invalidation of
+ * the {@link ChangeLog} only reads the changes after the last sequence applied: inserted rows
+ * are added to the recent list, and their amounts, converted into the reporting currency, to
+ * the day buckets. Updates, deletes, a reset, or a gap in the log reload the snapshot, as does
+ * the calendar month rolling over.
+ * <p>Listener callbacks and the getters run on the main thread.
+ */
+public final class LiveLedgerQuery {
+
+    /** Receives the snapshot and the deltas on the main thread. */
+    public interface Listener {
+        /**
+         * A full (re)load finished. {@code recent} is a read-only view that later deltas
+         * update in place, newest first.
+         */
+        void onSnapshot(YearMonth month, long[] dayTotalsMinor, List<Entry> recent);
+
+        /**
+         * Rows were added after the snapshot; totals and recent list are already updated.
+         *
+         * @param amountsMinor amount of each row in the reporting currency
+         * @param seqs         {@link ChangeLog} sequence of each row's insert
+         */
+        void onRowsAdded(List<Entry> rows, long[] amountsMinor, long[] seqs);
+    }
+
+    private static final String TABLE = "table_changes";
+
+    /** Changes read per query; a snapshot further behind than this is read afresh. */
+    private static final int DELTA_BATCH = 500;
+
+    private final AppDb db;
+    private final LedgerRepository repo;
+    private final LedgerReader reader;
+    private final ChangeLog changes;
+    private final FxRates fx;
+    private final Executor io;
+    private final int recentLimit;
+    private final Listener listener;
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    /** Last change sequence applied, -1 before the snapshot; touched only on {@link #io}. */
+    private long lastSeq = -1;
+    /** Largest id in the recent list of the snapshot; rows up to it are already listed. */
+    private long recentMaxId;
+
+    // State owned by the main thread.
+    private YearMonth month;
+    private long[] dayTotals = new long[0];
+    private final ArrayList<Entry> recent = new ArrayList<>();
+    private boolean started;
+
+    private final InvalidationTracker.Observer observer = new InvalidationTracker.Observer(TABLE) {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            io.execute(LiveLedgerQuery.this::readDelta);
+        }
+    };
+
+    /**
+     * @param context     any context
+     * @param io          executor for DB reads; must run tasks one at a time, in order
+     * @param recentLimit number of rows kept in the recent list
+     * @param listener    main-thread listener
+     */
+    public LiveLedgerQuery(Context context, Executor io, int recentLimit, Listener listener) {
+        this.db = DbProvider.get(context);
+        this.repo = LedgerRepository.get(context);
+        this.reader = LedgerReader.get(context);
+        this.changes = ChangeLog.get(context);
+        this.fx = FxRates.get(context);
+        this.io = io;
+        this.recentLimit = recentLimit;
+        this.listener = listener;
+    }
+
+    /** Loads the snapshot and starts observing. Call from the main thread. */
+    public void start() {
+        if (started) return;
+        started = true;
+        db.getInvalidationTracker().addObserver(observer);
+        io.execute(this::readSnapshot);
+    }
+
+    /** Reloads the snapshot, e.g. after the ledger was restored. Call from the main thread. */
+    public void reload() {
+        if (started) io.execute(this::readSnapshot);
+    }
+
+    /** Stops observing. Call from the main thread. */
+    public void stop() {
+        if (!started) return;
+        started = false;
+        db.getInvalidationTracker().removeObserver(observer);
+    }
+
+    /** @return the live daily totals of {@link #month()} (do not modify). */
+    public long[] dayTotals() {
+        return dayTotals;
+    }
+
+    /** @return the month the daily totals belong to, null before the first snapshot. */
+    public YearMonth month() {
+        return month;
+    }
+
+    // ------------------ background ------------------
+
+    private void readSnapshot() {
+        readSnapshot(false);
+    }
+
+    /** @param fresh true to bypass the month cache, whose changes cannot be replayed */
+    private void readSnapshot(boolean fresh) {
+        YearMonth ym = YearMonth.now(ZoneId.systemDefault());
+        MonthData data = fresh ? repo.reloadMonth(ym.getYear(), ym.getMonthValue())
+                : repo.loadMonth(ym.getYear(), ym.getMonthValue());
+        // A month cached long ago would replay every change since, mostly of other months.
+        if (!fresh && changes.lastSeq() - data.seq > DELTA_BATCH) {
+            data = repo.reloadMonth(ym.getYear(), ym.getMonthValue());
+        }
+        // The cached totals are shared: deltas are applied to a private copy.
+        long[] totals = data.dayTotalsMinor.clone();
+        List<Entry> rows = reader.recent(recentLimit);
+        long maxListed = 0;
+        for (Entry r : rows) maxListed = Math.max(maxListed, r.id);
+        // Changes after the snapshot's sequence are replayed, even if the recent rows have them.
+        lastSeq = data.seq;
+        final long listed = maxListed;
+        main.post(() -> applySnapshot(ym, totals, rows, listed));
+        readDelta();
+    }
+
+    private void readDelta() {
+        while (lastSeq >= 0) { // else the snapshot is still pending; it will include these rows
+            ChangeLog.Batch batch = changes.read(lastSeq, DELTA_BATCH);
+            if (batch.changes.isEmpty()) return;
+            if (batch.resync || !batch.insertsOnly()) {
+                lastSeq = -1;
+                readSnapshot(true);
+                return;
+            }
+            List<Entry> rows = changes.insertedRows(lastSeq, batch.lastSeq);
+            lastSeq = batch.lastSeq;
+            ZoneId zone = ZoneId.systemDefault();
+            long[] amounts = new long[rows.size()];
+            long[] seqs = new long[rows.size()];
+            for (int i = 0; i < amounts.length; i++) {
+                Entry row = rows.get(i);
+                amounts[i] = fx.toReporting(row.amountMinor, row.currency, row.timeMillis, zone);
+                seqs[i] = batch.changes.get(i).seq; // inserts only: one row per change, same order
+            }
+            main.post(() -> applyDelta(rows, amounts, seqs));
+        }
+    }
+
+    // ------------------ main thread ------------------
+
+    private void applySnapshot(YearMonth ym, long[] totals, List<Entry> rows, long listedMaxId) {
+        if (!started) return;
+        month = ym;
+        recentMaxId = listedMaxId;
+        dayTotals = totals;
+        recent.clear();
+        recent.addAll(rows);
+        listener.onSnapshot(ym, totals, Collections.unmodifiableList(recent));
+    }
+
+    /**
+     * @param amounts amount of each row in the reporting currency
+     * @param seqs    sequence of each row's insert
+     */
+    private void applyDelta(List<Entry> rows, long[] amounts, long[] seqs) {
+        if (!started || month == null) return;
+        ZoneId zone = ZoneId.systemDefault();
+        if (!YearMonth.now(zone).equals(month)) {
+            io.execute(this::readSnapshot); // month rolled over: start a fresh month
+            return;
+        }
+        boolean listed = false;
+        for (int i = 0; i < rows.size(); i++) {
+            Entry row = rows.get(i);
+            LocalDate d = Instant.ofEpochMilli(row.timeMillis).atZone(zone).toLocalDate();
+            if (YearMonth.from(d).equals(month)) dayTotals[d.getDayOfMonth() - 1] += amounts[i];
+            if (row.id > recentMaxId) {
+                recent.add(row);
+                listed = true;
+            }
+        }
+        if (listed) {
+            // Imported history arrives with new ids but old times: keep the list newest first.
+            recent.sort(LedgerReader.NEWEST_FIRST);
+            if (recent.size() > recentLimit) recent.subList(recentLimit, recent.size()).clear();
+        }
+        listener.onRowsAdded(rows, amounts, seqs);
+    }
+}
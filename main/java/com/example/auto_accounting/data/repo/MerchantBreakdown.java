@@ -0,0 +1,280 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.archive.ArchiveStore;
+import com.example.auto_accounting.data.archive.MonthArchive;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.DayTotal;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Merchant;
+import com.example.auto_accounting.data.db.MerchantTotal;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * "Where did the money go": the merchants of a time range ranked by total, with their counts
+ * and shares, and everyone else folded into one remainder.
+ * <p>No row-sized state is held. SQLite rolls the live rows up per merchant and the rollup is
+ * streamed through a cursor; archived months of the range are folded in from their columns,
+ * keyed by merchant. Each merchant total then passes a min-heap of N, so ranking costs
+ * O(merchants · log N). Only the N winners get their names looked up.
+ * <p>Totals are in the reporting currency of {@link FxRates}. The rollup sums the rows already
+ * in it; the few merchants with rows in other currencies have those read per day and
+ * converted at the day's rate.
+ * <p>Results are cached per range and N, stamped with the newest {@link LedgerVersion} of the
+ * months the range touches, so a write elsewhere leaves them valid. Blocking; call off the
+ * main thread.
+ */
+public final class MerchantBreakdown {
+
+    /** Ranked merchants of one range. */
+    public static final class Result {
+        public final long startMillis;
+        public final long endMillis;
+        /** The top merchants, largest total first (read-only). */
+        public final List<MerchantTotal> top;
+        /** Sum of every row of the range in minor units. */
+        public final long totalMinor;
+        /** Number of rows in the range. */
+        public final long count;
+        /** Number of distinct merchants in the range. */
+        public final int merchants;
+        /** Sum of the merchants outside {@link #top}. */
+        public final long otherMinor;
+        /** Rows of the merchants outside {@link #top}. */
+        public final long otherCount;
+
+        final long version;
+
+        Result(long startMillis, long endMillis, List<MerchantTotal> top, long totalMinor,
+               long count, int merchants, long version) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.top = Collections.unmodifiableList(top);
+            this.totalMinor = totalMinor;
+            this.count = count;
+            this.merchants = merchants;
+            long topMinor = 0, topCount = 0;
+            for (MerchantTotal t : top) {
+                topMinor += t.totalMinor;
+                topCount += t.count;
+            }
+            this.otherMinor = totalMinor - topMinor;
+            this.otherCount = count - topCount;
+            this.version = version;
+        }
+
+        /** @return the merchant's fraction of {@link #totalMinor}, 0 if the range is empty */
+        public double share(MerchantTotal t) {
+            return totalMinor == 0 ? 0 : (double) t.totalMinor / totalMinor;
+        }
+
+        /** @return the fraction of {@link #totalMinor} outside {@link #top} */
+        public double otherShare() {
+            return totalMinor == 0 ? 0 : (double) otherMinor / totalMinor;
+        }
+    }
+
+    /** Number of (range, N) results kept. */
+    private static final int MAX_CACHED = 16;
+    /** Ranges spanning more months than this are stamped with the global version instead. */
+    private static final int MAX_VERSIONED_MONTHS = 240;
+
+    /** Smaller total first; on ties the larger id, so the older merchant ranks higher. */
+    private static final Comparator<MerchantTotal> SMALLEST_FIRST = (a, b) ->
+            a.totalMinor != b.totalMinor ? Long.compare(a.totalMinor, b.totalMinor)
+                    : Long.compare(b.merchantId, a.merchantId);
+
+    private static volatile MerchantBreakdown instance;
+
+    private final AppDb db;
+    private final LedgerReader reader;
+    private final ArchiveStore archives;
+    private final FxRates fx;
+
+    /** LRU keyed by "start:end:n"; guarded by {@code this}. */
+    private final LinkedHashMap<String, Result> cache =
+            new LinkedHashMap<String, Result>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                    return size() > MAX_CACHED;
+                }
+            };
+
+    private MerchantBreakdown(Context context) {
+        this.db = DbProvider.get(context);
+        this.reader = LedgerReader.get(context);
+        this.archives = ArchiveStore.get(context);
+        this.fx = FxRates.get(context);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide breakdown cache
+     */
+    public static MerchantBreakdown get(Context context) {
+        if (instance == null) {
+            synchronized (MerchantBreakdown.class) {
+                if (instance == null) {
+                    instance = new MerchantBreakdown(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Ranks the merchants of [startMillis, endMillis), from the cache when no row landed in
+     * the range's months since.
+     *
+     * @param n     number of merchants to rank
+     * @param token checked between archived months and every few thousand merchants, may be null
+     * @return the ranking
+     */
+    public Result load(long startMillis, long endMillis, int n, @Nullable CancellationToken token) {
+        ZoneId zone = ZoneId.systemDefault();
+        // Read the version before querying, so a write racing the load leaves a stale stamp.
+        long version = versionOf(startMillis, endMillis, zone);
+        String key = startMillis + ":" + endMillis + ":" + n;
+        synchronized (this) {
+            Result hit = cache.get(key);
+            if (hit != null && hit.version == version) return hit;
+        }
+        Result r = reader.locked(() -> compute(startMillis, endMillis, n, version, zone, token));
+        synchronized (this) {
+            Result current = cache.get(key);
+            if (current == null || current.version <= version) cache.put(key, r);
+        }
+        return r;
+    }
+
+    /** Drops every cached result. */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    /** Runs with the archive read lock held, so archived and live rows do not overlap. */
+    private Result compute(long start, long end, int n, long version, ZoneId zone,
+                           @Nullable CancellationToken token) {
+        int reporting = fx.reportingCurrency();
+        // Archived months: merchant → {total, count}.
+        Map<Long, long[]> archived = new HashMap<>();
+        if (start < end) {
+            YearMonth from = YearMonth.from(Instant.ofEpochMilli(start).atZone(zone));
+            YearMonth to = YearMonth.from(Instant.ofEpochMilli(end - 1).atZone(zone));
+            for (MonthArchive a : archives.between(from, to)) {
+                if (token != null) token.throwIfCancelled();
+                MonthArchive.Columns c = a.decode();
+                for (int i = 0; i < c.size(); i++) {
+                    if (c.times[i] < start || c.times[i] >= end) continue;
+                    long[] acc = archived.get(c.merchantIds[i]);
+                    if (acc == null) archived.put(c.merchantIds[i], acc = new long[2]);
+                    acc[0] += c.currencies[i] == reporting ? c.amounts[i]
+                            : fx.toReporting(c.amounts[i], c.currencies[i], c.times[i], zone);
+                    acc[1]++;
+                }
+            }
+        }
+
+        Ranking ranking = new Ranking(n);
+        try (Cursor c = db.merchantDao().rollupInRange(start, end, reporting)) {
+            int id = c.getColumnIndexOrThrow("merchantId");
+            int total = c.getColumnIndexOrThrow("totalMinor");
+            int count = c.getColumnIndexOrThrow("count");
+            int foreign = c.getColumnIndexOrThrow("foreign");
+            while (c.moveToNext()) {
+                if (token != null && ranking.merchants % 4096 == 0) token.throwIfCancelled();
+                long merchant = c.getLong(id);
+                long sum = c.getLong(total);
+                long rows = c.getLong(count);
+                if (c.getLong(foreign) > 0) {
+                    for (DayTotal t : db.merchantDao().foreignTotals(merchant, start, end, reporting)) {
+                        sum += fx.toReporting(t.totalMinor, t.currency, t.epochDay);
+                    }
+                }
+                long[] acc = archived.remove(merchant);
+                if (acc != null) {
+                    sum += acc[0];
+                    rows += acc[1];
+                }
+                ranking.offer(merchant, sum, rows);
+            }
+        }
+        for (Map.Entry<Long, long[]> e : archived.entrySet()) {
+            ranking.offer(e.getKey(), e.getValue()[0], e.getValue()[1]);
+        }
+
+        List<MerchantTotal> top = new ArrayList<>(ranking.heap);
+        top.sort(SMALLEST_FIRST.reversed());
+        List<Long> ids = new ArrayList<>(top.size());
+        for (MerchantTotal t : top) ids.add(t.merchantId);
+        Map<Long, String> names = new HashMap<>();
+        if (!ids.isEmpty()) {
+            for (Merchant m : db.merchantDao().byIds(ids)) names.put(m.id, m.name);
+        }
+        for (MerchantTotal t : top) t.name = names.get(t.merchantId);
+        return new Result(start, end, top, ranking.totalMinor, ranking.count, ranking.merchants, version);
+    }
+
+    /** Bounded min-heap of the N largest totals, plus the grand totals. */
+    private static final class Ranking {
+        final int n;
+        final PriorityQueue<MerchantTotal> heap;
+        long totalMinor;
+        long count;
+        int merchants;
+
+        Ranking(int n) {
+            this.n = n;
+            this.heap = new PriorityQueue<>(Math.max(1, n + 1), SMALLEST_FIRST);
+        }
+
+        void offer(long merchantId, long total, long rows) {
+            totalMinor += total;
+            count += rows;
+            merchants++;
+            if (n <= 0) return;
+            if (heap.size() == n) {
+                MerchantTotal min = heap.peek();
+                boolean larger = total > min.totalMinor
+                        || (total == min.totalMinor && merchantId < min.merchantId);
+                if (!larger) return;
+                heap.poll();
+            }
+            MerchantTotal t = new MerchantTotal();
+            t.merchantId = merchantId;
+            t.totalMinor = total;
+            t.count = (int) Math.min(rows, Integer.MAX_VALUE);
+            heap.add(t);
+        }
+    }
+
+    /** @return the newest version of the months in [start, end) */
+    private static long versionOf(long start, long end, ZoneId zone) {
+        if (start >= end) return LedgerVersion.current();
+        YearMonth from = YearMonth.from(Instant.ofEpochMilli(start).atZone(zone));
+        YearMonth to = YearMonth.from(Instant.ofEpochMilli(end - 1).atZone(zone));
+        if (from.plusMonths(MAX_VERSIONED_MONTHS).isBefore(to)) return LedgerVersion.current();
+        long v = 0;
+        for (YearMonth ym = from; !ym.isAfter(to); ym = ym.plusMonths(1)) {
+            v = Math.max(v, LedgerVersion.forMonth(ym.getYear(), ym.getMonthValue()));
+        }
+        return v;
+    }
+}
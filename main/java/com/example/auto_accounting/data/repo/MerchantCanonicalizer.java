@@ -0,0 +1,344 @@
+package com.example.auto_accounting.data.repo;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Maps raw merchant strings from notifications onto canonical merchant names.
+ * <p>A raw string is first normalized to a key: lower case, payment processor prefixes
+ * ({@code SQ *}, {@code PAYPAL *}), store numbers and punctuation removed, and trailing
+ * business suffixes ({@code pty ltd}, {@code coffee}, …) dropped. The key is then matched
+ * against the known merchants held in a prefix trie, in this order:
+ * <ol>
+ *   <li>exact key;</li>
+ *   <li>the longest known key that is a whole-word prefix of the key
+ *       ({@code "starbucks sydney"} → {@code starbucks});</li>
+ *   <li>the closest known key within a small edit distance that grows with the key length,
+ *       found by walking the trie with a pruned Levenshtein row. Only keys sharing the first
+ *       character are searched, which skips most of the trie;</li>
+ *   <li>the shortest known key that the key is a whole-word prefix of.</li>
+ * </ol>
+ * The prefix steps only merge when every word one key has beyond the other is a
+ * {@link #DETAILS detail}: a business suffix, store or place word. Any other word may name
+ * another business ({@code "red"} and {@code "red rooster"}), so the key stays apart. A key
+ * without a match becomes a new merchant. Results are memoized per raw string in a bounded
+ * LRU, so a repeat merchant costs one hash lookup. Not thread-safe.
+ */
+public final class MerchantCanonicalizer {
+
+    /** Number of raw strings whose result is memoized. */
+    public static final int DEFAULT_MEMO_SIZE = 1024;
+
+    private static final Pattern PROCESSOR_PREFIX =
+            Pattern.compile("^(?:sq|sp|tst|pp|ppl|paypal|zlr|ls)\\s*\\*\\s*");
+    private static final Pattern STORE_NUMBER =
+            Pattern.compile("(?:#|\\bno\\.?|\\bstore)\\s*\\d+");
+    private static final Pattern APOSTROPHE = Pattern.compile("['’]");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}&]+");
+
+    /** Words dropped from the end of a key while something else remains. */
+    private static final Set<String> SUFFIXES = new HashSet<>(Arrays.asList(
+            "pty", "ltd", "limited", "inc", "llc", "co", "corp", "company", "store", "stores",
+            "shop", "online", "coffee", "cafe", "restaurant", "au", "com"));
+
+    /**
+     * Words that say where or what kind of outlet, not which business: a known key followed
+     * only by these is the same merchant. Only words that rarely end a business name belong
+     * here; short or generic ones ({@code st}, {@code sa}, {@code city}, {@code north}) are
+     * often part of one ({@code "bank sa"}, {@code "star city"}) and stay out.
+     */
+    private static final Set<String> DETAILS = new HashSet<>(SUFFIXES);
+
+    static {
+        DETAILS.addAll(Arrays.asList(
+                "branch", "outlet", "kiosk", "airport", "mall", "arcade", "cbd", "nsw", "vic",
+                "qld", "tas", "sydney", "melbourne", "brisbane", "perth", "adelaide", "hobart",
+                "canberra", "darwin"));
+    }
+
+    /** Every prefix of a {@link #DETAILS} word, to prune the completion search. */
+    private static final Set<String> DETAIL_PREFIXES = new HashSet<>();
+
+    static {
+        for (String w : DETAILS) {
+            for (int i = 0; i <= w.length(); i++) DETAIL_PREFIXES.add(w.substring(0, i));
+        }
+    }
+
+    /** Trie node; children kept in small parallel arrays since most nodes have one child. */
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] kids = new Node[0];
+        /** Canonical name if a known key ends here. */
+        String name;
+
+        Node child(char c) {
+            for (int i = 0; i < keys.length; i++) if (keys[i] == c) return kids[i];
+            return null;
+        }
+
+        Node childOrAdd(char c) {
+            Node n = child(c);
+            if (n != null) return n;
+            int len = keys.length;
+            keys = Arrays.copyOf(keys, len + 1);
+            kids = Arrays.copyOf(kids, len + 1);
+            keys[len] = c;
+            kids[len] = n = new Node();
+            return n;
+        }
+    }
+
+    private final Node root = new Node();
+    private int size;
+    private final LinkedHashMap<String, String> memo;
+
+    // Scratch state of the fuzzy search: one Levenshtein row per trie depth.
+    private int[][] rows = new int[0][];
+    private String bestName;
+    private int bestDistance;
+
+    public MerchantCanonicalizer() {
+        this(DEFAULT_MEMO_SIZE);
+    }
+
+    /** @param memoSize number of raw strings whose result is memoized */
+    public MerchantCanonicalizer(int memoSize) {
+        this.memo = new LinkedHashMap<String, String>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > memoSize;
+            }
+        };
+    }
+
+    /**
+     * Normalizes a raw merchant string to its matching key.
+     *
+     * @param raw raw string, may be null
+     * @return the key, empty if nothing is left
+     */
+    public static String normalize(String raw) {
+        if (raw == null) return "";
+        String s = raw.toLowerCase(Locale.ROOT).trim();
+        s = PROCESSOR_PREFIX.matcher(s).replaceFirst("");
+        s = STORE_NUMBER.matcher(s).replaceAll(" ");
+        s = APOSTROPHE.matcher(s).replaceAll("");
+        String[] words = NON_WORD.split(s);
+
+        int end = words.length;
+        while (end > 1 && (words[end - 1].isEmpty() || SUFFIXES.contains(words[end - 1])
+                || isDigits(words[end - 1]))) {
+            end--;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < end; i++) {
+            String w = words[i];
+            if (w.isEmpty() || (isDigits(w) && i > 0)) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(w);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isDigits(String w) {
+        if (w.isEmpty()) return false;
+        for (int i = 0; i < w.length(); i++) if (!Character.isDigit(w.charAt(i))) return false;
+        return true;
+    }
+
+    /**
+     * Registers a known merchant under its own key.
+     *
+     * @param name canonical name as stored in {@code merchants}
+     */
+    public void addKnown(String name) {
+        String key = normalize(name);
+        if (key.isEmpty()) return;
+        Node n = root;
+        for (int i = 0; i < key.length(); i++) n = n.childOrAdd(key.charAt(i));
+        if (n.name == null) {
+            n.name = name;
+            size++;
+        }
+    }
+
+    /** @return the number of known keys */
+    public int size() {
+        return size;
+    }
+
+    /** Forgets the memoized results, e.g. after merchants were merged. */
+    public void clearMemo() {
+        memo.clear();
+    }
+
+    /**
+     * Returns the canonical name of a raw merchant string. An unmatched key is registered
+     * as a new merchant.
+     *
+     * @param raw raw string, may be null
+     * @return the canonical name, empty for a blank input
+     */
+    public String canonicalize(String raw) {
+        String r = raw == null ? "" : raw;
+        String hit = memo.get(r);
+        if (hit != null) return hit;
+
+        String key = normalize(r);
+        String name;
+        if (key.isEmpty()) {
+            name = r.trim();
+        } else {
+            name = match(key);
+            if (name == null) {
+                name = displayName(r, key);
+                addKnown(name);
+            }
+        }
+        memo.put(r, name);
+        return name;
+    }
+
+    /**
+     * @param key a normalized key
+     * @return the known name the key resolves to, or null
+     */
+    public String match(String key) {
+        // [1]/[2] Walk the key: exact hit, else the longest known whole-word prefix followed
+        // only by details.
+        Node n = root;
+        String prefixName = null;
+        for (int i = 0; i < key.length() && n != null; i++) {
+            n = n.child(key.charAt(i));
+            if (n == null || n.name == null) continue;
+            if (i + 1 == key.length() || (key.charAt(i + 1) == ' ' && allDetails(key, i + 2))) {
+                prefixName = n.name;
+            }
+        }
+        if (prefixName != null) return prefixName;
+
+        // [3] Bounded edit distance.
+        int k = maxDistance(key.length());
+        if (k > 0) {
+            String fuzzy = closest(key, k);
+            if (fuzzy != null) return fuzzy;
+        }
+
+        // [4] The key is a whole-word prefix of a known key: shortest completion by details.
+        if (n != null) {
+            Node space = n.child(' ');
+            if (space != null) return nearestDetailName(space);
+        }
+        return null;
+    }
+
+    /** @return true if every word of {@code key} from index {@code from} on is a detail */
+    private static boolean allDetails(String key, int from) {
+        int start = from;
+        for (int i = from; i <= key.length(); i++) {
+            if (i < key.length() && key.charAt(i) != ' ') continue;
+            if (!DETAILS.contains(key.substring(start, i))) return false;
+            start = i + 1;
+        }
+        return true;
+    }
+
+    /** Allowed edits: none for short keys, where one edit already changes the merchant. */
+    private static int maxDistance(int length) {
+        if (length <= 4) return 0;
+        return length <= 8 ? 1 : 2;
+    }
+
+    private String closest(String key, int k) {
+        Node first = root.child(key.charAt(0));
+        if (first == null) return null;
+        int cols = key.length() + 1;
+        int depth = key.length() + k + 1;
+        if (rows.length < depth || rows[0].length < cols) rows = new int[Math.max(depth, rows.length)][cols];
+        bestName = null;
+        bestDistance = k + 1;
+        int[] row0 = rows[0];
+        for (int i = 0; i < cols; i++) row0[i] = i;
+        search(first, key.charAt(0), key, 1);
+        return bestName;
+    }
+
+    private void search(Node node, char c, String key, int depth) {
+        if (depth >= rows.length) return; // longer than key + k: cannot be within k
+        int cols = key.length() + 1;
+        int[] prev = rows[depth - 1];
+        int[] row = rows[depth];
+        row[0] = prev[0] + 1;
+        int rowMin = row[0];
+        for (int i = 1; i < cols; i++) {
+            int cost = key.charAt(i - 1) == c ? 0 : 1;
+            row[i] = Math.min(Math.min(row[i - 1] + 1, prev[i] + 1), prev[i - 1] + cost);
+            if (row[i] < rowMin) rowMin = row[i];
+        }
+        if (node.name != null && row[cols - 1] < bestDistance) {
+            bestDistance = row[cols - 1];
+            bestName = node.name;
+        }
+        // Every extension costs at least rowMin, so stop once it cannot beat the best.
+        if (rowMin >= bestDistance) return;
+        for (int i = 0; i < node.keys.length; i++) {
+            search(node.kids[i], node.keys[i], key, depth + 1);
+        }
+    }
+
+    /**
+     * Breadth-first: the name closest below {@code from}, the start of a word, whose words from
+     * there on are all {@link #DETAILS details}. Only branches spelling a detail are followed.
+     */
+    private static String nearestDetailName(Node from) {
+        ArrayDeque<Node> nodes = new ArrayDeque<>();
+        ArrayDeque<String> words = new ArrayDeque<>(); // the word spelled so far at each node
+        nodes.add(from);
+        words.add("");
+        while (!nodes.isEmpty()) {
+            Node n = nodes.poll();
+            String word = words.poll();
+            if (n.name != null && DETAILS.contains(word)) return n.name;
+            for (int i = 0; i < n.keys.length; i++) {
+                char c = n.keys[i];
+                String next = c == ' ' ? "" : word + c;
+                if (c == ' ' ? !DETAILS.contains(word) : !DETAIL_PREFIXES.contains(next)) continue;
+                nodes.add(n.kids[i]);
+                words.add(next);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Name of a new merchant: the raw words the key kept with their original case, or the
+     * key in title case when they are not contiguous in the raw string.
+     */
+    private static String displayName(String raw, String key) {
+        String trimmed = raw.trim();
+        // Compare in place: lower-casing can change the length ("İ"), so offsets into a
+        // lower-cased copy do not hold in the raw string.
+        for (int at = 0; at + key.length() <= trimmed.length(); at++) {
+            if (!trimmed.regionMatches(true, at, key, 0, key.length())) continue;
+            String words = trimmed.substring(at, at + key.length());
+            // Shouting bank formats ("STARBUCKS") are title-cased like the non-contiguous case.
+            if (!words.equals(words.toUpperCase(Locale.ROOT))) return words;
+            break;
+        }
+        StringBuilder sb = new StringBuilder(key.length());
+        boolean start = true;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            sb.append(start ? Character.toUpperCase(c) : c);
+            start = c == ' ';
+        }
+        return sb.toString();
+    }
+}
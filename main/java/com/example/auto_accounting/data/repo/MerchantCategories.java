@@ -0,0 +1,265 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.data.db.CategoryDao;
+import com.example.auto_accounting.data.db.CategoryKeyword;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Merchant;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The category of every merchant, and so of every row through {@code merchantId}.
+ * <p>A merchant is classified once, when the ingest path first asks for it, by a
+ * {@link CategoryClassifier} holding the bundled keywords and those learned from
+ * corrections; the result is stored on the merchant with its {@link Merchant#categorySource
+ * source}. A user's choice ({@link #setCategory}) is never overwritten. It also teaches the
+ * classifier the merchant's name as a keyword and reclassifies the other merchants, so
+ * spelling variants follow.
+ * <p>Lookups are memoized in a byte array indexed by merchant id (ids are dense), so a known
+ * merchant costs one array read without locking. Merchants that predate classification, or
+ * came in through an import or a restore, are filled in by the batched
+ * {@link #scheduleBackfill backfill} on the background lane.
+ * <p>Blocking methods must be called off the main thread.
+ */
+public final class MerchantCategories {
+
+    private static final String TAG = "MerchantCategories";
+
+    /** Merchants classified per transaction by the backfill. */
+    private static final int BACKFILL_BATCH = 500;
+    /** Merchant ids from here on are not memoized, so the memo stays a few MB at most. */
+    private static final int MAX_MEMO_ID = 1 << 22;
+    private static final int INITIAL_MEMO = 256;
+
+    private static volatile MerchantCategories instance;
+    private static final AtomicBoolean backfillPending = new AtomicBoolean();
+    private static final AtomicBoolean reclassifyPending = new AtomicBoolean();
+
+    /** Null for a {@link #forDatabase tool instance}. */
+    @Nullable
+    private final Context app;
+    private final AppDb db;
+    private final CategoryDao dao;
+
+    /**
+     * {@code Category.code + 1} per merchant id, 0 if not known yet. Written under
+     * {@code this}; read without locking, where a stale 0 only costs the slow path.
+     */
+    private volatile byte[] memo = new byte[INITIAL_MEMO];
+
+    /** Loaded with the learned keywords on first use; guarded by {@code this}. */
+    private CategoryClassifier classifier;
+
+    private MerchantCategories(@Nullable Context app, AppDb db) {
+        this.app = app;
+        this.db = db;
+        this.dao = db.categoryDao();
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide merchant categories
+     */
+    public static MerchantCategories get(Context context) {
+        if (instance == null) {
+            synchronized (MerchantCategories.class) {
+                if (instance == null) {
+                    Context app = context.getApplicationContext();
+                    instance = new MerchantCategories(app, DbProvider.get(app));
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Categories over another database, for tools such as benchmarks that must not touch the
+     * app's ledger. Corrections reclassify inline instead of on the background lane.
+     *
+     * @param db the database
+     * @return a new instance
+     */
+    public static MerchantCategories forDatabase(AppDb db) {
+        return new MerchantCategories(null, db);
+    }
+
+    /**
+     * Returns the category of a merchant, classifying and storing it on first sight. A
+     * memoized merchant is answered from memory.
+     *
+     * @param merchantId {@link Merchant#id}
+     * @return its category, {@link Category#UNCATEGORIZED} for an unknown merchant
+     */
+    public Category categoryOf(long merchantId) {
+        byte[] m = memo;
+        if (merchantId >= 0 && merchantId < m.length) {
+            int code = m[(int) merchantId];
+            if (code != 0) return Category.fromCode(code - 1);
+        }
+        return load(merchantId);
+    }
+
+    /**
+     * Files a merchant under a category chosen by the user, learns its name as a keyword and
+     * schedules reclassifying the other merchants with it.
+     *
+     * @param merchantId {@link Merchant#id}
+     * @param category   the chosen category
+     */
+    public void setCategory(long merchantId, Category category) {
+        synchronized (this) {
+            Merchant m = dao.merchant(merchantId);
+            if (m == null) return;
+            String keyword = keywordOf(m.name);
+            db.runInTransaction(() -> {
+                dao.setCategory(merchantId, category.code, Merchant.SOURCE_USER);
+                if (!keyword.isEmpty()) {
+                    CategoryKeyword k = new CategoryKeyword();
+                    k.keyword = keyword;
+                    k.category = category.code;
+                    dao.learn(k);
+                }
+            });
+            if (!keyword.isEmpty()) classifier().learn(keyword, category);
+            remember(merchantId, category);
+        }
+        if (app != null) BudgetTracker.get(app).invalidate();
+        if (app != null) scheduleBackfill(app, true);
+        else backfill(true, null);
+    }
+
+    /** Drops the in-memory state, e.g. after the database was replaced. */
+    public synchronized void clear() {
+        memo = new byte[INITIAL_MEMO];
+        classifier = null;
+    }
+
+    // ------------------ backfill ------------------
+
+    /**
+     * Runs {@link #backfill} on the background lane, unless one of the same kind is already
+     * queued.
+     *
+     * @param all true to reclassify every merchant the user has not filed (after a
+     *            correction); false to classify only the unclassified ones
+     */
+    public static void scheduleBackfill(Context context, boolean all) {
+        AtomicBoolean pending = all ? reclassifyPending : backfillPending;
+        if (!pending.compareAndSet(false, true)) return;
+        final Context app = context.getApplicationContext();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            pending.set(false);
+            int n = get(app).backfill(all, null);
+            if (n > 0) {
+                Log.i(TAG, "Classified " + n + " merchant(s)");
+                BudgetTracker.get(app).invalidate();
+            }
+        });
+        if (!queued) pending.set(false);
+    }
+
+    /**
+     * Classifies merchants in id order, {@link #BACKFILL_BATCH} per transaction. Blocking.
+     *
+     * @param all   true to include merchants already classified by keywords
+     * @param token checked between batches, may be null
+     * @return number of merchants whose category changed
+     */
+    public int backfill(boolean all, @Nullable CancellationToken token) {
+        int below = all ? Merchant.SOURCE_USER : Merchant.SOURCE_KEYWORD;
+        int changed = 0;
+        long after = 0;
+        while (true) {
+            if (token != null) token.throwIfCancelled();
+            List<Merchant> batch = dao.toClassify(after, below, BACKFILL_BATCH);
+            if (batch.isEmpty()) return changed;
+            synchronized (this) {
+                CategoryClassifier c = classifier();
+                changed += db.runInTransaction(() -> {
+                    int n = 0;
+                    for (Merchant m : batch) {
+                        if (store(c, m)) n++;
+                    }
+                    return n;
+                });
+            }
+            after = batch.get(batch.size() - 1).id;
+        }
+    }
+
+    // ------------------ internals ------------------
+
+    private synchronized Category load(long merchantId) {
+        Merchant m = dao.merchant(merchantId);
+        if (m == null) return Category.UNCATEGORIZED;
+        if (m.categorySource == Merchant.SOURCE_NONE) {
+            store(classifier(), m);
+        } else {
+            remember(m.id, Category.fromCode(m.category));
+        }
+        return Category.fromCode(m.category);
+    }
+
+    /**
+     * Classifies a merchant the user has not filed and writes the result back if it changed;
+     * updates {@code m} and the memo. Call with {@code this} held.
+     *
+     * @return true if the stored category changed
+     */
+    private boolean store(CategoryClassifier c, Merchant m) {
+        CategoryClassifier.Match match = c.classify(m.name);
+        int source = match.learned ? Merchant.SOURCE_LEARNED : Merchant.SOURCE_KEYWORD;
+        boolean changed = m.category != match.category.code;
+        if (changed || m.categorySource != source) {
+            dao.setCategory(m.id, match.category.code, source);
+            m.category = match.category.code;
+            m.categorySource = source;
+        }
+        remember(m.id, match.category);
+        return changed;
+    }
+
+    /** Call with {@code this} held. */
+    private CategoryClassifier classifier() {
+        if (classifier == null) {
+            classifier = new CategoryClassifier();
+            for (CategoryKeyword k : dao.keywords()) {
+                classifier.learn(k.keyword, Category.fromCode(k.category));
+            }
+        }
+        return classifier;
+    }
+
+    /** Call with {@code this} held. */
+    private void remember(long merchantId, Category category) {
+        if (merchantId < 0 || merchantId >= MAX_MEMO_ID) return;
+        byte[] m = memo;
+        if (merchantId >= m.length) {
+            long grown = Math.max(merchantId + 1, m.length * 2L);
+            m = Arrays.copyOf(m, (int) Math.min(grown, MAX_MEMO_ID));
+        }
+        m[(int) merchantId] = (byte) (category.code + 1);
+        memo = m;
+    }
+
+    /**
+     * The keyword a correction teaches: the merchant's canonical key
+     * ({@link MerchantCanonicalizer#normalize}), which drops store numbers and business
+     * suffixes, so sibling branches match too.
+     */
+    private static String keywordOf(String name) {
+        String key = CategoryClassifier.words(MerchantCanonicalizer.normalize(name));
+        return key.isEmpty() ? CategoryClassifier.words(name) : key;
+    }
+}
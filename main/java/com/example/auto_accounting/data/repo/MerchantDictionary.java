@@ -0,0 +1,115 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Merchant;
+import com.example.auto_accounting.data.db.MerchantDao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Interns descriptions into {@code merchants} ids for the insert path.
+ * <p>Descriptions are first mapped to a canonical merchant name by a
+ * {@link MerchantCanonicalizer} seeded with the stored merchants, so spelling variants of one
+ * merchant share an id. A bounded LRU map from canonical name to id sits in front of the
+ * table, so the usual handful of merchants resolve without touching the database. Blocking;
+ * call from a background thread (normally
+ * {@link com.example.auto_accounting.core.AppScheduler.Lane#INGEST}).
+ */
+public final class MerchantDictionary {
+
+    /** Number of names kept in memory. */
+    private static final int MAX_NAMES = 512;
+
+    private static volatile MerchantDictionary instance;
+
+    private final MerchantDao dao;
+
+    /** Loaded with the stored names on first use; guarded by {@code this}. */
+    private MerchantCanonicalizer canonicalizer;
+
+    /** LRU of name → id; guarded by {@code this}. */
+    private final LinkedHashMap<String, Long> ids =
+            new LinkedHashMap<String, Long>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > MAX_NAMES;
+                }
+            };
+
+    private MerchantDictionary(MerchantDao dao) {
+        this.dao = dao;
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide dictionary
+     */
+    public static MerchantDictionary get(Context context) {
+        if (instance == null) {
+            synchronized (MerchantDictionary.class) {
+                if (instance == null) {
+                    instance = new MerchantDictionary(
+                            DbProvider.get(context.getApplicationContext()).merchantDao());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * A dictionary over another database, for tools such as benchmarks that must not touch the
+     * app's ledger.
+     *
+     * @param db the database
+     * @return a new dictionary
+     */
+    public static MerchantDictionary forDatabase(AppDb db) {
+        return new MerchantDictionary(db.merchantDao());
+    }
+
+    /**
+     * @param description raw description, may be null
+     * @return the canonical merchant name stored in {@code merchants}
+     */
+    public synchronized String canonical(@Nullable String description) {
+        if (canonicalizer == null) {
+            canonicalizer = new MerchantCanonicalizer();
+            for (String name : dao.allNames()) canonicalizer.addKnown(name);
+        }
+        return canonicalizer.canonicalize(description);
+    }
+
+    /**
+     * Returns the merchant id of a description, inserting the merchant on first sight.
+     *
+     * @param description raw description, may be null
+     * @return {@link Merchant#id}
+     */
+    public synchronized long idFor(@Nullable String description) {
+        String name = canonical(description);
+        Long id = ids.get(name);
+        if (id != null) return id;
+
+        id = dao.idByName(name);
+        if (id == null) {
+            Merchant m = new Merchant();
+            m.name = name;
+            long inserted = dao.insert(m);
+            id = inserted != -1 ? inserted : dao.idByName(name);
+        }
+        ids.put(name, id);
+        return id;
+    }
+
+    /** Drops the in-memory state, e.g. after the database was replaced. */
+    public synchronized void clear() {
+        ids.clear();
+        canonicalizer = null;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.auto_accounting.data.repo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Running statistics of every merchant's payments, to tell an unusual payment the moment it
+ * is saved: an amount far above the merchant's normal, or a burst of charges in a short
+ * window.
+ * <p>Per merchant it keeps the count, mean and variance of the amounts (Welford's online
+ * algorithm) and two exponentially decayed counts of charges: one with a time constant of
+ * {@link #BURST_WINDOW_MILLIS}, roughly the charges of the last hour, and one of
+ * {@link #RATE_WINDOW_MILLIS}, the merchant's normal rate. {@link #observe} scores a payment
+ * against the state before it and then folds it in, in O(1) with no history read.
+ * <p>The state lives in parallel primitive arrays indexed by an open-addressing hash of the
+ * merchant id, about 60 bytes per merchant, and serializes to a flat record per merchant
+ * ({@link #toBytes}, {@link #fromBytes}).
+ * <p>Not thread-safe; {@link SpendingAnomalies} guards the application-wide instance.
+ */
+public final class MerchantStats {
+
+    /** Payments a merchant needs before its amounts are judged. */
+    public static final int MIN_SAMPLES = 5;
+    /** An unusual amount is at least this many standard deviations above the mean... */
+    public static final double AMOUNT_SIGMAS = 3.0;
+    /** ... and at least this multiple of the mean... */
+    public static final double AMOUNT_RATIO = 2.0;
+    /** ... and at least this many minor units above it. */
+    public static final long AMOUNT_MIN_EXCESS_MINOR = 1000;
+
+    /** Time constant of the burst count. */
+    public static final long BURST_WINDOW_MILLIS = 3_600_000L;
+    /** Decayed count that makes a burst: about three charges within a quarter of an hour. */
+    public static final double BURST_COUNT = 2.5;
+    /** A burst must also be this many times the merchant's normal rate over the window. */
+    public static final double BURST_FACTOR = 4.0;
+    /** Time constant of the normal rate. */
+    public static final long RATE_WINDOW_MILLIS = 30L * 86_400_000L;
+
+    /** {@link Verdict#flags} bit: the amount is far above the merchant's normal. */
+    public static final int AMOUNT = 1;
+    /** {@link Verdict#flags} bit: one charge too many in a short window. */
+    public static final int BURST = 2;
+
+    /** Score of one payment; the figures are filled in for unusual payments only. */
+    public static final class Verdict {
+        /** {@link #AMOUNT} and / or {@link #BURST}, 0 for a normal payment. */
+        public final int flags;
+        /** Mean amount of the merchant before this payment, in minor units. */
+        public final long meanMinor;
+        /** Payments of the merchant before this one. */
+        public final int samples;
+        /** Decayed count of the merchant's charges in the burst window, this one included. */
+        public final double recentCharges;
+
+        Verdict(int flags, long meanMinor, int samples, double recentCharges) {
+            this.flags = flags;
+            this.meanMinor = meanMinor;
+            this.samples = samples;
+            this.recentCharges = recentCharges;
+        }
+
+        /** @return true if any flag is set */
+        public boolean unusual() {
+            return flags != 0;
+        }
+    }
+
+    private static final Verdict NORMAL = new Verdict(0, 0, 0, 0);
+
+    private static final int MAGIC = 0x4D535431; // "MST1"
+    private static final int HEADER_BYTES = 8;
+    private static final int RECORD_BYTES = 8 + 4 + 8 + 8 + 8 + 8 + 8 + 8;
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Parallel arrays indexed by slot; key 0 marks a free slot (merchant ids start at 1).
+    private long[] keys;
+    private int[] count;
+    private double[] mean;
+    private double[] m2;
+    private double[] burst;
+    private double[] rate;
+    private long[] lastTime;
+    /** Time of the last burst flagged, so one burst is flagged once. */
+    private long[] lastBurst;
+    private int size;
+
+    /** Creates empty statistics. */
+    public MerchantStats() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /** @return number of merchants tracked */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Scores a payment against the merchant's statistics so far, then adds it to them.
+     * Refunds (amounts of zero or less) are neither scored nor counted.
+     *
+     * @param merchantId  merchant of the payment
+     * @param timeMillis  time of the payment
+     * @param amountMinor amount in minor units
+     * @return the verdict
+     */
+    public Verdict observe(long merchantId, long timeMillis, long amountMinor) {
+        if (merchantId <= 0 || amountMinor <= 0) return NORMAL;
+        int i = slot(merchantId);
+        if (keys[i] == 0) {
+            if ((size + 1) * 2 > keys.length) {
+                rehash(keys.length * 2);
+                i = slot(merchantId);
+            }
+            keys[i] = merchantId;
+            lastTime[i] = timeMillis;
+            size++;
+        }
+
+        // Decay both counts to now; a row older than the last one decays nothing.
+        long dt = Math.max(0, timeMillis - lastTime[i]);
+        double recent = burst[i] * Math.exp(-(double) dt / BURST_WINDOW_MILLIS) + 1;
+        double normal = rate[i] * Math.exp(-(double) dt / RATE_WINDOW_MILLIS) + 1;
+
+        int flags = 0;
+        int n = count[i];
+        double mu = mean[i];
+        if (n >= MIN_SAMPLES) {
+            double sd = Math.sqrt(m2[i] / (n - 1));
+            double excess = amountMinor - mu;
+            if (excess >= AMOUNT_MIN_EXCESS_MINOR && amountMinor >= mu * AMOUNT_RATIO
+                    && excess >= AMOUNT_SIGMAS * sd) {
+                flags |= AMOUNT;
+            }
+        }
+        // Charges the normal rate would put into one burst window.
+        double expected = normal * BURST_WINDOW_MILLIS / RATE_WINDOW_MILLIS;
+        boolean newBurst = lastBurst[i] == 0 || timeMillis - lastBurst[i] >= BURST_WINDOW_MILLIS;
+        if (recent >= BURST_COUNT && recent >= BURST_FACTOR * expected && newBurst) {
+            flags |= BURST;
+            lastBurst[i] = timeMillis;
+        }
+
+        // Welford's update.
+        count[i] = n + 1;
+        double d = amountMinor - mu;
+        mean[i] = mu + d / (n + 1);
+        m2[i] += d * (amountMinor - mean[i]);
+        burst[i] = recent;
+        rate[i] = normal;
+        lastTime[i] = Math.max(lastTime[i], timeMillis);
+
+        return flags == 0 ? NORMAL : new Verdict(flags, Math.round(mu), n, recent);
+    }
+
+    // ------------------ serialization ------------------
+
+    /** @return the statistics as a header and one fixed-size record per merchant */
+    public byte[] toBytes() {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES + size * RECORD_BYTES).order(ByteOrder.BIG_ENDIAN);
+        b.putInt(MAGIC).putInt(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == 0) continue;
+            b.putLong(keys[i]).putInt(count[i]).putDouble(mean[i]).putDouble(m2[i])
+                    .putDouble(burst[i]).putDouble(rate[i]).putLong(lastTime[i]).putLong(lastBurst[i]);
+        }
+        return b.array();
+    }
+
+    /**
+     * @param bytes output of {@link #toBytes}
+     * @return the statistics
+     * @throws IOException if the bytes are not statistics
+     */
+    public static MerchantStats fromBytes(byte[] bytes) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN);
+        if (bytes.length < HEADER_BYTES || b.getInt() != MAGIC) throw new IOException("Not merchant statistics");
+        int n = b.getInt();
+        if (n < 0 || b.remaining() != (long) n * RECORD_BYTES) throw new IOException("Truncated merchant statistics");
+        MerchantStats s = new MerchantStats();
+        s.rehash(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, n)) * 4));
+        for (int r = 0; r < n; r++) {
+            long key = b.getLong();
+            int i = s.slot(key);
+            if (key <= 0 || s.keys[i] != 0) throw new IOException("Corrupt merchant statistics");
+            s.keys[i] = key;
+            s.count[i] = b.getInt();
+            s.mean[i] = b.getDouble();
+            s.m2[i] = b.getDouble();
+            s.burst[i] = b.getDouble();
+            s.rate[i] = b.getDouble();
+            s.lastTime[i] = b.getLong();
+            s.lastBurst[i] = b.getLong();
+            s.size++;
+        }
+        return s;
+    }
+
+    // ------------------ hashing ------------------
+
+    /** @return the slot holding {@code key}, or the free slot where it belongs */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        // Fibonacci hashing spreads the dense merchant ids over the table.
+        int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (keys[i] != 0 && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        count = new int[capacity];
+        mean = new double[capacity];
+        m2 = new double[capacity];
+        burst = new double[capacity];
+        rate = new double[capacity];
+        lastTime = new long[capacity];
+        lastBurst = new long[capacity];
+    }
+
+    private void rehash(int capacity) {
+        long[] k = keys;
+        int[] c = count;
+        double[] mu = mean, v = m2, bu = burst, ra = rate;
+        long[] lt = lastTime, lb = lastBurst;
+        allocate(capacity);
+        for (int j = 0; j < k.length; j++) {
+            if (k[j] == 0) continue;
+            int i = slot(k[j]);
+            keys[i] = k[j];
+            count[i] = c[j];
+            mean[i] = mu[j];
+            m2[i] = v[j];
+            burst[i] = bu[j];
+            rate[i] = ra[j];
+            lastTime[i] = lt[j];
+            lastBurst[i] = lb[j];
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.auto_accounting.data.repo;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable snapshot of one month: its rows and per-day totals.
+ * Shared through {@link LedgerRepository}'s cache, so callers must not modify the arrays.
+ */
+public final class MonthData {
+
+    /** The month. */
+    public final YearMonth month;
+
+    /** {@link LedgerVersion#forMonth(int, int)} when the snapshot was read. */
+    public final long version;
+
+    /** Largest row id in the whole table when the snapshot was read. */
+    public final long maxId;
+
+    /** Last {@link ChangeLog} sequence the snapshot reflects; later changes are not in it. */
+    public final long seq;
+
+    /** Rows of the month ordered by time ascending (read-only). */
+    public final List<Entry> rows;
+
+    /** Per-day sums in minor units of the reporting currency, index 0 = day 1. Do not modify. */
+    public final long[] dayTotalsMinor;
+
+    MonthData(YearMonth month, long version, long maxId, long seq, List<Entry> rows, ZoneId zone,
+              FxRates fx) {
+        this.month = month;
+        this.version = version;
+        this.maxId = maxId;
+        this.seq = seq;
+        this.rows = Collections.unmodifiableList(rows);
+        int days = month.lengthOfMonth();
+        long[][] byCurrency = new long[CurrencyCode.count()][];
+        for (Entry row : rows) {
+            LocalDate d = Instant.ofEpochMilli(row.timeMillis).atZone(zone).toLocalDate();
+            int c = CurrencyCode.fromCode(row.currency).code;
+            if (d.getYear() == month.getYear() && d.getMonthValue() == month.getMonthValue()) {
+                if (byCurrency[c] == null) byCurrency[c] = new long[days];
+                byCurrency[c][d.getDayOfMonth() - 1] += row.amountMinor;
+            }
+        }
+        this.dayTotalsMinor = fx.convert(byCurrency, month.atDay(1).toEpochDay(), days);
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.auto_accounting.data.repo;
+
+import androidx.annotation.Nullable;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds recurring payments (subscriptions, rent, memberships): the same merchant charging a
+ * similar amount at a steady weekly, fortnightly, monthly or quarterly interval.
+ * <p>Rows are kept per merchant in time order, within {@link #LOOKBACK_DAYS}. Adding or
+ * removing a row only marks its merchant dirty; {@link #subscriptions} re-evaluates the dirty
+ * merchants and keeps every other verdict, so each change costs one merchant's history rather
+ * than a rescan of the ledger.
+ * <p>A merchant is recurring when its latest {@link #MIN_OCCURRENCES} or more charges are
+ * spaced within the band of one {@link Cadence}, the standard deviation of those intervals
+ * stays within the cadence's tolerance, and most of the amounts lie near their median.
+ * A verdict whose next charge is overdue by more than the cadence's grace is treated as
+ * cancelled. Refunds (amounts of zero or less) are ignored.
+ * <p>Not thread-safe; {@link RecurringPayments} guards the application-wide instance.
+ */
+public final class RecurringDetector {
+
+    /** Rows older than this are dropped. Long enough for four quarterly charges. */
+    public static final int LOOKBACK_DAYS = 400;
+    /** Charges needed to call a merchant recurring. */
+    public static final int MIN_OCCURRENCES = 3;
+    /** Latest charges a verdict looks at, so an old price or rhythm does not linger. */
+    private static final int MAX_SAMPLES = 12;
+
+    /** Amounts within this fraction of the median count as the same charge. */
+    private static final double AMOUNT_TOLERANCE = 0.25;
+    /** ... or within this many minor units, for small charges. */
+    private static final long AMOUNT_TOLERANCE_MINOR = 100;
+    /** Share of the sampled amounts that must be near the median, in percent. */
+    private static final int SIMILAR_PERCENT = 75;
+
+    private static final double DAY_MILLIS = 86_400_000d;
+    /** Charges closer than this are one charge (e.g. a retried payment). */
+    private static final long SAME_CHARGE_MILLIS = 12 * 3_600_000L;
+
+    /** Interval classes, with the band a single interval may fall in. */
+    public enum Cadence {
+        WEEKLY(6, 8, 1.0, 3),
+        FORTNIGHTLY(12, 16, 1.5, 4),
+        MONTHLY(26, 35, 2.5, 7),
+        QUARTERLY(84, 98, 5.0, 15);
+
+        /** Shortest interval of the band, in days. */
+        final double minDays;
+        /** Longest interval of the band, in days. */
+        final double maxDays;
+        /** Largest standard deviation of the intervals, in days. */
+        final double maxStdDevDays;
+        /** Days a charge may be late before the subscription counts as cancelled. */
+        public final int graceDays;
+
+        Cadence(double minDays, double maxDays, double maxStdDevDays, int graceDays) {
+            this.minDays = minDays;
+            this.maxDays = maxDays;
+            this.maxStdDevDays = maxStdDevDays;
+            this.graceDays = graceDays;
+        }
+
+        /** @return the cadence whose band holds {@code days}, or null */
+        @Nullable
+        static Cadence of(double days) {
+            for (Cadence c : values()) {
+                if (days >= c.minDays && days <= c.maxDays) return c;
+            }
+            return null;
+        }
+
+        /** @return the charge after one at {@code t}; months keep the day of month */
+        public ZonedDateTime after(ZonedDateTime t) {
+            switch (this) {
+                case WEEKLY: return t.plusWeeks(1);
+                case FORTNIGHTLY: return t.plusWeeks(2);
+                case MONTHLY: return t.plusMonths(1);
+                default: return t.plusMonths(3);
+            }
+        }
+    }
+
+    /** A recurring payment of one merchant. */
+    public static final class Subscription {
+        public final long merchantId;
+        public final Cadence cadence;
+        /** Expected amount in minor units: the latest charge, or the median if it was unusual. */
+        public final long amountMinor;
+        /** Mean of the sampled intervals, in days. */
+        public final double meanIntervalDays;
+        /** Number of charges the verdict rests on. */
+        public final int occurrences;
+        /** Time of the latest charge in epoch milliseconds. */
+        public final long lastMillis;
+        /** Expected time of the next charge in epoch milliseconds. */
+        public final long nextMillis;
+
+        Subscription(long merchantId, Cadence cadence, long amountMinor, double meanIntervalDays,
+                     int occurrences, long lastMillis, long nextMillis) {
+            this.merchantId = merchantId;
+            this.cadence = cadence;
+            this.amountMinor = amountMinor;
+            this.meanIntervalDays = meanIntervalDays;
+            this.occurrences = occurrences;
+            this.lastMillis = lastMillis;
+            this.nextMillis = nextMillis;
+        }
+
+        /** @return true unless the next charge is overdue by more than the grace days */
+        public boolean isActive(long nowMillis) {
+            return nowMillis <= nextMillis + cadence.graceDays * (long) DAY_MILLIS;
+        }
+    }
+
+    /** Charges of one merchant in time order. */
+    private static final class Series {
+        long[] times = new long[4];
+        long[] amounts = new long[4];
+        int size;
+
+        void insert(long time, long amount) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            // Rows mostly arrive in time order, so this is usually an append.
+            int i = size;
+            while (i > 0 && times[i - 1] > time) i--;
+            System.arraycopy(times, i, times, i + 1, size - i);
+            System.arraycopy(amounts, i, amounts, i + 1, size - i);
+            times[i] = time;
+            amounts[i] = amount;
+            size++;
+        }
+
+        boolean remove(long time, long amount) {
+            for (int i = size - 1; i >= 0 && times[i] >= time; i--) {
+                if (times[i] == time && amounts[i] == amount) {
+                    System.arraycopy(times, i + 1, times, i, size - i - 1);
+                    System.arraycopy(amounts, i + 1, amounts, i, size - i - 1);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void dropBefore(long horizon) {
+            int n = 0;
+            while (n < size && times[n] < horizon) n++;
+            if (n == 0) return;
+            System.arraycopy(times, n, times, 0, size - n);
+            System.arraycopy(amounts, n, amounts, 0, size - n);
+            size -= n;
+        }
+    }
+
+    private final ZoneId zone;
+    private final Map<Long, Series> series = new HashMap<>();
+    private final Set<Long> dirty = new HashSet<>();
+    /** Latest verdict per recurring merchant, including cancelled ones. */
+    private final Map<Long, Subscription> verdicts = new HashMap<>();
+    private long horizon;
+
+    /**
+     * @param zone      zone of the calendar months of {@link Cadence#MONTHLY} charges
+     * @param nowMillis current time; rows before the lookback are ignored
+     */
+    public RecurringDetector(ZoneId zone, long nowMillis) {
+        this.zone = zone;
+        this.horizon = nowMillis - LOOKBACK_DAYS * (long) DAY_MILLIS;
+    }
+
+    /** @return the zone the detector was created for */
+    public ZoneId zone() {
+        return zone;
+    }
+
+    /**
+     * Records a charge. O(1) for a row in time order.
+     *
+     * @param merchantId  merchant of the row
+     * @param timeMillis  time of the row
+     * @param amountMinor amount in minor units; refunds are ignored
+     */
+    public void add(long merchantId, long timeMillis, long amountMinor) {
+        if (amountMinor <= 0 || timeMillis < horizon) return;
+        Series s = series.get(merchantId);
+        if (s == null) series.put(merchantId, s = new Series());
+        s.insert(timeMillis, amountMinor);
+        dirty.add(merchantId);
+    }
+
+    /** Forgets a charge recorded by {@link #add}, e.g. after the row was deleted or updated. */
+    public void remove(long merchantId, long timeMillis, long amountMinor) {
+        Series s = series.get(merchantId);
+        if (s != null && s.remove(timeMillis, amountMinor)) dirty.add(merchantId);
+    }
+
+    /**
+     * Re-evaluates the merchants changed since the last call and returns the active recurring
+     * payments.
+     *
+     * @param nowMillis current time
+     * @return the subscriptions whose next charge is not overdue beyond the grace, unordered
+     */
+    public List<Subscription> subscriptions(long nowMillis) {
+        refresh(nowMillis);
+        List<Subscription> out = new ArrayList<>();
+        for (Subscription v : verdicts.values()) {
+            if (v.isActive(nowMillis)) out.add(v);
+        }
+        return out;
+    }
+
+    /**
+     * Adds the charges of every merchant judged recurring, cancelled ones included, to daily
+     * totals, so that forecasts can tell them from everyday spending.
+     *
+     * @param nowMillis     current time
+     * @param firstEpochDay local epoch day of {@code out[0]}
+     * @param out           daily totals in minor units; charges outside it are skipped
+     */
+    public void addRecurringDayTotals(long nowMillis, long firstEpochDay, long[] out) {
+        refresh(nowMillis);
+        for (Long id : verdicts.keySet()) {
+            Series s = series.get(id);
+            if (s == null) continue;
+            for (int i = 0; i < s.size; i++) {
+                long day = Instant.ofEpochMilli(s.times[i]).atZone(zone).toLocalDate().toEpochDay();
+                if (day >= firstEpochDay && day < firstEpochDay + out.length) {
+                    out[(int) (day - firstEpochDay)] += s.amounts[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * @param nowMillis current time
+     * @return ids of the merchants judged recurring, cancelled ones included (a copy)
+     */
+    public Set<Long> recurringMerchants(long nowMillis) {
+        refresh(nowMillis);
+        return new HashSet<>(verdicts.keySet());
+    }
+
+    /** Re-evaluates the merchants changed since the last call. */
+    private void refresh(long nowMillis) {
+        horizon = Math.max(horizon, nowMillis - LOOKBACK_DAYS * (long) DAY_MILLIS);
+        for (Long id : dirty) {
+            Series s = series.get(id);
+            if (s != null) s.dropBefore(horizon);
+            Subscription v = s == null || s.size == 0 ? null : detect(id, s);
+            if (s != null && s.size == 0) series.remove(id);
+            if (v == null) verdicts.remove(id);
+            else verdicts.put(id, v);
+        }
+        dirty.clear();
+    }
+
+    /** @return the verdict for one merchant's charges, or null if they do not recur */
+    @Nullable
+    private Subscription detect(long merchantId, Series s) {
+        // The latest charges, with retries folded into the charge before them.
+        long[] t = new long[MAX_SAMPLES];
+        long[] a = new long[MAX_SAMPLES];
+        int n = 0;
+        for (int i = s.size - 1; i >= 0 && n < MAX_SAMPLES; i--) {
+            if (n > 0 && t[n - 1] - s.times[i] < SAME_CHARGE_MILLIS) {
+                t[n - 1] = s.times[i];
+                a[n - 1] = s.amounts[i];
+                continue;
+            }
+            t[n] = s.times[i];
+            a[n] = s.amounts[i];
+            n++;
+        }
+        if (n < MIN_OCCURRENCES) return null;
+
+        // Newest first: interval j lies between charge j + 1 and charge j.
+        double[] gaps = new double[n - 1];
+        for (int j = 0; j < n - 1; j++) gaps[j] = (t[j] - t[j + 1]) / DAY_MILLIS;
+        double[] sorted = gaps.clone();
+        Arrays.sort(sorted);
+        Cadence cadence = Cadence.of(sorted[sorted.length / 2]);
+        if (cadence == null) return null;
+
+        // The unbroken run of in-band intervals ending at the latest charge.
+        int run = 0;
+        while (run < gaps.length && gaps[run] >= cadence.minDays && gaps[run] <= cadence.maxDays) run++;
+        int count = run + 1;
+        if (count < MIN_OCCURRENCES) return null;
+
+        // Welford's mean and variance of the run's intervals.
+        double mean = 0, m2 = 0;
+        for (int j = 0; j < run; j++) {
+            double d = gaps[j] - mean;
+            mean += d / (j + 1);
+            m2 += d * (gaps[j] - mean);
+        }
+        double stdDev = run > 1 ? Math.sqrt(m2 / (run - 1)) : 0;
+        if (stdDev > cadence.maxStdDevDays) return null;
+
+        long[] amounts = Arrays.copyOf(a, count);
+        Arrays.sort(amounts);
+        long median = amounts[count / 2];
+        int similar = 0;
+        for (int j = 0; j < count; j++) {
+            if (near(a[j], median)) similar++;
+        }
+        if (similar * 100 < count * SIMILAR_PERCENT) return null;
+
+        long expected = near(a[0], median) ? a[0] : median;
+        long next = cadence.after(ZonedDateTime.ofInstant(Instant.ofEpochMilli(t[0]), zone))
+                .toInstant().toEpochMilli();
+        return new Subscription(merchantId, cadence, expected, mean, count, t[0], next);
+    }
+
+    private static boolean near(long amount, long median) {
+        long tolerance = Math.max(AMOUNT_TOLERANCE_MINOR, Math.round(median * AMOUNT_TOLERANCE));
+        return Math.abs(amount - median) <= tolerance;
+    }
+}
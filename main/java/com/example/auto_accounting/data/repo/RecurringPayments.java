@@ -0,0 +1,284 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.Change;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.db.Merchant;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Application-wide {@link RecurringDetector} over the last {@link RecurringDetector#LOOKBACK_DAYS}
+ * of the ledger, live and archived, and what it predicts: the upcoming charges and a
+ * projected total for the current month.
+ * <p>The detector is built once from the rows of the lookback, stamped with the
+ * {@link ChangeLog} sequence of the same {@link LedgerReader#snapshot snapshot}. Afterwards a
+ * query first applies the changes logged since, but only when {@link LedgerVersion} moved, so
+ * only the merchants that changed are re-evaluated. A reset or a gap in the log, or a change of
+ * the time zone, rebuilds it, as in {@link LedgerAnalytics}. The detector sees amounts in the
+ * reporting currency of {@link FxRates}; new rates reset the log, so a change is always
+ * converted as its row was.
+ * <p>Blocking methods must be called off the main thread.
+ */
+public final class RecurringPayments {
+
+    /** Changes read per query while catching up. */
+    private static final int CATCH_UP_BATCH = 4096;
+    /** Merchant ids per name lookup, below SQLite's variable limit. */
+    private static final int MAX_SQL_VARS = 999;
+
+    /** One expected charge of a subscription. */
+    public static final class Charge {
+        public final RecurringDetector.Subscription subscription;
+        /** Merchant name, null if the merchant is gone. */
+        public final String name;
+        /** Expected time in epoch milliseconds. */
+        public final long dueMillis;
+        /** True if the charge was due before now and has not arrived yet. */
+        public final boolean overdue;
+
+        Charge(RecurringDetector.Subscription subscription, String name, long dueMillis, boolean overdue) {
+            this.subscription = subscription;
+            this.name = name;
+            this.dueMillis = dueMillis;
+            this.overdue = overdue;
+        }
+    }
+
+    /** Projected total of the current month. */
+    public static final class Projection {
+        /** Spent so far this month in minor units. */
+        public final long spentMinor;
+        /** Recurring charges still expected this month, overdue ones included. */
+        public final long upcomingMinor;
+
+        Projection(long spentMinor, long upcomingMinor) {
+            this.spentMinor = spentMinor;
+            this.upcomingMinor = upcomingMinor;
+        }
+
+        /** @return the projected month-end total in minor units */
+        public long totalMinor() {
+            return spentMinor + upcomingMinor;
+        }
+    }
+
+    private static volatile RecurringPayments instance;
+
+    private final Context app;
+    private final AppDb db;
+    private final LedgerReader reader;
+    private final ChangeLog changes;
+    private final FxRates fx;
+
+    // Guarded by this.
+    private RecurringDetector detector;
+    private long seq;
+    private long seenVersion;
+
+    private RecurringPayments(Context app) {
+        this.app = app;
+        this.db = DbProvider.get(app);
+        this.reader = LedgerReader.get(app);
+        this.changes = ChangeLog.get(app);
+        this.fx = FxRates.get(app);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide recurring payments
+     */
+    public static RecurringPayments get(Context context) {
+        if (instance == null) {
+            synchronized (RecurringPayments.class) {
+                if (instance == null) {
+                    instance = new RecurringPayments(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Lists the charges expected from now through the given number of days, including the
+     * ones that are due but have not arrived yet.
+     *
+     * @param days days to look ahead
+     * @return the charges, earliest first
+     */
+    public List<Charge> upcoming(int days) {
+        long now = System.currentTimeMillis();
+        List<RecurringDetector.Subscription> subs;
+        ZoneId zone;
+        synchronized (this) {
+            subs = fresh().subscriptions(now);
+            zone = detector.zone();
+        }
+        long until = ZonedDateTime.ofInstant(Instant.ofEpochMilli(now), zone).plusDays(days)
+                .toInstant().toEpochMilli();
+        return charges(subs, now, until, zone);
+    }
+
+    /**
+     * Lists the charges expected from now until a time, including the ones that are due but
+     * have not arrived yet.
+     *
+     * @param untilMillis exclusive end in epoch milliseconds
+     * @return the charges, earliest first
+     */
+    public List<Charge> upcomingUntil(long untilMillis) {
+        long now = System.currentTimeMillis();
+        List<RecurringDetector.Subscription> subs;
+        ZoneId zone;
+        synchronized (this) {
+            subs = fresh().subscriptions(now);
+            zone = detector.zone();
+        }
+        return charges(subs, now, untilMillis, zone);
+    }
+
+    /**
+     * Sums the past charges of the recurring merchants per day, see
+     * {@link RecurringDetector#addRecurringDayTotals}.
+     *
+     * @param firstEpochDay local epoch day of the first total
+     * @param days          number of days
+     * @return daily totals in minor units
+     */
+    public synchronized long[] recurringDayTotals(long firstEpochDay, int days) {
+        long[] out = new long[Math.max(0, days)];
+        fresh().addRecurringDayTotals(System.currentTimeMillis(), firstEpochDay, out);
+        return out;
+    }
+
+    /** @return ids of the merchants judged recurring, cancelled ones included */
+    public synchronized Set<Long> recurringMerchants() {
+        return fresh().recurringMerchants(System.currentTimeMillis());
+    }
+
+    /**
+     * Projects the current month: spent so far plus the recurring charges still expected
+     * before the month ends.
+     *
+     * @return the projection
+     */
+    public Projection projectMonth() {
+        long now = System.currentTimeMillis();
+        List<RecurringDetector.Subscription> subs;
+        ZoneId zone;
+        synchronized (this) {
+            subs = fresh().subscriptions(now);
+            zone = detector.zone();
+        }
+        LocalDate today = LocalDate.now(zone);
+        long monthEnd = today.withDayOfMonth(1).plusMonths(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        long upcoming = 0;
+        for (Charge c : charges(subs, now, monthEnd, zone)) upcoming += c.subscription.amountMinor;
+        long spent = LedgerAnalytics.get(app).total(DaySumIndex.Period.MONTH, today);
+        return new Projection(spent, upcoming);
+    }
+
+    // ------------------ internals ------------------
+
+    /** Expands the subscriptions into their charges in [now, until), plus the overdue ones. */
+    private List<Charge> charges(List<RecurringDetector.Subscription> subs, long now, long until, ZoneId zone) {
+        Map<Long, String> names = namesOf(subs);
+        List<Charge> out = new ArrayList<>();
+        for (RecurringDetector.Subscription s : subs) {
+            String name = names.get(s.merchantId);
+            ZonedDateTime t = ZonedDateTime.ofInstant(Instant.ofEpochMilli(s.nextMillis), zone);
+            if (s.nextMillis < now) {
+                out.add(new Charge(s, name, s.nextMillis, true));
+                t = s.cadence.after(t);
+            }
+            for (long due = t.toInstant().toEpochMilli(); due < until;
+                 t = s.cadence.after(t), due = t.toInstant().toEpochMilli()) {
+                if (due >= now) out.add(new Charge(s, name, due, false));
+            }
+        }
+        out.sort(Comparator.comparingLong(c -> c.dueMillis));
+        return out;
+    }
+
+    private Map<Long, String> namesOf(List<RecurringDetector.Subscription> subs) {
+        List<Long> ids = new ArrayList<>(subs.size());
+        for (RecurringDetector.Subscription s : subs) ids.add(s.merchantId);
+        Map<Long, String> names = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += MAX_SQL_VARS) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_SQL_VARS));
+            for (Merchant m : db.merchantDao().byIds(chunk)) names.put(m.id, m.name);
+        }
+        return names;
+    }
+
+    private RecurringDetector fresh() {
+        ZoneId z = ZoneId.systemDefault();
+        // Read the version first: a write racing the catch-up leaves it stale, not lost.
+        long version = LedgerVersion.current();
+        if (detector == null || !z.equals(detector.zone())) {
+            rebuild(z);
+        } else if (version != seenVersion) {
+            catchUp();
+        }
+        seenVersion = version;
+        return detector;
+    }
+
+    private void rebuild(ZoneId z) {
+        long now = System.currentTimeMillis();
+        long from = LocalDate.now(z).minusDays(RecurringDetector.LOOKBACK_DAYS).atStartOfDay(z)
+                .toInstant().toEpochMilli();
+        long to = LocalDate.now(z).plusYears(1).atStartOfDay(z).toInstant().toEpochMilli();
+        // A snapshot, not a transaction: the scan must not hold up inserts.
+        detector = reader.snapshot(s -> {
+            RecurringDetector d = new RecurringDetector(z, now);
+            for (Entry e : reader.listInRange(from, to)) {
+                d.add(e.merchantId, e.timeMillis, fx.toReporting(e.amountMinor, e.currency, e.timeMillis, z));
+            }
+            seq = s;
+            return d;
+        });
+    }
+
+    private void catchUp() {
+        ZoneId z = detector.zone();
+        while (true) {
+            ChangeLog.Batch batch = changes.read(seq, CATCH_UP_BATCH);
+            if (batch.changes.isEmpty()) return;
+            if (batch.resync) {
+                rebuild(z);
+                return;
+            }
+            for (Change c : batch.changes) {
+                long amount = fx.toReporting(c.amountMinor, c.currency, c.timeMillis, z);
+                if (c.op == Change.UPDATE) {
+                    if (c.oldMerchantId != null && c.oldTimeMillis != null && c.oldAmountMinor != null) {
+                        int currency = c.oldCurrency == null ? CurrencyCode.DEFAULT.code : c.oldCurrency;
+                        detector.remove(c.oldMerchantId, c.oldTimeMillis,
+                                fx.toReporting(c.oldAmountMinor, currency, c.oldTimeMillis, z));
+                    }
+                    detector.add(c.merchantId, c.timeMillis, amount);
+                } else if (c.op == Change.DELETE) {
+                    detector.remove(c.merchantId, c.timeMillis, amount);
+                } else {
+                    detector.add(c.merchantId, c.timeMillis, amount);
+                }
+            }
+            seq = batch.lastSeq;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.data.db.Change;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Forecast of the current month's total: what is spent so far, plus the everyday spending
+ * expected on the remaining days, plus the {@link RecurringPayments recurring charges} still
+ * due, with a confidence band.
+ * <p>Everyday spending is modelled per day of the week: the mean and variance of the daily
+ * totals of the last {@link #WINDOW_DAYS} complete days, without the charges of recurring
+ * merchants (those are forecast by date instead). The daily totals are read once a day from the
+ * rollups ({@link LedgerReader#dayTotals}) in one {@link LedgerReader#snapshot snapshot} with
+ * the {@link ChangeLog} sequence; afterwards every logged change moves its day's total and that
+ * weekday's sums in O(1), so a forecast costs O(days in the month) and no query beyond catching
+ * up. A new day, a reset or gap in the log, or a change of the time zone rebuilds the model.
+ * <p>The band assumes independent days: the variances of the remaining days add up, and the
+ * band is {@link #BAND_SIGMAS} standard deviations either side (about 90%). Blocking methods
+ * must be called off the main thread. Amounts are in the reporting currency of {@link FxRates}.
+ */
+public final class SpendForecast {
+
+    /** Complete days the weekday model learns from: twelve of each weekday. */
+    public static final int WINDOW_DAYS = 84;
+    /** Half-width of the band in standard deviations; 1.645 covers about 90%. */
+    public static final double BAND_SIGMAS = 1.645;
+
+    /** Changes read per query while catching up. */
+    private static final int CATCH_UP_BATCH = 4096;
+
+    /** Forecast of one month. */
+    public static final class Forecast {
+        public final YearMonth month;
+        /** Spent so far this month in minor units. */
+        public final long spentMinor;
+        /**
+         * Further spending expected per day of the month in minor units, index 0 = day 1;
+         * 0 for past days, the rest of the day for today.
+         */
+        public final long[] expectedDayMinor;
+        /** Recurring charges still expected this month, included in {@link #expectedDayMinor}. */
+        public final long recurringMinor;
+        /** Projected month-end total. */
+        public final long totalMinor;
+        /** Lower end of the band, never below what is spent plus the recurring charges. */
+        public final long lowMinor;
+        /** Upper end of the band. */
+        public final long highMinor;
+
+        Forecast(YearMonth month, long spentMinor, long[] expectedDayMinor, long recurringMinor,
+                 double sigma) {
+            this.month = month;
+            this.spentMinor = spentMinor;
+            this.expectedDayMinor = expectedDayMinor;
+            this.recurringMinor = recurringMinor;
+            long expected = 0;
+            for (long e : expectedDayMinor) expected += e;
+            this.totalMinor = spentMinor + expected;
+            long band = Math.round(BAND_SIGMAS * sigma);
+            this.lowMinor = Math.max(spentMinor + recurringMinor, totalMinor - band);
+            this.highMinor = totalMinor + band;
+        }
+    }
+
+    private static volatile SpendForecast instance;
+    private static final AtomicBoolean warmUpScheduled = new AtomicBoolean();
+
+    private final Context app;
+    private final LedgerReader reader;
+    private final ChangeLog changes;
+    private final FxRates fx;
+
+    // Guarded by this.
+    @Nullable private ZoneId zone;
+    /** The model covers the complete days [firstDay, today). */
+    private long today;
+    private long firstDay;
+    /** Everyday (non-recurring) total per day of the window. */
+    private long[] days = new long[0];
+    /** Per weekday (Monday = 0): days counted, sum and sum of squares of their totals. */
+    private final int[] count = new int[7];
+    private final double[] sum = new double[7];
+    private final double[] sumSq = new double[7];
+    private Set<Long> recurring = Collections.emptySet();
+    private long seq;
+    private long seenVersion;
+
+    private SpendForecast(Context app) {
+        this.app = app;
+        this.reader = LedgerReader.get(app);
+        this.changes = ChangeLog.get(app);
+        this.fx = FxRates.get(app);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide forecast
+     */
+    public static SpendForecast get(Context context) {
+        if (instance == null) {
+            synchronized (SpendForecast.class) {
+                if (instance == null) {
+                    instance = new SpendForecast(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the model on the background lane, so the first chart preview does not wait for
+     * it. Does nothing while a warm-up is queued.
+     */
+    public static void scheduleWarmUp(Context context) {
+        if (!warmUpScheduled.compareAndSet(false, true)) return;
+        final Context app = context.getApplicationContext();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            warmUpScheduled.set(false);
+            get(app).forecast();
+        });
+        if (!queued) warmUpScheduled.set(false);
+    }
+
+    /** @return the forecast of the current month */
+    public Forecast forecast() {
+        long now = System.currentTimeMillis();
+        ZoneId z = ZoneId.systemDefault();
+        LocalDate date = Instant.ofEpochMilli(now).atZone(z).toLocalDate();
+        YearMonth ym = YearMonth.from(date);
+        int length = ym.lengthOfMonth();
+        int todayIndex = date.getDayOfMonth() - 1;
+        long monthEnd = ym.plusMonths(1).atDay(1).atStartOfDay(z).toInstant().toEpochMilli();
+        long dayStart = date.atStartOfDay(z).toInstant().toEpochMilli();
+        long dayEnd = date.plusDays(1).atStartOfDay(z).toInstant().toEpochMilli();
+        double restOfToday = (double) (dayEnd - now) / (dayEnd - dayStart);
+
+        // Everyday spending of the remaining days, from the weekday model.
+        long[] expected = new long[length];
+        double variance = 0;
+        synchronized (this) {
+            fresh(z, date.toEpochDay());
+            double[] mean = new double[7];
+            double[] var = new double[7];
+            weekdayStats(mean, var);
+            for (int i = todayIndex; i < length; i++) {
+                int w = date.plusDays(i - todayIndex).getDayOfWeek().getValue() - 1;
+                double share = i == todayIndex ? restOfToday : 1;
+                expected[i] = Math.round(mean[w] * share);
+                variance += var[w] * share;
+            }
+        }
+
+        // Recurring charges by their expected date; overdue ones are expected today.
+        long recurringMinor = 0;
+        for (RecurringPayments.Charge c : RecurringPayments.get(app).upcomingUntil(monthEnd)) {
+            int i = c.overdue ? todayIndex
+                    : Instant.ofEpochMilli(c.dueMillis).atZone(z).getDayOfMonth() - 1;
+            expected[i] += c.subscription.amountMinor;
+            recurringMinor += c.subscription.amountMinor;
+        }
+
+        long spent = LedgerAnalytics.get(app).total(DaySumIndex.Period.MONTH, date);
+        return new Forecast(ym, spent, expected, recurringMinor, Math.sqrt(variance));
+    }
+
+    // ------------------ model ------------------
+
+    /**
+     * Fills the mean and variance of each weekday's everyday total. A weekday without enough
+     * days borrows the figures of all days; an empty model predicts nothing. Call with
+     * {@code this} held.
+     */
+    private void weekdayStats(double[] mean, double[] var) {
+        int n = 0;
+        double s = 0, sq = 0;
+        for (int w = 0; w < 7; w++) {
+            n += count[w];
+            s += sum[w];
+            sq += sumSq[w];
+        }
+        if (n == 0) return;
+        double allMean = s / n;
+        double allVar = n > 1 ? Math.max(0, (sq - s * s / n) / (n - 1)) : 0;
+        for (int w = 0; w < 7; w++) {
+            int k = count[w];
+            mean[w] = k > 0 ? sum[w] / k : allMean;
+            var[w] = k > 1 ? Math.max(0, (sumSq[w] - sum[w] * sum[w] / k) / (k - 1)) : allVar;
+        }
+    }
+
+    /** Call with {@code this} held. */
+    private void fresh(ZoneId z, long epochDay) {
+        // Read the version first: a write racing the catch-up leaves it stale, not lost.
+        long version = LedgerVersion.current();
+        if (zone == null || !z.equals(zone) || epochDay != today) {
+            rebuild(z, epochDay);
+        } else if (version != seenVersion) {
+            catchUp();
+        }
+        seenVersion = version;
+    }
+
+    private void rebuild(ZoneId z, long epochDay) {
+        // The recurring merchants are fixed for the day, so changes apply like the rebuild.
+        Set<Long> rec = RecurringPayments.get(app).recurringMerchants();
+        long first = epochDay - WINDOW_DAYS;
+        // A snapshot, not a transaction: the window read must not hold up inserts.
+        long[] totals = reader.snapshot(s -> {
+            seq = s;
+            Long min = reader.minTimeMillis();
+            // Days before the first row are unknown, not days without spending.
+            long start = min == null ? epochDay : Math.max(first,
+                    Instant.ofEpochMilli(min).atZone(z).toLocalDate().toEpochDay());
+            firstDay = start;
+            return reader.dayTotals(start, (int) Math.max(0, epochDay - start));
+        });
+        long[] recurringTotals = RecurringPayments.get(app).recurringDayTotals(firstDay, totals.length);
+
+        zone = z;
+        today = epochDay;
+        recurring = rec;
+        days = totals;
+        Arrays.fill(count, 0);
+        Arrays.fill(sum, 0);
+        Arrays.fill(sumSq, 0);
+        for (int i = 0; i < days.length; i++) {
+            days[i] = Math.max(0, days[i] - recurringTotals[i]);
+            int w = weekday(firstDay + i);
+            count[w]++;
+            sum[w] += days[i];
+            sumSq[w] += (double) days[i] * days[i];
+        }
+    }
+
+    private void catchUp() {
+        while (true) {
+            ChangeLog.Batch batch = changes.read(seq, CATCH_UP_BATCH);
+            if (batch.changes.isEmpty()) return;
+            if (batch.resync) {
+                rebuild(zone, today);
+                return;
+            }
+            for (Change c : batch.changes) {
+                if (c.op == Change.UPDATE && c.oldTimeMillis != null && c.oldMerchantId != null
+                        && c.oldAmountMinor != null) {
+                    int currency = c.oldCurrency == null ? CurrencyCode.DEFAULT.code : c.oldCurrency;
+                    apply(c.oldMerchantId, c.oldTimeMillis, -c.oldAmountMinor, currency);
+                }
+                apply(c.merchantId, c.timeMillis,
+                        c.op == Change.DELETE ? -c.amountMinor : c.amountMinor, c.currency);
+            }
+            seq = batch.lastSeq;
+        }
+    }
+
+    /** Moves one day's everyday total and its weekday's sums. O(1). */
+    private void apply(long merchantId, long timeMillis, long nativeMinor, int currency) {
+        if (nativeMinor == 0 || recurring.contains(merchantId)) return;
+        long day = ZonedDateTime.ofInstant(Instant.ofEpochMilli(timeMillis), zone).toLocalDate().toEpochDay();
+        if (day < firstDay || day >= today) return;
+        long amountMinor = fx.toReporting(nativeMinor, currency, day);
+        int i = (int) (day - firstDay);
+        long old = days[i];
+        long now = old + amountMinor;
+        days[i] = now;
+        int w = weekday(day);
+        sum[w] += amountMinor;
+        sumSq[w] += (double) now * now - (double) old * old;
+    }
+
+    /** @return 0 for Monday through 6 for Sunday */
+    private static int weekday(long epochDay) {
+        // 1970-01-01 was a Thursday.
+        return (int) Math.floorMod(epochDay + 3, 7L);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.notify.AnomalyNotifier;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Flags unusual payments as they are saved, from the application-wide {@link MerchantStats}.
+ * <p>{@link TableWriter} reports every insert; scoring and updating are O(1) and read no
+ * history. Flagged payments post an {@link AnomalyNotifier} notification. The statistics are
+ * loaded from a small file on first use and written back on the background lane after
+ * changes, coalesced, through a temporary file so a crash leaves the previous copy. Payments
+ * that came in through an import or before the first run are not in the statistics; they
+ * learn from the payments after. Amounts are in the reporting currency, so a merchant paid in
+ * several currencies has one set of statistics; choosing another reporting currency
+ * {@link #clear() clears} them.
+ */
+public final class SpendingAnomalies {
+
+    private static final String TAG = "SpendingAnomalies";
+    private static final String FILE = "merchant_stats.bin";
+
+    private static volatile SpendingAnomalies instance;
+
+    private final Context app;
+    private final File file;
+    /** Serializes writing and deleting the file; taken before {@code this}. */
+    private final Object fileLock = new Object();
+
+    // Guarded by this.
+    private MerchantStats stats;
+    private boolean saveScheduled;
+
+    private SpendingAnomalies(Context app) {
+        this.app = app;
+        this.file = new File(app.getFilesDir(), FILE);
+    }
+
+    /**
+     * @param context any context
+     * @return the application-wide anomaly detector
+     */
+    public static SpendingAnomalies get(Context context) {
+        if (instance == null) {
+            synchronized (SpendingAnomalies.class) {
+                if (instance == null) {
+                    instance = new SpendingAnomalies(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Scores a saved payment, notifies if it is unusual, and adds it to the statistics.
+     *
+     * @param merchantId  merchant of the row
+     * @param merchant    name shown in the notification
+     * @param timeMillis  time of the row
+     * @param amountMinor amount in minor units of the reporting currency
+     * @return the verdict
+     */
+    public MerchantStats.Verdict onInsert(long merchantId, String merchant, long timeMillis, long amountMinor) {
+        MerchantStats.Verdict v;
+        synchronized (this) {
+            v = stats().observe(merchantId, timeMillis, amountMinor);
+            scheduleSave();
+        }
+        if (v.unusual()) {
+            Log.i(TAG, "Unusual payment at " + merchant + ": flags " + v.flags);
+            AnomalyNotifier.notify(app, merchantId, merchant, v, amountMinor);
+        }
+        return v;
+    }
+
+    /**
+     * Forgets the statistics, e.g. after a restore renumbered the merchants or the reporting
+     * currency changed.
+     */
+    public void clear() {
+        synchronized (fileLock) {
+            synchronized (this) {
+                stats = new MerchantStats();
+            }
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    // ------------------ persistence ------------------
+
+    /** Call with {@code this} held. */
+    private MerchantStats stats() {
+        if (stats == null) {
+            stats = new MerchantStats();
+            if (file.exists()) {
+                try {
+                    stats = MerchantStats.fromBytes(Files.readAllBytes(file.toPath()));
+                } catch (IOException e) {
+                    Log.w(TAG, "Dropping unreadable " + file, e);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /** Call with {@code this} held. */
+    private void scheduleSave() {
+        if (saveScheduled) return;
+        saveScheduled = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, this::save);
+    }
+
+    private void save() {
+        synchronized (fileLock) {
+            byte[] bytes;
+            synchronized (this) {
+                saveScheduled = false;
+                bytes = stats().toBytes();
+            }
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    out.write(bytes);
+                    out.getFD().sync();
+                }
+                if (!tmp.renameTo(file)) throw new IOException("Cannot rename " + tmp + " to " + file);
+            } catch (IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+                Log.w(TAG, "Cannot save merchant statistics", e);
+            }
+        }
+    }
+}
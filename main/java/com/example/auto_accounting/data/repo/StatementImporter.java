@@ -0,0 +1,356 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.DbProvider;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.statement.StatementParser;
+import com.example.auto_accounting.data.statement.StatementRecord;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Backfills the ledger from bank statements (CSV, OFX, QIF).
+ * <p>The file is parsed one row at a time and written in batches of {@link #BATCH_ROWS}: each
+ * batch is one transaction that reuses a single compiled INSERT, so memory stays flat and the
+ * cost per row is one bind and step. Money-in rows (credits) are skipped, money-out rows become
+ * positive spending like the rows captured from notifications.
+ * <p>Rows that were already captured from a notification are not inserted twice: a statement
+ * row matches an existing row with the same amount and currency within
+ * {@link #DEDUP_WINDOW_DAYS} days, preferring the same merchant and then the closest time.
+ * Each existing row matches at most once, and rows added by this import are never matched, so
+ * two identical coffees on one day both stay. Re-importing the same file therefore adds
+ * nothing.
+ * <p>Rows that land in already archived months stay in {@code table_entries} until
+ * {@link com.example.auto_accounting.data.archive.ArchiveCompactor} folds them into the archive.
+ * <p>Blocking; run on {@link com.example.auto_accounting.core.AppScheduler.Lane#BACKGROUND}.
+ */
+public final class StatementImporter {
+
+    /** Rows per transaction. */
+    public static final int BATCH_ROWS = 5000;
+
+    /** Statement rows match captured rows up to this many days apart (posting delay). */
+    public static final int DEDUP_WINDOW_DAYS = 3;
+
+    private static final long DAY_MS = 86_400_000L;
+    private static final long DEDUP_WINDOW_MS = DEDUP_WINDOW_DAYS * DAY_MS;
+    /** Existing rows are read for at most this span at a time while de-duplicating. */
+    private static final long MAX_LOOKUP_SPAN_MS = 31 * DAY_MS;
+    private static final int READ_BUFFER_CHARS = 1 << 16;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO table_entries (timeMillis, merchantId, amountMinor, currency) VALUES (?, ?, ?, ?)";
+
+    /** Rows already in the ledger, used for de-duplication. */
+    public interface Existing {
+        /** @return the largest row id before the import started */
+        long maxId();
+
+        /** @return rows within [startMillis, endMillis) with {@link Entry#description} set */
+        List<Entry> listInRange(long startMillis, long endMillis);
+    }
+
+    /** Progress of an import; the final report has {@link #done} set. */
+    public static final class Progress {
+        public final long bytesRead;
+        /** File size in bytes, -1 if unknown. */
+        public final long totalBytes;
+        public final long imported;
+        public final long duplicates;
+        /** Money-in rows, not imported. */
+        public final long credits;
+        /** Rows that could not be parsed. */
+        public final long malformed;
+        public final boolean done;
+
+        Progress(long bytesRead, long totalBytes, long imported, long duplicates, long credits,
+                 long malformed, boolean done) {
+            this.bytesRead = bytesRead;
+            this.totalBytes = totalBytes;
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.credits = credits;
+            this.malformed = malformed;
+            this.done = done;
+        }
+
+        /** @return 0..100, or -1 if the size is unknown */
+        public int percent() {
+            return totalBytes > 0 ? (int) Math.min(100, bytesRead * 100 / totalBytes) : -1;
+        }
+    }
+
+    /** Receives progress on the importing thread after every batch. */
+    public interface Listener {
+        void onProgress(Progress progress);
+    }
+
+    private StatementImporter() {
+        // No instances.
+    }
+
+    /**
+     * Imports a statement picked with {@code OpenDocument} into the app's ledger.
+     *
+     * @param uri      the statement document
+     * @param listener progress callback on the importing thread, may be null
+     * @param token    cancels between rows, may be null; batches already written stay
+     * @return the final progress
+     * @throws IOException if the file cannot be read or its format is not recognised
+     */
+    public static Progress importFrom(Context context, Uri uri, @Nullable Listener listener,
+                                      @Nullable CancellationToken token) throws IOException {
+        ContentResolver cr = context.getContentResolver();
+        long size = -1;
+        try (AssetFileDescriptor fd = cr.openAssetFileDescriptor(uri, "r")) {
+            if (fd != null) size = fd.getLength();
+        } catch (IOException | SecurityException ignored) {
+            // Size is only used for the percentage.
+        }
+        LedgerReader reader = LedgerReader.get(context);
+        Existing existing = new Existing() {
+            @Override public long maxId() { return reader.maxId(); }
+            @Override public List<Entry> listInRange(long s, long e) { return reader.listInRange(s, e); }
+        };
+        try (InputStream in = cr.openInputStream(uri)) {
+            if (in == null) throw new IOException("openInputStream returned null: " + uri);
+            return importFrom(DbProvider.get(context), MerchantDictionary.get(context), existing,
+                    in, size, listener, token);
+        } finally {
+            // Merchants first seen in the statement are classified in the background.
+            MerchantCategories.scheduleBackfill(context, false);
+            BudgetTracker.get(context).invalidate();
+        }
+    }
+
+    /**
+     * Imports a statement stream into a database.
+     *
+     * @param totalBytes stream length for progress, -1 if unknown
+     * @return the final progress
+     * @throws IOException if the stream cannot be read or its format is not recognised
+     */
+    public static Progress importFrom(AppDb db, MerchantDictionary merchants, Existing existing,
+                                      InputStream in, long totalBytes, @Nullable Listener listener,
+                                      @Nullable CancellationToken token) throws IOException {
+        CountingInputStream counted = new CountingInputStream(in);
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(counted, StandardCharsets.UTF_8), READ_BUFFER_CHARS);
+        StatementParser parser = StatementParser.open(reader, StatementParser.detect(reader));
+        Batch batch = new Batch(db, merchants, existing);
+        try (SupportSQLiteStatement insert = db.compileStatement(INSERT_SQL)) {
+            StatementRecord rec = new StatementRecord();
+            ZoneId zone = ZoneId.systemDefault();
+            long cachedDay = Long.MIN_VALUE, midnight = 0;
+            while (parser.next(rec)) {
+                if (token != null) token.throwIfCancelled();
+                if (rec.amountMinor >= 0) {
+                    batch.credits++;
+                    continue;
+                }
+                if (rec.epochDay != cachedDay) {
+                    cachedDay = rec.epochDay;
+                    midnight = LocalDate.ofEpochDay(cachedDay).atStartOfDay(zone).toInstant().toEpochMilli();
+                }
+                // Date-only rows are placed at local noon, clear of day edges.
+                long time = midnight + (rec.secondOfDay >= 0 ? rec.secondOfDay * 1000L : DAY_MS / 2);
+                if (batch.add(time, -rec.amountMinor, rec.currency, rec.description)) {
+                    batch.flush(insert);
+                    if (listener != null) {
+                        listener.onProgress(progress(counted, totalBytes, batch, parser, false));
+                    }
+                }
+            }
+            batch.flush(insert);
+        }
+        Progress last = progress(counted, totalBytes, batch, parser, true);
+        if (listener != null) listener.onProgress(last);
+        return last;
+    }
+
+    private static Progress progress(CountingInputStream in, long total, Batch b, StatementParser p,
+                                     boolean done) {
+        return new Progress(in.count, total, b.imported, b.duplicates, b.credits, p.malformed(), done);
+    }
+
+    /** One batch of parsed rows, de-duplicated and then inserted in one transaction. */
+    private static final class Batch {
+        final AppDb db;
+        final MerchantDictionary merchants;
+        final Existing existing;
+        final long maxExistingId;
+        final ZoneId zone = ZoneId.systemDefault();
+        /** Existing rows already matched by an earlier statement row. */
+        final Set<Long> consumed = new HashSet<>();
+
+        final long[] times = new long[BATCH_ROWS];
+        final long[] amounts = new long[BATCH_ROWS];
+        final int[] currencies = new int[BATCH_ROWS];
+        final String[] descriptions = new String[BATCH_ROWS];
+        final long[] merchantIds = new long[BATCH_ROWS];
+        final boolean[] duplicate = new boolean[BATCH_ROWS];
+        int size;
+
+        long imported, duplicates, credits;
+
+        Batch(AppDb db, MerchantDictionary merchants, Existing existing) {
+            this.db = db;
+            this.merchants = merchants;
+            this.existing = existing;
+            this.maxExistingId = existing.maxId();
+        }
+
+        /** @return true when the batch is full */
+        boolean add(long time, long amountMinor, int currency, String description) {
+            times[size] = time;
+            amounts[size] = amountMinor;
+            currencies[size] = currency;
+            descriptions[size] = description;
+            duplicate[size] = false;
+            return ++size == BATCH_ROWS;
+        }
+
+        void flush(SupportSQLiteStatement insert) {
+            if (size == 0) return;
+            markDuplicates();
+            // Merchant ids are resolved before the transaction: the dictionary may insert
+            // merchants under its own lock, which must never be taken while holding the DB.
+            for (int i = 0; i < size; i++) {
+                if (!duplicate[i]) merchantIds[i] = merchants.idFor(descriptions[i]);
+            }
+            db.runInTransaction(() -> {
+                for (int i = 0; i < size; i++) {
+                    if (duplicate[i]) continue;
+                    insert.bindLong(1, times[i]);
+                    insert.bindLong(2, merchantIds[i]);
+                    insert.bindLong(3, amounts[i]);
+                    insert.bindLong(4, currencies[i]);
+                    insert.executeInsert();
+                }
+            });
+            long monthStart = Long.MAX_VALUE, monthEnd = Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (duplicate[i]) {
+                    duplicates++;
+                    continue;
+                }
+                imported++;
+                // One version bump per month touched is enough to invalidate its caches.
+                if (times[i] < monthStart || times[i] >= monthEnd) {
+                    LedgerVersion.bump(times[i]);
+                    YearMonth ym = YearMonth.from(Instant.ofEpochMilli(times[i]).atZone(zone));
+                    monthStart = ym.atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+                    monthEnd = ym.plusMonths(1).atDay(1).atStartOfDay(zone).toInstant().toEpochMilli();
+                }
+            }
+            Arrays.fill(descriptions, 0, size, null);
+            size = 0;
+        }
+
+        /** Matches the batch against existing rows, reading them a month-sized window at a time. */
+        private void markDuplicates() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+            int from = 0;
+            while (from < size) {
+                int to = from;
+                long first = times[order[from]];
+                while (to < size && times[order[to]] - first <= MAX_LOOKUP_SPAN_MS) to++;
+                long last = times[order[to - 1]];
+                Map<Long, List<Entry>> byAmount = new HashMap<>();
+                for (Entry e : existing.listInRange(first - DEDUP_WINDOW_MS, last + DEDUP_WINDOW_MS + 1)) {
+                    if (e.id > maxExistingId || consumed.contains(e.id)) continue;
+                    List<Entry> list = byAmount.get(e.amountMinor);
+                    if (list == null) byAmount.put(e.amountMinor, list = new ArrayList<>(2));
+                    list.add(e);
+                }
+                for (int k = from; k < to && !byAmount.isEmpty(); k++) {
+                    int i = order[k];
+                    List<Entry> candidates = byAmount.get(amounts[i]);
+                    if (candidates == null) continue;
+                    Entry match = bestMatch(candidates, times[i], currencies[i],
+                            merchants.canonical(descriptions[i]));
+                    if (match == null) continue;
+                    candidates.remove(match);
+                    consumed.add(match.id);
+                    duplicate[i] = true;
+                }
+                from = to;
+            }
+        }
+
+        @Nullable
+        private static Entry bestMatch(List<Entry> candidates, long time, int currency, String merchant) {
+            Entry best = null;
+            boolean bestSameMerchant = false;
+            long bestGap = Long.MAX_VALUE;
+            for (Entry e : candidates) {
+                long gap = Math.abs(e.timeMillis - time);
+                if (gap > DEDUP_WINDOW_MS || e.currency != currency) continue;
+                boolean same = merchant.equals(e.description);
+                if ((same && !bestSameMerchant) || (same == bestSameMerchant && gap < bestGap)) {
+                    best = e;
+                    bestSameMerchant = same;
+                    bestGap = gap;
+                }
+            }
+            return best;
+        }
+    }
+
+    /** Counts bytes read, for progress. */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
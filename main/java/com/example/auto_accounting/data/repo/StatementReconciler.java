@@ -0,0 +1,341 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.statement.StatementParser;
+import com.example.auto_accounting.data.statement.StatementRecord;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reconciles a bank statement against the ledger: which statement lines the listener missed and
+ * which ledger rows have no bank line.
+ * <p>Both sides are sorted by currency, amount, then time, and merged like a sort-merge join on
+ * the currency and exact amount in minor units with a band condition on time: a statement line
+ * joins a ledger row in the same currency whose time lies within the tolerance of the line.
+ * Date-only lines cover their whole local day. Within the band, the row of the same merchant
+ * wins, then the closest time; each row joins at most one line. Merchants are compared fuzzily
+ * through a {@link MerchantCanonicalizer} seeded with the ledger's names, so
+ * {@code "SQ *BLUE BOTTLE #12"} agrees with {@code "Blue Bottle"}. A line whose only candidates
+ * are other merchants still matches, flagged for review. Sorting dominates: O(n log n) for n
+ * lines and rows.
+ * <p>The ledger side is read for the statement's span plus the tolerance; rows in that margin
+ * only count as extra when they fall inside the span. Money-in lines are skipped: the listener
+ * only captures spending. The statement is read into memory; nothing is written.
+ */
+public final class StatementReconciler {
+
+    /** Default band around a timed statement line. */
+    public static final int DEFAULT_TOLERANCE_MINUTES = 30;
+
+    private static final int READ_BUFFER_CHARS = 1 << 16;
+    /** Statements repeat a few hundred payees; each is normalized once. */
+    private static final int MERCHANT_MEMO_SIZE = 8192;
+
+    /** One money-out statement line. */
+    public static final class Line {
+        /** 1-based position among the statement's transactions. */
+        public final int number;
+        /** First instant the line may refer to. */
+        public final long startMillis;
+        /** Last instant, inclusive; after {@link #startMillis} for date-only lines. */
+        public final long endMillis;
+        /** Positive spending in minor units, like {@link Entry#amountMinor}. */
+        public final long amountMinor;
+        /** {@link CurrencyCode#code} of {@link #amountMinor}. */
+        public final int currency;
+        public final String description;
+
+        public Line(int number, long startMillis, long endMillis, long amountMinor, int currency,
+                    String description) {
+            this.number = number;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.amountMinor = amountMinor;
+            this.currency = currency;
+            this.description = description;
+        }
+
+        /** @return true if the statement gave no time of day */
+        public boolean dateOnly() {
+            return endMillis != startMillis;
+        }
+
+        /** @return milliseconds between {@code time} and this line's span, 0 inside it */
+        long gap(long time) {
+            return time < startMillis ? startMillis - time : time > endMillis ? time - endMillis : 0;
+        }
+    }
+
+    /** A statement line joined with a ledger row. */
+    public static final class Match {
+        public final Line line;
+        public final Entry entry;
+        /** False if the only candidates in the band were other merchants. */
+        public final boolean sameMerchant;
+
+        Match(Line line, Entry entry, boolean sameMerchant) {
+            this.line = line;
+            this.entry = entry;
+            this.sameMerchant = sameMerchant;
+        }
+    }
+
+    /** The three sets of a reconciliation, each ordered by time. */
+    public static final class Result {
+        public final List<Match> matched;
+        /** Statement lines without a ledger row: missed by the listener. */
+        public final List<Line> missing;
+        /** Ledger rows inside the statement's span without a statement line. */
+        public final List<Entry> extra;
+        /** Statement span [startMillis, endMillis]; 0 and -1 for an empty statement. */
+        public final long startMillis, endMillis;
+        /** Money-in lines, not reconciled. */
+        public final long credits;
+        /** Lines that could not be parsed. */
+        public final long malformed;
+
+        Result(List<Match> matched, List<Line> missing, List<Entry> extra,
+               long startMillis, long endMillis, long credits, long malformed) {
+            this.matched = matched;
+            this.missing = missing;
+            this.extra = extra;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.credits = credits;
+            this.malformed = malformed;
+        }
+
+        /** @return matches whose merchants disagree */
+        public int merchantMismatches() {
+            int n = 0;
+            for (Match m : matched) if (!m.sameMerchant) n++;
+            return n;
+        }
+    }
+
+    /** Lines read from a statement, with what was left out. */
+    public static final class Statement {
+        public final List<Line> lines;
+        public final long credits;
+        public final long malformed;
+
+        Statement(List<Line> lines, long credits, long malformed) {
+            this.lines = lines;
+            this.credits = credits;
+            this.malformed = malformed;
+        }
+    }
+
+    private static final Comparator<Line> LINE_ORDER = (a, b) -> {
+        int c = compareKey(a.currency, a.amountMinor, b.currency, b.amountMinor);
+        return c != 0 ? c : Long.compare(a.startMillis, b.startMillis);
+    };
+
+    private static final Comparator<Entry> ROW_ORDER = (a, b) -> {
+        int c = compareKey(a.currency, a.amountMinor, b.currency, b.amountMinor);
+        if (c != 0) return c;
+        c = Long.compare(a.timeMillis, b.timeMillis);
+        return c != 0 ? c : Long.compare(a.id, b.id);
+    };
+
+    private StatementReconciler() {
+        // No instances.
+    }
+
+    /**
+     * Reconciles a statement picked with {@code OpenDocument} against the app's ledger,
+     * archived months included. Blocking; run on
+     * {@link com.example.auto_accounting.core.AppScheduler.Lane#BACKGROUND}.
+     *
+     * @param toleranceMinutes band around timed lines
+     * @param token            cancels while reading, may be null
+     * @throws IOException if the file cannot be read or its format is not recognised
+     */
+    public static Result reconcile(Context context, Uri uri, int toleranceMinutes,
+                                   @Nullable CancellationToken token) throws IOException {
+        ContentResolver cr = context.getContentResolver();
+        Statement statement;
+        try (InputStream in = cr.openInputStream(uri)) {
+            if (in == null) throw new IOException("openInputStream returned null: " + uri);
+            statement = read(in, ZoneId.systemDefault(), token);
+        }
+        long tolerance = toleranceMinutes * 60_000L;
+        List<Entry> rows = Collections.emptyList();
+        if (!statement.lines.isEmpty()) {
+            long[] span = span(statement.lines);
+            rows = LedgerReader.get(context).listInRange(span[0] - tolerance, span[1] + tolerance + 1);
+        }
+        if (token != null) token.throwIfCancelled();
+        return join(statement, rows, tolerance);
+    }
+
+    /**
+     * Reads the money-out lines of a statement.
+     *
+     * @param zone zone of the statement's local dates
+     * @throws IOException if the stream cannot be read or its format is not recognised
+     */
+    public static Statement read(InputStream in, ZoneId zone, @Nullable CancellationToken token)
+            throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8), READ_BUFFER_CHARS);
+        StatementParser parser = StatementParser.open(reader, StatementParser.detect(reader));
+        List<Line> lines = new ArrayList<>();
+        StatementRecord rec = new StatementRecord();
+        long credits = 0, cachedDay = Long.MIN_VALUE, midnight = 0, nextMidnight = 0;
+        int number = 0;
+        while (parser.next(rec)) {
+            if (token != null) token.throwIfCancelled();
+            number++;
+            if (rec.amountMinor >= 0) {
+                credits++;
+                continue;
+            }
+            if (rec.epochDay != cachedDay) {
+                cachedDay = rec.epochDay;
+                midnight = LocalDate.ofEpochDay(cachedDay).atStartOfDay(zone).toInstant().toEpochMilli();
+                nextMidnight = LocalDate.ofEpochDay(cachedDay + 1).atStartOfDay(zone).toInstant().toEpochMilli();
+            }
+            long start = rec.secondOfDay >= 0 ? midnight + rec.secondOfDay * 1000L : midnight;
+            long end = rec.secondOfDay >= 0 ? start : nextMidnight - 1;
+            lines.add(new Line(number, start, end, -rec.amountMinor, rec.currency, rec.description));
+        }
+        return new Statement(lines, credits, parser.malformed());
+    }
+
+    /**
+     * The join itself; neither list is modified.
+     *
+     * @param rows            ledger rows covering the statement's span widened by the tolerance,
+     *                        with {@link Entry#description} set
+     * @param toleranceMillis band around each line
+     */
+    public static Result join(Statement statement, List<Entry> rows, long toleranceMillis) {
+        List<Line> lines = new ArrayList<>(statement.lines);
+        List<Entry> ledger = new ArrayList<>(rows);
+        if (lines.isEmpty()) {
+            return new Result(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                    0, -1, statement.credits, statement.malformed);
+        }
+        long[] span = span(lines);
+        lines.sort(LINE_ORDER);
+        ledger.sort(ROW_ORDER);
+
+        MerchantCanonicalizer merchants = new MerchantCanonicalizer(MERCHANT_MEMO_SIZE);
+        Set<String> names = new HashSet<>();
+        for (Entry e : ledger) {
+            if (e.description != null && names.add(e.description)) merchants.addKnown(e.description);
+        }
+
+        List<Match> matched = new ArrayList<>();
+        List<Line> missing = new ArrayList<>();
+        boolean[] used = new boolean[ledger.size()];
+        int i = 0, j = 0;
+        while (i < lines.size()) {
+            int currency = lines.get(i).currency;
+            long amount = lines.get(i).amountMinor;
+            // Runs of equal currency and amount on both sides; rows with keys no line has are extra.
+            int lineEnd = i;
+            while (lineEnd < lines.size() && sameKey(lines.get(lineEnd).currency,
+                    lines.get(lineEnd).amountMinor, currency, amount)) {
+                lineEnd++;
+            }
+            while (j < ledger.size() && compareKey(ledger.get(j).currency, ledger.get(j).amountMinor,
+                    currency, amount) < 0) {
+                j++;
+            }
+            int rowEnd = j;
+            while (rowEnd < ledger.size() && sameKey(ledger.get(rowEnd).currency,
+                    ledger.get(rowEnd).amountMinor, currency, amount)) {
+                rowEnd++;
+            }
+
+            // Band join inside the run: lines by start time, the window's low edge only moves up.
+            int low = j;
+            for (int k = i; k < lineEnd; k++) {
+                Line line = lines.get(k);
+                while (low < rowEnd && (used[low]
+                        || ledger.get(low).timeMillis < line.startMillis - toleranceMillis)) {
+                    low++;
+                }
+                String merchant = null;
+                int best = -1;
+                boolean bestSame = false;
+                long bestGap = Long.MAX_VALUE;
+                for (int m = low; m < rowEnd; m++) {
+                    Entry e = ledger.get(m);
+                    if (e.timeMillis > line.endMillis + toleranceMillis) break;
+                    if (used[m]) continue;
+                    long gap = line.gap(e.timeMillis);
+                    if (gap > toleranceMillis) continue;
+                    if (merchant == null) merchant = merchants.canonicalize(line.description);
+                    boolean same = merchant.equals(e.description);
+                    if ((same && !bestSame) || (same == bestSame && gap < bestGap)) {
+                        best = m;
+                        bestSame = same;
+                        bestGap = gap;
+                    }
+                }
+                if (best < 0) {
+                    missing.add(line);
+                } else {
+                    used[best] = true;
+                    matched.add(new Match(line, ledger.get(best), bestSame));
+                }
+            }
+            i = lineEnd;
+            j = rowEnd;
+        }
+
+        List<Entry> extra = new ArrayList<>();
+        for (int m = 0; m < ledger.size(); m++) {
+            Entry e = ledger.get(m);
+            if (!used[m] && e.timeMillis >= span[0] && e.timeMillis <= span[1]) extra.add(e);
+        }
+        matched.sort((a, b) -> Long.compare(a.line.startMillis, b.line.startMillis));
+        missing.sort((a, b) -> Long.compare(a.startMillis, b.startMillis));
+        extra.sort(LedgerReader.NEWEST_FIRST.reversed());
+        return new Result(matched, missing, extra, span[0], span[1],
+                statement.credits, statement.malformed);
+    }
+
+    /** Join key order: currency, then amount. */
+    private static int compareKey(int currencyA, long amountA, int currencyB, long amountB) {
+        int c = Integer.compare(currencyA, currencyB);
+        return c != 0 ? c : Long.compare(amountA, amountB);
+    }
+
+    private static boolean sameKey(int currencyA, long amountA, int currencyB, long amountB) {
+        return currencyA == currencyB && amountA == amountB;
+    }
+
+    /** @return the first start and last end of the lines */
+    private static long[] span(List<Line> lines) {
+        long start = Long.MAX_VALUE, end = Long.MIN_VALUE;
+        for (Line l : lines) {
+            start = Math.min(start, l.startMillis);
+            end = Math.max(end, l.endMillis);
+        }
+        return new long[]{start, end};
+    }
+}
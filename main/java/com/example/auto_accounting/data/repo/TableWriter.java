@@ -1,30 +1,37 @@
 package com.example.auto_accounting.data.repo;
 
 import android.content.Context;
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.data.db.CurrencyCode;
 import com.example.auto_accounting.data.db.DbProvider;
 import com.example.auto_accounting.data.db.Table;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.time.ZoneId;
 
 /**
- * Writes parsed rows to the database on a single background thread.
- *  *解析结果 → TableWriter.save(ctx, time, desc, amountMinor)
- *  *         → DbProvider.get(ctx)        // 取到 AppDb 单例
- *  *         → AppDb.tableDao().insert()  // DAO 执行插入
+ * Writes parsed rows to the database on the {@link AppScheduler.Lane#INGEST} lane.
+ *  *解析结果 → TableWriter.save(ctx, time, desc, amountMinor, currency)
+ *  *         → MerchantDictionary.idFor()      // 描述 → 商家 id（内存 LRU，未命中才查表）
+ *  *         → MerchantCategories.categoryOf() // 商家 → 类别（新商家在此分类并存库，
+ *  *                                           //   之后按 id 直接查内存）
+ *  *         → DbProvider.get(ctx)             // 取到 AppDb 单例
+ *  *         → AppDb.tableDao().insert()       // DAO 执行插入
+ *  *         → FxRates.toReporting()           // 按当日汇率换算成报表币种（预算按报表币种计）
+ *  *         → BudgetTracker.onInsert()        // 内存中累加本月预算，跨过 80% / 100% 时发提醒
+ *  *         → SpendingAnomalies.onInsert()    // 按商家的运行统计判断金额异常 / 短时多笔，
+ *  *                                           //   O(1)，用报表币种金额
  *  *         → SQLite 文件 simple_table.db
  */
 public final class TableWriter {
 
-    /** Single-threaded executor for DB IO. */
-    private static final ExecutorService EXECUTOR_IO =
-            Executors.newSingleThreadExecutor();
-
     private TableWriter() {
         // No instances.
     }
 
     /**
-     * Saves one parsed row into the DB asynchronously.
+     * Saves one parsed row in {@link CurrencyCode#DEFAULT} into the DB asynchronously.
      *
      * @param context     any context
      * @param timeMillis  event time in epoch milliseconds
@@ -37,12 +44,41 @@ public final class TableWriter {
             String description,
             long amountMinor
     ) {
-        EXECUTOR_IO.execute(() -> {
+        save(context, timeMillis, description, amountMinor, CurrencyCode.DEFAULT.code);
+    }
+
+    /**
+     * Saves one parsed row into the DB asynchronously.
+     *
+     * @param context     any context
+     * @param timeMillis  event time in epoch milliseconds
+     * @param description description text
+     * @param amountMinor amount in hundredths of the currency
+     * @param currency    {@link CurrencyCode#code} of the amount
+     */
+    public static void save(
+            Context context,
+            long timeMillis,
+            String description,
+            long amountMinor,
+            int currency
+    ) {
+        AppScheduler.execute(AppScheduler.Lane.INGEST, () -> {
             Table row = new Table();
             row.timeMillis = timeMillis;
-            row.description = description;
+            row.merchantId = MerchantDictionary.get(context).idFor(description);
+            Category category = MerchantCategories.get(context).categoryOf(row.merchantId);
             row.amountMinor = amountMinor;
-            DbProvider.get(context).tableDao().insert(row);
+            row.currency = currency;
+            long id = DbProvider.get(context).tableDao().insert(row);
+            LedgerVersion.bump(timeMillis);
+            long reported = FxRates.get(context).toReporting(amountMinor, currency, timeMillis,
+                    ZoneId.systemDefault());
+            BudgetTracker.get(context).onInsert(id, timeMillis, category, reported);
+            // 没有汇率的币种不计入合计，也不进商家统计
+            if (FxRates.get(context).canConvert(currency)) {
+                SpendingAnomalies.get(context).onInsert(row.merchantId, description, timeMillis, reported);
+            }
         });
     }
 }
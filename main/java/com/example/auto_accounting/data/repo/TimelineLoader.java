@@ -0,0 +1,55 @@
+package com.example.auto_accounting.data.repo;
+
+import android.content.Context;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Reads {@link TimelineTiers} chunks through {@link LedgerReader}. Call from a background thread.
+ */
+public final class TimelineLoader {
+
+    /** Daily totals of one chunk and the change they are current up to. */
+    public static final class Chunk {
+        /** {@link ChangeLog} sequence the totals reflect; later changes are not in them. */
+        public final long seq;
+        /** {@link TimelineTiers#CHUNK_DAYS} daily totals in minor units. */
+        public final long[] daily;
+
+        Chunk(long seq, long[] daily) {
+            this.seq = seq;
+            this.daily = daily;
+        }
+    }
+
+    private TimelineLoader() {
+        // No instances.
+    }
+
+    /**
+     * Loads the daily totals of one chunk together with the last change sequence, in one
+     * {@link LedgerReader#snapshot snapshot}, so deltas after that sequence can be applied
+     * without counting a row twice. Takes no write lock, so scrolling never holds up inserts.
+     *
+     * @param context any context
+     * @param chunk   chunk index, see {@link TimelineTiers#chunkOf(long)}
+     * @return the chunk's totals and sequence
+     */
+    public static Chunk loadChunk(Context context, long chunk) {
+        long firstDay = chunk * TimelineTiers.CHUNK_DAYS;
+        LedgerReader reader = LedgerReader.get(context);
+        return reader.snapshot(seq -> new Chunk(seq, reader.dayTotals(firstDay, TimelineTiers.CHUNK_DAYS)));
+    }
+
+    /**
+     * @return the local epoch day of the earliest row, or today if the ledger is empty
+     */
+    public static long firstEpochDay(Context context) {
+        Long min = LedgerReader.get(context).minTimeMillis();
+        ZoneId zone = ZoneId.systemDefault();
+        if (min == null) return LocalDate.now(zone).toEpochDay();
+        return Instant.ofEpochMilli(min).atZone(zone).toLocalDate().toEpochDay();
+    }
+}
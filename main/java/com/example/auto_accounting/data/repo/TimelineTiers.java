@@ -0,0 +1,127 @@
+package com.example.auto_accounting.data.repo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Level-of-detail aggregates of daily totals for the timeline chart.
+ * <p>History is split into aligned chunks of {@link #CHUNK_DAYS} local days. Each loaded
+ * chunk keeps a pyramid of tiers: tier {@code l} has one bucket per {@code 2^l} days holding
+ * the sum and the largest daily total of those days. A view that needs roughly one bucket
+ * per few pixels picks the matching tier, so drawing stays O(screen width) whatever the
+ * history size. Chunks are loaded independently as the viewport moves; each remembers the
+ * {@link ChangeLog} sequence it was read at and skips deltas it already holds. Not
+ * thread-safe: use from the main thread.
+ */
+public final class TimelineTiers {
+
+    /** log2 of the chunk length; also the coarsest tier. */
+    public static final int MAX_LEVEL = 9;
+
+    /** Days per chunk. */
+    public static final int CHUNK_DAYS = 1 << MAX_LEVEL;
+
+    /** Loaded chunks by chunk index ({@code floorDiv(epochDay, CHUNK_DAYS)}). */
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+
+    /** Sum/max pyramids of one chunk; index [level][bucket]. */
+    private static final class Chunk {
+        final long[][] sum = new long[MAX_LEVEL + 1][];
+        final long[][] max = new long[MAX_LEVEL + 1][];
+        /** Changes up to this sequence are in the totals. */
+        final long seq;
+
+        Chunk(long[] daily, long seq) {
+            this.seq = seq;
+            for (int l = 0; l <= MAX_LEVEL; l++) {
+                int n = CHUNK_DAYS >> l;
+                sum[l] = new long[n];
+                max[l] = new long[n];
+            }
+            System.arraycopy(daily, 0, sum[0], 0, CHUNK_DAYS);
+            System.arraycopy(daily, 0, max[0], 0, CHUNK_DAYS);
+            for (int l = 1; l <= MAX_LEVEL; l++) {
+                for (int i = 0; i < sum[l].length; i++) merge(l, i);
+            }
+        }
+
+        /** Recomputes bucket i of level l from its two children. */
+        void merge(int l, int i) {
+            int a = i << 1, b = a + 1;
+            sum[l][i] = sum[l - 1][a] + sum[l - 1][b];
+            max[l][i] = Math.max(max[l - 1][a], max[l - 1][b]);
+        }
+    }
+
+    /** @return the chunk index containing {@code epochDay}. */
+    public static long chunkOf(long epochDay) {
+        return Math.floorDiv(epochDay, CHUNK_DAYS);
+    }
+
+    /** @return true if the chunk has been loaded. */
+    public boolean isLoaded(long chunk) {
+        return chunks.containsKey(chunk);
+    }
+
+    /**
+     * Installs one chunk of daily totals and builds its tiers.
+     *
+     * @param chunk chunk index
+     * @param daily {@link #CHUNK_DAYS} daily totals starting at {@code chunk * CHUNK_DAYS}
+     * @param seq   {@link ChangeLog} sequence the totals were read at
+     */
+    public void putChunk(long chunk, long[] daily, long seq) {
+        if (daily.length != CHUNK_DAYS) {
+            throw new IllegalArgumentException("Expected " + CHUNK_DAYS + " days, got " + daily.length);
+        }
+        chunks.put(chunk, new Chunk(daily, seq));
+    }
+
+    /**
+     * Adds {@code deltaMinor} to one day and refreshes the tiers above it in O(levels).
+     * Ignored if the day's chunk is not loaded yet (it will be read from the DB when it is),
+     * or was read after the change.
+     *
+     * @param seq {@link ChangeLog} sequence of the change
+     */
+    public void addToDay(long epochDay, long deltaMinor, long seq) {
+        Chunk c = chunks.get(chunkOf(epochDay));
+        if (c == null || seq <= c.seq) return;
+        int i = (int) Math.floorMod(epochDay, (long) CHUNK_DAYS);
+        long v = c.sum[0][i] + deltaMinor;
+        c.sum[0][i] = v;
+        c.max[0][i] = v;
+        for (int l = 1; l <= MAX_LEVEL; l++) {
+            i >>= 1;
+            c.merge(l, i);
+        }
+    }
+
+    /** Drops all loaded chunks. */
+    public void clear() {
+        chunks.clear();
+    }
+
+    /**
+     * @return the sum of bucket {@code bucket} at tier {@code level}, 0 if not loaded.
+     *         Bucket b covers days [b * 2^level, (b + 1) * 2^level).
+     */
+    public long sum(int level, long bucket) {
+        Chunk c = chunkForBucket(level, bucket);
+        return c == null ? 0 : c.sum[level][bucketInChunk(level, bucket)];
+    }
+
+    /** @return the largest daily total within the bucket, 0 if not loaded. */
+    public long max(int level, long bucket) {
+        Chunk c = chunkForBucket(level, bucket);
+        return c == null ? 0 : c.max[level][bucketInChunk(level, bucket)];
+    }
+
+    private Chunk chunkForBucket(int level, long bucket) {
+        return chunks.get(Math.floorDiv(bucket, (long) (CHUNK_DAYS >> level)));
+    }
+
+    private static int bucketInChunk(int level, long bucket) {
+        return (int) Math.floorMod(bucket, (long) (CHUNK_DAYS >> level));
+    }
+}
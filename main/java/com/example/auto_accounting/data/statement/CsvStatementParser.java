@@ -0,0 +1,259 @@
+package com.example.auto_accounting.data.statement;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * CSV statements as exported by most banks. The delimiter ({@code , ; tab}) is taken from the
+ * first line; columns are found by header name (date, time, description/payee/narrative,
+ * amount or separate debit and credit columns, currency). Without a currency column, the
+ * currency is read from a symbol or code in the amount (see
+ * {@link StatementValues#parseCurrency}). Header-less files, common in Australia, are
+ * recognised by a first row that starts with a date and mapped by value type. Quoted fields may
+ * hold delimiters, doubled quotes and line breaks (RFC 4180).
+ */
+final class CsvStatementParser extends StatementParser {
+
+    private static final int LINE_PEEK_CHARS = 1 << 16;
+
+    private static final String[] DATE_NAMES = {"transaction date", "date", "posted", "booking"};
+    private static final String[] TIME_NAMES = {"time"};
+    private static final String[] DESC_NAMES = {"description", "payee", "narrative", "details",
+            "merchant", "name", "particulars", "transaction", "memo", "reference"};
+    private static final String[] AMOUNT_NAMES = {"amount"};
+    private static final String[] DEBIT_NAMES = {"debit", "withdrawal", "money out", "paid out"};
+    private static final String[] CREDIT_NAMES = {"credit", "deposit", "money in", "paid in"};
+    private static final String[] CURRENCY_NAMES = {"currency", "ccy"};
+
+    private final char[] buf = new char[8192];
+    private int pos, limit;
+    private boolean eof;
+
+    private char delimiter;
+    /** Fields of the current row; builders are reused from row to row. */
+    private final ArrayList<StringBuilder> fields = new ArrayList<>();
+    private int fieldCount;
+
+    private int dateCol = -1, timeCol = -1, descCol = -1, amountCol = -1, debitCol = -1, creditCol = -1;
+    private int currencyCol = -1;
+    private boolean started;
+    /** Header-less file: the first row is data and is still to be returned. */
+    private boolean firstRowPending;
+
+    private final StatementValues.DateParser dates =
+            new StatementValues.DateParser(!Locale.US.getCountry().equals(Locale.getDefault().getCountry()));
+
+    CsvStatementParser(BufferedReader in) {
+        super(in);
+    }
+
+    @Override
+    public boolean next(StatementRecord out) throws IOException {
+        if (!started) {
+            started = true;
+            if (!readHeader()) return false;
+        }
+        while (true) {
+            if (firstRowPending) {
+                firstRowPending = false;
+            } else if (!readRow()) {
+                return false;
+            }
+            if (fieldCount == 1 && fields.get(0).length() == 0) continue; // blank line
+            if (toRecord(out)) return true;
+            malformed++;
+        }
+    }
+
+    private boolean readHeader() throws IOException {
+        in.mark(LINE_PEEK_CHARS);
+        String first = in.readLine();
+        in.reset();
+        if (first == null) return false;
+        delimiter = pickDelimiter(first);
+        if (!readRow()) return false;
+
+        // Header-less: the first row starts with (or holds) a date.
+        for (int i = 0; i < fieldCount; i++) {
+            if (dates.parse(fields.get(i)) != StatementValues.NOT_A_DATE) {
+                mapByValues();
+                firstRowPending = true;
+                return true;
+            }
+        }
+        String[] names = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            String n = fields.get(i).toString().trim().toLowerCase(Locale.ROOT);
+            names[i] = !n.isEmpty() && n.charAt(0) == BOM ? n.substring(1) : n;
+        }
+        dateCol = find(names, DATE_NAMES, -1);
+        timeCol = find(names, TIME_NAMES, dateCol);
+        descCol = find(names, DESC_NAMES, dateCol);
+        currencyCol = find(names, CURRENCY_NAMES, -1);
+        if (currencyCol == descCol) currencyCol = -1;
+        amountCol = find(names, AMOUNT_NAMES, -1);
+        if (amountCol < 0) {
+            debitCol = find(names, DEBIT_NAMES, -1);
+            creditCol = find(names, CREDIT_NAMES, -1);
+        }
+        if (dateCol < 0 || (amountCol < 0 && debitCol < 0 && creditCol < 0)) {
+            throw new IOException("Unrecognised CSV header: " + String.join(",", names));
+        }
+        return true;
+    }
+
+    /** Header-less row: first date column, first amount column after it, longest text column. */
+    private void mapByValues() {
+        int longest = 0;
+        for (int i = 0; i < fieldCount; i++) {
+            StringBuilder f = fields.get(i);
+            if (dateCol < 0 && dates.parse(f) != StatementValues.NOT_A_DATE) {
+                dateCol = i;
+            } else if (amountCol < 0 && StatementValues.parseMinor(f) != StatementValues.NOT_AN_AMOUNT) {
+                amountCol = i;
+            } else if (StatementValues.parseMinor(f) == StatementValues.NOT_AN_AMOUNT
+                    && f.length() > longest) {
+                longest = f.length();
+                descCol = i;
+            }
+        }
+    }
+
+    /** @return index of the column matching the earliest keyword, or -1 */
+    private static int find(String[] names, String[] keywords, int exclude) {
+        for (String k : keywords) {
+            for (int i = 0; i < names.length; i++) {
+                if (i != exclude && names[i].contains(k) && !names[i].contains("balance")) return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean toRecord(StatementRecord out) {
+        out.clear();
+        if (dateCol >= fieldCount) return false;
+        long day = dates.parse(fields.get(dateCol));
+        if (day == StatementValues.NOT_A_DATE) return false;
+        out.epochDay = day;
+        if (timeCol >= 0 && timeCol < fieldCount) {
+            out.secondOfDay = StatementValues.parseSecondOfDay(fields.get(timeCol));
+        }
+        if (descCol >= 0 && descCol < fieldCount) out.description = fields.get(descCol).toString().trim();
+        int currency = CurrencyCode.DEFAULT.code;
+        if (currencyCol >= 0 && currencyCol < fieldCount) {
+            currency = StatementValues.parseCurrency(fields.get(currencyCol), currency);
+        }
+
+        if (amountCol >= 0) {
+            if (amountCol >= fieldCount) return false;
+            long a = StatementValues.parseMinor(fields.get(amountCol));
+            if (a == StatementValues.NOT_AN_AMOUNT) return false;
+            out.amountMinor = a;
+            out.currency = currencyCol >= 0 ? currency
+                    : StatementValues.parseCurrency(fields.get(amountCol), currency);
+            return true;
+        }
+        long debit = debitCol >= 0 && debitCol < fieldCount
+                ? StatementValues.parseMinor(fields.get(debitCol)) : StatementValues.NOT_AN_AMOUNT;
+        long credit = creditCol >= 0 && creditCol < fieldCount
+                ? StatementValues.parseMinor(fields.get(creditCol)) : StatementValues.NOT_AN_AMOUNT;
+        int from;
+        if (debit != StatementValues.NOT_AN_AMOUNT && debit != 0) {
+            out.amountMinor = -Math.abs(debit);
+            from = debitCol;
+        } else if (credit != StatementValues.NOT_AN_AMOUNT) {
+            out.amountMinor = Math.abs(credit);
+            from = creditCol;
+        } else {
+            return false;
+        }
+        out.currency = currencyCol >= 0 ? currency
+                : StatementValues.parseCurrency(fields.get(from), currency);
+        return true;
+    }
+
+    private static char pickDelimiter(String line) {
+        char best = ',';
+        int bestCount = 0;
+        for (char d : new char[]{',', ';', '\t'}) {
+            int count = 0;
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '"') quoted = !quoted;
+                else if (c == d && !quoted) count++;
+            }
+            if (count > bestCount) {
+                best = d;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    // ------------------ tokenizer ------------------
+
+    /** Reads one record into {@link #fields}. @return false at end of input */
+    private boolean readRow() throws IOException {
+        fieldCount = 0;
+        int c = read();
+        if (c < 0) return false;
+        StringBuilder f = nextField();
+        boolean quoted = false;
+        while (c >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    int d = read();
+                    if (d == '"') {
+                        f.append('"');
+                    } else {
+                        quoted = false;
+                        c = d;
+                        continue;
+                    }
+                } else {
+                    f.append((char) c);
+                }
+            } else if (c == '"' && f.length() == 0) {
+                quoted = true;
+            } else if (c == delimiter) {
+                f = nextField();
+            } else if (c == '\n') {
+                break;
+            } else if (c == '\r') {
+                int d = read();
+                if (d != '\n' && d >= 0) pos--; // lone CR ends the line too
+                break;
+            } else {
+                f.append((char) c);
+            }
+            c = read();
+        }
+        return true;
+    }
+
+    private StringBuilder nextField() {
+        if (fieldCount == fields.size()) fields.add(new StringBuilder(32));
+        StringBuilder f = fields.get(fieldCount++);
+        f.setLength(0);
+        return f;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            if (eof) return -1;
+            int n = in.read(buf, 0, buf.length);
+            if (n <= 0) {
+                eof = true;
+                return -1;
+            }
+            pos = 0;
+            limit = n;
+        }
+        return buf[pos++];
+    }
+}
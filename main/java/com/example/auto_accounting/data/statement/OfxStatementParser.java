@@ -0,0 +1,130 @@
+package com.example.auto_accounting.data.statement;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * OFX / QFX statements, both the SGML flavour (1.x, leaf elements without end tags) and XML
+ * (2.x). Only {@code <STMTTRN>} aggregates are read: {@code DTPOSTED}, {@code TRNAMT} and
+ * {@code NAME}, falling back to {@code MEMO} for the description. The currency is the
+ * statement's {@code CURDEF}, or the {@code CURSYM} of a transaction's {@code CURRENCY}
+ * aggregate, whose amount is in that currency ({@code ORIGCURRENCY} only names the currency
+ * the amount was converted from). Everything else, including the header block before
+ * {@code <OFX>}, is skipped while scanning.
+ */
+final class OfxStatementParser extends StatementParser {
+
+    private final StringBuilder tag = new StringBuilder(16);
+    private final StringBuilder text = new StringBuilder(64);
+    private final StatementValues.DateParser dates = new StatementValues.DateParser(false);
+
+    private final char[] buf = new char[8192];
+    private int pos, limit;
+    private boolean eof;
+    /** The statement's default currency, from {@code CURDEF}. */
+    private int defaultCurrency = CurrencyCode.DEFAULT.code;
+
+    OfxStatementParser(BufferedReader in) {
+        super(in);
+    }
+
+    @Override
+    public boolean next(StatementRecord out) throws IOException {
+        boolean inTransaction = false;
+        String posted = null, amount = null, name = null, memo = null, currency = null;
+        boolean inCurrency = false;
+        while (readTag()) {
+            String t = tag.toString();
+            if (!inTransaction) {
+                if (t.equals("STMTTRN")) inTransaction = true;
+                else if (t.equals("CURDEF")) defaultCurrency = currencyOf(readText(), defaultCurrency);
+                continue;
+            }
+            switch (t) {
+                case "DTPOSTED": posted = readText(); break;
+                case "TRNAMT":   amount = readText(); break;
+                case "NAME":     name = readText(); break;
+                case "MEMO":     memo = readText(); break;
+                case "CURRENCY": inCurrency = true; break;
+                case "ORIGCURRENCY": inCurrency = false; break;
+                case "CURSYM":
+                    if (inCurrency) currency = readText();
+                    break;
+                case "/STMTTRN":
+                    if (toRecord(out, posted, amount, name, memo, currency)) return true;
+                    malformed++;
+                    inTransaction = false;
+                    inCurrency = false;
+                    posted = amount = name = memo = currency = null;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private boolean toRecord(StatementRecord out, String posted, String amount, String name, String memo,
+                             String currency) {
+        out.clear();
+        if (posted == null || amount == null) return false;
+        long day = dates.parse(posted);
+        long minor = StatementValues.parseMinor(amount);
+        if (day == StatementValues.NOT_A_DATE || minor == StatementValues.NOT_AN_AMOUNT) return false;
+        out.epochDay = day;
+        out.secondOfDay = StatementValues.parseSecondOfDay(posted);
+        if (out.secondOfDay == 0) out.secondOfDay = -1; // date-only, padded with zeros
+        out.amountMinor = minor;
+        out.description = name != null && !name.isEmpty() ? name : memo != null ? memo : "";
+        out.currency = currency == null ? defaultCurrency : currencyOf(currency, defaultCurrency);
+        return true;
+    }
+
+    private static int currencyOf(String iso, int fallback) {
+        CurrencyCode c = CurrencyCode.fromIso(iso);
+        return c != null ? c.code : fallback;
+    }
+
+    /** Skips to the next tag and reads its name, upper-cased, into {@link #tag}. */
+    private boolean readTag() throws IOException {
+        int c;
+        while ((c = read()) >= 0 && c != '<') { /* skip text */ }
+        if (c < 0) return false;
+        tag.setLength(0);
+        while ((c = read()) >= 0 && c != '>') {
+            if (c > ' ') tag.append(Character.toUpperCase((char) c));
+        }
+        return c >= 0;
+    }
+
+    /** Reads the value after a leaf tag, up to the next tag, with entities decoded. */
+    private String readText() throws IOException {
+        text.setLength(0);
+        int c;
+        while ((c = read()) >= 0 && c != '<') text.append((char) c);
+        if (c == '<') pos--; // leave the '<' for readTag
+        String s = text.toString().trim();
+        return s.indexOf('&') < 0 ? s : decode(s);
+    }
+
+    private static String decode(String s) {
+        return s.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&nbsp;", " ").replace("&amp;", "&");
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            if (eof) return -1;
+            int n = in.read(buf, 0, buf.length);
+            if (n <= 0) {
+                eof = true;
+                return -1;
+            }
+            pos = 0;
+            limit = n;
+        }
+        return buf[pos++];
+    }
+}
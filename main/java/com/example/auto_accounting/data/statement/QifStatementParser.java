@@ -0,0 +1,68 @@
+package com.example.auto_accounting.data.statement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+/**
+ * QIF statements: one field per line, keyed by its first character ({@code D} date,
+ * {@code T}/{@code U} amount, {@code P} payee, {@code M} memo), each record ended by {@code ^}.
+ * Split lines, {@code !Type} headers and account blocks are skipped. QIF dates are assumed
+ * month-first (the format is US-born) unless the file shows otherwise; {@code '} marks
+ * two-digit years after 1999.
+ */
+final class QifStatementParser extends StatementParser {
+
+    private final StatementValues.DateParser dates = new StatementValues.DateParser(false);
+
+    QifStatementParser(BufferedReader in) {
+        super(in);
+    }
+
+    @Override
+    public boolean next(StatementRecord out) throws IOException {
+        String date = null, amount = null, payee = null, memo = null;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            char key = line.charAt(0);
+            if (key == StatementParser.BOM && line.length() > 1) {
+                line = line.substring(1);
+                key = line.charAt(0);
+            }
+            switch (key) {
+                case 'D': date = line.substring(1).trim(); break;
+                case 'T': amount = line.substring(1).trim(); break;
+                case 'U': if (amount == null) amount = line.substring(1).trim(); break;
+                case 'P': payee = line.substring(1).trim(); break;
+                case 'M': memo = line.substring(1).trim(); break;
+                case '^':
+                    if (date != null || amount != null) {
+                        if (toRecord(out, date, amount, payee, memo)) return true;
+                        malformed++;
+                    }
+                    date = amount = payee = memo = null;
+                    break;
+                default:
+                    break; // !Type headers, splits (S/E/$), cleared flags, addresses, ...
+            }
+        }
+        // A last record without the closing '^'.
+        if (date != null && amount != null) {
+            if (toRecord(out, date, amount, payee, memo)) return true;
+            malformed++;
+        }
+        return false;
+    }
+
+    private boolean toRecord(StatementRecord out, String date, String amount, String payee, String memo) {
+        out.clear();
+        if (date == null || amount == null) return false;
+        long day = dates.parse(date);
+        long minor = StatementValues.parseMinor(amount);
+        if (day == StatementValues.NOT_A_DATE || minor == StatementValues.NOT_AN_AMOUNT) return false;
+        out.epochDay = day;
+        out.amountMinor = minor;
+        out.description = payee != null && !payee.isEmpty() ? payee : memo != null ? memo : "";
+        return true;
+    }
+}
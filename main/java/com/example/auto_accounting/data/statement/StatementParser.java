@@ -0,0 +1,86 @@
+package com.example.auto_accounting.data.statement;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Reads a bank statement one transaction at a time. Implementations hold no more than the
+ * current record, so statements of any size stream in constant memory.
+ */
+public abstract class StatementParser implements Closeable {
+
+    /** Statement file formats. */
+    public enum Format { CSV, OFX, QIF }
+
+    /** Byte order mark some banks put in front of UTF-8 exports. */
+    static final char BOM = '\uFEFF';
+
+    /** Characters looked at to guess the format. */
+    private static final int SNIFF_CHARS = 4096;
+
+    protected final BufferedReader in;
+
+    /** Rows that could not be parsed and were skipped. */
+    protected long malformed;
+
+    protected StatementParser(BufferedReader in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next transaction.
+     *
+     * @param out filled in place
+     * @return false at the end of the statement
+     * @throws IOException on read failure
+     */
+    public abstract boolean next(StatementRecord out) throws IOException;
+
+    /** @return number of rows skipped because they could not be parsed */
+    public long malformed() {
+        return malformed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Guesses the format from the first few kilobytes: an OFX header or {@code <OFX>} tag,
+     * a QIF {@code !Type:} line, otherwise CSV.
+     *
+     * @param in reader supporting mark/reset; left at its start
+     * @return the format
+     * @throws IOException on read failure
+     */
+    public static Format detect(BufferedReader in) throws IOException {
+        in.mark(SNIFF_CHARS);
+        char[] buf = new char[SNIFF_CHARS];
+        int n = 0, r;
+        while (n < buf.length && (r = in.read(buf, n, buf.length - n)) > 0) n += r;
+        in.reset();
+        String head = new String(buf, 0, n).trim().toUpperCase(Locale.ROOT);
+        if (!head.isEmpty() && head.charAt(0) == BOM) head = head.substring(1).trim();
+        if (head.startsWith("OFXHEADER") || head.contains("<OFX>")) return Format.OFX;
+        if (head.startsWith("!TYPE") || head.startsWith("!ACCOUNT") || head.startsWith("!OPTION")) {
+            return Format.QIF;
+        }
+        return Format.CSV;
+    }
+
+    /**
+     * @param in     the statement text
+     * @param format from {@link #detect(BufferedReader)}
+     * @return a parser for the format
+     */
+    public static StatementParser open(BufferedReader in, Format format) {
+        switch (format) {
+            case OFX: return new OfxStatementParser(in);
+            case QIF: return new QifStatementParser(in);
+            default: return new CsvStatementParser(in);
+        }
+    }
+}
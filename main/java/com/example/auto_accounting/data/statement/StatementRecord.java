@@ -0,0 +1,36 @@
+package com.example.auto_accounting.data.statement;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+
+/**
+ * One transaction read from a bank statement. Parsers fill a caller-owned instance in place,
+ * so reading a statement allocates nothing per row beyond the description string.
+ */
+public final class StatementRecord {
+
+    /** Local epoch day the transaction was posted. */
+    public long epochDay;
+
+    /** Seconds after local midnight if the statement has a time of day, else -1. */
+    public int secondOfDay = -1;
+
+    /** Payee / description, trimmed; may be empty. */
+    public String description = "";
+
+    /** Signed amount in minor units as on the statement: negative = money out. */
+    public long amountMinor;
+
+    /**
+     * {@link CurrencyCode#code} of the amount; {@link CurrencyCode#DEFAULT} if the statement
+     * does not say.
+     */
+    public int currency = CurrencyCode.DEFAULT.code;
+
+    void clear() {
+        epochDay = 0;
+        secondOfDay = -1;
+        description = "";
+        amountMinor = 0;
+        currency = CurrencyCode.DEFAULT.code;
+    }
+}
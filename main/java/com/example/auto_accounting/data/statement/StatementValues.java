@@ -0,0 +1,254 @@
+package com.example.auto_accounting.data.statement;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Parsers for the amount and date spellings found in bank exports. No regular expressions or
+ * formatters per value: a statement can have hundreds of thousands of rows.
+ */
+final class StatementValues {
+
+    /** Returned by {@link #parseMinor} when the text is not an amount. */
+    static final long NOT_AN_AMOUNT = Long.MIN_VALUE;
+
+    /** Returned by {@link DateParser#parse} when the text is not a date. */
+    static final long NOT_A_DATE = Long.MIN_VALUE;
+
+    private static final String[] MONTHS = {
+            "jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+
+    private StatementValues() {
+        // No instances.
+    }
+
+    /**
+     * Parses an amount into minor units (two decimals), e.g. {@code "-1,234.50"} → -123450.
+     * Accepts currency symbols and codes, thousands separators, a decimal comma
+     * ({@code "12,50"}), accounting negatives {@code "(12.50)"} and a trailing {@code DR}
+     * (negative) or {@code CR}. Digits beyond the second decimal are rounded half up.
+     *
+     * @return minor units, or {@link #NOT_AN_AMOUNT}
+     */
+    static long parseMinor(CharSequence s) {
+        int end = s.length();
+        int start = 0;
+        while (start < end && s.charAt(start) <= ' ') start++;
+        while (end > start && s.charAt(end - 1) <= ' ') end--;
+        if (start == end) return NOT_AN_AMOUNT;
+
+        boolean negative = false;
+        if (end - start >= 2) {
+            char a = Character.toUpperCase(s.charAt(end - 2)), b = Character.toUpperCase(s.charAt(end - 1));
+            if (a == 'D' && b == 'R') {
+                negative = true;
+                end -= 2;
+            } else if (a == 'C' && b == 'R') {
+                end -= 2;
+            }
+        }
+
+        // The last '.' or ',' followed by one or two digits only is the decimal separator.
+        int decimal = -1;
+        for (int i = end - 1; i >= start; i--) {
+            char c = s.charAt(i);
+            if (c == '.' || c == ',') {
+                int digitsAfter = 0;
+                for (int j = i + 1; j < end && Character.isDigit(s.charAt(j)); j++) digitsAfter++;
+                if (c == '.' || digitsAfter <= 2) decimal = i;
+                break;
+            }
+        }
+
+        long units = 0, fraction = 0;
+        int fractionDigits = 0;
+        boolean roundUp = false, any = false;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                any = true;
+                if (decimal < 0 || i < decimal) {
+                    if (units > Long.MAX_VALUE / 1000) return NOT_AN_AMOUNT;
+                    units = units * 10 + (c - '0');
+                } else if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (c - '0');
+                    fractionDigits++;
+                } else if (fractionDigits == 2) {
+                    roundUp = c >= '5';
+                    fractionDigits++;
+                }
+            } else if (c == '-' || c == '\u2212') {
+                if (any && i != end - 1) return NOT_AN_AMOUNT; // "2024-01-31"; "12.50-" is fine
+                negative = true;
+            } else if (c == '(') {
+                negative = true;
+            } else if (Character.isLetter(c) && any) {
+                // Only a trailing currency code may follow the number: "12.50 AUD".
+                int j = i;
+                while (j < end && Character.isLetter(s.charAt(j))) j++;
+                if (j - i != 3 || j != end) return NOT_AN_AMOUNT;
+                break;
+            }
+        }
+        if (!any) return NOT_AN_AMOUNT;
+        if (fractionDigits == 1) fraction *= 10;
+        long minor = units * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -minor : minor;
+    }
+
+    /**
+     * Reads the currency written with an amount, e.g. {@code "A$12.50"}, {@code "€-3,10"} or
+     * {@code "12.50 USD"}: whatever is not a digit, sign, separator or trailing {@code DR} /
+     * {@code CR}, read by {@link CurrencyCode#fromSymbol}. Allocates only if there is a symbol.
+     *
+     * @return the {@link CurrencyCode#code}, or {@code fallback} if the text names no currency
+     *         of the ledger
+     */
+    static int parseCurrency(CharSequence s, int fallback) {
+        StringBuilder symbol = null;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c >= '0' && c <= '9') || c <= ' ' || ".,-+()\u2212".indexOf(c) >= 0) continue;
+            if (symbol == null) symbol = new StringBuilder(4);
+            symbol.append(c);
+        }
+        if (symbol == null) return fallback;
+        int n = symbol.length();
+        if (n >= 2) {
+            char a = Character.toUpperCase(symbol.charAt(n - 2)), b = Character.toUpperCase(symbol.charAt(n - 1));
+            if ((a == 'D' || a == 'C') && b == 'R') symbol.setLength(n - 2);
+        }
+        CurrencyCode c = CurrencyCode.fromSymbol(symbol);
+        return c != null ? c.code : fallback;
+    }
+
+    /**
+     * Parses dates such as {@code 2024-01-31}, {@code 20240131}, {@code 31/01/2024},
+     * {@code 01/31/2024}, {@code 31.01.24}, {@code 31 Jan 2024}, {@code Jan 31, 2024} and
+     * QIF's {@code 1/31'24}.
+     * <p>Whether {@code 01/02/2024} is day-first is decided by the first date of the file that
+     * settles it (a component above 12); until then the constructor's guess is used. One instance
+     * per file.
+     */
+    static final class DateParser {
+        private boolean dayFirst;
+        private boolean orderKnown;
+        private final int[] parts = new int[3];
+        private final int[] widths = new int[3];
+
+        /** @param dayFirst assumed order for ambiguous numeric dates */
+        DateParser(boolean dayFirst) {
+            this.dayFirst = dayFirst;
+        }
+
+        /** @return local epoch day, or {@link #NOT_A_DATE} */
+        long parse(CharSequence s) {
+            int n = 0, month = 0, monthAt = -1;
+            int i = 0, len = s.length();
+            while (i < len && n < 3) {
+                char c = s.charAt(i);
+                if (Character.isDigit(c)) {
+                    int v = 0, w = 0;
+                    while (i < len && Character.isDigit(s.charAt(i))) {
+                        if (w < 8) v = v * 10 + (s.charAt(i) - '0');
+                        i++;
+                        w++;
+                    }
+                    if (w >= 8 && n == 0) {          // yyyyMMdd[HHmmss] (OFX)
+                        return epochDay(v / 10000, v / 100 % 100, v % 100);
+                    }
+                    if (w > 4) return NOT_A_DATE;
+                    widths[n] = w;
+                    parts[n++] = v;
+                } else if (Character.isLetter(c)) {
+                    int from = i;
+                    while (i < len && Character.isLetter(s.charAt(i))) i++;
+                    int m = monthOf(s, from, i);
+                    if (m > 0 && monthAt < 0) {
+                        month = m;
+                        monthAt = n;
+                        widths[n] = 0;
+                        parts[n++] = m;
+                    }
+                } else {
+                    i++;
+                }
+            }
+            if (n < 3) return NOT_A_DATE;
+
+            int y, m, d;
+            if (monthAt == 0) {                      // Jan 31, 2024
+                m = month; d = parts[1]; y = parts[2];
+            } else if (monthAt == 1) {               // 31 Jan 2024 / 2024 Jan 31
+                m = month;
+                if (widths[0] == 4) { y = parts[0]; d = parts[2]; } else { d = parts[0]; y = parts[2]; }
+            } else if (widths[0] == 4) {             // 2024-01-31
+                y = parts[0]; m = parts[1]; d = parts[2];
+            } else {                                 // 31/01/2024 or 01/31/2024
+                y = parts[2];
+                if (!orderKnown) {
+                    if (parts[0] > 12 && parts[1] <= 12) { dayFirst = true; orderKnown = true; }
+                    else if (parts[1] > 12 && parts[0] <= 12) { dayFirst = false; orderKnown = true; }
+                }
+                if (dayFirst) { d = parts[0]; m = parts[1]; } else { m = parts[0]; d = parts[1]; }
+            }
+            if (y < 100) y += y < 70 ? 2000 : 1900;
+            return epochDay(y, m, d);
+        }
+
+        private static long epochDay(int y, int m, int d) {
+            try {
+                return LocalDate.of(y, m, d).toEpochDay();
+            } catch (DateTimeException e) {
+                return NOT_A_DATE;
+            }
+        }
+
+        private static int monthOf(CharSequence s, int from, int to) {
+            if (to - from < 3) return 0;
+            for (int m = 0; m < MONTHS.length; m++) {
+                String name = MONTHS[m];
+                boolean eq = true;
+                for (int k = 0; k < 3 && eq; k++) {
+                    eq = Character.toLowerCase(s.charAt(from + k)) == name.charAt(k);
+                }
+                if (eq) return m + 1;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Parses a time of day {@code HH:mm[:ss]} or OFX's {@code yyyyMMddHHmmss}.
+     *
+     * @return seconds after midnight, or -1
+     */
+    static int parseSecondOfDay(CharSequence s) {
+        int len = s.length();
+        int digits = 0;
+        while (digits < len && Character.isDigit(s.charAt(digits))) digits++;
+        if (digits >= 12) { // OFX datetime
+            int h = twoDigits(s, 8), m = twoDigits(s, 10), sec = digits >= 14 ? twoDigits(s, 12) : 0;
+            return h < 24 && m < 60 && sec < 60 ? h * 3600 + m * 60 + sec : -1;
+        }
+        int colon = -1;
+        for (int i = 0; i < len; i++) {
+            if (s.charAt(i) == ':') { colon = i; break; }
+        }
+        if (colon < 1 || colon + 3 > len) return -1;
+        int h = Character.isDigit(s.charAt(colon - 1)) ? s.charAt(colon - 1) - '0' : -1;
+        if (colon >= 2 && Character.isDigit(s.charAt(colon - 2))) h += 10 * (s.charAt(colon - 2) - '0');
+        int m = twoDigits(s, colon + 1);
+        int sec = colon + 6 <= len && s.charAt(colon + 3) == ':' ? twoDigits(s, colon + 4) : 0;
+        return h >= 0 && h < 24 && m >= 0 && m < 60 && sec >= 0 && sec < 60 ? h * 3600 + m * 60 + sec : -1;
+    }
+
+    private static int twoDigits(CharSequence s, int at) {
+        if (at + 2 > s.length()) return -1;
+        char a = s.charAt(at), b = s.charAt(at + 1);
+        if (!Character.isDigit(a) || !Character.isDigit(b)) return -1;
+        return (a - '0') * 10 + (b - '0');
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.auto_accounting.notify;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+
+import androidx.core.app.NotificationCompat;
+
+import com.example.auto_accounting.R;
+import com.example.auto_accounting.data.repo.MerchantStats;
+import com.example.auto_accounting.ui.ChartActivity;
+
+import java.util.Locale;
+
+/**
+ * 异常支出提醒：某个商家的一笔金额远高于平时，或短时间内连续多笔时发一条本地通知，点开进入图表页。
+ * - 每个商家一个通知 id（按商家 id 取模），同一商家的新提醒替换旧的；
+ * - 与预算提醒一样，文案不含货币符号和“支付”类关键词，避免被本应用的通知监听当成一笔支出记账。
+ */
+public final class AnomalyNotifier {
+
+    private static final String CHANNEL_ID = "spending_anomalies";
+    /** 通知 id 的起点，加上商家 id 取模 */
+    private static final int NOTIFICATION_ID_BASE = 30_000;
+    private static final int NOTIFICATION_ID_SPAN = 10_000;
+
+    private AnomalyNotifier() {
+        // No instances.
+    }
+
+    /**
+     * 发出一条异常提醒
+     *
+     * @param merchant    商家名
+     * @param verdict     {@link MerchantStats#observe} 的结果，至少带一个标记
+     * @param amountMinor 这笔的金额（分）
+     */
+    public static void notify(Context context, long merchantId, String merchant,
+                              MerchantStats.Verdict verdict, long amountMinor) {
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (nm == null) return;
+        if (Build.VERSION.SDK_INT >= 26) {
+            NotificationChannel ch = new NotificationChannel(
+                    CHANNEL_ID, "Unusual spending", NotificationManager.IMPORTANCE_DEFAULT);
+            nm.createNotificationChannel(ch);
+        }
+        boolean amount = (verdict.flags & MerchantStats.AMOUNT) != 0;
+        boolean burst = (verdict.flags & MerchantStats.BURST) != 0;
+        String title = amount ? "Unusual amount at " + merchant : "Several charges at " + merchant;
+        StringBuilder text = new StringBuilder();
+        if (amount) {
+            text.append(String.format(Locale.getDefault(), "%.2f, usually about %.2f",
+                    amountMinor / 100.0, verdict.meanMinor / 100.0));
+        }
+        if (burst) {
+            if (text.length() > 0) text.append("; ");
+            text.append(String.format(Locale.getDefault(), "about %.0f charges within the hour",
+                    verdict.recentCharges));
+        }
+
+        int id = NOTIFICATION_ID_BASE + (int) (merchantId % NOTIFICATION_ID_SPAN);
+        PendingIntent open = PendingIntent.getActivity(context, id,
+                new Intent(context, ChartActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        NotificationCompat.Builder nb = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setStyle(new NotificationCompat.BigTextStyle().bigText(text))
+                .setContentIntent(open)
+                .setAutoCancel(true);
+        nm.notify(id, nb.build());
+    }
+}
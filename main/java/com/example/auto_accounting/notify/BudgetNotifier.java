@@ -0,0 +1,66 @@
+package com.example.auto_accounting.notify;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+import androidx.core.app.NotificationCompat;
+
+import com.example.auto_accounting.R;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.ui.BudgetActivity;
+
+import java.util.Locale;
+
+/**
+ * 预算提醒：某个类别（或总预算）本月支出达到 80% / 100% 时发一条本地通知，点开进入预算页。
+ * - 每个预算一个通知 id，100% 会替换同一预算的 80% 提醒；
+ * - 文案不含货币符号和“支付”类关键词，避免被本应用的通知监听（debug 构建会处理自家通知）当成一笔支出记账。
+ */
+public final class BudgetNotifier {
+
+    private static final String CHANNEL_ID = "budget_alerts";
+    /** 通知 id 的起点，加上预算下标 */
+    private static final int NOTIFICATION_ID_BASE = 20_000;
+
+    private BudgetNotifier() {
+        // No instances.
+    }
+
+    /**
+     * 发出一条预算提醒
+     *
+     * @param key      预算下标（决定通知 id）
+     * @param category 类别，null 表示总预算
+     * @param percent  达到的档位：80 或 100
+     */
+    public static void notify(Context context, int key, @Nullable Category category, int percent,
+                              long spentMinor, long limitMinor) {
+        NotificationManager nm = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        if (nm == null) return;
+        if (Build.VERSION.SDK_INT >= 26) {
+            NotificationChannel ch = new NotificationChannel(
+                    CHANNEL_ID, "Budget alerts", NotificationManager.IMPORTANCE_DEFAULT);
+            nm.createNotificationChannel(ch);
+        }
+        String name = category == null ? "Monthly budget" : category.label + " budget";
+        String title = percent >= 100 ? name + " exceeded" : name + " " + percent + "% used";
+        String text = String.format(Locale.getDefault(), "%.2f of %.2f spent this month",
+                spentMinor / 100.0, limitMinor / 100.0);
+
+        PendingIntent open = PendingIntent.getActivity(context, key,
+                new Intent(context, BudgetActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        NotificationCompat.Builder nb = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setContentIntent(open)
+                .setAutoCancel(true);
+        nm.notify(NOTIFICATION_ID_BASE + key, nb.build());
+    }
+}
@@ -10,6 +10,7 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.example.auto_accounting.core.TrackingManager;
+import com.example.auto_accounting.data.db.CurrencyCode;
 import com.example.auto_accounting.data.repo.TableWriter;
 
 import java.util.Locale;
@@ -24,12 +25,13 @@ public class GPayListenerService extends NotificationListenerService {
 
     private static final String TAG = "GPayListener";
 
-    // ---- 金额解析：前缀/后缀两段式，避免把“裸整数”误判为金额 ----
+    // ---- 金额解析：前缀/后缀两段式，避免把“裸整数”误判为金额；第 1 组为币种，第 2 组为金额 ----
     private static final Pattern AMOUNT_PREFIX = Pattern.compile(
-            "(?:A\\$|AU\\$|\\$|₹|€|£|¥|AUD\\s*)\\s*([0-9]{1,3}(?:,[0-9]{3})*(?:\\.[0-9]{1,2})|[0-9]+(?:\\.[0-9]{1,2}))"
+            "(A\\$|AU\\$|US\\$|\\$|₹|€|£|¥|AUD)\\s*([0-9]{1,3}(?:,[0-9]{3})*(?:\\.[0-9]{1,2})|[0-9]+(?:\\.[0-9]{1,2}))"
     );
+    // 后缀：第 1 组为金额，第 2 组为币种代码
     private static final Pattern AMOUNT_SUFFIX = Pattern.compile(
-            "([0-9]{1,3}(?:,[0-9]{3})*(?:\\.[0-9]{1,2})|[0-9]+(?:\\.[0-9]{1,2}))\\s*(?:AUD|USD|CNY|RMB|INR|EUR|GBP|JPY)\\b"
+            "([0-9]{1,3}(?:,[0-9]{3})*(?:\\.[0-9]{1,2})|[0-9]+(?:\\.[0-9]{1,2}))\\s*(AUD|USD|CNY|RMB|INR|EUR|GBP|JPY)\\b"
     );
 
     // 商家名提示关键词（英文/中文）
@@ -84,7 +86,7 @@ public class GPayListenerService extends NotificationListenerService {
                 return;
             }
 
-            Double amount = parseAmount(content);
+            Money amount = parseAmount(content);
             String merchant = parseMerchant(title, text, big, linesJoin.toString());
 
             // 解析不到商家，兜底为“应用名/包名”
@@ -95,10 +97,11 @@ public class GPayListenerService extends NotificationListenerService {
             final long when = sbn.getPostTime();
 
             if (amount != null && !TextUtils.isEmpty(merchant)) {
-                final long amountMinor = Math.round(amount * 100.0);
-                Log.i(TAG, "Parsed OK: amount=" + amount + ", merchant=" + merchant);
+                final long amountMinor = Math.round(amount.value * 100.0);
+                Log.i(TAG, "Parsed OK: amount=" + amount.value + " " + amount.currency.iso
+                        + ", merchant=" + merchant);
                 // TableWriter 内部已在单线程池异步写库
-                TableWriter.save(getApplicationContext(), when, merchant, amountMinor);
+                TableWriter.save(getApplicationContext(), when, merchant, amountMinor, amount.currency.code);
             } else {
                 Log.w(TAG, "Parse failed. content=" + content);
             }
@@ -120,22 +123,39 @@ public class GPayListenerService extends NotificationListenerService {
                 || s.contains("已支付") || s.contains("已付款") || s.contains("退款");
     }
 
-    /** 金额解析：优先匹配前缀货币，再匹配后缀货币，不接受“裸数字” */
-    private static Double parseAmount(String content) {
+    /** 解析出的金额及其币种 */
+    private static final class Money {
+        final double value;
+        final CurrencyCode currency;
+
+        Money(double value, CurrencyCode currency) {
+            this.value = value;
+            this.currency = currency;
+        }
+    }
+
+    /** 金额解析：优先匹配前缀货币，再匹配后缀货币，不接受“裸数字”；“$” 按澳元、“¥” 按人民币记 */
+    private static Money parseAmount(String content) {
         if (TextUtils.isEmpty(content)) return null;
         Matcher m1 = AMOUNT_PREFIX.matcher(content);
         if (m1.find()) {
-            String raw = m1.group(1).replace(",", "");
-            try { return Double.parseDouble(raw); } catch (NumberFormatException ignored) {}
+            String raw = m1.group(2).replace(",", "");
+            try { return new Money(Double.parseDouble(raw), currencyOf(m1.group(1))); } catch (NumberFormatException ignored) {}
         }
         Matcher m2 = AMOUNT_SUFFIX.matcher(content);
         if (m2.find()) {
             String raw = m2.group(1).replace(",", "");
-            try { return Double.parseDouble(raw); } catch (NumberFormatException ignored) {}
+            try { return new Money(Double.parseDouble(raw), currencyOf(m2.group(2))); } catch (NumberFormatException ignored) {}
         }
         return null;
     }
 
+    /** 符号或代码 → 币种；认不出时记为默认币种 */
+    private static CurrencyCode currencyOf(String symbol) {
+        CurrencyCode c = CurrencyCode.fromSymbol(symbol);
+        return c != null ? c : CurrencyCode.DEFAULT;
+    }
+
     /** 商家解析：先按关键词 at/to/with/向/给；失败则用“标题去掉金额”兜底 */
     private static String parseMerchant(String title, String text, String big, String lines) {
         String joined = joinNonBlank(" | ", title, text, big, lines);
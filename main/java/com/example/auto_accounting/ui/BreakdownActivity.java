@@ -0,0 +1,108 @@
+package com.example.auto_accounting.ui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.Button;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.PopupMenu;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.example.auto_accounting.R;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.data.db.MerchantTotal;
+
+import java.time.LocalDate;
+
+/**
+ * 商家排行页：所选范围内支出最多的商家，含金额、笔数与占比，其余商家合并为“其他”。
+ * - 上方是饼图（按 ImageView 尺寸绘制），下方是排行列表；饼图可按导出分辨率另存为 PNG（SAF）；
+ * - 排行在 {@link BreakdownViewModel} 里后台计算，旋转屏幕不重算；
+ * - 长按某个商家可手动指定类别，之后同名的其他分店也按此归类。
+ */
+public class BreakdownActivity extends AppCompatActivity {
+
+    private static final String EXTRA_FIRST_DAY = "first_epoch_day";
+    private static final String EXTRA_LAST_DAY = "last_epoch_day";
+
+    private ImageView imagePie;
+    private BreakdownViewModel vm;
+    private final BreakdownRowsAdapter adapter = new BreakdownRowsAdapter();
+
+    /** 打开排行页，范围为本地日期的 epoch day（含两端） */
+    public static Intent intent(Context context, long firstEpochDay, long lastEpochDay) {
+        return new Intent(context, BreakdownActivity.class)
+                .putExtra(EXTRA_FIRST_DAY, firstEpochDay)
+                .putExtra(EXTRA_LAST_DAY, lastEpochDay);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_breakdown);
+
+        vm = new ViewModelProvider(this).get(BreakdownViewModel.class);
+        long today = LocalDate.now().toEpochDay();
+        vm.setRange(getIntent().getLongExtra(EXTRA_FIRST_DAY, today),
+                getIntent().getLongExtra(EXTRA_LAST_DAY, today));
+
+        TextView textTitle = findViewById(R.id.text_title);
+        TextView textStatus = findViewById(R.id.text_status);
+        imagePie = findViewById(R.id.image_pie);
+        Button btnExport = findViewById(R.id.button_export_pie);
+        ListView list = findViewById(R.id.list_breakdown);
+        list.setAdapter(adapter);
+        list.setOnItemLongClickListener((parent, view, position, id) -> {
+            Object item = adapter.getItem(position);
+            if (!(item instanceof MerchantTotal)) return false; // “其他”一行
+            showCategoryMenu(view, (MerchantTotal) item);
+            return true;
+        });
+
+        textTitle.setText(getString(R.string.breakdown_title,
+                vm.firstDay().toString(), vm.lastDay().toString()));
+        vm.status().observe(this, textStatus::setText);
+        vm.pie().observe(this, imagePie::setImageBitmap);
+        vm.result().observe(this, r -> {
+            adapter.setResult(r);
+            btnExport.setEnabled(r != null);
+        });
+
+        ActivityResultLauncher<String> createPngLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument("image/png"),
+                uri -> { if (uri != null) vm.exportTo(uri); });
+        btnExport.setOnClickListener(v -> createPngLauncher.launch(vm.exportFileName()));
+
+        // 等 ImageView 布局完成，按实际尺寸画饼图
+        imagePie.post(() -> vm.load(pieWidth(), pieHeight(),
+                getResources().getDisplayMetrics().density));
+    }
+
+    /** 弹出类别菜单，选中后把该商家归入所选类别 */
+    private void showCategoryMenu(View anchor, MerchantTotal merchant) {
+        PopupMenu menu = new PopupMenu(this, anchor);
+        for (Category c : Category.values()) {
+            menu.getMenu().add(0, c.code, c.ordinal(), c.label);
+        }
+        menu.setOnMenuItemClickListener(item -> {
+            vm.setCategory(merchant, Category.fromCode(item.getItemId()));
+            return true;
+        });
+        menu.show();
+    }
+
+    private int pieWidth() {
+        return imagePie.getWidth() - imagePie.getPaddingLeft() - imagePie.getPaddingRight();
+    }
+
+    private int pieHeight() {
+        return imagePie.getHeight() - imagePie.getPaddingTop() - imagePie.getPaddingBottom();
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.auto_accounting.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.data.db.MerchantTotal;
+import com.example.auto_accounting.data.repo.MerchantBreakdown;
+
+import java.util.Locale;
+
+/**
+ * 商家排行列表：第一行是名次与商家，第二行是金额 · 占比 · 笔数；前 N 名之外的商家合并为最后一行“其他”。
+ */
+public class BreakdownRowsAdapter extends BaseAdapter {
+
+    @Nullable
+    private MerchantBreakdown.Result result;
+
+    /** 替换数据源 */
+    public void setResult(@Nullable MerchantBreakdown.Result result) {
+        this.result = result;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        if (result == null) return 0;
+        return result.top.size() + (result.otherCount > 0 ? 1 : 0);
+    }
+
+    @Override
+    public Object getItem(int position) {
+        return position < result.top.size() ? result.top.get(position) : null;
+    }
+
+    @Override public long getItemId(int position) { return position; }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View v = convertView != null ? convertView : LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_2, parent, false);
+        MerchantBreakdown.Result r = result;
+        String title;
+        long amount, count;
+        double share;
+        if (position < r.top.size()) {
+            MerchantTotal t = r.top.get(position);
+            title = (position + 1) + ". " + (t.name != null ? t.name : "#" + t.merchantId);
+            amount = t.totalMinor;
+            count = t.count;
+            share = r.share(t);
+        } else {
+            title = "Other (" + (r.merchants - r.top.size()) + " merchants)";
+            amount = r.otherMinor;
+            count = r.otherCount;
+            share = r.otherShare();
+        }
+        ((TextView) v.findViewById(android.R.id.text1)).setText(title);
+        ((TextView) v.findViewById(android.R.id.text2)).setText(
+                RecentRowsAdapter.formatAmount(amount) + "  ·  "
+                        + String.format(Locale.getDefault(), "%.1f%%", share * 100)
+                        + "  ·  " + count + (count == 1 ? " payment" : " payments"));
+        return v;
+    }
+}
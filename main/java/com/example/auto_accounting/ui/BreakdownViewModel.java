@@ -0,0 +1,179 @@
+package com.example.auto_accounting.ui;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.data.db.MerchantTotal;
+import com.example.auto_accounting.data.export.MonthlyBarChartExporter;
+import com.example.auto_accounting.data.repo.MerchantCategories;
+import com.example.auto_accounting.data.repo.MerchantBreakdown;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 商家排行页的 ViewModel：按范围取前 {@link #TOP_N} 名商家（{@link MerchantBreakdown}，按账本版本缓存），
+ * 并按 ImageView 的尺寸画饼图。排行走 INTERACTIVE 通道，页面关闭时取消；导出 PNG 走 BACKGROUND 通道。
+ */
+public class BreakdownViewModel extends AndroidViewModel {
+
+    /** 单独成扇区 / 列表行的商家数，其余合并为“其他” */
+    public static final int TOP_N = 10;
+
+    private final CancellationToken token = CancellationToken.create();
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private final MutableLiveData<String> status = new MutableLiveData<>("Ready");
+    private final MutableLiveData<MerchantBreakdown.Result> result = new MutableLiveData<>();
+    private final MutableLiveData<Bitmap> pie = new MutableLiveData<>();
+
+    private long firstDay = Long.MIN_VALUE;
+    private long lastDay;
+    /** 当前饼图的尺寸，尺寸不变时不重画 */
+    private int pieW, pieH;
+    private boolean cleared;
+
+    public BreakdownViewModel(@NonNull Application app) {
+        super(app);
+    }
+
+    public LiveData<String> status() { return status; }
+    /** 排行结果；未完成时为 null */
+    public LiveData<MerchantBreakdown.Result> result() { return result; }
+    public LiveData<Bitmap> pie() { return pie; }
+
+    /** 设定范围（本地日期的 epoch day，含两端）；只有第一次调用生效，旋转屏幕后沿用 */
+    public void setRange(long firstEpochDay, long lastEpochDay) {
+        if (firstDay != Long.MIN_VALUE) return;
+        firstDay = firstEpochDay;
+        lastDay = lastEpochDay;
+    }
+
+    public LocalDate firstDay() { return LocalDate.ofEpochDay(firstDay); }
+    public LocalDate lastDay() { return LocalDate.ofEpochDay(lastDay); }
+
+    /**
+     * 计算排行并按给定尺寸画饼图（后台线程）；已按该尺寸画过则不重复。
+     * 旋转屏幕后尺寸变了只重画，排行由 {@link MerchantBreakdown} 的缓存直接返回。
+     */
+    public void load(int w, int h, float density) {
+        if (w <= 0 || h <= 0 || (w == pieW && h == pieH && pie.getValue() != null)) return;
+        pieW = w;
+        pieH = h;
+        status.setValue("Ranking merchants…");
+        Application app = getApplication();
+        long start = startMillis(), end = endMillis();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.INTERACTIVE, token, () -> {
+            try {
+                long t0 = System.currentTimeMillis();
+                MerchantBreakdown.Result r = MerchantBreakdown.get(app)
+                        .load(start, end, TOP_N, token);
+                Bitmap bmp = MonthlyBarChartExporter.buildBreakdownBitmap(
+                        app, start, end, TOP_N, w, h, density);
+                long ms = System.currentTimeMillis() - t0;
+                main.post(() -> {
+                    setPie(bmp);
+                    result.setValue(r);
+                    status.setValue(describe(r) + " in " + ms + " ms");
+                });
+            } catch (CancellationException ignored) {
+                // 页面已关闭
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    /** 饼图导出的默认文件名，例如 merchants_2024-01-01_2024-03-31.png */
+    public String exportFileName() {
+        return "merchants_" + firstDay() + "_" + lastDay() + ".png";
+    }
+
+    /** 按导出分辨率画饼图并写成 PNG（BACKGROUND 通道，不随页面取消） */
+    public void exportTo(Uri uri) {
+        status.setValue("Exporting…");
+        Application app = getApplication();
+        long start = startMillis(), end = endMillis();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                MonthlyBarChartExporter.exportBreakdown(app, app.getContentResolver(), uri,
+                        start, end, TOP_N);
+                main.post(() -> status.setValue("Exported pie chart"));
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    /** 把商家归入用户选的类别（BACKGROUND 通道），并学习其名称，其余商家随后在后台重新归类 */
+    public void setCategory(MerchantTotal merchant, Category category) {
+        String name = merchant.name != null ? merchant.name : "#" + merchant.merchantId;
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                MerchantCategories.get(app).setCategory(merchant.merchantId, category);
+                main.post(() -> status.setValue(name + " → " + category.label));
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    private long startMillis() {
+        return firstDay().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private long endMillis() {
+        return lastDay().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static String describe(MerchantBreakdown.Result r) {
+        return r.merchants + " merchants, " + r.count + " payments, total "
+                + RecentRowsAdapter.formatAmount(r.totalMinor);
+    }
+
+    /** 切换饼图：先发布新图再回收旧图；页面已关闭则直接回收 */
+    private void setPie(Bitmap bmp) {
+        if (cleared) {
+            bmp.recycle();
+            return;
+        }
+        Bitmap old = pie.getValue();
+        pie.setValue(bmp);
+        if (old != null && old != bmp) old.recycle();
+    }
+
+    private void fail(Exception e) {
+        status.setValue("Failed: " + e.getMessage());
+        Toast.makeText(getApplication(), e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+
+    @Override
+    protected void onCleared() {
+        cleared = true;
+        token.cancel();
+        Bitmap old = pie.getValue();
+        pie.setValue(null);
+        if (old != null) old.recycle();
+    }
+}
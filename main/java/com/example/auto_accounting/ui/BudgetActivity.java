@@ -0,0 +1,116 @@
+package com.example.auto_accounting.ui;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts.RequestPermission;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.example.auto_accounting.R;
+import com.example.auto_accounting.data.repo.BudgetTracker;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 预算页：总预算与各类别的月预算，显示本月已花与百分比。
+ * - 点一行选中它，在上方输入新的月预算后保存（留空或 0 取消）；
+ * - 每笔支出入库时在内存中累加并检查，达到 80% / 100% 时发通知（见 {@link BudgetTracker}）。
+ */
+public class BudgetActivity extends AppCompatActivity {
+
+    private BudgetViewModel vm;
+    private final BudgetRowsAdapter adapter = new BudgetRowsAdapter();
+
+    private EditText editBudget;
+    private Button btnSave;
+    /** 当前选中的行；未选中为 null */
+    private BudgetTracker.Line selected;
+
+    // Android 13+ 预算提醒需要通知权限，第一次设预算时请求
+    private ActivityResultLauncher<String> postNotifPermLauncher;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_budget);
+
+        vm = new ViewModelProvider(this).get(BudgetViewModel.class);
+
+        TextView textStatus = findViewById(R.id.text_status);
+        editBudget = findViewById(R.id.edit_budget);
+        btnSave = findViewById(R.id.button_save_budget);
+        ListView list = findViewById(R.id.list_budgets);
+        list.setAdapter(adapter);
+
+        list.setOnItemClickListener((parent, view, position, id) -> select(adapter.getItem(position)));
+        btnSave.setOnClickListener(v -> save());
+
+        vm.status().observe(this, textStatus::setText);
+        vm.lines().observe(this, l -> { if (l != null) adapter.setLines(l); });
+
+        postNotifPermLauncher = registerForActivityResult(new RequestPermission(), granted -> {
+            if (!granted) {
+                Toast.makeText(this, "Budget alerts need notification permission", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // 回到页面时刷新已花金额
+        vm.load();
+    }
+
+    /** 选中一行，把它当前的预算填进输入框 */
+    private void select(BudgetTracker.Line line) {
+        selected = line;
+        editBudget.setEnabled(true);
+        btnSave.setEnabled(true);
+        editBudget.setHint(getString(R.string.hint_budget) + " · " + BudgetViewModel.nameOf(line.category));
+        editBudget.setText(line.limitMinor > 0 ? RecentRowsAdapter.formatAmount(line.limitMinor) : "");
+        editBudget.requestFocus();
+    }
+
+    /** 保存选中行的预算 */
+    private void save() {
+        if (selected == null) return;
+        Long minor = parseMinor(editBudget.getText().toString());
+        if (minor == null) {
+            Toast.makeText(this, "Invalid amount", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        vm.setLimit(selected.category, minor);
+        if (minor > 0 && Build.VERSION.SDK_INT >= 33
+                && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+            postNotifPermLauncher.launch(Manifest.permission.POST_NOTIFICATIONS);
+        }
+        selected = null;
+        editBudget.setText("");
+        editBudget.setHint(R.string.hint_budget);
+        editBudget.setEnabled(false);
+        btnSave.setEnabled(false);
+    }
+
+    /** “123.45” → 12345 分；留空为 0，无法解析或为负返回 null */
+    private static Long parseMinor(String s) {
+        String t = s.trim().replace(',', '.');
+        if (t.isEmpty()) return 0L;
+        try {
+            long minor = new BigDecimal(t).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValueExact();
+            return minor < 0 ? null : minor;
+        } catch (NumberFormatException | ArithmeticException e) {
+            return null;
+        }
+    }
+}
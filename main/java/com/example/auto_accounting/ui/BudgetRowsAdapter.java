@@ -0,0 +1,44 @@
+package com.example.auto_accounting.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.example.auto_accounting.data.repo.BudgetTracker;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预算列表：第一行是类别（首行为总预算），第二行是本月已花 / 预算 · 百分比；未设预算的只显示已花。
+ */
+public class BudgetRowsAdapter extends BaseAdapter {
+
+    private List<BudgetTracker.Line> lines = Collections.emptyList();
+
+    /** 替换数据源 */
+    public void setLines(List<BudgetTracker.Line> lines) {
+        this.lines = lines;
+        notifyDataSetChanged();
+    }
+
+    @Override public int getCount() { return lines.size(); }
+    @Override public BudgetTracker.Line getItem(int position) { return lines.get(position); }
+    @Override public long getItemId(int position) { return position; }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View v = convertView != null ? convertView : LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_2, parent, false);
+        BudgetTracker.Line l = lines.get(position);
+        String spent = RecentRowsAdapter.formatAmount(l.spentMinor);
+        String detail = l.limitMinor > 0
+                ? spent + " / " + RecentRowsAdapter.formatAmount(l.limitMinor) + "  ·  " + l.percent() + "%"
+                : spent + "  ·  no budget";
+        ((TextView) v.findViewById(android.R.id.text1)).setText(BudgetViewModel.nameOf(l.category));
+        ((TextView) v.findViewById(android.R.id.text2)).setText(detail);
+        return v;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.auto_accounting.ui;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.data.repo.BudgetTracker;
+
+import java.util.List;
+
+/**
+ * 预算页的 ViewModel：本月各类别的已花与预算来自 {@link BudgetTracker} 的内存累计（首次使用时按月汇总一次），
+ * 读取走 INTERACTIVE 通道，页面关闭时取消；修改预算后重新读取。
+ */
+public class BudgetViewModel extends AndroidViewModel {
+
+    private final CancellationToken token = CancellationToken.create();
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private final MutableLiveData<String> status = new MutableLiveData<>("Ready");
+    private final MutableLiveData<List<BudgetTracker.Line>> lines = new MutableLiveData<>();
+
+    public BudgetViewModel(@NonNull Application app) {
+        super(app);
+    }
+
+    public LiveData<String> status() { return status; }
+    /** 预算行，总预算在前；未读取时为 null */
+    public LiveData<List<BudgetTracker.Line>> lines() { return lines; }
+
+    /** 显示名：类别名，null 为总预算 */
+    static String nameOf(@Nullable Category category) {
+        return category == null ? "All spending" : category.label;
+    }
+
+    /** 在后台读取本月预算行 */
+    public void load() {
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.INTERACTIVE, token, () -> {
+            try {
+                List<BudgetTracker.Line> l = BudgetTracker.get(app).lines();
+                main.post(() -> {
+                    lines.setValue(l);
+                    status.setValue("Tap a line to set its monthly budget");
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    /**
+     * 设置某个类别（null 为总预算）的月预算，0 表示取消；立即按新预算重新检查本月是否该提醒
+     *
+     * @param limitMinor 预算（分）
+     */
+    public void setLimit(@Nullable Category category, long limitMinor) {
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            BudgetTracker.get(app).setLimit(category, limitMinor);
+            main.post(this::load);
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    private void fail(Exception e) {
+        status.setValue("Failed: " + e.getMessage());
+        Toast.makeText(getApplication(), e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+
+    @Override
+    protected void onCleared() {
+        token.cancel();
+    }
+}
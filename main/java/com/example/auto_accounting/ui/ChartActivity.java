@@ -1,143 +1,353 @@
-package com.example.auto_accounting.ui;
-
-import android.content.ContentResolver;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
-import android.os.Bundle;
-import android.widget.Button;
-import android.widget.ImageView;
-import android.widget.TextView;
-import android.widget.Toast;
-
-import androidx.activity.result.ActivityResultLauncher;
-import androidx.activity.result.contract.ActivityResultContracts;
-import androidx.annotation.Nullable;
-import androidx.appcompat.app.AppCompatActivity;
-
-import com.example.auto_accounting.R;
-import com.example.auto_accounting.data.export.MonthlyBarChartExporter;
-
-import java.io.InputStream;
-import java.time.YearMonth;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-/**
- * 图表页：预览“本月按日合计柱状图”，并导出为 PNG。
- * - 预览/导出都放到后台线程（单线程池）；
- * - 导出使用 SAF（CreateDocument），无需外部存储权限；
- * - 预览图保存在内存里，Activity 销毁时回收。
- */
-public class ChartActivity extends AppCompatActivity {
-
-    // --- UI ---
-    private TextView textStatus;
-    private Button btnPreview;
-    private Button btnExport;
-    private ImageView imageChart;
-
-    // --- 异步与缓存 ---
-    private final ExecutorService io = Executors.newSingleThreadExecutor();
-    private @Nullable Bitmap currentPreview;
-
-    // SAF：创建 PNG 文档
-    private ActivityResultLauncher<String> createPngLauncher;
-
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_chart);
-
-        textStatus = findViewById(R.id.text_status);
-        btnPreview  = findViewById(R.id.button_preview);
-        btnExport   = findViewById(R.id.button_export_png);
-        imageChart  = findViewById(R.id.image_chart);
-
-        // 预览
-        btnPreview.setOnClickListener(v -> previewCurrentMonth());
-
-        // 导出：弹出“保存为”对话框，用户选择文件名/位置
-        createPngLauncher = registerForActivityResult(
-                new ActivityResultContracts.CreateDocument("image/png"),
-                uri -> { if (uri != null) exportCurrentMonthTo(uri); }
-        );
-        btnExport.setOnClickListener(v -> createPngLauncher.launch(defaultFileName()));
-
-        textStatus.setText("Ready");
-    }
-
-    // ------------------ 业务方法 ------------------
-
-    /** 生成“本月”柱状图并在页面预览（后台线程） */
-    private void previewCurrentMonth() {
-        textStatus.setText("Generating preview…");
-        io.execute(() -> {
-            try {
-                Bitmap bmp = MonthlyBarChartExporter.buildCurrentMonthBitmap(this);
-                runOnUiThread(() -> {
-                    setPreviewBitmap(bmp);
-                    textStatus.setText("Ready");
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-                runOnUiThread(() -> {
-                    textStatus.setText("Failed: " + e.getMessage());
-                    Toast.makeText(this, e.getMessage(), Toast.LENGTH_LONG).show();
-                });
-            }
-        });
-    }
-
-    /** 导出“本月”柱状图到指定 Uri（后台线程），完成后预览导出的文件 */
-    private void exportCurrentMonthTo(Uri uri) {
-        textStatus.setText("Exporting…");
-        io.execute(() -> {
-            try {
-                ContentResolver cr = getContentResolver();
-                MonthlyBarChartExporter.exportCurrentMonth(this, cr, uri);
-
-                // 重新从导出的文件读取并预览（确保与落盘一致）
-                try (InputStream is = cr.openInputStream(uri)) {
-                    Bitmap exported = BitmapFactory.decodeStream(is);
-                    runOnUiThread(() -> {
-                        setPreviewBitmap(exported);
-                        textStatus.setText("Exported successfully");
-                    });
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                runOnUiThread(() -> {
-                    textStatus.setText("Failed: " + e.getMessage());
-                    Toast.makeText(this, e.getMessage(), Toast.LENGTH_LONG).show();
-                });
-            }
-        });
-    }
-
-    /** 生成默认文件名：monthly_spending_YYYY_MM.png */
-    private String defaultFileName() {
-        YearMonth ym = YearMonth.now();
-        return "monthly_spending_" + ym.getYear() + "_" +
-                String.format("%02d", ym.getMonthValue()) + ".png";
-    }
-
-    /** 切换当前预览位图，负责回收旧图，避免内存泄漏 */
-    private void setPreviewBitmap(@Nullable Bitmap bmp) {
-        if (currentPreview != null && !currentPreview.isRecycled()) {
-            currentPreview.recycle();
-        }
-        currentPreview = bmp;
-        imageChart.setImageBitmap(bmp);
-    }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        io.shutdown();
-        if (currentPreview != null && !currentPreview.isRecycled()) {
-            currentPreview.recycle();
-        }
-    }
-}
-
+package com.example.auto_accounting.ui;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.View;
+import android.widget.AbsListView;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.PopupMenu;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.example.auto_accounting.R;
+import com.example.auto_accounting.data.backup.LedgerBackup;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.export.AnnualReportExporter;
+import com.example.auto_accounting.data.export.ChartCache;
+import com.example.auto_accounting.data.export.LedgerExporter;
+import com.example.auto_accounting.ui.widge.InteractiveBarChartView;
+import com.example.auto_accounting.ui.widge.TimelineChartView;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 图表页：预览“本月按日合计柱状图”，并导出为 PNG；记录可导出为 CSV / JSON lines，也可从银行账单导入或与账单对账，
+ * 或查看所选范围内的商家排行、设置月预算、查看即将到来的周期扣款、生成年度报告；导入汇率表后可选择合计所用的报表币种。
+ * - 数据与后台任务都在 {@link ChartViewModel} 里，旋转屏幕不会重新查询，后台任务也不持有 Activity；
+ * - 导出使用 SAF（CreateDocument），无需外部存储权限；
+ * - 本月按日合计与最近记录按变更日志（Room InvalidationTracker 通知）实时增量更新；
+ * - 搜索框边输入边搜索（防抖），结果在同一个列表里分页显示，清空后回到最近记录。
+ */
+public class ChartActivity extends AppCompatActivity {
+
+    /** 距列表底部还剩多少行时预取下一页搜索结果 */
+    private static final int SEARCH_PREFETCH_ROWS = 10;
+
+    /** 数据导出的选项：格式 × 是否 gzip，下标即菜单项 id */
+    private static final LedgerExporter.Format[] DATA_FORMATS = {
+            LedgerExporter.Format.CSV, LedgerExporter.Format.CSV,
+            LedgerExporter.Format.JSON_LINES, LedgerExporter.Format.JSON_LINES};
+    private static final boolean[] DATA_GZIP = {false, true, false, true};
+    private static final int[] DATA_LABELS = {
+            R.string.export_csv, R.string.export_csv_gzip,
+            R.string.export_jsonl, R.string.export_jsonl_gzip};
+    /** 菜单里“导入账单”“对账”“商家排行”“预算”“周期扣款”“年度报告”的 id，排在导出选项前面；备份 / 恢复 / 汇率排在最后 */
+    private static final int IMPORT_ITEM = 100;
+    private static final int RECONCILE_ITEM = 101;
+    private static final int BACKUP_ITEM = 102;
+    private static final int FULL_BACKUP_ITEM = 103;
+    private static final int RESTORE_ITEM = 104;
+    private static final int BREAKDOWN_ITEM = 105;
+    private static final int BUDGETS_ITEM = 106;
+    private static final int RECURRING_ITEM = 107;
+    private static final int FX_IMPORT_ITEM = 108;
+    private static final int REPORTING_CURRENCY_ITEM = 109;
+    private static final int ANNUAL_REPORT_ITEM = 110;
+
+    // --- UI ---
+    private TextView textStatus;
+    private Button btnPreview;
+    private Button btnExport;
+    private Button btnExportData;
+    private ImageView imageChart;
+    private TimelineChartView timeline;
+    private InteractiveBarChartView monthBars;
+    private EditText editSearch;
+    private final RecentRowsAdapter recentAdapter = new RecentRowsAdapter();
+
+    private ChartViewModel vm;
+
+    // SAF：创建 PNG 文档
+    private ActivityResultLauncher<String> createPngLauncher;
+
+    // CreateDocument 的 MIME 在注册时固定，每个选项一个 launcher
+    private final List<ActivityResultLauncher<String>> createDataLaunchers = new ArrayList<>();
+    // SAF：选择要导入的银行账单
+    private ActivityResultLauncher<String[]> openStatementLauncher;
+    // SAF：保存备份（增量 / 完整）与选择要恢复的备份
+    private ActivityResultLauncher<String> createBackupLauncher;
+    private ActivityResultLauncher<String> createFullBackupLauncher;
+    private ActivityResultLauncher<String[]> openBackupLauncher;
+    // SAF：保存年度报告
+    private ActivityResultLauncher<String> createReportLauncher;
+    // SAF：选择要导入的汇率表
+    private ActivityResultLauncher<String[]> openFxLauncher;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_chart);
+
+        vm = new ViewModelProvider(this).get(ChartViewModel.class);
+
+        textStatus = findViewById(R.id.text_status);
+        btnPreview  = findViewById(R.id.button_preview);
+        btnExport   = findViewById(R.id.button_export_png);
+        btnExportData = findViewById(R.id.button_export_data);
+        imageChart  = findViewById(R.id.image_chart);
+        timeline    = findViewById(R.id.timeline_chart);
+        monthBars   = findViewById(R.id.month_bars);
+        editSearch  = findViewById(R.id.edit_search);
+        ListView listRecent = findViewById(R.id.list_recent);
+        listRecent.setAdapter(recentAdapter);
+
+        vm.status().observe(this, textStatus::setText);
+        vm.preview().observe(this, imageChart::setImageBitmap);
+
+        // 预览
+        btnPreview.setOnClickListener(v -> vm.previewCurrentMonth(previewWidth(), previewHeight(),
+                getResources().getDisplayMetrics().density));
+
+        // 时间轴：按分块懒加载，点击柱子显示该区间合计
+        setupTimeline();
+
+        // 本月按日合计 + 最近记录：随数据库写入实时增量更新，无需手动刷新
+        setupMonth();
+
+        // 搜索：输入防抖后查询，滚动到底部附近加载下一页
+        setupSearch(listRecent);
+
+        // 导出：弹出“保存为”对话框，用户选择文件名/位置
+        createPngLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument("image/png"),
+                uri -> { if (uri != null) exportCurrentMonthTo(uri); }
+        );
+        btnExport.setOnClickListener(v -> createPngLauncher.launch(defaultFileName()));
+
+        // 数据导入 / 导出：导入银行账单；导出选格式后弹出“保存为”，范围为时间轴上选中的区间，未选则整个账本
+        setupDataExport();
+    }
+
+    // ------------------ 业务方法 ------------------
+
+    /** 时间轴：分层数据由 ViewModel 持有并按块加载，View 只负责绘制与手势 */
+    private void setupTimeline() {
+        timeline.setTiers(vm.timelineTiers());
+        timeline.setChunkSource(vm::requestChunk);
+        timeline.setOnBarClickListener((firstDay, days, totalMinor, maxDayMinor) -> {
+            LocalDate from = LocalDate.ofEpochDay(firstDay);
+            LocalDate to = LocalDate.ofEpochDay(firstDay + days - 1);
+            String range = days == 1 ? from.toString() : from + " ~ " + to;
+            vm.setExportRange(firstDay, days);
+            vm.setStatus(String.format(Locale.getDefault(), "%s: %.2f", range, totalMinor / 100.0));
+        });
+        vm.timelineRange().observe(this, r -> timeline.setDataRange(r[0], r[1]));
+        vm.timelineChanges().observe(this, n -> timeline.onTiersChanged());
+    }
+
+    /** 订阅本月按日合计与最近记录：首次整体加载，之后只把新增行加到对应日期并插到列表顶部 */
+    private void setupMonth() {
+        monthBars.setOnBarClickListener(day -> {
+            ChartViewModel.MonthState s = vm.monthState().getValue();
+            if (s == null || day > s.dayTotalsMinor.length) return;
+            vm.setStatus(s.month.atDay(day) + ": "
+                    + RecentRowsAdapter.formatAmount(s.dayTotalsMinor[day - 1]));
+        });
+        vm.monthState().observe(this, s -> {
+            monthBars.setData(s.dayTotalsMinor, s.month.lengthOfMonth());
+            timeline.includeDay(LocalDate.now().toEpochDay());
+            showListRows();
+        });
+    }
+
+    /** 搜索框 → ViewModel；列表在“最近记录”和“搜索结果”之间切换 */
+    private void setupSearch(ListView list) {
+        editSearch.addTextChangedListener(new TextWatcher() {
+            @Override public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+            @Override public void onTextChanged(CharSequence s, int start, int before, int count) { }
+            @Override public void afterTextChanged(Editable s) {
+                vm.setSearchText(s.toString());
+            }
+        });
+        list.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override public void onScrollStateChanged(AbsListView view, int scrollState) { }
+            @Override public void onScroll(AbsListView view, int first, int visible, int total) {
+                if (total > 0 && first + visible >= total - SEARCH_PREFETCH_ROWS) {
+                    vm.loadMoreSearchResults();
+                }
+            }
+        });
+        vm.search().observe(this, s -> showListRows());
+    }
+
+    /** 在搜索就显示搜索结果，否则显示最近记录 */
+    private void showListRows() {
+        ChartViewModel.SearchState search = vm.search().getValue();
+        if (search != null && search.query != null) {
+            recentAdapter.setRows(search.rows);
+            return;
+        }
+        ChartViewModel.MonthState month = vm.monthState().getValue();
+        if (month != null) recentAdapter.setRows(month.recent);
+    }
+
+    /** 数据按钮 → 菜单（导入账单 / 各导出格式 / 备份恢复）→ SAF 对话框 → ViewModel 流式读写 */
+    private void setupDataExport() {
+        openStatementLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                uri -> { if (uri != null) vm.importStatement(uri); });
+        createBackupLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(LedgerBackup.MIME_TYPE),
+                uri -> { if (uri != null) vm.backupTo(uri, false); });
+        createFullBackupLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(LedgerBackup.MIME_TYPE),
+                uri -> { if (uri != null) vm.backupTo(uri, true); });
+        openBackupLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                uri -> { if (uri != null) vm.restoreFrom(uri); });
+        createReportLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(AnnualReportExporter.MIME_TYPE),
+                uri -> { if (uri != null) vm.exportAnnualReport(uri); });
+        openFxLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                uri -> { if (uri != null) vm.importFxRates(uri); });
+        for (int i = 0; i < DATA_FORMATS.length; i++) {
+            final LedgerExporter.Format format = DATA_FORMATS[i];
+            final boolean gzip = DATA_GZIP[i];
+            String mime = gzip ? LedgerExporter.GZIP_MIME_TYPE : format.mimeType;
+            createDataLaunchers.add(registerForActivityResult(
+                    new ActivityResultContracts.CreateDocument(mime),
+                    uri -> { if (uri != null) vm.exportDataTo(uri, format, gzip); }));
+        }
+        btnExportData.setOnClickListener(v -> {
+            PopupMenu menu = new PopupMenu(this, v);
+            for (int i = 0; i < DATA_LABELS.length; i++) {
+                menu.getMenu().add(0, i, i + 1, DATA_LABELS[i]);
+            }
+            menu.getMenu().add(0, IMPORT_ITEM, 0, R.string.import_statement);
+            menu.getMenu().add(0, RECONCILE_ITEM, 0, R.string.reconcile_statement);
+            menu.getMenu().add(0, BREAKDOWN_ITEM, 0, R.string.merchant_breakdown);
+            menu.getMenu().add(0, BUDGETS_ITEM, 0, R.string.budgets);
+            menu.getMenu().add(0, RECURRING_ITEM, 0, R.string.recurring_payments);
+            menu.getMenu().add(0, ANNUAL_REPORT_ITEM, 0, R.string.annual_report);
+            int last = DATA_LABELS.length + 1;
+            menu.getMenu().add(0, BACKUP_ITEM, last, R.string.backup_ledger);
+            menu.getMenu().add(0, FULL_BACKUP_ITEM, last, R.string.backup_ledger_full);
+            menu.getMenu().add(0, RESTORE_ITEM, last, R.string.restore_ledger);
+            menu.getMenu().add(0, FX_IMPORT_ITEM, last, R.string.import_fx_rates);
+            menu.getMenu().add(0, REPORTING_CURRENCY_ITEM, last, R.string.reporting_currency);
+            menu.setOnMenuItemClickListener(item -> {
+                int i = item.getItemId();
+                if (i == IMPORT_ITEM) {
+                    // OFX / QIF 常被标成 application/octet-stream，不按类型过滤
+                    openStatementLauncher.launch(new String[]{"*/*"});
+                    return true;
+                }
+                if (i == RECONCILE_ITEM) {
+                    startActivity(new Intent(this, ReconcileActivity.class));
+                    return true;
+                }
+                if (i == BREAKDOWN_ITEM) {
+                    long[] r = vm.exportRange();
+                    startActivity(BreakdownActivity.intent(this, r[0], r[1]));
+                    return true;
+                }
+                if (i == BUDGETS_ITEM) {
+                    startActivity(new Intent(this, BudgetActivity.class));
+                    return true;
+                }
+                if (i == RECURRING_ITEM) {
+                    startActivity(new Intent(this, RecurringActivity.class));
+                    return true;
+                }
+                if (i == ANNUAL_REPORT_ITEM) {
+                    createReportLauncher.launch(vm.annualReportFileName());
+                    return true;
+                }
+                if (i == BACKUP_ITEM || i == FULL_BACKUP_ITEM) {
+                    boolean full = i == FULL_BACKUP_ITEM;
+                    (full ? createFullBackupLauncher : createBackupLauncher).launch(vm.backupFileName(full));
+                    return true;
+                }
+                if (i == RESTORE_ITEM) {
+                    // gzip 常被标成 application/octet-stream，不按类型过滤
+                    openBackupLauncher.launch(new String[]{"*/*"});
+                    return true;
+                }
+                if (i == FX_IMPORT_ITEM) {
+                    // CSV 常被标成 text/comma-separated-values 或 application/octet-stream，不按类型过滤
+                    openFxLauncher.launch(new String[]{"*/*"});
+                    return true;
+                }
+                if (i == REPORTING_CURRENCY_ITEM) {
+                    showCurrencyMenu(v);
+                    return true;
+                }
+                createDataLaunchers.get(i).launch(vm.exportFileName(DATA_FORMATS[i], DATA_GZIP[i]));
+                return true;
+            });
+            menu.show();
+        });
+    }
+
+    /** 报表币种菜单：单选，当前币种打勾；汇率表里没有的币种不可选 */
+    private void showCurrencyMenu(View anchor) {
+        PopupMenu menu = new PopupMenu(this, anchor);
+        int current = vm.reportingCurrency();
+        for (CurrencyCode c : CurrencyCode.values()) {
+            menu.getMenu().add(1, c.code, c.code, c.iso)
+                    .setChecked(c.code == current)
+                    .setEnabled(vm.canReportIn(c));
+        }
+        menu.getMenu().setGroupCheckable(1, true, true);
+        menu.setOnMenuItemClickListener(item -> {
+            vm.setReportingCurrency(CurrencyCode.fromCode(item.getItemId()));
+            return true;
+        });
+        menu.show();
+    }
+
+    /** 导出“本月”柱状图到指定 Uri；导出在 ViewModel 中进行，页面销毁后仍会写完文件 */
+    private void exportCurrentMonthTo(Uri uri) {
+        vm.exportCurrentMonthTo(uri, previewWidth(), previewHeight());
+    }
+
+    /** 预览宽度（像素）：取 ImageView 实际内容区，未布局时给一个屏幕宽度兜底 */
+    private int previewWidth() {
+        int w = imageChart.getWidth() - imageChart.getPaddingLeft() - imageChart.getPaddingRight();
+        return w > 0 ? w : getResources().getDisplayMetrics().widthPixels;
+    }
+
+    /** 预览高度（像素）：取 ImageView 实际内容区，未布局时按宽度的 9/14 兜底 */
+    private int previewHeight() {
+        int h = imageChart.getHeight() - imageChart.getPaddingTop() - imageChart.getPaddingBottom();
+        return h > 0 ? h : previewWidth() * 9 / 14;
+    }
+
+    /** 生成默认文件名：monthly_spending_YYYY_MM.png */
+    private String defaultFileName() {
+        YearMonth ym = YearMonth.now();
+        return "monthly_spending_" + ym.getYear() + "_" +
+                String.format("%02d", ym.getMonthValue()) + ".png";
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        ChartCache.trimMemory(level);
+    }
+}
@@ -0,0 +1,640 @@
+package com.example.auto_accounting.ui;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.backup.LedgerBackup;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.export.AnnualReportExporter;
+import com.example.auto_accounting.data.export.ChartCache;
+import com.example.auto_accounting.data.export.LedgerExporter;
+import com.example.auto_accounting.data.export.MonthlyBarChartExporter;
+import com.example.auto_accounting.data.fx.FxRates;
+import com.example.auto_accounting.data.fx.FxTable;
+import com.example.auto_accounting.data.repo.LedgerSearch;
+import com.example.auto_accounting.data.repo.LiveLedgerQuery;
+import com.example.auto_accounting.data.repo.SpendForecast;
+import com.example.auto_accounting.data.repo.StatementImporter;
+import com.example.auto_accounting.data.repo.TimelineLoader;
+import com.example.auto_accounting.data.repo.TimelineTiers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * 图表页的 ViewModel：持有本月按日合计、最近记录、时间轴分层数据和预览图，旋转屏幕后直接复用。
+ * - 所有读取经 {@link com.example.auto_accounting.data.repo.LedgerRepository} 的按月缓存，
+ *   同一月份的并发请求合并为一次查询；写入后由版本号 / InvalidationTracker 使缓存失效；
+ * - 后台任务只持有 Application 与本对象，不再捕获 Activity；onCleared 时取消排队中的读取；
+ * - 搜索：输入停顿 {@link #SEARCH_DEBOUNCE_MS} 后才查询，结果按时间倒序分页加载，旧查询的结果直接丢弃；
+ * - 数据导出：时间轴上选中的区间（未选则整个账本）流式写成 CSV / JSON lines；
+ * - 账单导入：CSV / OFX / QIF 流式解析、分批写库，进度显示在状态栏；
+ * - 备份 / 恢复：从数据库快照写出压缩备份，之后只备份新增记录；恢复后所有缓存与时间轴重新加载。
+ */
+public class ChartViewModel extends AndroidViewModel {
+
+    /** 最近记录列表最多显示的条数 */
+    private static final int RECENT_LIMIT = 200;
+    /** 输入停顿多久才发起搜索 */
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+    /** 搜索结果每页条数 */
+    private static final int SEARCH_PAGE_SIZE = 50;
+
+    /** 本月数据：按日合计与最近记录都是原地更新的同一份数据，变化时重新发布 */
+    public static final class MonthState {
+        public final YearMonth month;
+        public final long[] dayTotalsMinor;
+        public final List<Entry> recent;
+
+        MonthState(YearMonth month, long[] dayTotalsMinor, List<Entry> recent) {
+            this.month = month;
+            this.dayTotalsMinor = dayTotalsMinor;
+            this.recent = recent;
+        }
+    }
+
+    /** 搜索结果：query 为 null 表示没有在搜索，列表显示最近记录 */
+    public static final class SearchState {
+        @Nullable public final String query;
+        public final List<Entry> rows;
+        /** 已加载到最后一页 */
+        public final boolean done;
+
+        SearchState(@Nullable String query, List<Entry> rows, boolean done) {
+            this.query = query;
+            this.rows = rows;
+            this.done = done;
+        }
+    }
+
+    private final CancellationToken token = CancellationToken.create();
+    private final Executor reads = AppScheduler.executor(AppScheduler.Lane.INTERACTIVE, token);
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private final MutableLiveData<MonthState> monthState = new MutableLiveData<>();
+    private final MutableLiveData<String> status = new MutableLiveData<>("Ready");
+    private final MutableLiveData<Bitmap> preview = new MutableLiveData<>();
+    private final MutableLiveData<long[]> timelineRange = new MutableLiveData<>();
+    private final MutableLiveData<Integer> timelineChanges = new MutableLiveData<>(0);
+    private final MutableLiveData<SearchState> search =
+            new MutableLiveData<>(new SearchState(null, Collections.emptyList(), true));
+
+    // 时间轴分层数据只在主线程读写；generation 每重载一次加一，用来丢弃重载前发出的分块读取
+    private final TimelineTiers tiers = new TimelineTiers();
+    private final Set<Long> pendingChunks = new HashSet<>();
+    private int timelineGeneration;
+
+    // 搜索状态只在主线程读写；generation 每换一次查询加一，用来丢弃过期的分页结果
+    private String searchText = "";
+    @Nullable private String searchMatch;
+    @Nullable private LedgerSearch.Cursor searchCursor;
+    // 列表正显示的那份不能原地清空，换查询时换一个新列表
+    private ArrayList<Entry> searchRows = new ArrayList<>();
+    private int searchGeneration;
+    private boolean searchLoading;
+    private boolean searchDone = true;
+    private final Runnable startSearch = this::startSearch;
+
+    // 数据导出范围（本地日期，含首尾）；null 表示整个账本。点时间轴柱子时设为该柱的区间
+    @Nullable private long[] exportDays;
+
+    private final LiveLedgerQuery liveQuery;
+    private boolean cleared;
+
+    public ChartViewModel(@NonNull Application app) {
+        super(app);
+        liveQuery = new LiveLedgerQuery(app, reads, RECENT_LIMIT, new LiveLedgerQuery.Listener() {
+            @Override
+            public void onSnapshot(YearMonth month, long[] dayTotalsMinor, List<Entry> recent) {
+                monthState.setValue(new MonthState(month, dayTotalsMinor, recent));
+                reportMissingRates();
+            }
+
+            @Override
+            public void onRowsAdded(List<Entry> rows, long[] amountsMinor, long[] seqs) {
+                MonthState s = monthState.getValue();
+                if (s != null) {
+                    monthState.setValue(new MonthState(liveQuery.month(), liveQuery.dayTotals(), s.recent));
+                }
+                addRowsToTimeline(rows, amountsMinor, seqs);
+                reportMissingRates();
+            }
+        });
+        liveQuery.start();
+        // 预测模型在后台先建好，预览本月图表时只需追上增量
+        SpendForecast.scheduleWarmUp(app);
+        reads.execute(() -> {
+            long first = TimelineLoader.firstEpochDay(app);
+            long today = LocalDate.now().toEpochDay();
+            timelineRange.postValue(new long[]{first, today});
+        });
+    }
+
+    public LiveData<MonthState> monthState() { return monthState; }
+    public LiveData<String> status() { return status; }
+    public LiveData<Bitmap> preview() { return preview; }
+    /** 可浏览的历史范围 {firstEpochDay, lastEpochDay} */
+    public LiveData<long[]> timelineRange() { return timelineRange; }
+    /** 分层数据每变化一次加一 */
+    public LiveData<Integer> timelineChanges() { return timelineChanges; }
+    public TimelineTiers timelineTiers() { return tiers; }
+    public LiveData<SearchState> search() { return search; }
+
+    public void setStatus(String s) {
+        status.setValue(s);
+    }
+
+    // ------------------ 时间轴 ------------------
+
+    /** 请求加载一个分块（主线程）；已加载或正在加载的分块直接忽略 */
+    public void requestChunk(long chunk) {
+        if (tiers.isLoaded(chunk) || !pendingChunks.add(chunk)) return;
+        Application app = getApplication();
+        final int generation = timelineGeneration;
+        reads.execute(() -> {
+            try {
+                TimelineLoader.Chunk loaded = TimelineLoader.loadChunk(app, chunk);
+                main.post(() -> {
+                    if (generation != timelineGeneration) return;
+                    pendingChunks.remove(chunk);
+                    tiers.putChunk(chunk, loaded.daily, loaded.seq);
+                    bumpTimeline();
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> {
+                    if (generation == timelineGeneration) pendingChunks.remove(chunk); // 允许之后重新请求
+                });
+            }
+        });
+    }
+
+    /**
+     * @param amountsMinor 每行换算成报表币种后的金额，与分块里的合计同一币种
+     * @param seqs         每行的变更序号；分块读取时已包含的行由 {@link TimelineTiers} 跳过
+     */
+    private void addRowsToTimeline(List<Entry> rows, long[] amountsMinor, long[] seqs) {
+        ZoneId zone = ZoneId.systemDefault();
+        for (int i = 0; i < rows.size(); i++) {
+            long day = Instant.ofEpochMilli(rows.get(i).timeMillis).atZone(zone).toLocalDate().toEpochDay();
+            tiers.addToDay(day, amountsMinor[i], seqs[i]);
+        }
+        bumpTimeline();
+    }
+
+    private void bumpTimeline() {
+        Integer n = timelineChanges.getValue();
+        timelineChanges.setValue(n == null ? 1 : n + 1);
+    }
+
+    // ------------------ 搜索 ------------------
+
+    /** 搜索框内容变化（主线程）：防抖后再查询；清空则回到最近记录 */
+    public void setSearchText(String text) {
+        if (text.equals(searchText)) return;
+        searchText = text;
+        main.removeCallbacks(startSearch);
+        searchGeneration++;
+        if (LedgerSearch.toMatchQuery(text) == null) {
+            searchMatch = null;
+            searchRows = new ArrayList<>();
+            searchLoading = false;
+            searchDone = true;
+            search.setValue(new SearchState(null, Collections.emptyList(), true));
+            return;
+        }
+        main.postDelayed(startSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    /** 列表滚到接近底部时加载下一页（主线程）；没在搜索、正在加载或已到底时忽略 */
+    public void loadMoreSearchResults() {
+        if (searchMatch == null || searchLoading || searchDone) return;
+        loadSearchPage();
+    }
+
+    private void startSearch() {
+        searchMatch = LedgerSearch.toMatchQuery(searchText);
+        searchCursor = null;
+        searchRows = new ArrayList<>();
+        searchDone = false;
+        loadSearchPage();
+    }
+
+    private void loadSearchPage() {
+        searchLoading = true;
+        final int generation = searchGeneration;
+        final String match = searchMatch;
+        final LedgerSearch.Cursor after = searchCursor;
+        final String query = searchText;
+        Application app = getApplication();
+        reads.execute(() -> {
+            try {
+                LedgerSearch.Page page = LedgerSearch.page(app, match, after, SEARCH_PAGE_SIZE);
+                main.post(() -> {
+                    if (generation != searchGeneration) return; // 输入已经变了
+                    searchRows.addAll(page.rows); // 同一查询只追加，随后 notify
+                    searchCursor = page.next;
+                    searchDone = page.next == null;
+                    searchLoading = false;
+                    search.setValue(new SearchState(query,
+                            Collections.unmodifiableList(searchRows), searchDone));
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> {
+                    if (generation != searchGeneration) return;
+                    searchLoading = false;
+                    searchDone = true;
+                    fail(e);
+                });
+            }
+        });
+    }
+
+    // ------------------ 预览 / 导出 ------------------
+
+    /** 生成“本月”柱状图预览（后台线程）；本月无新数据时直接用缓存 */
+    public void previewCurrentMonth(int w, int h, float density) {
+        Bitmap cached = MonthlyBarChartExporter.peekCurrentMonthBitmap(w, h);
+        if (cached != null) {
+            setPreview(cached);
+            status.setValue("Ready");
+            return;
+        }
+        status.setValue("Generating preview…");
+        Application app = getApplication();
+        reads.execute(() -> {
+            try {
+                Bitmap bmp = MonthlyBarChartExporter.buildCurrentMonthBitmap(app, w, h, density);
+                main.post(() -> {
+                    setPreview(bmp);
+                    status.setValue("Ready");
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+    }
+
+    /**
+     * 导出“本月”柱状图到指定 Uri（BACKGROUND 通道，不随页面取消），完成后预览导出的文件。
+     *
+     * @param pw 预览宽度，用于回读时降采样
+     * @param ph 预览高度
+     */
+    public void exportCurrentMonthTo(Uri uri, int pw, int ph) {
+        status.setValue("Exporting…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                ContentResolver cr = app.getContentResolver();
+                MonthlyBarChartExporter.exportCurrentMonth(app, cr, uri);
+
+                // 重新从导出的文件读取并预览（确保与落盘一致），按预览尺寸降采样解码
+                BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inSampleSize = previewSampleSize(cr, uri, pw, ph);
+                try (InputStream is = cr.openInputStream(uri)) {
+                    Bitmap exported = BitmapFactory.decodeStream(is, null, opts);
+                    main.post(() -> {
+                        setPreview(exported);
+                        status.setValue("Exported successfully");
+                    });
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending exports");
+    }
+
+    // ------------------ 账单导入 ------------------
+
+    /**
+     * 从银行账单（CSV / OFX / QIF）导入历史记录（BACKGROUND 通道，不随页面取消）。
+     * 边读边解析、分批写库，每批完成后在状态栏显示进度；已由通知记下的同一笔不会重复写入。
+     */
+    public void importStatement(Uri uri) {
+        status.setValue("Importing…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                long t0 = System.currentTimeMillis();
+                StatementImporter.Progress p = StatementImporter.importFrom(app, uri,
+                        progress -> main.post(() -> status.setValue(describe(progress))), null);
+                long ms = System.currentTimeMillis() - t0;
+                main.post(() -> {
+                    status.setValue(describe(p) + " in " + ms + " ms");
+                    reloadTimeline();
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending imports");
+    }
+
+    /** 导入或恢复之后：历史可能早于时间轴当前范围，重新取范围并清掉已加载的分块 */
+    private void reloadTimeline() {
+        Application app = getApplication();
+        timelineGeneration++;
+        tiers.clear();
+        pendingChunks.clear();
+        bumpTimeline();
+        reads.execute(() -> timelineRange.postValue(new long[]{
+                TimelineLoader.firstEpochDay(app), LocalDate.now().toEpochDay()}));
+    }
+
+    private static String describe(StatementImporter.Progress p) {
+        StringBuilder sb = new StringBuilder(p.done ? "Imported " : "Importing… ");
+        if (!p.done && p.percent() >= 0) sb.append(p.percent()).append("%, ");
+        sb.append(p.imported).append(" rows");
+        if (p.duplicates > 0) sb.append(", ").append(p.duplicates).append(" already recorded");
+        if (p.credits > 0) sb.append(", ").append(p.credits).append(" credits skipped");
+        if (p.malformed > 0) sb.append(", ").append(p.malformed).append(" unreadable");
+        return sb.toString();
+    }
+
+    // ------------------ 备份 / 恢复 ------------------
+
+    /** 默认备份文件名；能增量时为增量备份 */
+    public String backupFileName(boolean full) {
+        boolean incremental = !full && LedgerBackup.canBackUpIncrementally(getApplication());
+        return LedgerBackup.fileName(incremental ? LedgerBackup.Kind.INCREMENTAL : LedgerBackup.Kind.FULL,
+                System.currentTimeMillis());
+    }
+
+    /** 备份到指定 Uri；full 为 false 时只写上次备份之后的新记录 */
+    public void backupTo(Uri uri, boolean full) {
+        status.setValue("Backing up…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                long t0 = System.currentTimeMillis();
+                LedgerBackup.Summary s = LedgerBackup.backup(app, app.getContentResolver(), uri, full, null);
+                long ms = System.currentTimeMillis() - t0;
+                main.post(() -> status.setValue("Backed up " + describe(s) + " in " + ms + " ms"));
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    /** 从指定 Uri 恢复；完整备份替换整个账本，增量备份追加记录 */
+    public void restoreFrom(Uri uri) {
+        status.setValue("Restoring…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                long t0 = System.currentTimeMillis();
+                LedgerBackup.Summary s = LedgerBackup.restore(app, app.getContentResolver(), uri);
+                long ms = System.currentTimeMillis() - t0;
+                main.post(() -> {
+                    status.setValue("Restored " + describe(s) + " in " + ms + " ms");
+                    // 完整恢复在变更日志里只记一条 RESET，同样会触发重读；这里不必等通知
+                    liveQuery.reload();
+                    reloadTimeline();
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    private static String describe(LedgerBackup.Summary s) {
+        return (s.kind == LedgerBackup.Kind.FULL ? "full, " : "incremental, ")
+                + s.rows + " rows, " + s.merchants + " merchants";
+    }
+
+    // ------------------ 汇率 ------------------
+
+    /** 导入汇率表（ECB 格式 CSV）；所有合计改按新汇率换算，图表与时间轴重读 */
+    public void importFxRates(Uri uri) {
+        status.setValue("Importing exchange rates…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try (InputStream in = app.getContentResolver().openInputStream(uri)) {
+                if (in == null) throw new IOException("openInputStream returned null: " + uri);
+                FxTable t = FxRates.get(app).importCsv(in);
+                String msg = String.format(Locale.ROOT, "Exchange rates v%d: %s ~ %s", t.version,
+                        LocalDate.ofEpochDay(t.firstEpochDay), LocalDate.ofEpochDay(t.firstEpochDay + t.days - 1));
+                main.post(() -> {
+                    status.setValue(msg);
+                    liveQuery.reload();
+                    reloadTimeline();
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    /** 汇率表里有该币种（或它就是当前报表币种）时才能选为报表币种 */
+    public boolean canReportIn(CurrencyCode currency) {
+        return FxRates.get(getApplication()).canReportIn(currency.code);
+    }
+
+    /** 有币种因缺汇率被排除在合计之外时，在状态栏说明，例如 “No rate for JPY: left out of totals” */
+    private void reportMissingRates() {
+        List<CurrencyCode> missing = FxRates.get(getApplication()).missingRates();
+        if (missing.isEmpty()) return;
+        StringBuilder sb = new StringBuilder("No rate for ");
+        for (int i = 0; i < missing.size(); i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(missing.get(i).iso);
+        }
+        status.setValue(sb.append(": left out of totals").toString());
+    }
+
+    /** 当前报表币种的 {@link CurrencyCode#code} */
+    public int reportingCurrency() {
+        return FxRates.get(getApplication()).reportingCurrency();
+    }
+
+    /** 切换报表币种；与导入汇率一样，合计全部重算 */
+    public void setReportingCurrency(CurrencyCode currency) {
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                FxRates.get(app).setReportingCurrency(currency.code);
+            } catch (IllegalArgumentException e) {
+                main.post(() -> fail(e));
+                return;
+            }
+            main.post(() -> {
+                status.setValue("Reporting in " + currency.iso);
+                liveQuery.reload();
+                reloadTimeline();
+            });
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    // ------------------ 数据导出 ------------------
+
+    /** 设置数据导出范围（主线程）：从 firstDay 起共 days 天 */
+    public void setExportRange(long firstDay, int days) {
+        exportDays = new long[]{firstDay, firstDay + days - 1};
+    }
+
+    /** 当前导出范围 {firstEpochDay, lastEpochDay}；未选时为整个账本（最早一天到今天） */
+    public long[] exportRange() {
+        if (exportDays != null) return exportDays;
+        long today = LocalDate.now().toEpochDay();
+        long[] r = timelineRange.getValue();
+        return new long[]{r != null ? r[0] : today, today};
+    }
+
+    /** 默认文件名，例如 ledger-2024-01-01_2024-03-31.csv.gz */
+    public String exportFileName(LedgerExporter.Format format, boolean gzip) {
+        long[] r = exportRange();
+        return LedgerExporter.fileName(LocalDate.ofEpochDay(r[0]), LocalDate.ofEpochDay(r[1]), format, gzip);
+    }
+
+    /**
+     * 把导出范围内的记录流式写成 CSV / JSON lines（可选 gzip）到指定 Uri。
+     * 走 BACKGROUND 通道，不随页面取消；逐行从游标读、逐行写，内存不随行数增长。
+     */
+    public void exportDataTo(Uri uri, LedgerExporter.Format format, boolean gzip) {
+        long[] r = exportRange();
+        ZoneId zone = ZoneId.systemDefault();
+        long start = LocalDate.ofEpochDay(r[0]).atStartOfDay(zone).toInstant().toEpochMilli();
+        long end = LocalDate.ofEpochDay(r[1] + 1).atStartOfDay(zone).toInstant().toEpochMilli();
+        String range = LocalDate.ofEpochDay(r[0]) + " ~ " + LocalDate.ofEpochDay(r[1]);
+        status.setValue("Exporting " + range + "…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                long t0 = System.currentTimeMillis();
+                long rows = LedgerExporter.export(app, app.getContentResolver(), uri,
+                        format, gzip, start, end, null);
+                long ms = System.currentTimeMillis() - t0;
+                main.post(() -> status.setValue(
+                        "Exported " + rows + " rows (" + range + ") in " + ms + " ms"));
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending exports");
+    }
+
+    // ------------------ 年度报告 ------------------
+
+    /** 年度报告的年份：导出范围最后一天所在的年（未选范围时为今年） */
+    private int reportYear() {
+        return LocalDate.ofEpochDay(exportRange()[1]).getYear();
+    }
+
+    /** 年度报告默认文件名，例如 report-2024.zip */
+    public String annualReportFileName() {
+        return AnnualReportExporter.fileName(reportYear());
+    }
+
+    /**
+     * 生成年度报告（ZIP，每页一张 PNG）：全年按月合计、商家排行、类别合计和 12 个月的按日柱状图。
+     * 数据在 BACKGROUND 通道读一次，各页由 {@link AnnualReportExporter} 的小线程池并行绘制、编码，不随页面取消。
+     */
+    public void exportAnnualReport(Uri uri) {
+        int year = reportYear();
+        status.setValue("Generating " + year + " report…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                long t0 = System.currentTimeMillis();
+                AnnualReportExporter.Summary s = AnnualReportExporter.export(
+                        app, app.getContentResolver(), uri, year, null);
+                long ms = System.currentTimeMillis() - t0;
+                String msg = String.format(Locale.ROOT, "Report %d: %d pages, %.1f MB in %d ms (%d workers)",
+                        year, s.pages, s.bytes / 1048576.0, ms, s.workers);
+                main.post(() -> status.setValue(msg));
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending exports");
+    }
+
+    private void fail(Exception e) {
+        status.setValue("Failed: " + e.getMessage());
+        Toast.makeText(getApplication(), e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+
+    /** 计算导出文件回读时的 inSampleSize（2 的幂），使解码尺寸不小于预览区域 */
+    private static int previewSampleSize(ContentResolver cr, Uri uri, int previewW, int previewH) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream is = cr.openInputStream(uri)) {
+            BitmapFactory.decodeStream(is, null, bounds);
+        } catch (Exception ignored) {
+            return 1;
+        }
+        int sample = 1;
+        while (bounds.outWidth / (sample * 2) >= previewW
+                && bounds.outHeight / (sample * 2) >= previewH) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    /** 切换预览图：先发布新图再回收旧图（缓存中的图由 ChartCache 管理，不回收） */
+    private void setPreview(@Nullable Bitmap bmp) {
+        if (cleared) { // 导出在页面关闭后才完成：没人显示，直接回收
+            recycleIfOwned(bmp);
+            return;
+        }
+        Bitmap old = preview.getValue();
+        preview.setValue(bmp);
+        if (old != bmp) recycleIfOwned(old);
+    }
+
+    private static void recycleIfOwned(@Nullable Bitmap bmp) {
+        if (bmp != null && !bmp.isRecycled() && !ChartCache.contains(bmp)) bmp.recycle();
+    }
+
+    @Override
+    protected void onCleared() {
+        cleared = true;
+        main.removeCallbacks(startSearch);
+        token.cancel();
+        liveQuery.stop();
+        Bitmap old = preview.getValue();
+        preview.setValue(null);
+        recycleIfOwned(old);
+    }
+}
@@ -0,0 +1,664 @@
+package com.example.auto_accounting.ui;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.SystemClock;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.example.auto_accounting.data.db.AppDb;
+import com.example.auto_accounting.data.db.Category;
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.DayTotal;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.db.Merchant;
+import com.example.auto_accounting.data.db.MerchantDao;
+import com.example.auto_accounting.data.db.MerchantTotal;
+import com.example.auto_accounting.data.db.Migrations;
+import com.example.auto_accounting.data.export.AnnualReportExporter;
+import com.example.auto_accounting.data.export.LedgerExporter;
+import com.example.auto_accounting.data.repo.CategoryClassifier;
+import com.example.auto_accounting.data.repo.DaySumIndex;
+import com.example.auto_accounting.data.repo.LedgerReader;
+import com.example.auto_accounting.data.repo.LedgerSearch;
+import com.example.auto_accounting.data.repo.MerchantCanonicalizer;
+import com.example.auto_accounting.data.repo.MerchantCategories;
+import com.example.auto_accounting.data.repo.MerchantDictionary;
+import com.example.auto_accounting.data.repo.MerchantStats;
+import com.example.auto_accounting.data.repo.StatementImporter;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * 调试菜单里的微基准：只在后台线程运行，结果写到 logcat 并以一行摘要返回。
+ * 数据全部随机生成（固定种子），需要数据库的基准使用单独的临时库，跑完删除，不读写真实账本。
+ */
+final class DebugBenchmarks {
+
+    private DebugBenchmarks() {
+        // No instances.
+    }
+
+    /**
+     * 商家规范化：10k 个已知商家，查询带店号/后缀/大小写/拼写错误的变体。
+     * 冷启动 = 首次查询（走前缀树与编辑距离），热 = 同一批查询再来一次（命中 LRU）。
+     */
+    static String merchantCanonicalizer() {
+        final int known = 10_000;
+        final int distinct = 1_000;
+        final int queries = 10_000;
+        Random rnd = new Random(42);
+
+        String[] names = new String[known];
+        for (int i = 0; i < known; i++) names[i] = randomName(rnd);
+
+        long t0 = SystemClock.elapsedRealtimeNanos();
+        MerchantCanonicalizer c = new MerchantCanonicalizer();
+        for (String n : names) c.addKnown(n);
+        long buildNs = SystemClock.elapsedRealtimeNanos() - t0;
+
+        // 1k 个不同的原始字符串，按银行常见写法变形
+        String[] raw = new String[distinct];
+        for (int i = 0; i < distinct; i++) {
+            String n = names[rnd.nextInt(known)];
+            switch (i % 4) {
+                case 0: raw[i] = n.toUpperCase(Locale.ROOT) + " #" + rnd.nextInt(10_000); break;
+                case 1: raw[i] = n + " Pty Ltd"; break;
+                case 2: raw[i] = typo(n, rnd); break;
+                default: raw[i] = "SQ *" + n; break;
+            }
+        }
+
+        int matched = 0;
+        t0 = SystemClock.elapsedRealtimeNanos();
+        for (String r : raw) if (c.match(MerchantCanonicalizer.normalize(r)) != null) matched++;
+        long coldNs = SystemClock.elapsedRealtimeNanos() - t0;
+
+        for (String r : raw) c.canonicalize(r); // 填充 LRU
+        t0 = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < queries; i++) c.canonicalize(raw[i % distinct]);
+        long warmNs = SystemClock.elapsedRealtimeNanos() - t0;
+
+        return String.format(Locale.ROOT,
+                "merchants=%d build=%dms cold=%.1fus/op matched=%d/%d warm=%dns/op",
+                known, buildNs / 1_000_000, coldNs / 1000.0 / distinct, matched, distinct,
+                warmNs / queries);
+    }
+
+    /**
+     * 全文搜索：临时库里 10k 个商家、1M 条记录（商家分布长尾），
+     * 对热门商家全名 / 三字母前缀 / 单字母前缀 / 不存在的词各取首页和之后 5 页，统计每页耗时。
+     */
+    static String ledgerSearch(Context context) {
+        final String dbName = "bench_search.db";
+        final int merchants = 10_000;
+        final int rows = 1_000_000;
+        final int pageSize = 50;
+        context.deleteDatabase(dbName);
+        AppDb db = Room.databaseBuilder(context, AppDb.class, dbName)
+                .addCallback(Migrations.CALLBACK).build();
+        try {
+            long t0 = SystemClock.elapsedRealtime();
+            String[] names = fill(db, merchants, rows, new Random(7));
+            long fillMs = SystemClock.elapsedRealtime() - t0;
+
+            String[] terms = {
+                    names[0],                                            // 最热门的商家
+                    names[merchants / 2].substring(0, 3),                // 三字母前缀
+                    names[1].substring(0, 1),                            // 单字母前缀，命中大量商家
+                    "qzxv"                                               // 不存在
+            };
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                    "rows=%d merchants=%d fill=%dms", rows, merchants, fillMs));
+            for (String term : terms) {
+                String match = LedgerSearch.toMatchQuery(term);
+                long first = 0, worst = 0, total = 0;
+                int pages = 0, found = 0;
+                LedgerSearch.Cursor after = null;
+                do {
+                    long s = SystemClock.elapsedRealtimeNanos();
+                    LedgerSearch.Page p = LedgerSearch.page(db.tableDao(), match, after, pageSize);
+                    long us = (SystemClock.elapsedRealtimeNanos() - s) / 1000;
+                    if (pages == 0) first = us;
+                    worst = Math.max(worst, us);
+                    total += us;
+                    found += p.rows.size();
+                    pages++;
+                    after = p.next;
+                } while (after != null && pages < 6);
+                sb.append(String.format(Locale.ROOT,
+                        " | '%s': first=%.2fms avg=%.2fms max=%.2fms rows=%d",
+                        term, first / 1000.0, total / 1000.0 / pages, worst / 1000.0, found));
+            }
+            return sb.toString();
+        } finally {
+            db.close();
+            context.deleteDatabase(dbName);
+        }
+    }
+
+    /**
+     * 流式导出：临时库 1M 行，分别导出 CSV、CSV+gzip、JSON lines 到缓存目录的临时文件，
+     * 统计耗时、文件大小，并每 10 万行采样一次堆占用，确认内存不随行数增长。
+     */
+    static String ledgerExport(Context context) throws IOException {
+        final String dbName = "bench_export.db";
+        final int merchants = 10_000;
+        final int rows = 1_000_000;
+        context.deleteDatabase(dbName);
+        AppDb db = Room.databaseBuilder(context, AppDb.class, dbName)
+                .addCallback(Migrations.CALLBACK).build();
+        File out = new File(context.getCacheDir(), "bench_export.tmp");
+        try {
+            long t0 = SystemClock.elapsedRealtime();
+            fill(db, merchants, rows, new Random(11));
+            long fillMs = SystemClock.elapsedRealtime() - t0;
+
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                    "rows=%d fill=%dms", rows, fillMs));
+            LedgerExporter.Format[] formats = {
+                    LedgerExporter.Format.CSV, LedgerExporter.Format.CSV, LedgerExporter.Format.JSON_LINES};
+            boolean[] gzips = {false, true, false};
+            Runtime rt = Runtime.getRuntime();
+            for (int k = 0; k < formats.length; k++) {
+                rt.gc();
+                long heapBefore = rt.totalMemory() - rt.freeMemory();
+                long[] heapMax = {heapBefore};
+                t0 = SystemClock.elapsedRealtime();
+                long n;
+                try (FileOutputStream fos = new FileOutputStream(out)) {
+                    n = LedgerExporter.write(sink -> {
+                        try (Cursor c = db.tableDao().cursorInRange(Long.MIN_VALUE, Long.MAX_VALUE)) {
+                            long[] seen = {0};
+                            return LedgerReader.streamCursor(c, (id, time, merchant, amount, currency) -> {
+                                if (++seen[0] % 100_000 == 0) {
+                                    heapMax[0] = Math.max(heapMax[0], rt.totalMemory() - rt.freeMemory());
+                                }
+                                sink.accept(id, time, merchant, amount, currency);
+                            }, null);
+                        }
+                    }, fos, formats[k], gzips[k], ZoneId.systemDefault());
+                }
+                long ms = SystemClock.elapsedRealtime() - t0;
+                sb.append(String.format(Locale.ROOT,
+                        " | %s%s: %dms %.1fMB rows=%d heap+%.1fMB",
+                        formats[k].extension, gzips[k] ? ".gz" : "", ms,
+                        out.length() / 1048576.0, n, (heapMax[0] - heapBefore) / 1048576.0));
+            }
+            return sb.toString();
+        } finally {
+            db.close();
+            context.deleteDatabase(dbName);
+            //noinspection ResultOfMethodCallIgnored
+            out.delete();
+        }
+    }
+
+    /**
+     * 账单导入：临时库先写入 1M 条（模拟通知记下的历史），再生成 500k 行 CSV 导入，
+     * 其中约 10% 与已有记录同金额、时间相差一天以内，应判为重复。
+     * 第二次导入同一文件，应全部判为重复。
+     */
+    static String statementImport(Context context) throws IOException {
+        final String dbName = "bench_import.db";
+        final int merchants = 10_000;
+        final int existingRows = 1_000_000;
+        final int rows = 500_000;
+        context.deleteDatabase(dbName);
+        AppDb db = Room.databaseBuilder(context, AppDb.class, dbName)
+                .addCallback(Migrations.CALLBACK).build();
+        File csv = new File(context.getCacheDir(), "bench_import.csv");
+        try {
+            Random rnd = new Random(13);
+            String[] names = fill(db, merchants, existingRows, rnd);
+            // fill 的记录从 1500000000000 起每分钟一条；账单覆盖其中前 500k 分钟，分段读出避免整块进内存
+            final long base = 1_500_000_000_000L;
+            final int chunk = 50_000;
+            ZoneId zone = ZoneId.systemDefault();
+            DateTimeFormatter date = DateTimeFormatter.ofPattern("yyyy-MM-dd", Locale.ROOT);
+            DateTimeFormatter time = DateTimeFormatter.ofPattern("HH:mm:ss", Locale.ROOT);
+            int planted = 0;
+            try (Writer w = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(csv), StandardCharsets.UTF_8), 1 << 16)) {
+                w.write("Date,Time,Description,Amount\n");
+                for (int from = 0; from < rows; from += chunk) {
+                    List<Entry> overlap = db.tableDao().listInRange(
+                            base + 60_000L * from, base + 60_000L * (from + chunk));
+                    for (int k = 0; k < chunk && from + k < rows; k++) {
+                        int i = from + k;
+                        long t;
+                        String name;
+                        long minor;
+                        if (i % 10 == 0 && k < overlap.size()) {
+                            Entry e = overlap.get(k);
+                            t = e.timeMillis + rnd.nextInt(86_400_000);
+                            name = e.description != null ? e.description : "Unknown";
+                            minor = e.amountMinor;
+                            planted++;
+                        } else {
+                            t = base + 60_000L * i + 30_000;
+                            name = names[rnd.nextInt(merchants)];
+                            minor = 1 + rnd.nextInt(99_999);
+                        }
+                        ZonedDateTime z = Instant.ofEpochMilli(t).atZone(zone);
+                        w.write(date.format(z));
+                        w.write(',');
+                        w.write(time.format(z));
+                        w.write(",\"");
+                        w.write(name);
+                        w.write(" #" + (i % 97) + "\",-");
+                        w.write(Long.toString(minor / 100));
+                        w.write('.');
+                        w.write(String.format(Locale.ROOT, "%02d", minor % 100));
+                        w.write('\n');
+                    }
+                }
+            }
+
+            StatementImporter.Existing existing = new StatementImporter.Existing() {
+                @Override public long maxId() { return db.tableDao().maxId(); }
+                @Override public List<Entry> listInRange(long s, long e) {
+                    return db.tableDao().listInRange(s, e);
+                }
+            };
+            MerchantDictionary dict = MerchantDictionary.forDatabase(db);
+            Runtime rt = Runtime.getRuntime();
+            StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                    "existing=%d file=%.1fMB rows=%d planted=%d", existingRows,
+                    csv.length() / 1048576.0, rows, planted));
+            for (int run = 1; run <= 2; run++) {
+                rt.gc();
+                long heapBefore = rt.totalMemory() - rt.freeMemory();
+                long[] heapMax = {heapBefore};
+                long t0 = SystemClock.elapsedRealtime();
+                StatementImporter.Progress p;
+                try (InputStream in = new FileInputStream(csv)) {
+                    p = StatementImporter.importFrom(db, dict, existing, in, csv.length(),
+                            progress -> heapMax[0] = Math.max(heapMax[0], rt.totalMemory() - rt.freeMemory()),
+                            null);
+                }
+                long ms = SystemClock.elapsedRealtime() - t0;
+                sb.append(String.format(Locale.ROOT,
+                        " | run%d: %dms imported=%d duplicates=%d malformed=%d heap+%.1fMB",
+                        run, ms, p.imported, p.duplicates, p.malformed,
+                        (heapMax[0] - heapBefore) / 1048576.0));
+            }
+            return sb.toString();
+        } finally {
+            db.close();
+            context.deleteDatabase(dbName);
+            //noinspection ResultOfMethodCallIgnored
+            csv.delete();
+        }
+    }
+
+    /**
+     * 分析索引：临时库里 1M 条记录均匀铺满 10 年，比较 SQL 聚合与 {@link DaySumIndex}：
+     * 1000 个随机区间求和、全部月 / 周合计、100 个随机日期的累计余额，以及 10k 次增量更新。
+     * 索引的构建时间包括按日汇总的那条 SQL；结果逐一与 SQL 核对。
+     */
+    static String analytics(Context context) {
+        final String dbName = "bench_analytics.db";
+        final int merchants = 1_000;
+        final int rows = 1_000_000;
+        final long span = 3_650L * 86_400_000L;
+        final int ranges = 1_000;
+        final int balances = 100;
+        context.deleteDatabase(dbName);
+        AppDb db = Room.databaseBuilder(context, AppDb.class, dbName)
+                .addCallback(Migrations.CALLBACK).build();
+        try {
+            Random rnd = new Random(17);
+            long t0 = SystemClock.elapsedRealtime();
+            fill(db, merchants, rows, span / rows, rnd);
+            long fillMs = SystemClock.elapsedRealtime() - t0;
+
+            ZoneId zone = ZoneId.systemDefault();
+            SupportSQLiteDatabase sql = db.getOpenHelper().getWritableDatabase();
+            long firstMillis = db.tableDao().minTimeMillis();
+            LocalDate first = Instant.ofEpochMilli(firstMillis).atZone(zone).toLocalDate();
+            LocalDate last = Instant.ofEpochMilli(firstMillis + span).atZone(zone).toLocalDate();
+            int days = (int) (last.toEpochDay() - first.toEpochDay() + 1);
+
+            // 构建：一条按日 GROUP BY + O(n) 建树
+            long b0 = SystemClock.elapsedRealtimeNanos();
+            long[] totals = new long[days];
+            for (DayTotal t : db.tableDao().dailyTotals(startOf(first, zone), startOf(last.plusDays(1), zone))) {
+                long idx = t.epochDay - first.toEpochDay();
+                if (idx >= 0 && idx < days) totals[(int) idx] += t.totalMinor;
+            }
+            DaySumIndex index = new DaySumIndex(first.toEpochDay(), totals);
+            long buildMs = (SystemClock.elapsedRealtimeNanos() - b0) / 1_000_000;
+
+            // 随机区间
+            long[][] range = new long[ranges][2];
+            for (int i = 0; i < ranges; i++) {
+                long a = first.toEpochDay() + rnd.nextInt(days), b = first.toEpochDay() + rnd.nextInt(days);
+                range[i][0] = Math.min(a, b);
+                range[i][1] = Math.max(a, b) + 1;
+            }
+            int mismatches = 0;
+            long sqlNs = 0, idxNs = 0;
+            for (long[] r : range) {
+                long s0 = SystemClock.elapsedRealtimeNanos();
+                long bySql = sqlSum(sql, startOf(LocalDate.ofEpochDay(r[0]), zone),
+                        startOf(LocalDate.ofEpochDay(r[1]), zone));
+                long s1 = SystemClock.elapsedRealtimeNanos();
+                long byIndex = index.sum(r[0], r[1]);
+                idxNs += SystemClock.elapsedRealtimeNanos() - s1;
+                sqlNs += s1 - s0;
+                if (bySql != byIndex) mismatches++;
+            }
+
+            // 全部月合计：SQL 一条 GROUP BY vs 索引逐月区间和
+            long m0 = SystemClock.elapsedRealtimeNanos();
+            long monthSqlTotal = 0;
+            try (Cursor c = sql.query("SELECT strftime('%Y-%m', timeMillis / 1000, 'unixepoch', 'localtime') AS m, "
+                    + "SUM(amountMinor) FROM table_entries GROUP BY m")) {
+                while (c.moveToNext()) monthSqlTotal += c.getLong(1);
+            }
+            long monthSqlNs = SystemClock.elapsedRealtimeNanos() - m0;
+            m0 = SystemClock.elapsedRealtimeNanos();
+            long[] months = index.totals(DaySumIndex.Period.MONTH, first, last);
+            long[] weeks = index.totals(DaySumIndex.Period.WEEK, first, last);
+            long periodIdxNs = SystemClock.elapsedRealtimeNanos() - m0;
+            long monthIdxTotal = 0;
+            for (long v : months) monthIdxTotal += v;
+            if (monthIdxTotal != monthSqlTotal) mismatches++;
+
+            // 累计余额
+            long balSqlNs = 0, balIdxNs = 0;
+            for (int i = 0; i < balances; i++) {
+                long d = first.toEpochDay() + rnd.nextInt(days);
+                long s0 = SystemClock.elapsedRealtimeNanos();
+                long bySql = sqlSum(sql, Long.MIN_VALUE, startOf(LocalDate.ofEpochDay(d + 1), zone));
+                long s1 = SystemClock.elapsedRealtimeNanos();
+                long byIndex = index.balance(d);
+                balIdxNs += SystemClock.elapsedRealtimeNanos() - s1;
+                balSqlNs += s1 - s0;
+                if (bySql != byIndex) mismatches++;
+            }
+
+            // 增量更新
+            final int updates = 10_000;
+            long u0 = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < updates; i++) {
+                index.add(first.toEpochDay() + rnd.nextInt(days), 1 + rnd.nextInt(10_000));
+            }
+            long updateNs = SystemClock.elapsedRealtimeNanos() - u0;
+
+            return String.format(Locale.ROOT,
+                    "rows=%d days=%d fill=%dms build=%dms | range sql=%.2fms/op index=%.2fus/op"
+                            + " | %d months + %d weeks sql(months only)=%dms index=%.2fms"
+                            + " | balance sql=%.2fms/op index=%.2fus/op | add=%dns/op mismatches=%d",
+                    rows, days, fillMs, buildMs,
+                    sqlNs / 1e6 / ranges, idxNs / 1e3 / ranges,
+                    months.length, weeks.length, monthSqlNs / 1_000_000, periodIdxNs / 1e6,
+                    balSqlNs / 1e6 / balances, balIdxNs / 1e3 / balances,
+                    updateNs / updates, mismatches);
+        } finally {
+            db.close();
+            context.deleteDatabase(dbName);
+        }
+    }
+
+    /**
+     * 商家分类：临时库里 10k 个商家，三分之一的名字带内置关键词。
+     * 冷 = 纯分类器逐个分类；回填 = 分批分类并写回数据库；热 = 1M 次按商家 id 查类别（命中内存表）。
+     */
+    static String categories(Context context) {
+        final String dbName = "bench_categories.db";
+        final int merchants = 10_000;
+        final int lookups = 1_000_000;
+        final String[] keywords = {"Woolworths", "Uber Eats", "Uber", "Netflix", "Pharmacy",
+                "Qantas", "Cafe", "Bunnings", "Telstra", "Shell"};
+        context.deleteDatabase(dbName);
+        AppDb db = Room.databaseBuilder(context, AppDb.class, dbName)
+                .addCallback(Migrations.CALLBACK).build();
+        try {
+            Random rnd = new Random(23);
+            String[] names = new String[merchants];
+            MerchantDao md = db.merchantDao();
+            db.runInTransaction(() -> {
+                for (int i = 0; i < merchants; i++) {
+                    String n = randomName(rnd);
+                    if (i % 3 == 0) n = keywords[rnd.nextInt(keywords.length)] + " " + n;
+                    Merchant m = new Merchant();
+                    m.name = names[i] = n;
+                    md.insert(m);
+                }
+            });
+
+            CategoryClassifier classifier = new CategoryClassifier();
+            int matched = 0;
+            long t0 = SystemClock.elapsedRealtimeNanos();
+            for (String n : names) {
+                if (classifier.classify(n).category != Category.UNCATEGORIZED) matched++;
+            }
+            long coldNs = SystemClock.elapsedRealtimeNanos() - t0;
+
+            MerchantCategories categories = MerchantCategories.forDatabase(db);
+            t0 = SystemClock.elapsedRealtimeNanos();
+            categories.backfill(false, null);
+            long backfillNs = SystemClock.elapsedRealtimeNanos() - t0;
+
+            long[] ids = new long[4096];
+            for (int i = 0; i < ids.length; i++) ids[i] = 1 + rnd.nextInt(merchants);
+            int sink = 0;
+            t0 = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < lookups; i++) sink += categories.categoryOf(ids[i & 4095]).code;
+            long warmNs = SystemClock.elapsedRealtimeNanos() - t0;
+
+            return String.format(Locale.ROOT,
+                    "merchants=%d matched=%d cold=%.2fus/op backfill=%dms (%.1fus/merchant)"
+                            + " warm=%dns/op (sink %d)",
+                    merchants, matched, coldNs / 1e3 / merchants, backfillNs / 1_000_000,
+                    backfillNs / 1e3 / merchants, warmNs / lookups, sink);
+        } finally {
+            db.close();
+            context.deleteDatabase(dbName);
+        }
+    }
+
+    /**
+     * 异常检测：10k 个商家、1M 笔支出（长尾分布，千分之一的金额放大 10 倍），
+     * 逐笔打分并更新运行统计；再测整份统计序列化 / 反序列化（即落盘的成本）。不读写数据库。
+     */
+    static String anomalies() throws IOException {
+        final int merchants = 10_000;
+        final int payments = 1_000_000;
+        Random rnd = new Random(29);
+        long[] ids = new long[payments];
+        long[] amounts = new long[payments];
+        for (int i = 0; i < payments; i++) {
+            long m = 1 + (long) (rnd.nextDouble() * rnd.nextDouble() * merchants);
+            ids[i] = m;
+            long amount = 500 + m % 97 * 100 + rnd.nextInt(200);
+            amounts[i] = rnd.nextInt(1000) == 0 ? amount * 10 : amount;
+        }
+
+        MerchantStats stats = new MerchantStats();
+        int flaggedAmount = 0, flaggedBurst = 0;
+        long time = System.currentTimeMillis() - payments * 60_000L;
+        long t0 = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < payments; i++) {
+            MerchantStats.Verdict v = stats.observe(ids[i], time + i * 60_000L, amounts[i]);
+            if ((v.flags & MerchantStats.AMOUNT) != 0) flaggedAmount++;
+            if ((v.flags & MerchantStats.BURST) != 0) flaggedBurst++;
+        }
+        long observeNs = SystemClock.elapsedRealtimeNanos() - t0;
+
+        t0 = SystemClock.elapsedRealtimeNanos();
+        byte[] bytes = stats.toBytes();
+        long saveNs = SystemClock.elapsedRealtimeNanos() - t0;
+        t0 = SystemClock.elapsedRealtimeNanos();
+        MerchantStats loaded = MerchantStats.fromBytes(bytes);
+        long loadNs = SystemClock.elapsedRealtimeNanos() - t0;
+
+        return String.format(Locale.ROOT,
+                "merchants=%d payments=%d observe=%dns/op flagged amount=%d burst=%d"
+                        + " state=%dKB save=%.1fms load=%.1fms",
+                loaded.size(), payments, observeNs / payments, flaggedAmount, flaggedBurst,
+                bytes.length / 1024, saveNs / 1e6, loadNs / 1e6);
+    }
+
+    /**
+     * 年度报告：随机生成一年的按日合计、商家排行和类别合计，把 15 页报告写成 ZIP 到缓存目录，
+     * 比较单线程逐页生成与 {@link AnnualReportExporter#defaultWorkers()} 个线程并行生成，各跑 3 次取最快。
+     * 先并行跑一次预热；两种方式写出的各页应一致（比较 ZIP 条目的 CRC）。不读写数据库。
+     */
+    static String annualReport(Context context) throws IOException {
+        final int year = 2024;
+        final int runs = 3;
+        Random rnd = new Random(31);
+        long[] dayTotals = new long[Year.of(year).length()];
+        long[] categories = new long[Category.values().length];
+        long total = 0;
+        for (int i = 0; i < dayTotals.length; i++) {
+            dayTotals[i] = rnd.nextInt(8) == 0 ? 0 : 500 + rnd.nextInt(20_000);
+            categories[rnd.nextInt(categories.length)] += dayTotals[i];
+            total += dayTotals[i];
+        }
+        List<MerchantTotal> top = new ArrayList<>();
+        for (int i = 0; i < AnnualReportExporter.TOP_MERCHANTS; i++) {
+            MerchantTotal t = new MerchantTotal();
+            t.merchantId = i + 1;
+            t.name = randomName(rnd);
+            t.totalMinor = total / (4 + 2L * i);
+            t.count = 10 + rnd.nextInt(100);
+            top.add(t);
+        }
+        AnnualReportExporter.Data data = new AnnualReportExporter.Data(
+                year, CurrencyCode.DEFAULT.iso, dayTotals, top, total, categories);
+
+        int workers = AnnualReportExporter.defaultWorkers();
+        File serialOut = new File(context.getCacheDir(), "bench_report_serial.tmp");
+        File parallelOut = new File(context.getCacheDir(), "bench_report_parallel.tmp");
+        try {
+            writeReport(data, parallelOut, workers);
+            long serialMs = Long.MAX_VALUE, parallelMs = Long.MAX_VALUE;
+            int pages = 0;
+            for (int r = 0; r < runs; r++) {
+                long t0 = SystemClock.elapsedRealtime();
+                pages = writeReport(data, serialOut, 1).pages;
+                serialMs = Math.min(serialMs, SystemClock.elapsedRealtime() - t0);
+                t0 = SystemClock.elapsedRealtime();
+                writeReport(data, parallelOut, workers);
+                parallelMs = Math.min(parallelMs, SystemClock.elapsedRealtime() - t0);
+            }
+            boolean identical = entryCrcs(serialOut).equals(entryCrcs(parallelOut));
+            return String.format(Locale.ROOT,
+                    "pages=%d size=%.1fMB | serial=%dms (%.0fms/page) | %d workers=%dms"
+                            + " speedup=%.2fx identical=%b",
+                    pages, parallelOut.length() / 1048576.0, serialMs, serialMs / (double) pages,
+                    workers, parallelMs, serialMs / (double) Math.max(1, parallelMs), identical);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            serialOut.delete();
+            //noinspection ResultOfMethodCallIgnored
+            parallelOut.delete();
+        }
+    }
+
+    private static AnnualReportExporter.Summary writeReport(
+            AnnualReportExporter.Data data, File out, int workers) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(out))) {
+            return AnnualReportExporter.write(data, os, workers, null);
+        }
+    }
+
+    /** ZIP 各条目的 CRC；条目带写入时间，整个文件不会逐字节一致 */
+    private static List<Long> entryCrcs(File zip) throws IOException {
+        List<Long> crcs = new ArrayList<>();
+        try (ZipFile z = new ZipFile(zip)) {
+            for (ZipEntry e : Collections.list(z.entries())) crcs.add(e.getCrc());
+        }
+        return crcs;
+    }
+
+    private static long startOf(LocalDate day, ZoneId zone) {
+        return day.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static long sqlSum(SupportSQLiteDatabase sql, long startMillis, long endMillis) {
+        try (Cursor c = sql.query("SELECT IFNULL(SUM(amountMinor), 0) FROM table_entries "
+                + "WHERE timeMillis >= ? AND timeMillis < ?", new Object[]{startMillis, endMillis})) {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * 往临时库写入随机商家和记录：用递归 CTE 一次生成全部记录，
+     * 两个随机数相乘让小 id 的商家占大头（长尾分布）。
+     *
+     * @return 商家名，下标 i 对应 id i + 1
+     */
+    private static String[] fill(AppDb db, int merchants, int rows, Random rnd) {
+        return fill(db, merchants, rows, 60_000L, rnd);
+    }
+
+    /** 同上，记录间隔 {@code stepMillis} */
+    private static String[] fill(AppDb db, int merchants, int rows, long stepMillis, Random rnd) {
+        String[] names = new String[merchants];
+        MerchantDao md = db.merchantDao();
+        db.runInTransaction(() -> {
+            for (int i = 0; i < merchants; i++) {
+                Merchant m = new Merchant();
+                m.name = names[i] = randomName(rnd);
+                md.insert(m);
+            }
+        });
+        SupportSQLiteDatabase sql = db.getOpenHelper().getWritableDatabase();
+        sql.execSQL("INSERT INTO table_entries (timeMillis, merchantId, amountMinor) "
+                + "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < " + rows + ") "
+                + "SELECT 1500000000000 + i * " + stepMillis + ", "
+                + "1 + (abs(random()) % " + merchants + ") * (abs(random()) % " + merchants + ") / " + merchants + ", "
+                + "abs(random()) % 10000 FROM n");
+        sql.execSQL("ANALYZE");
+        return names;
+    }
+
+    private static String randomName(Random rnd) {
+        StringBuilder sb = new StringBuilder();
+        int words = 1 + rnd.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) sb.append(' ');
+            int len = 3 + rnd.nextInt(7);
+            sb.append((char) ('A' + rnd.nextInt(26)));
+            for (int i = 1; i < len; i++) sb.append((char) ('a' + rnd.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    /** 把首字母以外的一个字母替换掉 */
+    private static String typo(String s, Random rnd) {
+        char[] cs = s.toCharArray();
+        int at = 1 + rnd.nextInt(cs.length - 1);
+        if (cs[at] != ' ') cs[at] = cs[at] == 'z' ? 'y' : 'z';
+        return new String(cs);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.auto_accounting.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.fx.FxRates;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 最近记录列表：每行两行文字（商家 / 时间 · 金额），数据源由外部原地更新后 notify。
+ * 金额按原币显示；不是报表币种时在后面标出币种代码。
+ */
+public class RecentRowsAdapter extends BaseAdapter {
+
+    private final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
+    private final Date date = new Date();
+    private List<Entry> rows = Collections.emptyList();
+
+    /** 替换数据源（只读视图即可） */
+    public void setRows(List<Entry> rows) {
+        this.rows = rows;
+        notifyDataSetChanged();
+    }
+
+    @Override public int getCount() { return rows.size(); }
+    @Override public Entry getItem(int position) { return rows.get(position); }
+    @Override public long getItemId(int position) { return rows.get(position).id; }
+    @Override public boolean hasStableIds() { return true; }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View v = convertView != null ? convertView : LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_2, parent, false);
+        Entry r = rows.get(position);
+        date.setTime(r.timeMillis);
+        ((TextView) v.findViewById(android.R.id.text1))
+                .setText(r.description == null ? "" : r.description);
+        String amount = formatAmount(r.amountMinor);
+        if (r.currency != FxRates.get(parent.getContext()).reportingCurrency()) {
+            amount += " " + CurrencyCode.fromCode(r.currency).iso;
+        }
+        ((TextView) v.findViewById(android.R.id.text2)).setText(sdf.format(date) + "  ·  " + amount);
+        return v;
+    }
+
+    static String formatAmount(long minor) {
+        return String.format(Locale.getDefault(), "%.2f", minor / 100.0);
+    }
+}
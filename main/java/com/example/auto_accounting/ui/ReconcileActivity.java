@@ -0,0 +1,98 @@
+package com.example.auto_accounting.ui;
+
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.example.auto_accounting.R;
+import com.example.auto_accounting.data.export.ReconciliationExporter;
+import com.example.auto_accounting.data.repo.StatementReconciler;
+
+/**
+ * 对账页：选一份银行账单，与已记录的账本逐笔核对。
+ * - 遗漏：账单上有、监听没记到的支出；多出：账本里有、账单上没有的记录；匹配：二者对上的；
+ * - 金额必须一致（分），时间在容差内（只有日期的账单行放宽到整天），商家模糊比较，不同商家的匹配单独标出；
+ * - 对账在 {@link ReconcileViewModel} 里后台执行，报告可导出为 CSV（SAF）。
+ */
+public class ReconcileActivity extends AppCompatActivity {
+
+    private Button btnMissing;
+    private Button btnExtra;
+    private Button btnMatched;
+    private Button btnExport;
+    private final ReconcileRowsAdapter adapter = new ReconcileRowsAdapter();
+
+    private ReconcileViewModel vm;
+
+    // SAF：选择账单 / 保存报告
+    private ActivityResultLauncher<String[]> openStatementLauncher;
+    private ActivityResultLauncher<String> createReportLauncher;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_reconcile);
+
+        vm = new ViewModelProvider(this).get(ReconcileViewModel.class);
+
+        TextView textStatus = findViewById(R.id.text_status);
+        btnMissing = findViewById(R.id.button_missing);
+        btnExtra   = findViewById(R.id.button_extra);
+        btnMatched = findViewById(R.id.button_matched);
+        btnExport  = findViewById(R.id.button_export_report);
+        ListView list = findViewById(R.id.list_reconcile);
+        list.setAdapter(adapter);
+
+        vm.status().observe(this, textStatus::setText);
+        vm.result().observe(this, r -> showResult());
+        vm.section().observe(this, s -> showResult());
+
+        btnMissing.setOnClickListener(v -> vm.showSection(ReconcileViewModel.Section.MISSING));
+        btnExtra.setOnClickListener(v -> vm.showSection(ReconcileViewModel.Section.EXTRA));
+        btnMatched.setOnClickListener(v -> vm.showSection(ReconcileViewModel.Section.MATCHED));
+
+        createReportLauncher = registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(ReconciliationExporter.MIME_TYPE),
+                uri -> { if (uri != null) vm.exportTo(uri); });
+        btnExport.setOnClickListener(v -> createReportLauncher.launch(vm.exportFileName()));
+
+        // 进入页面先选账单；取消则直接返回。旋转屏幕后不再弹出
+        openStatementLauncher = registerForActivityResult(
+                new ActivityResultContracts.OpenDocument(),
+                uri -> {
+                    if (uri != null) vm.reconcile(uri);
+                    else if (!vm.started()) finish();
+                });
+        if (!vm.started() && savedInstanceState == null) {
+            // OFX / QIF 常被标成 application/octet-stream，不按类型过滤
+            openStatementLauncher.launch(new String[]{"*/*"});
+        }
+    }
+
+    /** 按当前选中的集合刷新列表与按钮上的数量 */
+    private void showResult() {
+        StatementReconciler.Result r = vm.result().getValue();
+        ReconcileViewModel.Section s = vm.section().getValue();
+        btnExport.setEnabled(r != null);
+        if (r == null) return;
+        btnMissing.setText(getString(R.string.reconcile_missing_count, r.missing.size()));
+        btnExtra.setText(getString(R.string.reconcile_extra_count, r.extra.size()));
+        btnMatched.setText(getString(R.string.reconcile_matched_count, r.matched.size()));
+        btnMissing.setSelected(s == ReconcileViewModel.Section.MISSING);
+        btnExtra.setSelected(s == ReconcileViewModel.Section.EXTRA);
+        btnMatched.setSelected(s == ReconcileViewModel.Section.MATCHED);
+        if (s == ReconcileViewModel.Section.EXTRA) {
+            adapter.setRows(r.extra);
+        } else if (s == ReconcileViewModel.Section.MATCHED) {
+            adapter.setRows(r.matched);
+        } else {
+            adapter.setRows(r.missing);
+        }
+    }
+}
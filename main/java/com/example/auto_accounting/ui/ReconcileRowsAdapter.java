@@ -0,0 +1,83 @@
+package com.example.auto_accounting.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.example.auto_accounting.data.db.CurrencyCode;
+import com.example.auto_accounting.data.db.Entry;
+import com.example.auto_accounting.data.repo.StatementReconciler;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 对账结果列表：行可以是账单行（遗漏）、账本记录（多出）或二者的匹配。
+ * 第一行是描述，第二行是时间 · 金额，匹配行再附上账本一侧的商家与时间。
+ */
+public class ReconcileRowsAdapter extends BaseAdapter {
+
+    private final SimpleDateFormat dateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.getDefault());
+    private final SimpleDateFormat dateOnly = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
+    private final Date date = new Date();
+    private List<?> rows = Collections.emptyList();
+
+    /** 替换数据源：元素为 Line、Entry 或 Match */
+    public void setRows(List<?> rows) {
+        this.rows = rows;
+        notifyDataSetChanged();
+    }
+
+    @Override public int getCount() { return rows.size(); }
+    @Override public Object getItem(int position) { return rows.get(position); }
+    @Override public long getItemId(int position) { return position; }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View v = convertView != null ? convertView : LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_2, parent, false);
+        Object row = rows.get(position);
+        String title, detail;
+        if (row instanceof StatementReconciler.Match) {
+            StatementReconciler.Match m = (StatementReconciler.Match) row;
+            title = m.line.description;
+            detail = describe(m.line) + "  ↔  " + (m.sameMerchant ? "" : nonNull(m.entry.description) + " ")
+                    + format(dateTime, m.entry.timeMillis);
+        } else if (row instanceof StatementReconciler.Line) {
+            StatementReconciler.Line l = (StatementReconciler.Line) row;
+            title = l.description;
+            detail = describe(l);
+        } else {
+            Entry e = (Entry) row;
+            title = nonNull(e.description);
+            detail = format(dateTime, e.timeMillis) + "  ·  " + formatAmount(e.amountMinor, e.currency);
+        }
+        ((TextView) v.findViewById(android.R.id.text1)).setText(title);
+        ((TextView) v.findViewById(android.R.id.text2)).setText(detail);
+        return v;
+    }
+
+    private String describe(StatementReconciler.Line l) {
+        return "#" + l.number + "  " + format(l.dateOnly() ? dateOnly : dateTime, l.startMillis)
+                + "  ·  " + formatAmount(l.amountMinor, l.currency);
+    }
+
+    /** 对账单可能混有多种币种，金额一律带上币种代码 */
+    private static String formatAmount(long minor, int currency) {
+        return RecentRowsAdapter.formatAmount(minor) + " " + CurrencyCode.fromCode(currency).iso;
+    }
+
+    private String format(SimpleDateFormat f, long millis) {
+        date.setTime(millis);
+        return f.format(date);
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+}
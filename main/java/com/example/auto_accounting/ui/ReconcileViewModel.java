@@ -0,0 +1,129 @@
+package com.example.auto_accounting.ui;
+
+import android.app.Application;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.export.ReconciliationExporter;
+import com.example.auto_accounting.data.repo.StatementReconciler;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 对账页的 ViewModel：读账单、与账本做排序合并连接，结果保留到页面销毁，旋转屏幕不重算。
+ * 对账与导出都在 BACKGROUND 通道执行；onCleared 时取消仍在读取的对账。
+ */
+public class ReconcileViewModel extends AndroidViewModel {
+
+    /** 列表当前显示的集合 */
+    public enum Section { MISSING, EXTRA, MATCHED }
+
+    private final CancellationToken token = CancellationToken.create();
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private final MutableLiveData<String> status = new MutableLiveData<>("Ready");
+    private final MutableLiveData<StatementReconciler.Result> result = new MutableLiveData<>();
+    private final MutableLiveData<Section> section = new MutableLiveData<>(Section.MISSING);
+
+    private boolean started;
+
+    public ReconcileViewModel(@NonNull Application app) {
+        super(app);
+    }
+
+    public LiveData<String> status() { return status; }
+    /** 对账结果；未完成时为 null */
+    public LiveData<StatementReconciler.Result> result() { return result; }
+    public LiveData<Section> section() { return section; }
+
+    /** @return true 如果已经选过账单（旋转后不再弹出选择框） */
+    public boolean started() {
+        return started;
+    }
+
+    public void showSection(Section s) {
+        section.setValue(s);
+    }
+
+    /** 在后台读取账单并对账 */
+    public void reconcile(Uri uri) {
+        started = true;
+        status.setValue("Reconciling…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, token, () -> {
+            try {
+                long t0 = System.currentTimeMillis();
+                StatementReconciler.Result r = StatementReconciler.reconcile(app, uri,
+                        StatementReconciler.DEFAULT_TOLERANCE_MINUTES, token);
+                long ms = System.currentTimeMillis() - t0;
+                main.post(() -> {
+                    result.setValue(r);
+                    status.setValue(describe(r) + " in " + ms + " ms");
+                });
+            } catch (CancellationException ignored) {
+                // 页面已关闭
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    /** 报告导出的默认文件名 */
+    public String exportFileName() {
+        StatementReconciler.Result r = result.getValue();
+        return r != null ? ReconciliationExporter.fileName(r) : "reconciliation.csv";
+    }
+
+    /** 把三组结果写成一个 CSV */
+    public void exportTo(Uri uri) {
+        StatementReconciler.Result r = result.getValue();
+        if (r == null) return;
+        status.setValue("Exporting…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.BACKGROUND, () -> {
+            try {
+                int rows = ReconciliationExporter.export(app.getContentResolver(), uri, r);
+                main.post(() -> status.setValue("Exported " + rows + " rows"));
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    private static String describe(@Nullable StatementReconciler.Result r) {
+        if (r == null) return "";
+        StringBuilder sb = new StringBuilder();
+        sb.append(r.matched.size()).append(" matched");
+        int other = r.merchantMismatches();
+        if (other > 0) sb.append(" (").append(other).append(" other merchant)");
+        sb.append(", ").append(r.missing.size()).append(" missing, ")
+                .append(r.extra.size()).append(" extra");
+        if (r.credits > 0) sb.append(", ").append(r.credits).append(" credits skipped");
+        if (r.malformed > 0) sb.append(", ").append(r.malformed).append(" unreadable");
+        return sb.toString();
+    }
+
+    private void fail(Exception e) {
+        status.setValue("Failed: " + e.getMessage());
+        Toast.makeText(getApplication(), e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+
+    @Override
+    protected void onCleared() {
+        token.cancel();
+    }
+}
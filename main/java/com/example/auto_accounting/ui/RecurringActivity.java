@@ -0,0 +1,45 @@
+package com.example.auto_accounting.ui;
+
+import android.os.Bundle;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+
+import com.example.auto_accounting.R;
+
+/**
+ * 周期扣款页：从流水中找出的订阅 / 定期扣款（同一商家、金额相近、按周 / 双周 / 月 / 季度出现）。
+ * - 上方是本月月底的预计总支出：已花 + 本月内还会扣的周期款；
+ * - 下方是未来 30 天预计的扣款，逾期未到账的也列出。
+ */
+public class RecurringActivity extends AppCompatActivity {
+
+    private RecurringViewModel vm;
+    private final RecurringRowsAdapter adapter = new RecurringRowsAdapter();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_recurring);
+
+        vm = new ViewModelProvider(this).get(RecurringViewModel.class);
+
+        TextView textStatus = findViewById(R.id.text_status);
+        TextView textProjection = findViewById(R.id.text_projection);
+        ListView list = findViewById(R.id.list_upcoming);
+        list.setAdapter(adapter);
+
+        vm.status().observe(this, textStatus::setText);
+        vm.projection().observe(this, textProjection::setText);
+        vm.charges().observe(this, c -> { if (c != null) adapter.setCharges(c); });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // 回到页面时按最新流水刷新（只有新变更时才会重算）
+        vm.load();
+    }
+}
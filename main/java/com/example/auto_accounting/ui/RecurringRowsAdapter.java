@@ -0,0 +1,56 @@
+package com.example.auto_accounting.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.example.auto_accounting.data.repo.RecurringDetector;
+import com.example.auto_accounting.data.repo.RecurringPayments;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 即将扣款列表：第一行是日期与商家，第二行是预计金额 · 周期 · 依据的笔数；已过期未到账的标为 overdue。
+ */
+public class RecurringRowsAdapter extends BaseAdapter {
+
+    private List<RecurringPayments.Charge> charges = Collections.emptyList();
+
+    /** 替换数据源 */
+    public void setCharges(List<RecurringPayments.Charge> charges) {
+        this.charges = charges;
+        notifyDataSetChanged();
+    }
+
+    @Override public int getCount() { return charges.size(); }
+    @Override public RecurringPayments.Charge getItem(int position) { return charges.get(position); }
+    @Override public long getItemId(int position) { return position; }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View v = convertView != null ? convertView : LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_2, parent, false);
+        RecurringPayments.Charge c = charges.get(position);
+        RecurringDetector.Subscription s = c.subscription;
+        String day = Instant.ofEpochMilli(c.dueMillis).atZone(ZoneId.systemDefault()).toLocalDate().toString();
+        String name = c.name != null ? c.name : "#" + s.merchantId;
+        String title = day + "  " + name + (c.overdue ? "  (overdue)" : "");
+        String detail = cadence(s) + "  ·  " + RecentRowsAdapter.formatAmount(s.amountMinor)
+                + "  ·  " + s.occurrences + " charges seen";
+        ((TextView) v.findViewById(android.R.id.text1)).setText(title);
+        ((TextView) v.findViewById(android.R.id.text2)).setText(detail);
+        return v;
+    }
+
+    /** 周期名，例如 “Monthly” */
+    private static String cadence(RecurringDetector.Subscription s) {
+        String n = s.cadence.name().toLowerCase(Locale.ROOT);
+        return Character.toUpperCase(n.charAt(0)) + n.substring(1);
+    }
+}
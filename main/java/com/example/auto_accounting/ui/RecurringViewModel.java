@@ -0,0 +1,83 @@
+package com.example.auto_accounting.ui;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.auto_accounting.core.AppScheduler;
+import com.example.auto_accounting.core.CancellationToken;
+import com.example.auto_accounting.data.repo.RecurringPayments;
+
+import java.util.List;
+
+/**
+ * 周期扣款页的 ViewModel：未来 {@link #DAYS_AHEAD} 天预计的订阅扣款与本月月底的预计总支出，
+ * 均来自 {@link RecurringPayments}（按变更日志增量维护，只重算有新流水的商家）。
+ * 读取走 INTERACTIVE 通道，页面关闭时取消。
+ */
+public class RecurringViewModel extends AndroidViewModel {
+
+    /** 向后看的天数 */
+    public static final int DAYS_AHEAD = 30;
+
+    private final CancellationToken token = CancellationToken.create();
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private final MutableLiveData<String> status = new MutableLiveData<>("Ready");
+    private final MutableLiveData<String> projection = new MutableLiveData<>();
+    private final MutableLiveData<List<RecurringPayments.Charge>> charges = new MutableLiveData<>();
+
+    public RecurringViewModel(@NonNull Application app) {
+        super(app);
+    }
+
+    public LiveData<String> status() { return status; }
+    /** 月底预计总支出的说明文字 */
+    public LiveData<String> projection() { return projection; }
+    /** 即将扣款，最早的在前；未读取时为 null */
+    public LiveData<List<RecurringPayments.Charge>> charges() { return charges; }
+
+    /** 在后台读取即将扣款与本月预计 */
+    public void load() {
+        status.setValue("Looking for recurring payments…");
+        Application app = getApplication();
+        boolean queued = AppScheduler.execute(AppScheduler.Lane.INTERACTIVE, token, () -> {
+            try {
+                long t0 = System.currentTimeMillis();
+                RecurringPayments rp = RecurringPayments.get(app);
+                List<RecurringPayments.Charge> list = rp.upcoming(DAYS_AHEAD);
+                RecurringPayments.Projection p = rp.projectMonth();
+                long ms = System.currentTimeMillis() - t0;
+                String text = "Month-end projection: " + RecentRowsAdapter.formatAmount(p.totalMinor())
+                        + "  (spent " + RecentRowsAdapter.formatAmount(p.spentMinor)
+                        + " + recurring " + RecentRowsAdapter.formatAmount(p.upcomingMinor) + ")";
+                main.post(() -> {
+                    charges.setValue(list);
+                    projection.setValue(text);
+                    status.setValue(list.size() + " charge(s) in the next " + DAYS_AHEAD
+                            + " days, found in " + ms + " ms");
+                });
+            } catch (Exception e) {
+                e.printStackTrace();
+                main.post(() -> fail(e));
+            }
+        });
+        if (!queued) status.setValue("Failed: too many pending tasks");
+    }
+
+    private void fail(Exception e) {
+        status.setValue("Failed: " + e.getMessage());
+        Toast.makeText(getApplication(), e.getMessage(), Toast.LENGTH_LONG).show();
+    }
+
+    @Override
+    protected void onCleared() {
+        token.cancel();
+    }
+}
@@ -1,112 +1,256 @@
-package com.example.auto_accounting.ui.widge;
-
-import android.content.Context;
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.RectF;
-import android.util.AttributeSet;
-import android.view.MotionEvent;
-import android.view.View;
-
-import androidx.annotation.Nullable;
-
-import java.util.List;
-
-/** 简易可点击的柱状图：支持按天显示、点击柱子回调当天索引（1..days）。 */
-public class InteractiveBarChartView extends View {
-
-    /** 每日合计（单位：分，允许为 0） */
-    private List<Long> dayTotalsMinor; // 长度 = daysInMonth
-    private int daysInMonth = 30;      // 默认 30，设置数据时覆盖
-    private OnBarClickListener listener;
-
-    // 画笔
-    private final Paint barPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private final Paint axisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-
-    // 内边距/坐标
-    private float contentLeft, contentRight, contentTop, contentBottom;
-    private final RectF barRect = new RectF();
-
-    public InteractiveBarChartView(Context c) { this(c, null); }
-    public InteractiveBarChartView(Context c, @Nullable AttributeSet a) { super(c, a); init(); }
-
-    private void init() {
-        barPaint.setColor(0xFF4CAF50);  // 绿色柱子
-        axisPaint.setColor(0xFFB0BEC5); // 灰色坐标
-        axisPaint.setStrokeWidth(2f);
-        setClickable(true);
-    }
-
-    /** 设置数据： totalsMinor 为每天合计（分），days 为当月天数 */
-    public void setData(List<Long> totalsMinor, int days) {
-        this.dayTotalsMinor = totalsMinor;
-        this.daysInMonth = Math.max(1, days);
-        invalidate();
-    }
-
-    /** 点击回调接口 */
-    public interface OnBarClickListener {
-        /** @param day 1..daysInMonth */
-        void onBarClick(int day);
-    }
-
-    public void setOnBarClickListener(@Nullable OnBarClickListener l) {
-        this.listener = l;
-    }
-
-    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        float pad = dp(12);
-        contentLeft = pad;
-        contentRight = w - pad;
-        contentTop = pad;
-        contentBottom = h - pad - dp(8); // 预留底部
-    }
-
-    @Override protected void onDraw(Canvas c) {
-        super.onDraw(c);
-        // x 轴
-        c.drawLine(contentLeft, contentBottom, contentRight, contentBottom, axisPaint);
-
-        if (dayTotalsMinor == null || dayTotalsMinor.isEmpty()) return;
-
-        float contentW = contentRight - contentLeft;
-        float barW = contentW / daysInMonth;
-        // 最大值（避免除零）
-        long maxMinor = 0;
-        for (Long v : dayTotalsMinor) if (v != null && v > maxMinor) maxMinor = v;
-        if (maxMinor <= 0) maxMinor = 1;
-
-        for (int i = 0; i < daysInMonth; i++) {
-            long v = (i < dayTotalsMinor.size() && dayTotalsMinor.get(i) != null) ? dayTotalsMinor.get(i) : 0;
-            float ratio = v * 1f / maxMinor;
-            float barH = (contentBottom - contentTop) * ratio;
-
-            float left = contentLeft + i * barW + dp(2);
-            float right = contentLeft + (i + 1) * barW - dp(2);
-            float top = contentBottom - barH;
-
-            barRect.set(left, top, right, contentBottom);
-            c.drawRect(barRect, barPaint);
-        }
-    }
-
-    @Override public boolean onTouchEvent(MotionEvent e) {
-        if (e.getAction() == MotionEvent.ACTION_UP && listener != null) {
-            int day = pickDayByX(e.getX());
-            if (day >= 1 && day <= daysInMonth) listener.onBarClick(day);
-        }
-        return super.onTouchEvent(e) || isClickable();
-    }
-
-    /** 根据触点 X 计算 day（1..daysInMonth） */
-    private int pickDayByX(float x) {
-        float clamped = Math.max(contentLeft, Math.min(x, contentRight));
-        float barW = (contentRight - contentLeft) / daysInMonth;
-        int idx = (int) ((clamped - contentLeft) / barW);
-        return idx + 1;
-    }
-
-    private float dp(float v) { return v * getResources().getDisplayMetrics().density; }
-}
-
+package com.example.auto_accounting.ui.widge;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Picture;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.animation.DecelerateInterpolator;
+
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * 简易可点击的柱状图：支持按天显示、点击柱子回调当天索引（1..days）。
+ * - 数据模型为 long[]（分），不装箱；最大值、柱子几何在数据/尺寸变化时预先算好；
+ * - 静态内容录制在 {@link Picture} 中，onDraw 只回放，只有数据或尺寸变化才重录；
+ * - 数据更新时只对变化的柱子做过渡动画。硬件加速下脏区域会被忽略，每帧都重画整个 View，
+ *   帧开销低靠的是 Picture：静态部分只回放，逐帧实际绘制的只有动画中的柱子。
+ */
+public class InteractiveBarChartView extends View {
+
+    private static final long ANIM_MS = 250L;
+    private static final float PAD_DP = 12f;
+    private static final float BOTTOM_DP = 8f;
+    private static final float BAR_INSET_DP = 2f;
+
+    /** 每日合计（单位：分，允许为 0），长度 = days */
+    private long[] dayTotalsMinor = new long[0];
+    private int days = 30;              // 默认 30，设置数据时覆盖
+    private long maxMinor = 1;
+    private OnBarClickListener listener;
+
+    // 画笔
+    private final Paint barPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint axisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    // 尺寸（px），init 时按 density 换算一次
+    private float pad, bottomReserve, barInset;
+
+    // 内边距/坐标
+    private float contentLeft, contentRight, contentTop, contentBottom;
+    private float slotW = 1f;
+
+    // 预计算的柱子几何：left/right 只随尺寸和天数变化；top 为当前（可能在动画中）的顶边
+    private float[] barLeft = new float[0];
+    private float[] barRight = new float[0];
+    private float[] barTop = new float[0];
+    private float[] fromTop = new float[0];
+    private float[] toTop = new float[0];
+    /** 正在动画的柱子（不录进 Picture，逐帧单独画） */
+    private boolean[] animating = new boolean[0];
+    private boolean anyAnimating;
+
+    /** 静态内容缓存；null 表示需要重录 */
+    @Nullable private Picture cache;
+    @Nullable private ValueAnimator animator;
+
+    public InteractiveBarChartView(Context c) { this(c, null); }
+    public InteractiveBarChartView(Context c, @Nullable AttributeSet a) { super(c, a); init(); }
+
+    private void init() {
+        float density = getResources().getDisplayMetrics().density;
+        pad = PAD_DP * density;
+        bottomReserve = BOTTOM_DP * density;
+        barInset = BAR_INSET_DP * density;
+
+        barPaint.setColor(0xFF4CAF50);  // 绿色柱子
+        axisPaint.setColor(0xFFB0BEC5); // 灰色坐标
+        axisPaint.setStrokeWidth(2f);
+        setClickable(true);
+    }
+
+    /**
+     * 设置数据：totalsMinor 为每天合计（分），days 为天数。
+     * 若天数不变且已完成布局，变化的柱子以动画过渡到新高度。
+     */
+    public void setData(@Nullable long[] totalsMinor, int days) {
+        int n = Math.max(1, days);
+        long[] next = new long[n];
+        if (totalsMinor != null) {
+            System.arraycopy(totalsMinor, 0, next, 0, Math.min(n, totalsMinor.length));
+        }
+        long nextMax = 0;
+        for (long v : next) if (v > nextMax) nextMax = v;
+        if (nextMax <= 0) nextMax = 1;
+
+        boolean canAnimate = n == this.days && n == barTop.length && getWidth() > 0;
+        long[] prev = this.dayTotalsMinor;
+        // 最大值变了所有柱子都要缩放；否则只动变化的柱子
+        boolean rescale = nextMax != this.maxMinor;
+        this.dayTotalsMinor = next;
+        this.days = n;
+        this.maxMinor = nextMax;
+
+        if (!canAnimate) {
+            cancelAnimation();
+            layoutBars();
+            return;
+        }
+
+        // 打断进行中的动画时从当前位置继续，不跳变
+        stopAnimator();
+        boolean changed = false;
+        for (int i = 0; i < n; i++) {
+            animating[i] = animating[i] || rescale || prev[i] != next[i];
+            fromTop[i] = barTop[i];
+            toTop[i] = topFor(next[i]);
+            changed |= animating[i];
+        }
+        if (changed) startAnimation();
+    }
+
+    /** 点击回调接口 */
+    public interface OnBarClickListener {
+        /** @param day 1..days */
+        void onBarClick(int day);
+    }
+
+    public void setOnBarClickListener(@Nullable OnBarClickListener l) {
+        this.listener = l;
+    }
+
+    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        contentLeft = pad;
+        contentRight = w - pad;
+        contentTop = pad;
+        contentBottom = h - pad - bottomReserve; // 预留底部
+        cancelAnimation();
+        layoutBars();
+    }
+
+    /** 按当前尺寸与数据重算所有柱子几何，并使缓存失效 */
+    private void layoutBars() {
+        int n = days;
+        if (barLeft.length != n) {
+            barLeft = new float[n];
+            barRight = new float[n];
+            barTop = new float[n];
+            fromTop = new float[n];
+            toTop = new float[n];
+            animating = new boolean[n];
+        }
+        slotW = (contentRight - contentLeft) / n;
+        for (int i = 0; i < n; i++) {
+            barLeft[i] = contentLeft + i * slotW + barInset;
+            barRight[i] = contentLeft + (i + 1) * slotW - barInset;
+            long v = i < dayTotalsMinor.length ? dayTotalsMinor[i] : 0;
+            barTop[i] = toTop[i] = fromTop[i] = topFor(v);
+        }
+        cache = null;
+        invalidate();
+    }
+
+    private float topFor(long v) {
+        return contentBottom - (contentBottom - contentTop) * (v * 1f / maxMinor);
+    }
+
+    private void startAnimation() {
+        anyAnimating = true;
+        cache = null; // 重录一次：不含动画中的柱子
+        ValueAnimator a = ValueAnimator.ofFloat(0f, 1f);
+        a.setDuration(ANIM_MS);
+        a.setInterpolator(new DecelerateInterpolator());
+        a.addUpdateListener(va -> {
+            float t = (float) va.getAnimatedValue();
+            for (int i = 0; i < days; i++) {
+                if (animating[i]) barTop[i] = fromTop[i] + (toTop[i] - fromTop[i]) * t;
+            }
+            postInvalidateOnAnimation();
+        });
+        a.addListener(new AnimatorListenerAdapter() {
+            @Override public void onAnimationEnd(Animator animation) {
+                animator = null;
+                finishAnimation();
+            }
+        });
+        animator = a;
+        a.start();
+    }
+
+    /** 停止动画但保留柱子当前位置 */
+    private void stopAnimator() {
+        if (animator != null) {
+            ValueAnimator a = animator;
+            animator = null;
+            a.removeAllListeners();
+            a.removeAllUpdateListeners();
+            a.cancel();
+        }
+    }
+
+    /** 停止动画并让柱子直接到位 */
+    private void cancelAnimation() {
+        stopAnimator();
+        finishAnimation();
+    }
+
+    private void finishAnimation() {
+        if (!anyAnimating) return;
+        anyAnimating = false;
+        System.arraycopy(toTop, 0, barTop, 0, barTop.length);
+        Arrays.fill(animating, false);
+        cache = null;
+        invalidate();
+    }
+
+    @Override protected void onDetachedFromWindow() {
+        cancelAnimation();
+        super.onDetachedFromWindow();
+    }
+
+    @Override protected void onDraw(Canvas c) {
+        super.onDraw(c);
+        if (cache == null) cache = recordStatic();
+        c.drawPicture(cache);
+
+        if (!anyAnimating) return;
+        for (int i = 0; i < days; i++) {
+            if (animating[i]) c.drawRect(barLeft[i], barTop[i], barRight[i], contentBottom, barPaint);
+        }
+    }
+
+    /** 录制静态内容：x 轴 + 不在动画中的柱子 */
+    private Picture recordStatic() {
+        Picture p = new Picture();
+        Canvas pc = p.beginRecording(Math.max(1, getWidth()), Math.max(1, getHeight()));
+        pc.drawLine(contentLeft, contentBottom, contentRight, contentBottom, axisPaint);
+        for (int i = 0; i < barTop.length; i++) {
+            if (animating[i] || barTop[i] >= contentBottom) continue;
+            pc.drawRect(barLeft[i], barTop[i], barRight[i], contentBottom, barPaint);
+        }
+        p.endRecording();
+        return p;
+    }
+
+    @Override public boolean onTouchEvent(MotionEvent e) {
+        if (e.getAction() == MotionEvent.ACTION_UP && listener != null) {
+            int day = pickDayByX(e.getX());
+            if (day >= 1 && day <= days) listener.onBarClick(day);
+        }
+        return super.onTouchEvent(e) || isClickable();
+    }
+
+    /** 根据触点 X 计算 day（1..days） */
+    private int pickDayByX(float x) {
+        float clamped = Math.max(contentLeft, Math.min(x, contentRight - 1f));
+        int idx = (int) ((clamped - contentLeft) / slotW);
+        return idx + 1;
+    }
+}
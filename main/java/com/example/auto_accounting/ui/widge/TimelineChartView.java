@@ -0,0 +1,322 @@
+package com.example.auto_accounting.ui.widge;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.example.auto_accounting.data.repo.TimelineTiers;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+/**
+ * 可缩放的多年时间轴柱状图：双指缩放在 年 / 月 / 周 / 日 之间切换，单指拖动平移。
+ * - 每个缩放级别从 {@link TimelineTiers} 的降采样层取数据（每个桶 2^level 天的 sum/max），
+ *   一屏最多画 宽度/最小柱宽 根柱子，与历史长短无关；
+ * - 视口移动时只向 {@link ChunkSource} 请求还没加载的分块；分层数据可由外部持有（{@link #setTiers}），
+ *   旋转屏幕后重建的 View 直接复用，无需重新加载；
+ * - 点击任意级别的柱子都会回调该桶覆盖的日期区间和合计。
+ */
+public class TimelineChartView extends View {
+
+    private static final float MIN_BAR_DP = 4f;
+    private static final float MAX_DAY_DP = 64f;
+    private static final float LABEL_GAP_DP = 56f;
+    private static final float PAD_DP = 12f;
+    private static final float LABEL_AREA_DP = 20f;
+    private static final int DEFAULT_VISIBLE_DAYS = 31;
+
+    /**
+     * 按需加载分块的数据源：加载完成后在主线程写入 {@link TimelineTiers} 并调用 {@link #onTiersChanged()}。
+     * 同一分块在加载期间可能被重复请求，由数据源去重。
+     */
+    public interface ChunkSource {
+        void requestChunk(long chunk);
+    }
+
+    /** 点击回调：桶覆盖 [firstEpochDay, firstEpochDay + days) */
+    public interface OnBarClickListener {
+        void onBarClick(long firstEpochDay, int days, long totalMinor, long maxDayMinor);
+    }
+
+    private TimelineTiers tiers = new TimelineTiers();
+    @Nullable private ChunkSource source;
+    @Nullable private OnBarClickListener listener;
+
+    // 视口：左边缘对应的 epochDay（可为小数）与每像素天数
+    private double startDay;
+    private double daysPerPx = 1;
+    private long firstDataDay;
+    private long lastDataDay;
+
+    // 尺寸（px），构造时换算一次
+    private final float minBarPx, maxDayPx, labelGapPx, pad, labelArea;
+
+    private final Paint barPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint axisPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint gridPaint = new Paint();
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+
+    private static final DateTimeFormatter FMT_DAY = DateTimeFormatter.ofPattern("d", Locale.getDefault());
+    private static final DateTimeFormatter FMT_WEEK = DateTimeFormatter.ofPattern("MMM d", Locale.getDefault());
+    private static final DateTimeFormatter FMT_MONTH = DateTimeFormatter.ofPattern("MMM yy", Locale.getDefault());
+    private static final DateTimeFormatter FMT_YEAR = DateTimeFormatter.ofPattern("yyyy", Locale.getDefault());
+
+    public TimelineChartView(Context c) { this(c, null); }
+
+    public TimelineChartView(Context c, @Nullable AttributeSet a) {
+        super(c, a);
+        float density = getResources().getDisplayMetrics().density;
+        minBarPx = MIN_BAR_DP * density;
+        maxDayPx = MAX_DAY_DP * density;
+        labelGapPx = LABEL_GAP_DP * density;
+        pad = PAD_DP * density;
+        labelArea = LABEL_AREA_DP * density;
+
+        barPaint.setColor(0xFF4CAF50);
+        axisPaint.setColor(0xFFB0BEC5);
+        axisPaint.setStrokeWidth(2f);
+        gridPaint.setColor(0xFFEEEEEE);
+        textPaint.setColor(0xFF607D8B);
+        textPaint.setTextSize(11f * getResources().getDisplayMetrics().scaledDensity);
+
+        long today = LocalDate.now().toEpochDay();
+        firstDataDay = today;
+        lastDataDay = today;
+        scaleDetector = new ScaleGestureDetector(c, new ScaleListener());
+        gestureDetector = new GestureDetector(c, new PanListener());
+    }
+
+    /** 使用外部持有的分层数据（如 ViewModel 中的），跨配置变更保留已加载的分块 */
+    public void setTiers(@NonNull TimelineTiers t) {
+        this.tiers = t;
+        requestVisibleChunks();
+        invalidate();
+    }
+
+    public void setChunkSource(@Nullable ChunkSource s) {
+        this.source = s;
+        requestVisibleChunks();
+    }
+
+    public void setOnBarClickListener(@Nullable OnBarClickListener l) {
+        this.listener = l;
+    }
+
+    /** 设置可浏览的历史范围（含首尾），并把视口定位到最近一个月 */
+    public void setDataRange(long firstEpochDay, long lastEpochDay) {
+        this.firstDataDay = Math.min(firstEpochDay, lastEpochDay);
+        this.lastDataDay = lastEpochDay;
+        if (getWidth() > 0) showLatest();
+    }
+
+    /** 分层数据已变化（分块加载完成或某天新增了金额；主线程） */
+    public void onTiersChanged() {
+        postInvalidateOnAnimation();
+    }
+
+    /** 某天新增了金额时扩展可浏览范围（主线程），不移动视口 */
+    public void includeDay(long epochDay) {
+        if (epochDay > lastDataDay) lastDataDay = epochDay;
+        if (epochDay < firstDataDay) firstDataDay = epochDay;
+    }
+
+    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        if (oldw == 0) {
+            showLatest();
+        } else {
+            // 宽度变化时保持可见天数不变
+            daysPerPx = clampDaysPerPx(daysPerPx * (oldw - 2 * pad) / plotWidth());
+            clampStart();
+            requestVisibleChunks();
+        }
+    }
+
+    private void showLatest() {
+        daysPerPx = clampDaysPerPx(DEFAULT_VISIBLE_DAYS / plotWidth());
+        startDay = lastDataDay + 1 - plotWidth() * daysPerPx;
+        clampStart();
+        requestVisibleChunks();
+        invalidate();
+    }
+
+    private float plotWidth() {
+        return Math.max(1f, getWidth() - 2 * pad);
+    }
+
+    private double clampDaysPerPx(double v) {
+        double min = 1.0 / maxDayPx;
+        double span = Math.max(DEFAULT_VISIBLE_DAYS, lastDataDay - firstDataDay + 1);
+        double max = Math.max(min, span * 1.1 / plotWidth());
+        return Math.max(min, Math.min(max, v));
+    }
+
+    private void clampStart() {
+        double visible = plotWidth() * daysPerPx;
+        double lo = firstDataDay - visible * 0.05;
+        double hi = lastDataDay + 1 - visible * 0.95;
+        startDay = Math.max(lo, Math.min(hi, startDay));
+    }
+
+    /** 当前缩放对应的降采样层：让每个桶至少 MIN_BAR_DP 宽 */
+    private int currentLevel() {
+        double daysPerBar = minBarPx * daysPerPx;
+        int level = 0;
+        while (level < TimelineTiers.MAX_LEVEL && (1 << level) < daysPerBar) level++;
+        return level;
+    }
+
+    private void requestVisibleChunks() {
+        if (source == null || getWidth() == 0) return;
+        double endDay = startDay + plotWidth() * daysPerPx;
+        long first = TimelineTiers.chunkOf((long) Math.floor(startDay)) - 1; // 左右各预取一块
+        long last = TimelineTiers.chunkOf((long) Math.ceil(endDay)) + 1;
+        for (long c = first; c <= last; c++) {
+            if (!tiers.isLoaded(c)) source.requestChunk(c);
+        }
+    }
+
+    @Override protected void onDraw(Canvas c) {
+        super.onDraw(c);
+        float left = pad, right = getWidth() - pad;
+        float top = pad, bottom = getHeight() - pad - labelArea;
+        if (right <= left || bottom <= top) return;
+
+        int level = currentLevel();
+        long bucketDays = 1L << level;
+        long firstBucket = (long) Math.floor(startDay / bucketDays);
+        long lastBucket = (long) Math.floor((startDay + plotWidth() * daysPerPx) / bucketDays);
+
+        // 可见桶的最大值作纵轴比例（O(可见桶数)）
+        long maxMinor = 1;
+        for (long b = firstBucket; b <= lastBucket; b++) {
+            long v = tiers.sum(level, b);
+            if (v > maxMinor) maxMinor = v;
+        }
+
+        drawCalendarGrid(c, left, right, top, bottom);
+
+        float bucketPx = (float) (bucketDays / daysPerPx);
+        float inset = bucketPx > 3f ? Math.min(bucketPx * 0.15f, pad / 4f) : 0f;
+        c.save();
+        c.clipRect(left, top, right, bottom);
+        for (long b = firstBucket; b <= lastBucket; b++) {
+            long v = tiers.sum(level, b);
+            if (v <= 0) continue;
+            float x0 = xOfDay(b * bucketDays);
+            float h = (bottom - top) * (v * 1f / maxMinor);
+            c.drawRect(x0 + inset, bottom - h, x0 + bucketPx - inset, bottom, barPaint);
+        }
+        c.restore();
+        c.drawLine(left, bottom, right, bottom, axisPaint);
+    }
+
+    /** 按日历边界画网格与标签：年 / 月 / 周 / 日，视缩放而定，标签数量与屏宽成正比 */
+    private void drawCalendarGrid(Canvas c, float left, float right, float top, float bottom) {
+        float pxPerDay = (float) (1.0 / daysPerPx);
+        LocalDate d = LocalDate.ofEpochDay((long) Math.floor(startDay));
+        LocalDate end = LocalDate.ofEpochDay((long) Math.ceil(startDay + plotWidth() * daysPerPx));
+        int mode; // 0=日 1=周 2=月 3=年
+        if (pxPerDay >= labelGapPx) {
+            mode = 0;
+        } else if (pxPerDay * 7 >= labelGapPx) {
+            mode = 1;
+            d = d.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        } else if (pxPerDay * 28 >= labelGapPx) {
+            mode = 2;
+            d = d.withDayOfMonth(1);
+        } else {
+            mode = 3;
+            d = d.withDayOfYear(1);
+        }
+        // 年视图下太密时隔几年标一次
+        int yearStep = mode == 3 ? Math.max(1, (int) Math.ceil(labelGapPx / (pxPerDay * 365f))) : 1;
+        if (yearStep > 1) d = d.withYear(d.getYear() - Math.floorMod(d.getYear(), yearStep));
+
+        float labelY = bottom + labelArea - textPaint.descent();
+        while (!d.isAfter(end)) {
+            float x = xOfDay(d.toEpochDay());
+            if (x >= left && x <= right) {
+                c.drawLine(x, top, x, bottom, gridPaint);
+                String label;
+                switch (mode) {
+                    case 0: label = d.format(FMT_DAY); break;
+                    case 1: label = d.format(FMT_WEEK); break;
+                    case 2: label = d.format(FMT_MONTH); break;
+                    default: label = d.format(FMT_YEAR); break;
+                }
+                c.drawText(label, x + 2f, labelY, textPaint);
+            }
+            switch (mode) {
+                case 0: d = d.plusDays(1); break;
+                case 1: d = d.plusWeeks(1); break;
+                case 2: d = d.plusMonths(1); break;
+                default: d = d.plusYears(yearStep); break;
+            }
+        }
+    }
+
+    private float xOfDay(double epochDay) {
+        return (float) (pad + (epochDay - startDay) / daysPerPx);
+    }
+
+    @Override public boolean onTouchEvent(MotionEvent e) {
+        boolean handled = scaleDetector.onTouchEvent(e);
+        if (!scaleDetector.isInProgress()) handled |= gestureDetector.onTouchEvent(e);
+        return handled || super.onTouchEvent(e);
+    }
+
+    /** 双指缩放：以手势焦点为中心改变每像素天数 */
+    private final class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        @Override public boolean onScale(ScaleGestureDetector d) {
+            double focusDay = startDay + (d.getFocusX() - pad) * daysPerPx;
+            daysPerPx = clampDaysPerPx(daysPerPx / d.getScaleFactor());
+            startDay = focusDay - (d.getFocusX() - pad) * daysPerPx;
+            clampStart();
+            requestVisibleChunks();
+            postInvalidateOnAnimation();
+            return true;
+        }
+    }
+
+    /** 单指平移与点击 */
+    private final class PanListener extends GestureDetector.SimpleOnGestureListener {
+        @Override public boolean onDown(MotionEvent e) {
+            return true;
+        }
+
+        @Override public boolean onScroll(MotionEvent e1, MotionEvent e2, float dx, float dy) {
+            startDay += dx * daysPerPx;
+            clampStart();
+            requestVisibleChunks();
+            postInvalidateOnAnimation();
+            return true;
+        }
+
+        @Override public boolean onSingleTapUp(MotionEvent e) {
+            if (listener == null) return false;
+            int level = currentLevel();
+            long bucketDays = 1L << level;
+            double day = startDay + (e.getX() - pad) * daysPerPx;
+            long bucket = (long) Math.floor(day / bucketDays);
+            listener.onBarClick(bucket * bucketDays, (int) bucketDays,
+                    tiers.sum(level, bucket), tiers.max(level, bucket));
+            performClick();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.auto_accounting.data.repo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests of {@link MerchantCanonicalizer}: which raw strings merge and which stay
+ * apart.
+ */
+public class MerchantCanonicalizerTest {
+
+    private static MerchantCanonicalizer with(String... known) {
+        MerchantCanonicalizer c = new MerchantCanonicalizer();
+        for (String name : known) c.addKnown(name);
+        return c;
+    }
+
+    @Test
+    public void normalize_dropsProcessorStoreNumberAndSuffix() {
+        assertEquals("blue bottle", MerchantCanonicalizer.normalize("SQ *Blue Bottle Coffee #123"));
+        assertEquals("woolworths", MerchantCanonicalizer.normalize("WOOLWORTHS 1234 PTY LTD"));
+    }
+
+    @Test
+    public void storeAndPlaceWords_merge() {
+        MerchantCanonicalizer c = with("Starbucks", "Woolworths");
+        assertEquals("Starbucks", c.canonicalize("STARBUCKS SYDNEY"));
+        assertEquals("Starbucks", c.canonicalize("Starbucks Airport NSW"));
+        assertEquals("Woolworths", c.canonicalize("WOOLWORTHS 1234"));
+    }
+
+    @Test
+    public void completionByPlaceWord_merges() {
+        MerchantCanonicalizer c = with("Guzman Y Gomez Sydney");
+        assertEquals("Guzman Y Gomez Sydney", c.canonicalize("Guzman Y Gomez"));
+    }
+
+    @Test
+    public void otherWords_stayApart() {
+        MerchantCanonicalizer c = with("Red Rooster");
+        assertEquals("Red", c.canonicalize("Red"));
+        assertEquals("Red Rooster", c.canonicalize("RED ROOSTER"));
+    }
+
+    @Test
+    public void shortOrGenericWords_stayApart() {
+        String[][] pairs = {
+                {"Bank", "Bank SA"},
+                {"Star", "Star City"},
+                {"Main", "Main St"},
+                {"Ritz", "Ritz Act"},
+                {"Seven", "Seven West"},
+        };
+        for (String[] p : pairs) {
+            MerchantCanonicalizer c = with(p[0]);
+            assertEquals(p[1], c.canonicalize(p[1]));
+            assertEquals(p[0], c.canonicalize(p[0]));
+        }
+    }
+
+    @Test
+    public void smallTypo_merges() {
+        MerchantCanonicalizer c = with("Woolworths");
+        assertEquals("Woolworths", c.canonicalize("Woolwroths"));
+    }
+
+    @Test
+    public void displayName_keepsRawCase() {
+        MerchantCanonicalizer c = new MerchantCanonicalizer();
+        assertEquals("Blue Bottle", c.canonicalize("SQ *Blue Bottle"));
+        assertEquals("Kmart", c.canonicalize("KMART"));
+    }
+
+    @Test
+    public void displayName_survivesCaseMappingThatChangesLength() {
+        // "İ" lower-cases to two chars, so positions in the key do not map onto the raw string.
+        MerchantCanonicalizer c = new MerchantCanonicalizer();
+        String name = c.canonicalize("İİ Kebab Bar");
+        assertEquals(name, c.canonicalize("İİ Kebab Bar "));
+        assertEquals(MerchantCanonicalizer.normalize("İİ Kebab Bar"), MerchantCanonicalizer.normalize(name));
+    }
+}